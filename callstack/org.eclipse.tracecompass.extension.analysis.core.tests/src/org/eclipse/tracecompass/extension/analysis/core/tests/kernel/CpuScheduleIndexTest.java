@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.analysis.core.tests.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.eclipse.tracecompass.extension.internal.analysis.core.kernel.CpuScheduleIndex;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.junit.Test;
+
+/**
+ * Test the {@link CpuScheduleIndex} class
+ *
+ * @author Geneviève Bastien
+ */
+public class CpuScheduleIndexTest {
+
+    private static final int NB_SWITCHES = 1000;
+    private static final long SWITCH_INTERVAL = 10;
+
+    private static int getExpected(long time) {
+        return (int) (time / SWITCH_INTERVAL) % 7;
+    }
+
+    private static CpuScheduleIndex createIndex() {
+        CpuScheduleIndex index = new CpuScheduleIndex();
+        for (int i = 0; i < NB_SWITCHES; i++) {
+            index.addSwitch(i * SWITCH_INTERVAL, i % 7);
+        }
+        index.setEnd(NB_SWITCHES * SWITCH_INTERVAL - 1);
+        index.trimToSize();
+        return index;
+    }
+
+    /**
+     * Test queries in time order, in random order and out of the range of the
+     * index
+     */
+    @Test
+    public void testQueries() {
+        CpuScheduleIndex index = createIndex();
+        long end = index.getEnd();
+        for (long time = 0; time <= end; time += 3) {
+            assertEquals("Time " + time, getExpected(time), index.getThreadAt(time));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < NB_SWITCHES; i++) {
+            long time = (long) (random.nextDouble() * end);
+            assertEquals("Time " + time, getExpected(time), index.getThreadAt(time));
+        }
+        assertEquals(IHostModel.UNKNOWN_TID, index.getThreadAt(-1));
+        assertEquals(IHostModel.UNKNOWN_TID, index.getThreadAt(end + 1));
+    }
+
+    /**
+     * Test that the switches to the thread already on the CPU are not kept
+     */
+    @Test
+    public void testSameThread() {
+        CpuScheduleIndex index = new CpuScheduleIndex();
+        index.addSwitch(0, 1);
+        index.addSwitch(10, 1);
+        index.addSwitch(20, 2);
+        index.addSwitch(30, IHostModel.UNKNOWN_TID);
+        index.setEnd(39);
+        assertEquals(3, index.size());
+        assertEquals(1, index.getThreadAt(15));
+        assertEquals(2, index.getThreadAt(20));
+        assertEquals(IHostModel.UNKNOWN_TID, index.getThreadAt(35));
+    }
+
+    /**
+     * Test that an index with a maximum capacity is not allocated at once and
+     * does not grow beyond its capacity
+     */
+    @Test
+    public void testMaxCapacity() {
+        CpuScheduleIndex index = new CpuScheduleIndex(NB_SWITCHES);
+        assertTrue(index.getMemorySize() < (long) NB_SWITCHES * CpuScheduleIndex.BYTES_PER_SWITCH);
+        for (int i = 0; i < NB_SWITCHES; i++) {
+            index.addSwitch(i * SWITCH_INTERVAL, i % 7);
+        }
+        assertEquals((long) NB_SWITCHES * CpuScheduleIndex.BYTES_PER_SWITCH, index.getMemorySize());
+        // The same thread does not need a switch
+        index.addSwitch(NB_SWITCHES * SWITCH_INTERVAL, (NB_SWITCHES - 1) % 7);
+        try {
+            index.addSwitch(NB_SWITCHES * SWITCH_INTERVAL, NB_SWITCHES % 7);
+            fail("The index should be full");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(NB_SWITCHES, index.size());
+
+        index = new CpuScheduleIndex(0);
+        assertEquals(0, index.getMemorySize());
+        assertEquals(IHostModel.UNKNOWN_TID, index.getThreadAt(5));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.analysis.core.tests.kernel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.eclipse.tracecompass.extension.internal.analysis.core.kernel.RunningTimeIndex;
+import org.junit.Test;
+
+/**
+ * Test the {@link RunningTimeIndex} class
+ *
+ * @author Geneviève Bastien
+ */
+public class RunningTimeIndexTest {
+
+    /**
+     * Test the running times of ranges inside, across and outside the running
+     * periods
+     */
+    @Test
+    public void testRunningTime() {
+        RunningTimeIndex index = new RunningTimeIndex();
+        index.addPeriod(10, 20);
+        index.addPeriod(30, 40);
+        // Contiguous with the previous period
+        index.addPeriod(40, 45);
+        index.addPeriod(100, 110);
+        index.trimToSize();
+        assertEquals(3, index.size());
+
+        assertEquals(0, index.getRunningTime(0, 10));
+        assertEquals(5, index.getRunningTime(12, 17));
+        assertEquals(10, index.getRunningTime(0, 25));
+        assertEquals(13, index.getRunningTime(15, 38));
+        assertEquals(25, index.getRunningTime(0, 100));
+        assertEquals(35, index.getRunningTime(0, 200));
+        assertEquals(0, index.getRunningTime(50, 90));
+        assertEquals(0, index.getRunningTime(200, 300));
+        // Inverted range
+        assertEquals(0, index.getRunningTime(40, 30));
+    }
+
+    /**
+     * Compare the running times with the sum of the periods' intersections
+     */
+    @Test
+    public void testRandomPeriods() {
+        Random random = new Random(1);
+        RunningTimeIndex index = new RunningTimeIndex();
+        int nbPeriods = 1000;
+        long[] starts = new long[nbPeriods];
+        long[] ends = new long[nbPeriods];
+        long time = 0;
+        for (int i = 0; i < nbPeriods; i++) {
+            time += 1 + random.nextInt(100);
+            starts[i] = time;
+            time += random.nextInt(100);
+            ends[i] = time;
+            index.addPeriod(starts[i], ends[i]);
+        }
+        for (int i = 0; i < 1000; i++) {
+            long start = (long) (random.nextDouble() * time);
+            long end = start + random.nextInt(5000);
+            long expected = 0;
+            for (int j = 0; j < nbPeriods; j++) {
+                expected += Math.max(0, Math.min(end, ends[j]) - Math.max(start, starts[j]));
+            }
+            assertEquals("[" + start + ',' + end + ']', expected, index.getRunningTime(start, end));
+        }
+    }
+
+    /**
+     * Test that the periods must be added in time order
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnorderedPeriods() {
+        RunningTimeIndex index = new RunningTimeIndex();
+        index.addPeriod(10, 20);
+        index.addPeriod(15, 30);
+    }
+
+}
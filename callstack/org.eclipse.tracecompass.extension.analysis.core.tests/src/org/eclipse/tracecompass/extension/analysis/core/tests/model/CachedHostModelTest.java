@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.analysis.core.tests.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.tracecompass.extension.internal.analysis.core.model.CachedHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.junit.Test;
+
+/**
+ * Test the {@link CachedHostModel} class
+ *
+ * @author Geneviève Bastien
+ */
+public class CachedHostModelTest {
+
+    /* A stub model that counts the queries it receives */
+    private static class CountingHostModel implements IHostModel {
+
+        private int fNbQueries = 0;
+
+        @Override
+        public int getThreadOnCpu(int cpu, long t) {
+            fNbQueries++;
+            // Thread 1 on CPU 0, otherwise unknown
+            return (cpu == 0 ? 1 : IHostModel.UNKNOWN_TID);
+        }
+
+        @Override
+        public long getCpuTime(int tid, long start, long end) {
+            fNbQueries++;
+            // Full duration for thread 1, otherwise unknown
+            return (tid == 1 ? end - start : IHostModel.TIME_UNKNOWN);
+        }
+
+        public int getNbQueries() {
+            return fNbQueries;
+        }
+
+    }
+
+    /**
+     * Test that the answers of the model are cached and counted as hits
+     */
+    @Test
+    public void testHitsAndMisses() {
+        CountingHostModel model = new CountingHostModel();
+        CachedHostModel cached = new CachedHostModel(model, 100);
+
+        assertEquals(10, cached.getCpuTime(1, 0, 10));
+        assertEquals(10, cached.getCpuTime(1, 0, 10));
+        assertEquals(1, cached.getThreadOnCpu(0, 5));
+        assertEquals(1, cached.getThreadOnCpu(0, 5));
+        assertEquals(2, model.getNbQueries());
+        assertEquals(2, cached.getHitCount());
+        assertEquals(2, cached.getMissCount());
+
+        // The unknown values are not cached
+        assertEquals(IHostModel.TIME_UNKNOWN, cached.getCpuTime(2, 0, 10));
+        assertEquals(IHostModel.TIME_UNKNOWN, cached.getCpuTime(2, 0, 10));
+        assertEquals(IHostModel.UNKNOWN_TID, cached.getThreadOnCpu(1, 5));
+        assertEquals(IHostModel.UNKNOWN_TID, cached.getThreadOnCpu(1, 5));
+        assertEquals(6, model.getNbQueries());
+        assertEquals(2, cached.getHitCount());
+        assertEquals(6, cached.getMissCount());
+
+        cached.clear();
+        assertEquals(10, cached.getCpuTime(1, 0, 10));
+        assertEquals(7, model.getNbQueries());
+        assertEquals(0, cached.getEvictionCount());
+    }
+
+    /**
+     * Test that the least recently used answers are evicted when the cache is
+     * full
+     */
+    @Test
+    public void testEviction() {
+        CountingHostModel model = new CountingHostModel();
+        // A single segment, so that the eviction order is predictable
+        CachedHostModel cached = new CachedHostModel(model, 1);
+
+        cached.getCpuTime(1, 0, 10);
+        cached.getCpuTime(1, 0, 10);
+        assertEquals(1, model.getNbQueries());
+        assertEquals(0, cached.getEvictionCount());
+
+        cached.getCpuTime(1, 0, 20);
+        assertEquals(1, cached.getEvictionCount());
+        cached.getCpuTime(1, 0, 10);
+        assertEquals(3, model.getNbQueries());
+        assertEquals(2, cached.getEvictionCount());
+        assertEquals(1, cached.getHitCount());
+        assertEquals(3, cached.getMissCount());
+    }
+
+    /**
+     * Test many more queries than the size of the cache, so that the entries
+     * are replaced many times in the tables of the segments
+     */
+    @Test
+    public void testManyEntries() {
+        CountingHostModel model = new CountingHostModel();
+        int size = 100;
+        int nbQueries = 5000;
+        CachedHostModel cached = new CachedHostModel(model, size);
+
+        for (int i = 0; i < nbQueries; i++) {
+            assertEquals(i, cached.getCpuTime(1, i, 2 * i));
+            assertEquals(1, cached.getThreadOnCpu(0, i));
+        }
+        assertEquals(size, cached.getNbEntries());
+        assertEquals(2 * nbQueries - size, cached.getEvictionCount());
+        assertEquals(2 * nbQueries, cached.getMissCount());
+
+        // The last queries are still in the cache, the first ones are not
+        assertEquals(nbQueries - 1, cached.getCpuTime(1, nbQueries - 1, 2 * (nbQueries - 1)));
+        assertEquals(1, cached.getThreadOnCpu(0, nbQueries - 1));
+        assertEquals(2, cached.getHitCount());
+        assertEquals(0, cached.getCpuTime(1, 0, 0));
+        assertEquals(1, cached.getThreadOnCpu(0, 0));
+        assertEquals(2, cached.getHitCount());
+
+        // All the answers are still right after the replacements
+        for (int i = 0; i < nbQueries; i++) {
+            assertEquals(i, cached.getCpuTime(1, i, 2 * i));
+        }
+        assertEquals(size, cached.getNbEntries());
+    }
+
+    /**
+     * Test that the periods of a bulk query are answered from the cache and
+     * that only the missing ones are sent to the model
+     */
+    @Test
+    public void testGetCpuTimes() {
+        CountingHostModel model = new CountingHostModel();
+        CachedHostModel cached = new CachedHostModel(model, 100);
+
+        cached.getCpuTime(1, 0, 10);
+        long[] cpuTimes = cached.getCpuTimes(1, new long[] { 0, 0, 5 }, new long[] { 10, 20, 10 });
+        assertArrayEquals(new long[] { 10, 20, 5 }, cpuTimes);
+        assertEquals(3, model.getNbQueries());
+        assertEquals(1, cached.getHitCount());
+
+        cpuTimes = cached.getCpuTimes(1, new long[] { 0, 0, 5 }, new long[] { 10, 20, 10 });
+        assertArrayEquals(new long[] { 10, 20, 5 }, cpuTimes);
+        assertEquals(3, model.getNbQueries());
+        assertEquals(4, cached.getHitCount());
+    }
+
+}
@@ -9,7 +9,9 @@
 
 package org.eclipse.tracecompass.extension.analysis.core.tests.model;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
@@ -38,6 +40,7 @@ public class CompositeHostModelTest {
 
     private static final @NonNull String HOST_ID = "test host";
     private static final @NonNull String HOST_ID2 = "test host 2";
+    private static final @NonNull String HOST_ID3 = "test host 3";
 
     /* A stub CPU time provider, no trace required */
     private static class CpuTimeProvider extends TestAnalysis implements ICpuTimeProvider {
@@ -77,14 +80,53 @@ public class CompositeHostModelTest {
 
     }
 
+    /* A stub CPU time provider that covers a time range of the host 3 */
+    private static class RangeCpuTimeProvider extends TestAnalysis implements ICpuTimeProvider {
+
+        private final long fStart;
+        private final long fEnd;
+        private final long fCpuTime;
+
+        public RangeCpuTimeProvider(long start, long end, long cpuTime) {
+            fStart = start;
+            fEnd = end;
+            fCpuTime = cpuTime;
+        }
+
+        @Override
+        public long getCpuTime(int tid, long start, long end) {
+            return fCpuTime;
+        }
+
+        @Override
+        public long getProviderStartTime() {
+            return fStart;
+        }
+
+        @Override
+        public long getProviderEndTime() {
+            return fEnd;
+        }
+
+        @Override
+        public @NonNull Collection<@NonNull String> getHostIds() {
+            return Collections.singleton(HOST_ID3);
+        }
+
+    }
+
     private IThreadOnCpuProvider fThreadOnCpu;
     private ICpuTimeProvider fCpuTime;
 
     /**
-     * Create an instance of each of the modules
+     * Acquire the models of the hosts with providers, as an opened trace
+     * would, and create an instance of each of the modules
      */
     @Before
     public void setupTest() {
+        ModelManager.acquireModel(HOST_ID);
+        ModelManager.acquireModel(HOST_ID3);
+
         ThreadOnCpuProvider threadOnCpu = new ThreadOnCpuProvider();
         TmfAnalysisManager.analysisModuleCreated(threadOnCpu);
         fThreadOnCpu = threadOnCpu;
@@ -95,10 +137,12 @@ public class CompositeHostModelTest {
     }
 
     /**
-     * Dispose of the modules
+     * Dispose of the modules and release the models
      */
     @After
     public void cleanup() {
+        ModelManager.releaseModel(HOST_ID);
+        ModelManager.releaseModel(HOST_ID3);
         IThreadOnCpuProvider threadOnCpu = fThreadOnCpu;
         if (threadOnCpu != null) {
             ((IAnalysisModule) threadOnCpu).dispose();
@@ -124,6 +168,50 @@ public class CompositeHostModelTest {
         assertEquals(0, cpuTime);
     }
 
+    /**
+     * Test getting the CPU times of many periods at once
+     */
+    @Test
+    public void testCpuTimes() {
+        IHostModel model = ModelManager.getModelFor(HOST_ID);
+        long[] starts = { 10, 30, 20 };
+        long[] ends = { 17, 40, 21 };
+
+        long[] cpuTimes = model.getCpuTimes(1, starts, ends);
+        assertArrayEquals(new long[] { 7, 10, 1 }, cpuTimes);
+        cpuTimes = model.getCpuTimes(2, starts, ends);
+        assertArrayEquals(new long[] { 0, 0, 0 }, cpuTimes);
+
+        model = ModelManager.getModelFor(HOST_ID2);
+        cpuTimes = model.getCpuTimes(1, starts, ends);
+        assertArrayEquals(new long[] { IHostModel.TIME_UNKNOWN, IHostModel.TIME_UNKNOWN, IHostModel.TIME_UNKNOWN }, cpuTimes);
+    }
+
+    /**
+     * Test that the queries are sent to the providers that cover the requested
+     * times
+     */
+    @Test
+    public void testProviderTimeRanges() {
+        RangeCpuTimeProvider first = new RangeCpuTimeProvider(0, 100, 1);
+        RangeCpuTimeProvider second = new RangeCpuTimeProvider(101, 200, 2);
+        TmfAnalysisManager.analysisModuleCreated(first);
+        TmfAnalysisManager.analysisModuleCreated(second);
+        try {
+            IHostModel model = ModelManager.getModelFor(HOST_ID3);
+            assertEquals(1, model.getCpuTime(1, 10, 20));
+            assertEquals(2, model.getCpuTime(1, 150, 160));
+            assertEquals(1, model.getCpuTime(1, 20, 30));
+            assertEquals(IHostModel.TIME_UNKNOWN, model.getCpuTime(1, 300, 400));
+
+            long[] cpuTimes = model.getCpuTimes(1, new long[] { 150, 10, 300 }, new long[] { 160, 20, 400 });
+            assertArrayEquals(new long[] { 2, 1, IHostModel.TIME_UNKNOWN }, cpuTimes);
+        } finally {
+            first.dispose();
+            second.dispose();
+        }
+    }
+
     /**
      * Test that the thread on CPU provider was picked up and returns the right
      * results
@@ -140,13 +228,24 @@ public class CompositeHostModelTest {
 
     }
 
+    /**
+     * Test the IDs of the CPU time providers of the models
+     */
+    @Test
+    public void testCpuTimeProviderIds() {
+        ICpuTimeProvider cpuTime = fCpuTime;
+        assertTrue(cpuTime instanceof IAnalysisModule);
+        assertEquals(Collections.singletonList(((IAnalysisModule) cpuTime).getId()), ModelManager.getModelFor(HOST_ID).getCpuTimeProviderIds());
+        assertEquals(Collections.emptyList(), ModelManager.getModelFor(HOST_ID2).getCpuTimeProviderIds());
+    }
+
     /**
      * Test the default values when no model exists for a host
      */
     @Test
     public void testNoModel() {
         IHostModel model = ModelManager.getModelFor(HOST_ID2);
-        assertTrue(model instanceof CompositeHostModel);
+        assertFalse(model instanceof CompositeHostModel);
         long cpuTime = model.getCpuTime(1, 12, 15);
         assertEquals(IHostModel.TIME_UNKNOWN, cpuTime);
         int threadOnCpu = model.getThreadOnCpu(1, 20);
@@ -10,11 +10,24 @@
 package org.eclipse.tracecompass.extension.analysis.core.tests.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.extension.internal.analysis.core.model.CachedHostModel;
+import org.eclipse.tracecompass.extension.internal.analysis.core.model.CompositeHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager.CacheStatistics;
+import org.eclipse.tracecompass.tmf.tests.stubs.analysis.TestAnalysis;
+import org.junit.After;
 import org.junit.Test;
 
 /**
@@ -24,6 +37,20 @@ import org.junit.Test;
  */
 public class ModelManagerTest {
 
+    private static final @NonNull String[] HOSTS = { "host1", "host2", "refHost", "memHost", "cacheHost" };
+
+    /**
+     * Release the models that are still acquired by the tests
+     */
+    @After
+    public void cleanup() {
+        for (String host : HOSTS) {
+            while (ModelManager.getMemoryUsage().containsKey(host)) {
+                ModelManager.releaseModel(host);
+            }
+        }
+    }
+
     /**
      * Test the retrieved model from a host
      */
@@ -32,12 +59,132 @@ public class ModelManagerTest {
         String host1 = "host1";
         String host2 = "host2";
 
-        IHostModel model1 = ModelManager.getModelFor(host1);
+        IHostModel model1 = ModelManager.acquireModel(host1);
         IHostModel model2 = ModelManager.getModelFor(host1);
-        IHostModel model3 = ModelManager.getModelFor(host2);
+        IHostModel model3 = ModelManager.acquireModel(host2);
 
         assertEquals(model1, model2);
         assertTrue(model1 == model2);
         assertNotEquals(model1, model3);
+
+        // The hosts that were not acquired share an empty model
+        String host3 = "host3";
+        IHostModel empty = ModelManager.getModelFor(host3);
+        assertTrue(empty == ModelManager.getModelFor("host4"));
+        assertFalse(empty instanceof CompositeHostModel);
+        assertEquals(IHostModel.TIME_UNKNOWN, empty.getCpuTime(1, 0, 10));
+        assertEquals(IHostModel.UNKNOWN_TID, empty.getThreadOnCpu(0, 5));
+        assertNull(ModelManager.getMemoryUsage().get(host3));
+    }
+
+    /* A stub CPU time provider that reports a fixed memory size */
+    private static class CpuTimeProvider extends TestAnalysis implements ICpuTimeProvider {
+
+        private final @NonNull String fHostId;
+
+        public CpuTimeProvider(@NonNull String hostId) {
+            fHostId = hostId;
+        }
+
+        @Override
+        public long getCpuTime(int tid, long start, long end) {
+            return end - start;
+        }
+
+        @Override
+        public long getMemorySize() {
+            return 100;
+        }
+
+        @Override
+        public @NonNull Collection<@NonNull String> getHostIds() {
+            return Collections.singleton(fHostId);
+        }
+
+    }
+
+    /**
+     * Test that the model of a host is kept until it is released by all the
+     * traces that acquired it
+     */
+    @Test
+    public void testReferenceCount() {
+        String host = "refHost";
+
+        IHostModel model = ModelManager.acquireModel(host);
+        assertTrue(model == ModelManager.acquireModel(host));
+        assertTrue(model instanceof CompositeHostModel);
+        CpuTimeProvider provider = new CpuTimeProvider(host);
+        ((CompositeHostModel) model).setCpuTimeProvider(provider);
+        assertEquals(10, model.getCpuTime(1, 0, 10));
+
+        // The model is still used by a trace
+        ModelManager.releaseModel(host);
+        assertTrue(model == ModelManager.getModelFor(host));
+
+        // The last trace is closed, the model is disposed but still returned
+        ModelManager.releaseModel(host);
+        assertEquals(IHostModel.TIME_UNKNOWN, model.getCpuTime(1, 0, 10));
+        assertTrue(model == ModelManager.getModelFor(host));
+        assertNull(ModelManager.getMemoryUsage().get(host));
+
+        // Releasing a model that was not acquired does nothing
+        ModelManager.releaseModel(host);
+        assertNull(ModelManager.getMemoryUsage().get(host));
+
+        // A trace opened again gets a new model
+        IHostModel newModel = ModelManager.acquireModel(host);
+        assertFalse(newModel == model);
+        assertTrue(newModel == ModelManager.getModelFor(host));
+        ModelManager.releaseModel(host);
+        provider.dispose();
+    }
+
+    /**
+     * Test the memory usage reported for the models
+     */
+    @Test
+    public void testMemoryUsage() {
+        String host = "memHost";
+
+        IHostModel model = ModelManager.acquireModel(host);
+        assertEquals(Long.valueOf(0), ModelManager.getMemoryUsage().get(host));
+        CpuTimeProvider provider = new CpuTimeProvider(host);
+        ((CompositeHostModel) model).setCpuTimeProvider(provider);
+        assertEquals(100, model.getMemorySize());
+        assertEquals(Long.valueOf(100), ModelManager.getMemoryUsage().get(host));
+        provider.dispose();
+    }
+
+    /**
+     * Test the statistics of the cache of a model
+     */
+    @Test
+    public void testCacheStatistics() {
+        String host = "cacheHost";
+
+        ModelManager.setCacheSize(10);
+        try {
+            IHostModel model = ModelManager.acquireModel(host);
+            assertTrue(model instanceof CachedHostModel);
+            CpuTimeProvider provider = new CpuTimeProvider(host);
+            ((CompositeHostModel) ((CachedHostModel) model).getModel()).setCpuTimeProvider(provider);
+            assertEquals(10, model.getCpuTime(1, 0, 10));
+            assertEquals(10, model.getCpuTime(1, 0, 10));
+
+            CacheStatistics statistics = ModelManager.getCacheStatistics(host);
+            assertNotNull(statistics);
+            assertEquals(10, statistics.getSize());
+            assertEquals(1, statistics.getNbEntries());
+            assertEquals(1, statistics.getHitCount());
+            assertEquals(1, statistics.getMissCount());
+            assertEquals(0, statistics.getEvictionCount());
+
+            ModelManager.releaseModel(host);
+            assertNull(ModelManager.getCacheStatistics(host));
+            provider.dispose();
+        } finally {
+            ModelManager.setCacheSize(ModelManager.NO_CACHE);
+        }
     }
 }
@@ -11,6 +11,8 @@ package org.eclipse.tracecompass.extension.internal.analysis.core;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.common.core.TraceCompassActivator;
+import org.eclipse.tracecompass.extension.internal.analysis.core.model.TraceModelListener;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalManager;
 
 /**
  * Plugin activator
@@ -22,6 +24,8 @@ public class Activator extends TraceCompassActivator {
     /** The plug-in ID */
     public static final @NonNull String PLUGIN_ID = "org.eclipse.tracecompass.extension.analysis.core"; //$NON-NLS-1$
 
+    private final TraceModelListener fTraceModelListener = new TraceModelListener();
+
     /**
      * The constructor
      */
@@ -40,10 +44,13 @@ public class Activator extends TraceCompassActivator {
 
     @Override
     protected void startActions() {
+        TmfSignalManager.register(fTraceModelListener);
+        fTraceModelListener.initialize();
     }
 
     @Override
     protected void stopActions() {
+        TmfSignalManager.deregister(fTraceModelListener);
     }
 
 }
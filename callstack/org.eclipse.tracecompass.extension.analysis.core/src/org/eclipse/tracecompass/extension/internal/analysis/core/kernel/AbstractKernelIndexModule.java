@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.kernel;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.os.linux.core.kernel.KernelAnalysisModule;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+
+/**
+ * Base class of the modules that read the state system of the kernel analysis
+ * once to build an in-memory index used to answer the queries of the host
+ * model.
+ *
+ * @author Geneviève Bastien
+ */
+public abstract class AbstractKernelIndexModule extends TmfAbstractAnalysisModule {
+
+    /* The time range is empty until the index is built */
+    private volatile long fStartTime = Long.MAX_VALUE;
+    private volatile long fEndTime = Long.MIN_VALUE;
+
+    /**
+     * Get the kernel analysis module of the trace
+     *
+     * @return The kernel analysis module, or <code>null</code> if the trace
+     *         has none
+     */
+    protected @Nullable KernelAnalysisModule getKernelModule() {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            return null;
+        }
+        return TmfTraceUtils.getAnalysisModuleOfClass(trace, KernelAnalysisModule.class, KernelAnalysisModule.ID);
+    }
+
+    @Override
+    protected Iterable<IAnalysisModule> getDependentAnalyses() {
+        KernelAnalysisModule module = getKernelModule();
+        if (module == null) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(module);
+    }
+
+    @Override
+    protected boolean executeAnalysis(IProgressMonitor monitor) {
+        KernelAnalysisModule module = getKernelModule();
+        if (module == null) {
+            return false;
+        }
+        module.schedule();
+        if (!module.waitForCompletion(monitor)) {
+            return false;
+        }
+        ITmfStateSystem ss = module.getStateSystem();
+        if (ss == null) {
+            return false;
+        }
+        try {
+            if (!buildIndex(ss, monitor)) {
+                return false;
+            }
+        } catch (StateSystemDisposedException e) {
+            return false;
+        }
+        fStartTime = ss.getStartTime();
+        fEndTime = ss.getCurrentEndTime();
+        return true;
+    }
+
+    /**
+     * Build the index of this module from the kernel state system. This is
+     * called once, when the kernel analysis is completed.
+     *
+     * @param ss
+     *            The state system of the kernel analysis
+     * @param monitor
+     *            A progress monitor
+     * @return Whether the index was built, <code>false</code> if the monitor
+     *         was cancelled
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed while reading it
+     */
+    protected abstract boolean buildIndex(ITmfStateSystem ss, IProgressMonitor monitor) throws StateSystemDisposedException;
+
+    /**
+     * Release the index of this module. This is called when the module is
+     * disposed, with its trace.
+     */
+    protected abstract void clearIndex();
+
+    /**
+     * Get the memory used by the index of this module
+     *
+     * @return The memory size in bytes
+     */
+    public abstract long getMemorySize();
+
+    /**
+     * Get the start of the time range covered by the index
+     *
+     * @return The start time of the kernel state system, or
+     *         {@link Long#MAX_VALUE} if the index is not built, so that no
+     *         query falls in the range of an index that is not built
+     */
+    public long getProviderStartTime() {
+        return fStartTime;
+    }
+
+    /**
+     * Get the end of the time range covered by the index
+     *
+     * @return The end time of the kernel state system, or
+     *         {@link Long#MIN_VALUE} if the index is not built
+     */
+    public long getProviderEndTime() {
+        return fEndTime;
+    }
+
+    /**
+     * Get the IDs of the hosts this module provides information for
+     *
+     * @return The host ID of the trace
+     */
+    public Collection<String> getHostIds() {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(trace.getHostId());
+    }
+
+    @Override
+    protected void canceling() {
+        // Nothing to do, the index is built in the analysis thread
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        fStartTime = Long.MAX_VALUE;
+        fEndTime = Long.MIN_VALUE;
+        clearIndex();
+    }
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.kernel;
+
+import java.util.Arrays;
+
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+
+/**
+ * Index of the threads scheduled on one CPU: the times at which the current
+ * thread changes and the ID of the thread from each of these times, kept in
+ * primitive arrays. The thread at a time is found with a binary search, but
+ * the last position found is tried first, as well as the following one, so
+ * that queries with increasing times, like those of the functions of a
+ * callstack, are answered in constant time.
+ *
+ * The switches must be added in time order. Once the index is built, it can
+ * be read from many threads.
+ *
+ * @author Geneviève Bastien
+ */
+public final class CpuScheduleIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The largest number of switches the arrays of an index can hold */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** The number of bytes used by each switch of the index */
+    public static final int BYTES_PER_SWITCH = Long.BYTES + Integer.BYTES;
+
+    private final int fMaxCapacity;
+    private long[] fTimes;
+    private int[] fTids;
+    private int fSize = 0;
+    private long fEnd = Long.MIN_VALUE;
+
+    /* The position of the last query, the race between readers is harmless */
+    private int fLastPosition = 0;
+
+    /**
+     * Constructor, the arrays grow as the switches are added
+     */
+    public CpuScheduleIndex() {
+        this(MAX_CAPACITY);
+    }
+
+    /**
+     * Constructor with a maximum number of switches. The arrays grow as the
+     * switches are added, but never beyond this capacity.
+     *
+     * @param maxCapacity
+     *            The maximum capacity of the index, in number of switches
+     */
+    public CpuScheduleIndex(int maxCapacity) {
+        if (maxCapacity < 0 || maxCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid maximum capacity: " + maxCapacity); //$NON-NLS-1$
+        }
+        fMaxCapacity = maxCapacity;
+        int capacity = Math.min(INITIAL_CAPACITY, maxCapacity);
+        fTimes = new long[capacity];
+        fTids = new int[capacity];
+    }
+
+    /**
+     * Add a thread switch following the switches already in the index
+     *
+     * @param time
+     *            The time from which the thread is running on the CPU
+     * @param tid
+     *            The ID of the thread, or {@link IHostModel#UNKNOWN_TID} if
+     *            it is not known
+     * @throws IllegalStateException
+     *             If the index already has its maximum number of switches
+     */
+    public void addSwitch(long time, int tid) {
+        int size = fSize;
+        if (size > 0) {
+            if (time < fTimes[size - 1]) {
+                throw new IllegalArgumentException("The switches should be added in time order: " + time + " < " + fTimes[size - 1]); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (fTids[size - 1] == tid) {
+                // Same thread, the switch is not needed
+                return;
+            }
+        }
+        if (size == fTimes.length) {
+            if (size == fMaxCapacity) {
+                throw new IllegalStateException("The index is full: " + size); //$NON-NLS-1$
+            }
+            int capacity = (int) Math.min(fMaxCapacity, Math.max(INITIAL_CAPACITY, size * 2L));
+            fTimes = Arrays.copyOf(fTimes, capacity);
+            fTids = Arrays.copyOf(fTids, capacity);
+        }
+        fTimes[size] = time;
+        fTids[size] = tid;
+        fSize = size + 1;
+    }
+
+    /**
+     * Set the end of the time range covered by this index. The thread of the
+     * last switch is on the CPU until this time, the queries after it are not
+     * answered by the index.
+     *
+     * @param end
+     *            The end time of the index, inclusive
+     */
+    public void setEnd(long end) {
+        fEnd = end;
+    }
+
+    /**
+     * Get the end of the time range covered by this index
+     *
+     * @return The end time of the index
+     */
+    public long getEnd() {
+        return fEnd;
+    }
+
+    /**
+     * Release the unused capacity of the arrays, once all the switches are
+     * added
+     */
+    public void trimToSize() {
+        fTimes = Arrays.copyOf(fTimes, fSize);
+        fTids = Arrays.copyOf(fTids, fSize);
+    }
+
+    /**
+     * Get the thread running on the CPU at a time
+     *
+     * @param time
+     *            The time
+     * @return The ID of the thread, or {@link IHostModel#UNKNOWN_TID} if the
+     *         time is not covered by the index
+     */
+    public int getThreadAt(long time) {
+        int size = fSize;
+        if (size == 0 || time < fTimes[0] || time > fEnd) {
+            return IHostModel.UNKNOWN_TID;
+        }
+        int position = fLastPosition;
+        if (!contains(position, time)) {
+            if (contains(position + 1, time)) {
+                position++;
+            } else {
+                position = Arrays.binarySearch(fTimes, 0, size, time);
+                // The last switch at or before the time
+                position = (position >= 0 ? position : -position - 2);
+            }
+            fLastPosition = position;
+        }
+        return fTids[position];
+    }
+
+    /**
+     * Get whether the thread of a switch is the one running at a time
+     */
+    private boolean contains(int position, long time) {
+        if (position >= fSize || fTimes[position] > time) {
+            return false;
+        }
+        return position + 1 == fSize || time < fTimes[position + 1];
+    }
+
+    /**
+     * Get the number of switches in this index
+     *
+     * @return The number of switches
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get the memory used by the arrays of this index
+     *
+     * @return The memory size in bytes
+     */
+    public long getMemorySize() {
+        return (long) fTimes.length * BYTES_PER_SWITCH;
+    }
+
+}
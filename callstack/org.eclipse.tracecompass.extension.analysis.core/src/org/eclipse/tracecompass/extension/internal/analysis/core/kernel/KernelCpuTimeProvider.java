@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.kernel;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.os.linux.core.kernel.StateValues;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * CPU time provider for the host of a kernel trace. It reads the status of
+ * the threads in the state system of the kernel analysis once, and keeps for
+ * each thread the index of its running periods, so that the CPU time of a
+ * thread during any time range is computed without querying the state system.
+ *
+ * @author Geneviève Bastien
+ */
+public class KernelCpuTimeProvider extends AbstractKernelIndexModule implements ICpuTimeProvider {
+
+    /**
+     * ID of this analysis module
+     */
+    public static final String ID = "org.eclipse.tracecompass.extension.analysis.core.kernel.cputime"; //$NON-NLS-1$
+
+    /* The attribute of the threads in the kernel state system */
+    private static final String THREADS = "Threads"; //$NON-NLS-1$
+
+    private volatile Map<Integer, RunningTimeIndex> fIndexes = Collections.emptyMap();
+
+    @Override
+    protected boolean buildIndex(ITmfStateSystem ss, IProgressMonitor monitor) throws StateSystemDisposedException {
+        Map<Integer, RunningTimeIndex> indexes = new HashMap<>();
+        int threadsQuark = ss.optQuarkAbsolute(THREADS);
+        if (threadsQuark != ITmfStateSystem.INVALID_ATTRIBUTE) {
+            for (int threadQuark : ss.getSubAttributes(threadsQuark, false)) {
+                if (monitor.isCanceled()) {
+                    return false;
+                }
+                Integer tid = getThreadId(ss.getAttributeName(threadQuark));
+                if (tid != null) {
+                    indexes.put(tid, buildThreadIndex(ss, threadQuark));
+                }
+            }
+        }
+        fIndexes = indexes;
+        return true;
+    }
+
+    /**
+     * Get the thread ID of a thread attribute. The idle threads are per CPU,
+     * named "0_[cpu]", their running times overlap so they are not indexed.
+     */
+    private static @Nullable Integer getThreadId(String attributeName) {
+        try {
+            return Integer.parseInt(attributeName);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void clearIndex() {
+        fIndexes = Collections.emptyMap();
+    }
+
+    @Override
+    public long getMemorySize() {
+        long size = 0;
+        for (RunningTimeIndex index : fIndexes.values()) {
+            size += index.getMemorySize();
+        }
+        return size;
+    }
+
+    private static RunningTimeIndex buildThreadIndex(ITmfStateSystem ss, int threadQuark) throws StateSystemDisposedException {
+        RunningTimeIndex index = new RunningTimeIndex();
+        long end = ss.getCurrentEndTime();
+        long time = ss.getStartTime();
+        while (time <= end) {
+            ITmfStateInterval interval = ss.querySingleState(time, threadQuark);
+            if (isRunning(interval.getStateValue())) {
+                index.addPeriod(interval.getStartTime(), interval.getEndTime() + 1);
+            }
+            time = interval.getEndTime() + 1;
+        }
+        index.trimToSize();
+        return index;
+    }
+
+    private static boolean isRunning(ITmfStateValue value) {
+        if (value.getType() != ITmfStateValue.Type.INTEGER) {
+            return false;
+        }
+        int status = value.unboxInt();
+        return status == StateValues.PROCESS_STATUS_RUN_USERMODE || status == StateValues.PROCESS_STATUS_RUN_SYSCALL;
+    }
+
+    @Override
+    public long getCpuTime(int tid, long start, long end) {
+        RunningTimeIndex index = fIndexes.get(tid);
+        if (index == null) {
+            return IHostModel.TIME_UNKNOWN;
+        }
+        return index.getRunningTime(start, end);
+    }
+
+    @Override
+    public long[] getCpuTimes(int tid, long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of starts and ends should be the same"); //$NON-NLS-1$
+        }
+        long[] cpuTimes = new long[starts.length];
+        RunningTimeIndex index = fIndexes.get(tid);
+        for (int i = 0; i < starts.length; i++) {
+            cpuTimes[i] = (index == null ? IHostModel.TIME_UNKNOWN : index.getRunningTime(starts[i], ends[i]));
+        }
+        return cpuTimes;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.kernel;
+
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.os.linux.core.kernel.KernelAnalysisModule;
+import org.eclipse.tracecompass.analysis.os.linux.core.kernel.KernelThreadInformationProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.IThreadOnCpuProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * Thread on CPU provider for the host of a kernel trace. It reads the current
+ * thread of each CPU in the state system of the kernel analysis once, and
+ * keeps a {@link CpuScheduleIndex} per CPU, so that the thread on a CPU is
+ * found without querying the state system.
+ *
+ * The memory used by the indexes can be bounded by a budget. The switches
+ * after the budget is reached are not indexed and the queries after the end
+ * of an index are sent to the kernel analysis.
+ *
+ * @author Geneviève Bastien
+ */
+public class KernelThreadOnCpuProvider extends AbstractKernelIndexModule implements IThreadOnCpuProvider {
+
+    /**
+     * ID of this analysis module
+     */
+    public static final String ID = "org.eclipse.tracecompass.extension.analysis.core.kernel.threadoncpu"; //$NON-NLS-1$
+
+    /** Value of the memory budget to index all the switches */
+    public static final long NO_MEMORY_BUDGET = Long.MAX_VALUE;
+
+    /* The attributes of the CPUs in the kernel state system */
+    private static final String CPUS = "CPUs"; //$NON-NLS-1$
+    private static final String CURRENT_THREAD = "Current_thread"; //$NON-NLS-1$
+
+    private long fMemoryBudget = NO_MEMORY_BUDGET;
+    private volatile @Nullable CpuScheduleIndex[] fIndexes = new CpuScheduleIndex[0];
+    private volatile @Nullable KernelAnalysisModule fKernelModule = null;
+
+    /**
+     * Set the maximum number of bytes used by the indexes of all the CPUs.
+     * This must be set before the analysis is executed.
+     *
+     * @param budget
+     *            The memory budget in bytes, or {@link #NO_MEMORY_BUDGET} to
+     *            index all the switches
+     */
+    public void setMemoryBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("The memory budget should not be negative: " + budget); //$NON-NLS-1$
+        }
+        fMemoryBudget = budget;
+    }
+
+    @Override
+    protected boolean buildIndex(ITmfStateSystem ss, IProgressMonitor monitor) throws StateSystemDisposedException {
+        fKernelModule = getKernelModule();
+        int cpusQuark = ss.optQuarkAbsolute(CPUS);
+        if (cpusQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return true;
+        }
+        List<Integer> cpuQuarks = ss.getSubAttributes(cpusQuark, false);
+        if (cpuQuarks.isEmpty()) {
+            return true;
+        }
+        // Share the budget between the CPUs
+        long maxSwitches = fMemoryBudget / CpuScheduleIndex.BYTES_PER_SWITCH / cpuQuarks.size();
+        int maxCpu = -1;
+        @Nullable CpuScheduleIndex[] indexes = new CpuScheduleIndex[0];
+        for (int cpuQuark : cpuQuarks) {
+            if (monitor.isCanceled()) {
+                return false;
+            }
+            int cpu;
+            try {
+                cpu = Integer.parseInt(ss.getAttributeName(cpuQuark));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            int threadQuark = ss.optQuarkRelative(cpuQuark, CURRENT_THREAD);
+            if (cpu < 0 || threadQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+                continue;
+            }
+            if (cpu > maxCpu) {
+                maxCpu = cpu;
+                @Nullable CpuScheduleIndex[] newIndexes = new CpuScheduleIndex[cpu + 1];
+                System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+                indexes = newIndexes;
+            }
+            indexes[cpu] = buildCpuIndex(ss, threadQuark, maxSwitches);
+        }
+        fIndexes = indexes;
+        return true;
+    }
+
+    @Override
+    protected void clearIndex() {
+        fIndexes = new CpuScheduleIndex[0];
+        fKernelModule = null;
+    }
+
+    @Override
+    public long getMemorySize() {
+        long size = 0;
+        for (CpuScheduleIndex index : fIndexes) {
+            if (index != null) {
+                size += index.getMemorySize();
+            }
+        }
+        return size;
+    }
+
+    private CpuScheduleIndex buildCpuIndex(ITmfStateSystem ss, int threadQuark, long maxSwitches) throws StateSystemDisposedException {
+        // The arrays grow up to the share of the budget and are trimmed at the end
+        int capacity = (int) Math.min(maxSwitches, CpuScheduleIndex.MAX_CAPACITY);
+        CpuScheduleIndex index = new CpuScheduleIndex(capacity);
+        long end = ss.getCurrentEndTime();
+        long time = ss.getStartTime();
+        while (time <= end && index.size() < capacity) {
+            ITmfStateInterval interval = ss.querySingleState(time, threadQuark);
+            ITmfStateValue value = interval.getStateValue();
+            index.addSwitch(interval.getStartTime(), value.getType() == ITmfStateValue.Type.INTEGER ? value.unboxInt() : IHostModel.UNKNOWN_TID);
+            time = interval.getEndTime() + 1;
+        }
+        // The index ends before the first interval that was not read
+        index.setEnd(time - 1);
+        index.trimToSize();
+        return index;
+    }
+
+    @Override
+    public @Nullable Integer getThreadOnCpuAtTime(int cpu, long time) {
+        @Nullable CpuScheduleIndex[] indexes = fIndexes;
+        CpuScheduleIndex index = (cpu >= 0 && cpu < indexes.length ? indexes[cpu] : null);
+        if (index != null && time <= index.getEnd()) {
+            int tid = index.getThreadAt(time);
+            return (tid == IHostModel.UNKNOWN_TID ? null : tid);
+        }
+        // The time was not indexed because of the memory budget
+        KernelAnalysisModule module = fKernelModule;
+        if (module == null || time > getProviderEndTime()) {
+            return null;
+        }
+        return KernelThreadInformationProvider.getThreadOnCpu(module, cpu, time);
+    }
+
+}
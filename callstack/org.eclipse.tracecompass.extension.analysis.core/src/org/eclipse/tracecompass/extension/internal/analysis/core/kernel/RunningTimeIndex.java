@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.kernel;
+
+import java.util.Arrays;
+
+/**
+ * Index of the periods during which a thread was running, with the total
+ * running time before each period. The running time of the thread during any
+ * time range is then computed with two binary searches. The periods are kept
+ * in primitive arrays.
+ *
+ * The periods must be added in time order. Once the index is built, it can be
+ * read from many threads.
+ *
+ * @author Geneviève Bastien
+ */
+public final class RunningTimeIndex {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The number of bytes used by each period of the index */
+    public static final int BYTES_PER_PERIOD = 3 * Long.BYTES;
+
+    private long[] fStarts = new long[INITIAL_CAPACITY];
+    private long[] fEnds = new long[INITIAL_CAPACITY];
+    /* The total running time before each period */
+    private long[] fCumulative = new long[INITIAL_CAPACITY];
+    private int fSize = 0;
+
+    /**
+     * Add a running period following the periods already in the index
+     *
+     * @param start
+     *            The start of the period, inclusive
+     * @param end
+     *            The end of the period, exclusive
+     */
+    public void addPeriod(long start, long end) {
+        if (end < start) {
+            throw new IllegalArgumentException("The end should be after the start: [" + start + ',' + end + ']'); //$NON-NLS-1$
+        }
+        int size = fSize;
+        if (size > 0) {
+            long lastEnd = fEnds[size - 1];
+            if (start < lastEnd) {
+                throw new IllegalArgumentException("The periods should be added in time order: " + start + " < " + lastEnd); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (start == lastEnd) {
+                // Contiguous periods, like user mode followed by a system call
+                fEnds[size - 1] = end;
+                return;
+            }
+        }
+        if (size == fStarts.length) {
+            int capacity = size * 2;
+            fStarts = Arrays.copyOf(fStarts, capacity);
+            fEnds = Arrays.copyOf(fEnds, capacity);
+            fCumulative = Arrays.copyOf(fCumulative, capacity);
+        }
+        fStarts[size] = start;
+        fEnds[size] = end;
+        fCumulative[size] = (size == 0 ? 0 : fCumulative[size - 1] + fEnds[size - 1] - fStarts[size - 1]);
+        fSize = size + 1;
+    }
+
+    /**
+     * Release the unused capacity of the arrays, once all the periods are
+     * added
+     */
+    public void trimToSize() {
+        fStarts = Arrays.copyOf(fStarts, fSize);
+        fEnds = Arrays.copyOf(fEnds, fSize);
+        fCumulative = Arrays.copyOf(fCumulative, fSize);
+    }
+
+    /**
+     * Get the total time the thread was running before a time
+     *
+     * @param time
+     *            The time
+     * @return The running time before the time
+     */
+    public long getRunningTime(long time) {
+        int index = Arrays.binarySearch(fStarts, 0, fSize, time);
+        // The last period starting at or before the time
+        index = (index >= 0 ? index : -index - 2);
+        if (index < 0) {
+            return 0;
+        }
+        return fCumulative[index] + Math.min(time, fEnds[index]) - fStarts[index];
+    }
+
+    /**
+     * Get the time the thread was running during a time range
+     *
+     * @param start
+     *            The start of the time range
+     * @param end
+     *            The end of the time range
+     * @return The running time during the range
+     */
+    public long getRunningTime(long start, long end) {
+        return Math.max(0, getRunningTime(end) - getRunningTime(start));
+    }
+
+    /**
+     * Get the number of running periods in this index
+     *
+     * @return The number of periods
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get the memory used by the arrays of this index
+     *
+     * @return The memory size in bytes
+     */
+    public long getMemorySize() {
+        return (long) fStarts.length * BYTES_PER_PERIOD;
+    }
+
+}
@@ -0,0 +1,481 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+
+/**
+ * Host model that keeps the answers of another model in a bounded cache, for
+ * the users that ask the same questions many times, like the views refreshing
+ * the CPU times of the functions of a callstack.
+ *
+ * The cache is divided in segments, each one a small LRU map locked
+ * independently, so that queries from many threads rarely wait on each other.
+ * The segments keep the queries and answers in primitive arrays, so that a
+ * lookup does not allocate any object. The unknown values are not kept, as a
+ * provider that can answer them may be added to the model later.
+ *
+ * @author Geneviève Bastien
+ */
+public class CachedHostModel implements IHostModel {
+
+    private static final int NB_SEGMENTS = 16;
+
+    /**
+     * A segment of the cache, an open addressing hash table of the queries
+     * whose entries are linked from the most to the least recently used. When
+     * the segment is full, the least recently used entry is replaced. The
+     * thread on CPU queries use the CPU as ID and the time as both start and
+     * end.
+     *
+     * This class is not thread-safe, the segment is locked by the model.
+     */
+    private static final class Segment {
+
+        private static final int INITIAL_CAPACITY = 16;
+        private static final int NONE = -1;
+
+        /* The memory used by an entry, with the 2 slots of the table */
+        private static final int BYTES_PER_ENTRY = 1 + 4 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+
+        private final int fCapacity;
+        private int fSize = 0;
+
+        /* The entries, in arrays indexed by the entry number */
+        private boolean[] fIsCpuTime;
+        private int[] fIds;
+        private long[] fStarts;
+        private long[] fEnds;
+        private long[] fValues;
+        private int[] fHashes;
+
+        /* The entries from the most to the least recently used */
+        private int[] fPrevious;
+        private int[] fNext;
+        private int fHead = NONE;
+        private int fTail = NONE;
+
+        /* The entry numbers plus one, 0 is a free slot */
+        private int[] fTable;
+
+        public Segment(int capacity) {
+            fCapacity = capacity;
+            int length = Math.min(capacity, INITIAL_CAPACITY);
+            fIsCpuTime = new boolean[length];
+            fIds = new int[length];
+            fStarts = new long[length];
+            fEnds = new long[length];
+            fValues = new long[length];
+            fHashes = new int[length];
+            fPrevious = new int[length];
+            fNext = new int[length];
+            fTable = new int[tableLength(length)];
+        }
+
+        /**
+         * Get the answer of a query and make it the most recently used
+         *
+         * @return The answer, or the missing value if it is not cached
+         */
+        public long get(int hash, boolean isCpuTime, int id, long start, long end, long missing) {
+            int entry = find(hash, isCpuTime, id, start, end);
+            if (entry == NONE) {
+                return missing;
+            }
+            moveToHead(entry);
+            return fValues[entry];
+        }
+
+        /**
+         * Set the answer of a query and make it the most recently used
+         *
+         * @return Whether the least recently used entry was evicted
+         */
+        public boolean put(int hash, boolean isCpuTime, int id, long start, long end, long value) {
+            int entry = find(hash, isCpuTime, id, start, end);
+            if (entry != NONE) {
+                fValues[entry] = value;
+                moveToHead(entry);
+                return false;
+            }
+            boolean evicted = false;
+            if (fSize < fCapacity) {
+                if (fSize == fIds.length) {
+                    grow();
+                }
+                entry = fSize++;
+            } else {
+                // Reuse the least recently used entry
+                entry = fTail;
+                unlink(entry);
+                removeFromTable(entry);
+                evicted = true;
+            }
+            fIsCpuTime[entry] = isCpuTime;
+            fIds[entry] = id;
+            fStarts[entry] = start;
+            fEnds[entry] = end;
+            fValues[entry] = value;
+            fHashes[entry] = hash;
+            insertInTable(entry);
+            linkHead(entry);
+            return evicted;
+        }
+
+        public void clear() {
+            fSize = 0;
+            fHead = NONE;
+            fTail = NONE;
+            Arrays.fill(fTable, 0);
+        }
+
+        public int size() {
+            return fSize;
+        }
+
+        public long getMemorySize() {
+            return (long) fIds.length * BYTES_PER_ENTRY;
+        }
+
+        private int find(int hash, boolean isCpuTime, int id, long start, long end) {
+            int mask = fTable.length - 1;
+            for (int pos = hash & mask; fTable[pos] != 0; pos = (pos + 1) & mask) {
+                int entry = fTable[pos] - 1;
+                if (fHashes[entry] == hash && fStarts[entry] == start && fEnds[entry] == end && fIds[entry] == id && fIsCpuTime[entry] == isCpuTime) {
+                    return entry;
+                }
+            }
+            return NONE;
+        }
+
+        private void insertInTable(int entry) {
+            int mask = fTable.length - 1;
+            int pos = fHashes[entry] & mask;
+            while (fTable[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            fTable[pos] = entry + 1;
+        }
+
+        private void removeFromTable(int entry) {
+            int mask = fTable.length - 1;
+            int pos = fHashes[entry] & mask;
+            while (fTable[pos] != entry + 1) {
+                pos = (pos + 1) & mask;
+            }
+            // Shift back the following slots that would not be found anymore
+            int next = pos;
+            while (true) {
+                next = (next + 1) & mask;
+                if (fTable[next] == 0) {
+                    break;
+                }
+                int home = fHashes[fTable[next] - 1] & mask;
+                boolean inRange = (pos <= next ? (pos < home && home <= next) : (pos < home || home <= next));
+                if (!inRange) {
+                    fTable[pos] = fTable[next];
+                    pos = next;
+                }
+            }
+            fTable[pos] = 0;
+        }
+
+        private void grow() {
+            int length = Math.min(fCapacity, fIds.length * 2);
+            fIsCpuTime = Arrays.copyOf(fIsCpuTime, length);
+            fIds = Arrays.copyOf(fIds, length);
+            fStarts = Arrays.copyOf(fStarts, length);
+            fEnds = Arrays.copyOf(fEnds, length);
+            fValues = Arrays.copyOf(fValues, length);
+            fHashes = Arrays.copyOf(fHashes, length);
+            fPrevious = Arrays.copyOf(fPrevious, length);
+            fNext = Arrays.copyOf(fNext, length);
+            fTable = new int[tableLength(length)];
+            for (int entry = 0; entry < fSize; entry++) {
+                insertInTable(entry);
+            }
+        }
+
+        private void linkHead(int entry) {
+            fPrevious[entry] = NONE;
+            fNext[entry] = fHead;
+            if (fHead != NONE) {
+                fPrevious[fHead] = entry;
+            }
+            fHead = entry;
+            if (fTail == NONE) {
+                fTail = entry;
+            }
+        }
+
+        private void unlink(int entry) {
+            int previous = fPrevious[entry];
+            int next = fNext[entry];
+            if (previous == NONE) {
+                fHead = next;
+            } else {
+                fNext[previous] = next;
+            }
+            if (next == NONE) {
+                fTail = previous;
+            } else {
+                fPrevious[next] = previous;
+            }
+        }
+
+        private void moveToHead(int entry) {
+            if (entry != fHead) {
+                unlink(entry);
+                linkHead(entry);
+            }
+        }
+
+        /* The power of 2 that keeps the table at most half full */
+        private static int tableLength(int nbEntries) {
+            return Integer.highestOneBit(Math.max(1, nbEntries) * 2 - 1) * 2;
+        }
+    }
+
+    private final IHostModel fModel;
+    private final int fSize;
+    private final Segment[] fSegments;
+
+    private final LongAdder fHits = new LongAdder();
+    private final LongAdder fMisses = new LongAdder();
+    private final LongAdder fEvictions = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param model
+     *            The model whose answers are cached
+     * @param size
+     *            The maximum number of answers kept in the cache
+     */
+    public CachedHostModel(IHostModel model, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The size of the cache should be positive: " + size); //$NON-NLS-1$
+        }
+        fModel = model;
+        fSize = size;
+        int nbSegments = Math.min(NB_SEGMENTS, size);
+        fSegments = new Segment[nbSegments];
+        for (int i = 0; i < nbSegments; i++) {
+            // Share the size between the segments, the first ones get the rest
+            fSegments[i] = new Segment(size / nbSegments + (i < size % nbSegments ? 1 : 0));
+        }
+    }
+
+    /**
+     * Get the model whose answers are cached
+     *
+     * @return The model
+     */
+    public IHostModel getModel() {
+        return fModel;
+    }
+
+    /**
+     * Get the maximum number of answers kept in the cache
+     *
+     * @return The size of the cache
+     */
+    public int getSize() {
+        return fSize;
+    }
+
+    @Override
+    public int getThreadOnCpu(int cpu, long t) {
+        long hash = hash(false, cpu, t, t);
+        long cached = get(hash, false, cpu, t, t, IHostModel.UNKNOWN_TID);
+        if (cached != IHostModel.UNKNOWN_TID) {
+            return (int) cached;
+        }
+        int tid = fModel.getThreadOnCpu(cpu, t);
+        if (tid != IHostModel.UNKNOWN_TID) {
+            put(hash, false, cpu, t, t, tid);
+        }
+        return tid;
+    }
+
+    @Override
+    public long getCpuTime(int tid, long start, long end) {
+        long hash = hash(true, tid, start, end);
+        long cached = get(hash, true, tid, start, end, IHostModel.TIME_UNKNOWN);
+        if (cached != IHostModel.TIME_UNKNOWN) {
+            return cached;
+        }
+        long cpuTime = fModel.getCpuTime(tid, start, end);
+        if (cpuTime != IHostModel.TIME_UNKNOWN) {
+            put(hash, true, tid, start, end, cpuTime);
+        }
+        return cpuTime;
+    }
+
+    @Override
+    public long[] getCpuTimes(int tid, long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of starts and ends should be the same"); //$NON-NLS-1$
+        }
+        long[] cpuTimes = new long[starts.length];
+        // Indexes of the periods that are not in the cache
+        int[] missing = new int[starts.length];
+        int nbMissing = 0;
+        for (int i = 0; i < starts.length; i++) {
+            long cached = get(hash(true, tid, starts[i], ends[i]), true, tid, starts[i], ends[i], IHostModel.TIME_UNKNOWN);
+            if (cached != IHostModel.TIME_UNKNOWN) {
+                cpuTimes[i] = cached;
+            } else {
+                missing[nbMissing++] = i;
+            }
+        }
+        if (nbMissing == 0) {
+            return cpuTimes;
+        }
+        // Ask the model for all the missing periods at once
+        long[] missingStarts = new long[nbMissing];
+        long[] missingEnds = new long[nbMissing];
+        for (int i = 0; i < nbMissing; i++) {
+            missingStarts[i] = starts[missing[i]];
+            missingEnds[i] = ends[missing[i]];
+        }
+        long[] missingTimes = fModel.getCpuTimes(tid, missingStarts, missingEnds);
+        for (int i = 0; i < nbMissing; i++) {
+            cpuTimes[missing[i]] = missingTimes[i];
+            if (missingTimes[i] != IHostModel.TIME_UNKNOWN) {
+                put(hash(true, tid, missingStarts[i], missingEnds[i]), true, tid, missingStarts[i], missingEnds[i], missingTimes[i]);
+            }
+        }
+        return cpuTimes;
+    }
+
+    /**
+     * Hash a query. The high bits choose the segment and the low bits the
+     * slot in the table of the segment.
+     */
+    private static long hash(boolean isCpuTime, int id, long start, long end) {
+        long h = start * 0x9E3779B97F4A7C15L;
+        h = (h ^ Long.rotateLeft(end * 0xC2B2AE3D27D4EB4FL, 31)) * 0x165667B19E3779F9L;
+        h ^= ((long) id << 1 | (isCpuTime ? 1 : 0)) * 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 29);
+    }
+
+    private Segment getSegment(long hash) {
+        return fSegments[((int) (hash >>> 32) & Integer.MAX_VALUE) % fSegments.length];
+    }
+
+    private long get(long hash, boolean isCpuTime, int id, long start, long end, long missing) {
+        Segment segment = getSegment(hash);
+        long value;
+        synchronized (segment) {
+            value = segment.get((int) hash, isCpuTime, id, start, end, missing);
+        }
+        if (value == missing) {
+            fMisses.increment();
+        } else {
+            fHits.increment();
+        }
+        return value;
+    }
+
+    private void put(long hash, boolean isCpuTime, int id, long start, long end, long value) {
+        Segment segment = getSegment(hash);
+        boolean evicted;
+        synchronized (segment) {
+            evicted = segment.put((int) hash, isCpuTime, id, start, end, value);
+        }
+        if (evicted) {
+            fEvictions.increment();
+        }
+    }
+
+    /**
+     * Remove all the answers from the cache. The counters are not reset.
+     */
+    public void clear() {
+        for (Segment segment : fSegments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of answers currently in the cache
+     *
+     * @return The number of cached answers
+     */
+    public int getNbEntries() {
+        int nbEntries = 0;
+        for (Segment segment : fSegments) {
+            synchronized (segment) {
+                nbEntries += segment.size();
+            }
+        }
+        return nbEntries;
+    }
+
+    @Override
+    public List<String> getCpuTimeProviderIds() {
+        return fModel.getCpuTimeProviderIds();
+    }
+
+    @Override
+    public long getMemorySize() {
+        long size = fModel.getMemorySize();
+        for (Segment segment : fSegments) {
+            synchronized (segment) {
+                size += segment.getMemorySize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+        fModel.dispose();
+    }
+
+    /**
+     * Get the number of queries that were answered by the cache
+     *
+     * @return The number of cache hits
+     */
+    public long getHitCount() {
+        return fHits.sum();
+    }
+
+    /**
+     * Get the number of queries that were sent to the model
+     *
+     * @return The number of cache misses
+     */
+    public long getMissCount() {
+        return fMisses.sum();
+    }
+
+    /**
+     * Get the number of answers that were removed from the cache to make room
+     * for new ones
+     *
+     * @return The number of evictions
+     */
+    public long getEvictionCount() {
+        return fEvictions.sum();
+    }
+
+}
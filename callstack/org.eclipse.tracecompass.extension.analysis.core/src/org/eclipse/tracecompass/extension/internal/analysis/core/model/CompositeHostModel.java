@@ -9,51 +9,200 @@
 
 package org.eclipse.tracecompass.extension.internal.analysis.core.model;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.IThreadOnCpuProvider;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 
 /**
  * Operating system model based on analyses who implement certain interfaces to
  * provider the necessary information. The analyses will need to implement one
  * of the interfaces found in package
  * {@link org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts} and the analysis
- * module should be automatically picked up at creation time.
+ * module should be automatically picked up at creation time. The providers
+ * that are analyses are not executed by the model, the analyses using it
+ * should depend on them and wait for their completion.
+ *
+ * The providers are kept in copy-on-write lists, so the queries can be done
+ * from many threads without locking. Each query is sent only to the providers
+ * whose time range covers the requested time, starting with the provider that
+ * answered the last query.
  *
  * @author Geneviève Bastien
  */
 public class CompositeHostModel implements IHostModel {
 
-    private Set<ICpuTimeProvider> fCpuTimeProviders = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<ICpuTimeProvider, Boolean>()));
-    private Set<IThreadOnCpuProvider> fThreadOnCpuProviders = NonNullUtils.checkNotNull(Collections.newSetFromMap(new WeakHashMap<IThreadOnCpuProvider, Boolean>()));
+    /**
+     * A provider of this model. Only a weak reference is kept, so that the
+     * model does not keep the analyses of closed traces.
+     */
+    private static final class ProviderEntry<T> {
+        private final WeakReference<T> fProvider;
+
+        public ProviderEntry(T provider) {
+            fProvider = new WeakReference<>(provider);
+        }
+
+        public @Nullable T get() {
+            return fProvider.get();
+        }
+    }
+
+    private final List<ProviderEntry<ICpuTimeProvider>> fCpuTimeProviders = new CopyOnWriteArrayList<>();
+    private final List<ProviderEntry<IThreadOnCpuProvider>> fThreadOnCpuProviders = new CopyOnWriteArrayList<>();
+
+    /* The providers that answered the last queries, tried first */
+    private volatile @Nullable ProviderEntry<ICpuTimeProvider> fLastCpuTimeProvider = null;
+    private volatile @Nullable ProviderEntry<IThreadOnCpuProvider> fLastThreadOnCpuProvider = null;
 
     @Override
     public int getThreadOnCpu(int cpu, long t) {
-        for (IThreadOnCpuProvider provider : fThreadOnCpuProviders) {
-            Integer tid = provider.getThreadOnCpuAtTime(cpu, t);
-            if (tid != null && tid != IHostModel.UNKNOWN_TID) {
+        ProviderEntry<IThreadOnCpuProvider> last = fLastThreadOnCpuProvider;
+        if (last != null) {
+            int tid = getThreadOnCpu(last, cpu, t);
+            if (tid != IHostModel.UNKNOWN_TID) {
+                return tid;
+            }
+        }
+        for (ProviderEntry<IThreadOnCpuProvider> entry : fThreadOnCpuProviders) {
+            if (entry == last) {
+                continue;
+            }
+            int tid = getThreadOnCpu(entry, cpu, t);
+            if (tid != IHostModel.UNKNOWN_TID) {
+                fLastThreadOnCpuProvider = entry;
                 return tid;
             }
         }
         return IHostModel.UNKNOWN_TID;
     }
 
+    private static int getThreadOnCpu(ProviderEntry<IThreadOnCpuProvider> entry, int cpu, long t) {
+        IThreadOnCpuProvider provider = entry.get();
+        if (provider == null) {
+            return IHostModel.UNKNOWN_TID;
+        }
+        if (t < provider.getProviderStartTime() || t > provider.getProviderEndTime()) {
+            return IHostModel.UNKNOWN_TID;
+        }
+        Integer tid = provider.getThreadOnCpuAtTime(cpu, t);
+        return (tid == null ? IHostModel.UNKNOWN_TID : tid);
+    }
+
     @Override
     public long getCpuTime(int tid, long start, long end) {
-        for (ICpuTimeProvider provider : fCpuTimeProviders) {
-            long cpuTime = provider.getCpuTime(tid, start, end);
+        ProviderEntry<ICpuTimeProvider> last = fLastCpuTimeProvider;
+        if (last != null) {
+            long cpuTime = getCpuTime(last, tid, start, end);
+            if (cpuTime != IHostModel.TIME_UNKNOWN) {
+                return cpuTime;
+            }
+        }
+        for (ProviderEntry<ICpuTimeProvider> entry : fCpuTimeProviders) {
+            if (entry == last) {
+                continue;
+            }
+            long cpuTime = getCpuTime(entry, tid, start, end);
             if (cpuTime != IHostModel.TIME_UNKNOWN) {
+                fLastCpuTimeProvider = entry;
                 return cpuTime;
             }
         }
         return IHostModel.TIME_UNKNOWN;
     }
 
+    private static long getCpuTime(ProviderEntry<ICpuTimeProvider> entry, int tid, long start, long end) {
+        ICpuTimeProvider provider = entry.get();
+        if (provider == null) {
+            return IHostModel.TIME_UNKNOWN;
+        }
+        if (!intersects(provider, start, end)) {
+            return IHostModel.TIME_UNKNOWN;
+        }
+        return provider.getCpuTime(tid, start, end);
+    }
+
+    private static boolean intersects(ICpuTimeProvider provider, long start, long end) {
+        return start <= provider.getProviderEndTime() && end >= provider.getProviderStartTime();
+    }
+
+    @Override
+    public long[] getCpuTimes(int tid, long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of starts and ends should be the same"); //$NON-NLS-1$
+        }
+        long[] cpuTimes = new long[starts.length];
+        Arrays.fill(cpuTimes, IHostModel.TIME_UNKNOWN);
+        // Indexes of the periods that are not resolved yet
+        int[] unknown = new int[starts.length];
+        for (int i = 0; i < unknown.length; i++) {
+            unknown[i] = i;
+        }
+        int nbUnknown = unknown.length;
+        for (ProviderEntry<ICpuTimeProvider> entry : fCpuTimeProviders) {
+            if (nbUnknown == 0) {
+                break;
+            }
+            ICpuTimeProvider provider = entry.get();
+            if (provider == null) {
+                continue;
+            }
+            // Only send the periods in the time range of the provider
+            int[] toQuery = new int[nbUnknown];
+            int nbToQuery = 0;
+            for (int i = 0; i < nbUnknown; i++) {
+                if (intersects(provider, starts[unknown[i]], ends[unknown[i]])) {
+                    toQuery[nbToQuery++] = i;
+                }
+            }
+            if (nbToQuery == 0) {
+                continue;
+            }
+            long[] providerStarts = new long[nbToQuery];
+            long[] providerEnds = new long[nbToQuery];
+            for (int i = 0; i < nbToQuery; i++) {
+                providerStarts[i] = starts[unknown[toQuery[i]]];
+                providerEnds[i] = ends[unknown[toQuery[i]]];
+            }
+            long[] providerTimes = provider.getCpuTimes(tid, providerStarts, providerEnds);
+            for (int i = 0; i < nbToQuery; i++) {
+                cpuTimes[unknown[toQuery[i]]] = providerTimes[i];
+            }
+            // Keep the indexes of the periods that are still unknown
+            int stillUnknown = 0;
+            for (int i = 0; i < nbUnknown; i++) {
+                if (cpuTimes[unknown[i]] == IHostModel.TIME_UNKNOWN) {
+                    unknown[stillUnknown++] = unknown[i];
+                }
+            }
+            nbUnknown = stillUnknown;
+        }
+        return cpuTimes;
+    }
+
+    @Override
+    public List<String> getCpuTimeProviderIds() {
+        List<String> ids = new ArrayList<>();
+        for (ProviderEntry<ICpuTimeProvider> entry : fCpuTimeProviders) {
+            ICpuTimeProvider provider = entry.get();
+            if (provider != null) {
+                ids.add(provider instanceof IAnalysisModule ? ((IAnalysisModule) provider).getId() : provider.getClass().getName());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
     /**
      * Set a CPU time provider for this host model
      *
@@ -61,7 +210,7 @@ public class CompositeHostModel implements IHostModel {
      *            The CPU time provider
      */
     public void setCpuTimeProvider(ICpuTimeProvider provider) {
-        fCpuTimeProviders.add(provider);
+        addProvider(fCpuTimeProviders, provider);
     }
 
     /**
@@ -71,7 +220,55 @@ public class CompositeHostModel implements IHostModel {
      *            The thread on CPU time provider
      */
     public void setThreadOnCpuProvider(IThreadOnCpuProvider provider) {
-        fThreadOnCpuProviders.add(provider);
+        addProvider(fThreadOnCpuProviders, provider);
+    }
+
+    /**
+     * Add a provider to a list if it is not already there. The entries of the
+     * providers that were garbage collected are removed at the same time. The
+     * writers are synchronized, the readers iterate over a snapshot of the
+     * list.
+     */
+    private synchronized <T> void addProvider(List<ProviderEntry<T>> providers, T provider) {
+        providers.removeIf(entry -> entry.get() == null);
+        for (ProviderEntry<T> entry : providers) {
+            if (entry.get() == provider) {
+                return;
+            }
+        }
+        providers.add(new ProviderEntry<>(provider));
+    }
+
+    @Override
+    public long getMemorySize() {
+        // An analysis may provide many concepts, count it only once
+        Set<Object> providers = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = 0;
+        for (ProviderEntry<ICpuTimeProvider> entry : fCpuTimeProviders) {
+            ICpuTimeProvider provider = entry.get();
+            if (provider != null && providers.add(provider)) {
+                size += provider.getMemorySize();
+            }
+        }
+        for (ProviderEntry<IThreadOnCpuProvider> entry : fThreadOnCpuProviders) {
+            IThreadOnCpuProvider provider = entry.get();
+            if (provider != null && providers.add(provider)) {
+                size += provider.getMemorySize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove all the providers of this model. The providers themselves are
+     * disposed with their trace.
+     */
+    @Override
+    public synchronized void dispose() {
+        fCpuTimeProviders.clear();
+        fThreadOnCpuProviders.clear();
+        fLastCpuTimeProvider = null;
+        fLastThreadOnCpuProvider = null;
     }
 
 }
@@ -27,12 +27,23 @@ public class ModelListener implements ITmfNewAnalysisModuleListener {
 
     @Override
     public void moduleCreated(@Nullable IAnalysisModule module) {
+        addProviders(module);
+    }
+
+    /**
+     * Add a module to the models of its hosts, for each concept it provides.
+     * The modules that are already in a model are not added again.
+     *
+     * @param module
+     *            The analysis module
+     */
+    static void addProviders(@Nullable IAnalysisModule module) {
         if (module instanceof ICpuTimeProvider) {
             ICpuTimeProvider provider = (ICpuTimeProvider) module;
             for (String hostId : provider.getHostIds()) {
-                IHostModel model = ModelManager.getModelFor(hostId);
-                if (model instanceof CompositeHostModel) {
-                    ((CompositeHostModel) model).setCpuTimeProvider(provider);
+                CompositeHostModel model = getCompositeModel(hostId);
+                if (model != null) {
+                    model.setCpuTimeProvider(provider);
                 }
             }
         }
@@ -40,12 +51,20 @@ public class ModelListener implements ITmfNewAnalysisModuleListener {
         if (module instanceof IThreadOnCpuProvider) {
             IThreadOnCpuProvider provider = (IThreadOnCpuProvider) module;
             for (String hostId : provider.getHostIds()) {
-                IHostModel model = ModelManager.getModelFor(hostId);
-                if (model instanceof CompositeHostModel) {
-                    ((CompositeHostModel) model).setThreadOnCpuProvider(provider);
+                CompositeHostModel model = getCompositeModel(hostId);
+                if (model != null) {
+                    model.setThreadOnCpuProvider(provider);
                 }
             }
         }
     }
 
+    private static @Nullable CompositeHostModel getCompositeModel(String hostId) {
+        IHostModel model = ModelManager.getModelFor(hostId);
+        if (model instanceof CachedHostModel) {
+            model = ((CachedHostModel) model).getModel();
+        }
+        return (model instanceof CompositeHostModel ? (CompositeHostModel) model : null);
+    }
+
 }
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.analysis.core.model;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceClosedSignal;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+
+/**
+ * Listener for the opened and closed traces, that acquires the models of the
+ * hosts of a trace, or of the traces of an experiment, when it is opened and
+ * releases them when it is closed.
+ *
+ * The analysis modules of a trace may be created before its models are
+ * acquired, so their providers are added to the models once acquired.
+ *
+ * @author Geneviève Bastien
+ */
+public class TraceModelListener {
+
+    /* The hosts of each opened trace, to release the same ones when closed */
+    private final Map<ITmfTrace, Set<String>> fHostsPerTrace = new HashMap<>();
+
+    /**
+     * Acquire the models of the traces that are already opened. The plugin may
+     * be started while the first trace is being opened, after the signal was
+     * sent.
+     */
+    public void initialize() {
+        for (ITmfTrace trace : TmfTraceManager.getInstance().getOpenedTraces()) {
+            acquireModels(trace);
+        }
+    }
+
+    /**
+     * Handler for the trace opened signal
+     *
+     * @param signal
+     *            The incoming signal
+     */
+    @TmfSignalHandler
+    public void traceOpened(TmfTraceOpenedSignal signal) {
+        acquireModels(signal.getTrace());
+    }
+
+    private synchronized void acquireModels(ITmfTrace trace) {
+        if (fHostsPerTrace.containsKey(trace)) {
+            return;
+        }
+        Set<String> hostIds = new LinkedHashSet<>();
+        for (ITmfTrace child : TmfTraceManager.getTraceSet(trace)) {
+            hostIds.add(child.getHostId());
+        }
+        for (String hostId : hostIds) {
+            ModelManager.acquireModel(hostId);
+        }
+        fHostsPerTrace.put(trace, hostIds);
+        for (ITmfTrace child : TmfTraceManager.getTraceSet(trace)) {
+            for (IAnalysisModule module : child.getAnalysisModules()) {
+                ModelListener.addProviders(module);
+            }
+        }
+    }
+
+    /**
+     * Handler for the trace closed signal
+     *
+     * @param signal
+     *            The incoming signal
+     */
+    @TmfSignalHandler
+    public synchronized void traceClosed(TmfTraceClosedSignal signal) {
+        Set<String> hostIds = fHostsPerTrace.remove(signal.getTrace());
+        if (hostIds == null) {
+            return;
+        }
+        for (String hostId : hostIds) {
+            ModelManager.releaseModel(hostId);
+        }
+    }
+
+}
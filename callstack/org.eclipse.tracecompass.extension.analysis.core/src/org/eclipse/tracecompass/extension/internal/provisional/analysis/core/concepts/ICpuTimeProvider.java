@@ -38,6 +38,66 @@ public interface ICpuTimeProvider {
      */
     long getCpuTime(int tid, long start, long end);
 
+    /**
+     * Get the amount of time a thread was active on the CPU (any CPU) during
+     * many periods. The default implementation calls
+     * {@link #getCpuTime(int, long, long)} for each period, providers should
+     * override it if they can answer all the periods in one pass, for instance
+     * by sorting the periods by start time.
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param starts
+     *            The starts of the periods for which to get the time on CPU
+     * @param ends
+     *            The ends of the periods for which to get the time on CPU, in
+     *            the same order as the starts
+     * @return The time spent on the CPU by the thread in each period, or
+     *         {@link IHostModel#TIME_UNKNOWN} for the periods where it is not
+     *         available
+     */
+    default long[] getCpuTimes(int tid, long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of starts and ends should be the same"); //$NON-NLS-1$
+        }
+        long[] cpuTimes = new long[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            cpuTimes[i] = getCpuTime(tid, starts[i], ends[i]);
+        }
+        return cpuTimes;
+    }
+
+    /**
+     * Get the start of the time range for which this provider has
+     * information. The host model only queries the providers whose time range
+     * intersects the requested time. By default, a provider covers all times.
+     *
+     * @return The start time of this provider
+     */
+    default long getProviderStartTime() {
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Get the end of the time range for which this provider has information
+     *
+     * @return The end time of this provider
+     * @see #getProviderStartTime()
+     */
+    default long getProviderEndTime() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Get an estimate of the memory used by the data this provider keeps to
+     * answer the queries
+     *
+     * @return The memory size in bytes
+     */
+    default long getMemorySize() {
+        return 0;
+    }
+
     /**
      * Get the list of host IDs this provider is for
      *
@@ -35,6 +35,37 @@ public interface IThreadOnCpuProvider {
     @Nullable
     Integer getThreadOnCpuAtTime(int cpu, long time);
 
+    /**
+     * Get the start of the time range for which this provider has
+     * information. The host model only queries the providers whose time range
+     * intersects the requested time. By default, a provider covers all times.
+     *
+     * @return The start time of this provider
+     */
+    default long getProviderStartTime() {
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Get the end of the time range for which this provider has information
+     *
+     * @return The end time of this provider
+     * @see #getProviderStartTime()
+     */
+    default long getProviderEndTime() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Get an estimate of the memory used by the data this provider keeps to
+     * answer the queries
+     *
+     * @return The memory size in bytes
+     */
+    default long getMemorySize() {
+        return 0;
+    }
+
     /**
      * The list of host IDs for which this object providers information on
      * thread on the CPU
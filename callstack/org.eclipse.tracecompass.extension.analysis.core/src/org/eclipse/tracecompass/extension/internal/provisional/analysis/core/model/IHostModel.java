@@ -9,6 +9,9 @@
 
 package org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This interface represents a host system, for example a machine running Linux,
  * and allows to access information on the state of the machine at some
@@ -62,4 +65,61 @@ public interface IHostModel {
      */
     long getCpuTime(int tid, long start, long end);
 
+    /**
+     * Get the amount of time a thread was active on the CPU (any CPU) during
+     * many periods. This method should be used instead of
+     * {@link #getCpuTime(int, long, long)} when the CPU time of many periods
+     * of a same thread is needed, as implementations may answer all the
+     * periods in one pass over the thread's data.
+     *
+     * @param tid
+     *            The ID of the thread
+     * @param starts
+     *            The starts of the periods for which to get the time on CPU
+     * @param ends
+     *            The ends of the periods for which to get the time on CPU, in
+     *            the same order as the starts
+     * @return The time spent on the CPU by the thread in each period, or
+     *         {@link #TIME_UNKNOWN} for the periods where it is not available
+     */
+    default long[] getCpuTimes(int tid, long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of starts and ends should be the same"); //$NON-NLS-1$
+        }
+        long[] cpuTimes = new long[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            cpuTimes[i] = getCpuTime(tid, starts[i], ends[i]);
+        }
+        return cpuTimes;
+    }
+
+    /**
+     * Get the IDs of the providers this model gets the CPU times from. Users
+     * who save the CPU times can compare them with the saved ones to know if
+     * more CPU time data became available since.
+     *
+     * @return The IDs of the CPU time providers, sorted
+     */
+    default List<String> getCpuTimeProviderIds() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get an estimate of the memory used by this model, including the indexes
+     * of the analyses it gets its information from
+     *
+     * @return The memory size in bytes
+     */
+    default long getMemorySize() {
+        return 0;
+    }
+
+    /**
+     * Dispose of this model, once no trace of the host is open. The model
+     * should release what it holds, it will not be queried anymore.
+     */
+    default void dispose() {
+        // Nothing to dispose by default
+    }
+
 }
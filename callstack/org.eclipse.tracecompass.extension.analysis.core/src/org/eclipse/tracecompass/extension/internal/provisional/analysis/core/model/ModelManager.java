@@ -11,25 +11,135 @@ package org.eclipse.tracecompass.extension.internal.provisional.analysis.core.mo
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.analysis.core.model.CachedHostModel;
 import org.eclipse.tracecompass.extension.internal.analysis.core.model.CompositeHostModel;
 
 /**
- * Utility class to manage the models for the hosts
+ * Utility class to manage the models for the hosts. The models can be
+ * retrieved from many threads at once, only the creation and the removal of a
+ * model are synchronized, with the same lock.
+ *
+ * The answers of the models can optionally be kept in a cache, see
+ * {@link #setCacheSize(int)}. The initial size of the cache can be set with
+ * the {@value #CACHE_SIZE_PROPERTY} system property and the use of the cache
+ * of a host is reported by {@link #getCacheStatistics(String)}.
+ *
+ * The models are reference counted against the open traces: each open trace
+ * of a host acquires its model and releases it when closed. When the last
+ * trace of a host is closed, the model is disposed and the host is marked as
+ * released, the model is still returned until a trace of the host is opened
+ * again. The hosts that were never acquired share an empty model.
  *
  * @author Geneviève Bastien
  */
 public final class ModelManager {
 
-    private static final Map<String, @Nullable IHostModel> MODELS_FOR_HOST = new HashMap<>();
+    /** Value of the cache size to not cache the answers of the models */
+    public static final int NO_CACHE = 0;
+
+    /** System property with the number of answers to cache for each model */
+    public static final String CACHE_SIZE_PROPERTY = "org.eclipse.tracecompass.extension.analysis.core.model.cacheSize"; //$NON-NLS-1$
+
+    /**
+     * The use of the cache of a host model, at the time it was requested
+     */
+    public static final class CacheStatistics {
+        private final int fSize;
+        private final int fNbEntries;
+        private final long fHits;
+        private final long fMisses;
+        private final long fEvictions;
+
+        private CacheStatistics(CachedHostModel model) {
+            fSize = model.getSize();
+            fNbEntries = model.getNbEntries();
+            fHits = model.getHitCount();
+            fMisses = model.getMissCount();
+            fEvictions = model.getEvictionCount();
+        }
+
+        /**
+         * Get the maximum number of answers kept in the cache
+         *
+         * @return The size of the cache
+         */
+        public int getSize() {
+            return fSize;
+        }
+
+        /**
+         * Get the number of answers in the cache
+         *
+         * @return The number of cached answers
+         */
+        public int getNbEntries() {
+            return fNbEntries;
+        }
+
+        /**
+         * Get the number of queries that were answered by the cache
+         *
+         * @return The number of cache hits
+         */
+        public long getHitCount() {
+            return fHits;
+        }
+
+        /**
+         * Get the number of queries that were sent to the model
+         *
+         * @return The number of cache misses
+         */
+        public long getMissCount() {
+            return fMisses;
+        }
+
+        /**
+         * Get the number of answers that were removed from the cache to make
+         * room for new ones
+         *
+         * @return The number of evictions
+         */
+        public long getEvictionCount() {
+            return fEvictions;
+        }
+    }
+
+    /* The model of the hosts that were never acquired, it has no state */
+    private static final IHostModel EMPTY_MODEL = new IHostModel() {
+        @Override
+        public int getThreadOnCpu(int cpu, long t) {
+            return IHostModel.UNKNOWN_TID;
+        }
+
+        @Override
+        public long getCpuTime(int tid, long start, long end) {
+            return IHostModel.TIME_UNKNOWN;
+        }
+    };
+
+    private static final Map<String, IHostModel> MODELS_FOR_HOST = new ConcurrentHashMap<>();
+    /* The hosts whose model was released by all their traces */
+    private static final Set<String> RELEASED_HOSTS = ConcurrentHashMap.newKeySet();
+    private static volatile int sCacheSize = Math.max(NO_CACHE, Integer.getInteger(CACHE_SIZE_PROPERTY, NO_CACHE));
+    /*
+     * The number of open traces of each host, guarded by the map itself. The
+     * models are added and removed while holding this lock.
+     */
+    private static final Map<String, Integer> REFERENCES = new HashMap<>();
 
     private ModelManager() {
 
     }
 
     /**
-     * Get the model for a given host ID.
+     * Get the model for a given host ID. If no trace of this host ever
+     * acquired its model, an empty model shared by all those hosts is
+     * returned.
      *
      * @param hostId
      *            The ID of the host for which to retrieve the model
@@ -37,11 +147,123 @@ public final class ModelManager {
      */
     public static IHostModel getModelFor(String hostId) {
         IHostModel model = MODELS_FOR_HOST.get(hostId);
-        if (model == null) {
-            model = new CompositeHostModel();
-            MODELS_FOR_HOST.put(hostId, model);
+        return (model == null ? EMPTY_MODEL : model);
+    }
+
+    /**
+     * Acquire the model of a host for a trace that is opened. The model is
+     * kept until it is released by all the traces that acquired it.
+     *
+     * @param hostId
+     *            The ID of the host of the trace
+     * @return The model for the host
+     */
+    public static IHostModel acquireModel(String hostId) {
+        synchronized (REFERENCES) {
+            REFERENCES.merge(hostId, 1, Integer::sum);
+            if (RELEASED_HOSTS.remove(hostId)) {
+                // The model of the released host was disposed
+                IHostModel model = createModel();
+                MODELS_FOR_HOST.put(hostId, model);
+                return model;
+            }
+            return MODELS_FOR_HOST.computeIfAbsent(hostId, id -> createModel());
+        }
+    }
+
+    /**
+     * Release the model of a host for a trace that is closed. If it was the
+     * last trace of the host, the model is disposed and the host is marked as
+     * released, a new model will be created the next time the model of this
+     * host is acquired.
+     *
+     * @param hostId
+     *            The ID of the host of the trace
+     */
+    public static void releaseModel(String hostId) {
+        synchronized (REFERENCES) {
+            Integer count = REFERENCES.get(hostId);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                REFERENCES.put(hostId, count - 1);
+                return;
+            }
+            REFERENCES.remove(hostId);
+            RELEASED_HOSTS.add(hostId);
+            IHostModel model = MODELS_FOR_HOST.get(hostId);
+            if (model != null) {
+                model.dispose();
+            }
+        }
+    }
+
+    /**
+     * Get an estimate of the memory used by the model of each host that is
+     * not released
+     *
+     * @return A map of the host IDs to the memory size in bytes of their
+     *         model
+     */
+    public static Map<String, Long> getMemoryUsage() {
+        Map<String, Long> usage = new HashMap<>();
+        MODELS_FOR_HOST.forEach((hostId, model) -> {
+            if (!RELEASED_HOSTS.contains(hostId)) {
+                usage.put(hostId, model.getMemorySize());
+            }
+        });
+        return usage;
+    }
+
+    /**
+     * Get the use of the cache of the model of a host
+     *
+     * @param hostId
+     *            The ID of the host
+     * @return The statistics of the cache, or <code>null</code> if the host
+     *         has no model, it is released or its answers are not cached
+     */
+    public static @Nullable CacheStatistics getCacheStatistics(String hostId) {
+        if (RELEASED_HOSTS.contains(hostId)) {
+            return null;
+        }
+        IHostModel model = MODELS_FOR_HOST.get(hostId);
+        if (model instanceof CachedHostModel) {
+            return new CacheStatistics((CachedHostModel) model);
+        }
+        return null;
+    }
+
+    private static IHostModel createModel() {
+        int cacheSize = sCacheSize;
+        CompositeHostModel model = new CompositeHostModel();
+        return (cacheSize == NO_CACHE ? model : new CachedHostModel(model, cacheSize));
+    }
+
+    /**
+     * Set the number of answers to cache for each model. The size applies to
+     * the models created after this call.
+     *
+     * @param size
+     *            The maximum number of answers kept per model, or
+     *            {@link #NO_CACHE} to not cache them
+     */
+    public static void setCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size of the cache should not be negative: " + size); //$NON-NLS-1$
         }
-        return model;
+        sCacheSize = size;
+    }
+
+    /**
+     * Get the number of answers to cache for the models created from now
+     *
+     * @return The maximum number of answers kept per model, or
+     *         {@link #NO_CACHE} if they are not cached
+     */
+    public static int getCacheSize() {
+        return sCacheSize;
     }
 
 }
@@ -9,16 +9,28 @@
 
 package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callgraph;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs.CallGraphAnalysisStub;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.AggregatedCalledFunction;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CallGraphAnalysis.BuildEngine;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.GroupNode;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
 import org.eclipse.tracecompass.segmentstore.core.ISegmentStore;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
@@ -26,8 +38,12 @@ import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
 import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.eclipse.tracecompass.tmf.core.analysis.TmfAnalysisManager;
+import org.eclipse.tracecompass.tmf.tests.stubs.analysis.TestAnalysis;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Test the CallGraphAnalysis.This creates a virtual state system in each test
  * and tests the segment store returned by the CallGraphAnalysis.
@@ -42,6 +58,8 @@ public class CallGraphAnalysisTest {
     private static final String QUARK_2 = "2";
     private static final Integer SMALL_AMOUNT_OF_SEGMENT = 3;
     private static final int LARGE_AMOUNT_OF_SEGMENTS = 1000;
+    private static final int NB_THREADS = 8;
+    private static final int NB_ROOT_FUNCTIONS = 30;
 
     private static @NonNull ITmfStateSystemBuilder createFixture() {
         IStateHistoryBackend backend;
@@ -389,4 +407,490 @@ public class CallGraphAnalysisTest {
             cga.dispose();
         }
     }
+
+    /**
+     * Test that the query and sweep engines build the same call graph. The
+     * call stack's structure used in this test is shown below:
+     *
+     * <pre>
+     * ---1---  ------1------  --4--
+     * -2- -3-  --2--  --2--
+     *  -3-      -3-  -3--3-
+     * </pre>
+     */
+    @Test
+    public void buildEnginesTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, CallGraphAnalysisStub.THREAD_PATH, CallGraphAnalysisStub.CALLSTACK_PATH);
+        int quark0 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_0);
+        int quark1 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_1);
+        int quark2 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_2);
+        // First level
+        fixture.modifyAttribute(0, TmfStateValue.newValueLong(1), quark0);
+        fixture.modifyAttribute(30, TmfStateValue.nullValue(), quark0);
+        fixture.modifyAttribute(40, TmfStateValue.newValueLong(1), quark0);
+        fixture.modifyAttribute(100, TmfStateValue.nullValue(), quark0);
+        fixture.modifyAttribute(110, TmfStateValue.newValueLong(4), quark0);
+        fixture.modifyAttribute(130, TmfStateValue.nullValue(), quark0);
+        // Second level
+        fixture.modifyAttribute(0, TmfStateValue.newValueLong(2), quark1);
+        fixture.modifyAttribute(12, TmfStateValue.nullValue(), quark1);
+        fixture.modifyAttribute(15, TmfStateValue.newValueLong(3), quark1);
+        fixture.modifyAttribute(25, TmfStateValue.nullValue(), quark1);
+        fixture.modifyAttribute(45, TmfStateValue.newValueLong(2), quark1);
+        fixture.modifyAttribute(65, TmfStateValue.nullValue(), quark1);
+        fixture.modifyAttribute(70, TmfStateValue.newValueLong(2), quark1);
+        fixture.modifyAttribute(95, TmfStateValue.nullValue(), quark1);
+        // Third level
+        fixture.modifyAttribute(0, TmfStateValue.nullValue(), quark2);
+        fixture.modifyAttribute(3, TmfStateValue.newValueLong(3), quark2);
+        fixture.modifyAttribute(9, TmfStateValue.nullValue(), quark2);
+        fixture.modifyAttribute(50, TmfStateValue.newValueLong(3), quark2);
+        fixture.modifyAttribute(60, TmfStateValue.nullValue(), quark2);
+        fixture.modifyAttribute(70, TmfStateValue.newValueLong(3), quark2);
+        fixture.modifyAttribute(80, TmfStateValue.newValueLong(3), quark2);
+        fixture.modifyAttribute(90, TmfStateValue.nullValue(), quark2);
+        fixture.closeHistory(131);
+
+        CallGraphAnalysisStub queryCga = new CallGraphAnalysisStub(fixture);
+        CallGraphAnalysisStub sweepCga = new CallGraphAnalysisStub(fixture);
+        try {
+            queryCga.setBuildEngine(BuildEngine.QUERY);
+            sweepCga.setBuildEngine(BuildEngine.SWEEP);
+            assertTrue(queryCga.iterate());
+            assertTrue(sweepCga.iterate());
+
+            ISegmentStore<@NonNull ISegment> queryStore = queryCga.getSegmentStore();
+            ISegmentStore<@NonNull ISegment> sweepStore = sweepCga.getSegmentStore();
+            assertNotNull(queryStore);
+            assertNotNull(sweepStore);
+            assertEquals("Number of segments found", 11, sweepStore.size());
+            assertArrayEquals("Segments", queryStore.toArray(), sweepStore.toArray());
+
+            List<@NonNull ICalledFunction> queryRoots = queryCga.getRootFunctions();
+            List<@NonNull ICalledFunction> sweepRoots = sweepCga.getRootFunctions();
+            assertEquals("Root functions", queryRoots, sweepRoots);
+            for (int i = 0; i < queryRoots.size(); i++) {
+                assertEquals("Children of root function " + i, queryRoots.get(i).getChildren(), sweepRoots.get(i).getChildren());
+            }
+        } finally {
+            queryCga.dispose();
+            sweepCga.dispose();
+        }
+    }
+
+    /**
+     * Test that building the call graph in parallel gives the same result as
+     * building it sequentially. Each thread has a different call stack
+     * structure.
+     */
+    @Test
+    public void parallelBuildTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        buildThreadsCallStack(fixture);
+
+        String @NonNull [] pp = { CallGraphAnalysisStub.PROCESS_PATH };
+        String @NonNull [] tp = { "*" };
+        String @NonNull [] csp = { CallGraphAnalysisStub.CALLSTACK_PATH };
+        CallGraphAnalysisStub sequentialCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+        CallGraphAnalysisStub parallelCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+        try {
+            parallelCga.setParallelism(4);
+            assertTrue(sequentialCga.iterate());
+            assertTrue(parallelCga.iterate());
+            assertSameCallGraph(sequentialCga, parallelCga);
+        } finally {
+            sequentialCga.dispose();
+            parallelCga.dispose();
+        }
+    }
+
+    /**
+     * Build a state system with many threads, each having a different call
+     * stack structure
+     */
+    private static void buildThreadsCallStack(ITmfStateSystemBuilder fixture) {
+        for (int thread = 0; thread < NB_THREADS; thread++) {
+            int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, Integer.toString(thread), CallGraphAnalysisStub.CALLSTACK_PATH);
+            for (int depth = 0; depth <= thread % 3; depth++) {
+                int quark = fixture.getQuarkRelativeAndAdd(parentQuark, Integer.toString(depth));
+                for (int call = 0; call <= thread; call++) {
+                    long callStart = call * 100L + depth * 10L;
+                    fixture.modifyAttribute(callStart, TmfStateValue.newValueLong(thread * 10 + depth), quark);
+                    fixture.modifyAttribute(callStart + 80 - depth * 20, TmfStateValue.nullValue(), quark);
+                }
+            }
+        }
+        fixture.closeHistory(NB_THREADS * 100L + 1);
+    }
+
+    private static void assertSameCallGraph(CallGraphAnalysisStub expectedCga, CallGraphAnalysisStub actualCga) {
+        ISegmentStore<@NonNull ISegment> expectedStore = expectedCga.getSegmentStore();
+        ISegmentStore<@NonNull ISegment> actualStore = actualCga.getSegmentStore();
+        assertNotNull(expectedStore);
+        assertNotNull(actualStore);
+        assertEquals("Number of segments found", expectedStore.size(), actualStore.size());
+        assertArrayEquals("Segments", expectedStore.toArray(), actualStore.toArray());
+
+        List<@NonNull ICalledFunction> expectedRoots = expectedCga.getRootFunctions();
+        List<@NonNull ICalledFunction> actualRoots = actualCga.getRootFunctions();
+        assertEquals("Number of root functions", NB_THREADS * (NB_THREADS + 1) / 2, actualRoots.size());
+        assertEquals("Root functions", expectedRoots, actualRoots);
+    }
+
+    /* A stub CPU time provider for the host of the stub callstacks */
+    private static class CpuTimeProvider extends TestAnalysis implements ICpuTimeProvider {
+
+        @Override
+        public long getCpuTime(int tid, long start, long end) {
+            // Always on CPU
+            return end - start;
+        }
+
+        @Override
+        public @NonNull Collection<@NonNull String> getHostIds() {
+            return Collections.singleton("");
+        }
+
+    }
+
+    /**
+     * Test saving the call graph to a file and reading it back. The call
+     * graph read should be the same as the one built, and the file should not
+     * be read for another callstack. A file saved while the CPU times of the
+     * functions are unknown should not be read once a CPU time provider is
+     * available.
+     *
+     * @throws IOException
+     *             Exception thrown by the temporary file
+     */
+    @Test
+    public void callGraphFileTest() throws IOException {
+        ITmfStateSystemBuilder fixture = createFixture();
+        buildThreadsCallStack(fixture);
+
+        String @NonNull [] pp = { CallGraphAnalysisStub.PROCESS_PATH };
+        String @NonNull [] tp = { "*" };
+        String @NonNull [] csp = { CallGraphAnalysisStub.CALLSTACK_PATH };
+        Path file = Files.createTempFile("callgraph", ".cg");
+        CallGraphAnalysisStub builtCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+        CallGraphAnalysisStub loadedCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+        ITmfStateSystemBuilder otherFixture = createFixture();
+        buildPyramidCallStack(otherFixture);
+        CallGraphAnalysisStub otherCga = new CallGraphAnalysisStub(otherFixture);
+        CpuTimeProvider cpuTimeProvider = new CpuTimeProvider();
+        try {
+            // Without CPU time provider, the CPU times are saved unknown
+            CallGraphAnalysisStub unknownCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+            CallGraphAnalysisStub unknownLoadedCga = new CallGraphAnalysisStub(fixture, ImmutableList.of(pp, tp, csp));
+            try {
+                assertTrue(unknownCga.iterate());
+                unknownCga.save(file);
+                assertTrue(unknownLoadedCga.load(file));
+                assertSameCallGraph(unknownCga, unknownLoadedCga);
+            } finally {
+                unknownCga.dispose();
+                unknownLoadedCga.dispose();
+            }
+
+            // Once CPU time data is available, the file should be built again
+            ModelManager.acquireModel("");
+            TmfAnalysisManager.analysisModuleCreated(cpuTimeProvider);
+            assertFalse(loadedCga.load(file));
+            assertTrue(builtCga.iterate());
+            builtCga.save(file);
+
+            assertTrue(loadedCga.load(file));
+            assertSameCallGraph(builtCga, loadedCga);
+
+            // Compare the aggregated trees, read from the file
+            List<GroupNode> builtThreads = builtCga.getThreadNodes();
+            List<GroupNode> loadedThreads = loadedCga.getThreadNodes();
+            assertEquals("Number of thread nodes", NB_THREADS, loadedThreads.size());
+            for (int i = 0; i < builtThreads.size(); i++) {
+                assertSameAggregatedTree(builtThreads.get(i), loadedThreads.get(i));
+            }
+
+            // And the ones computed from the functions read
+            List<AggregatedCalledFunction> builtNodes = builtCga.getCallGraph(Long.MIN_VALUE, Long.MAX_VALUE);
+            List<AggregatedCalledFunction> loadedNodes = loadedCga.getCallGraph(Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals("Number of thread nodes", NB_THREADS, loadedNodes.size());
+            for (int i = 0; i < builtNodes.size(); i++) {
+                assertEquals("Number of calls", getNbCalls(builtNodes.get(i).getChildren()), getNbCalls(loadedNodes.get(i).getChildren()));
+                assertEquals("Self time", builtNodes.get(i).getSelfTime(), loadedNodes.get(i).getSelfTime());
+            }
+
+            // The elements are not the same, the file should not be read
+            assertFalse(otherCga.load(file));
+
+            // A corrupted file should not be read
+            Files.write(file, new byte[] { 1, 2, 3 });
+            assertFalse(otherCga.load(file));
+        } finally {
+            builtCga.dispose();
+            loadedCga.dispose();
+            otherCga.dispose();
+            cpuTimeProvider.dispose();
+            ModelManager.releaseModel("");
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void assertSameAggregatedTree(AggregatedCalledFunction expected, AggregatedCalledFunction actual) {
+        assertEquals("Symbol", expected.getSymbol(), actual.getSymbol());
+        assertEquals("Number of calls to " + expected.getSymbol(), expected.getNbCalls(), actual.getNbCalls());
+        assertEquals("Duration of " + expected.getSymbol(), expected.getDuration(), actual.getDuration());
+        assertEquals("Self time of " + expected.getSymbol(), expected.getSelfTime(), actual.getSelfTime());
+        assertEquals("CPU time of " + expected.getSymbol(), expected.getCpuTime(), actual.getCpuTime());
+        assertEquals("Number of callees of " + expected.getSymbol(), expected.getChildren().size(), actual.getChildren().size());
+        for (AggregatedCalledFunction expectedChild : expected.getChildren()) {
+            AggregatedCalledFunction actualChild = actual.getChildren().stream()
+                    .filter(child -> expectedChild.getSymbol().equals(child.getSymbol()))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("No callee " + expectedChild.getSymbol()));
+            assertSameAggregatedTree(expectedChild, actualChild);
+        }
+    }
+
+    /**
+     * Test the call graph of time ranges. The call stack has many root
+     * functions, alternating between 2 symbols, each calling one function, as
+     * shown below. The checkpoints are small so that the queries use both the
+     * checkpoints and the functions at the edges of the range. The functions
+     * crossing the range boundaries are truncated to the range.
+     *
+     * <pre>
+     * ___0___ ___1___ ___0___ ___1___ ...
+     *  __2__   __2__   __2__   __2__
+     * </pre>
+     */
+    @Test
+    public void timeRangeCallGraphTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, CallGraphAnalysisStub.THREAD_PATH, CallGraphAnalysisStub.CALLSTACK_PATH);
+        int quark0 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_0);
+        int quark1 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_1);
+        for (int i = 0; i < NB_ROOT_FUNCTIONS; i++) {
+            addRootFunction(fixture, quark0, quark1, i);
+        }
+        fixture.closeHistory(NB_ROOT_FUNCTIONS * 100L + 1);
+
+        CallGraphAnalysisStub cga = new CallGraphAnalysisStub(fixture);
+        try {
+            cga.setCheckpointSize(4);
+            assertTrue(cga.iterate());
+
+            // The whole trace
+            assertRangeCallGraph(cga, 0, NB_ROOT_FUNCTIONS * 100L, NB_ROOT_FUNCTIONS / 2, NB_ROOT_FUNCTIONS / 2);
+            // Functions 3 to 13, the range starts and ends in the middle of checkpoints
+            assertRangeCallGraph(cga, 300, 1380, 5, 6);
+            // Functions 4 to 7, exactly one checkpoint
+            assertRangeCallGraph(cga, 400, 780, 2, 2);
+
+            /*
+             * Functions 2 to 14, 2 and 14 are truncated: only [250, 280] of
+             * function 2, without its callee, and [1400, 1420] of function
+             * 14, with [1410, 1420] of its callee
+             */
+            Collection<AggregatedCalledFunction> roots = getRangeRoots(cga, 250, 1420);
+            assertRoot(roots, 0L, 7, 5 * 80 + 30 + 20, 5 * 40 + 30 + 10, 6, 5 * 40 + 10);
+            assertRoot(roots, 1L, 6, 6 * 80, 6 * 40, 6, 6 * 40);
+            // Part of function 5 only, inside its callee
+            roots = getRangeRoots(cga, 510, 520);
+            assertEquals("Number of roots", 1, roots.size());
+            assertRoot(roots, 1L, 1, 10, 0, 1, 10);
+            // Between 2 root functions
+            assertTrue("Empty range", cga.getCallGraph(385, 395).isEmpty());
+            // Only touching the end of function 3 and the start of function 4
+            assertTrue("Touching range", cga.getCallGraph(380, 400).isEmpty());
+            // Touching the end of function 3, with the start of function 4 and of its callee
+            roots = getRangeRoots(cga, 380, 420);
+            assertEquals("Number of roots", 1, roots.size());
+            assertRoot(roots, 0L, 1, 20, 10, 1, 10);
+
+            // The checkpoints are not modified by the queries
+            assertRangeCallGraph(cga, 0, NB_ROOT_FUNCTIONS * 100L, NB_ROOT_FUNCTIONS / 2, NB_ROOT_FUNCTIONS / 2);
+        } finally {
+            cga.dispose();
+        }
+    }
+
+    private static void assertRangeCallGraph(CallGraphAnalysisStub cga, long start, long end, long nbCalls0, long nbCalls1) {
+        List<AggregatedCalledFunction> threadNodes = cga.getCallGraph(start, end);
+        assertEquals("Number of thread nodes", 1, threadNodes.size());
+        Collection<AggregatedCalledFunction> roots = threadNodes.get(0).getChildren();
+        long nbCalls = nbCalls0 + nbCalls1;
+        assertEquals("Number of calls", nbCalls, getNbCalls(roots));
+        for (AggregatedCalledFunction root : roots) {
+            long expected = (Long.valueOf(0).equals(root.getSymbol()) ? nbCalls0 : nbCalls1);
+            assertEquals("Number of calls to " + root.getSymbol(), expected, root.getNbCalls());
+            assertEquals("Duration of " + root.getSymbol(), expected * 80, root.getDuration());
+            assertEquals("Self time of " + root.getSymbol(), expected * 40, root.getSelfTime());
+            Collection<AggregatedCalledFunction> children = root.getChildren();
+            assertEquals("Number of callees", 1, children.size());
+            AggregatedCalledFunction child = children.iterator().next();
+            assertEquals("Number of calls to callee", expected, child.getNbCalls());
+            assertEquals("Duration of callee", expected * 40, child.getDuration());
+        }
+    }
+
+    private static Collection<AggregatedCalledFunction> getRangeRoots(CallGraphAnalysisStub cga, long start, long end) {
+        List<AggregatedCalledFunction> threadNodes = cga.getCallGraph(start, end);
+        assertEquals("Number of thread nodes", 1, threadNodes.size());
+        return threadNodes.get(0).getChildren();
+    }
+
+    private static void assertRoot(Collection<AggregatedCalledFunction> roots, Long symbol, long nbCalls, long duration, long selfTime, long nbCalleeCalls, long calleeDuration) {
+        AggregatedCalledFunction root = roots.stream()
+                .filter(function -> symbol.equals(function.getSymbol()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No root function " + symbol));
+        assertEquals("Number of calls to " + symbol, nbCalls, root.getNbCalls());
+        assertEquals("Duration of " + symbol, duration, root.getDuration());
+        assertEquals("Self time of " + symbol, selfTime, root.getSelfTime());
+        Collection<AggregatedCalledFunction> children = root.getChildren();
+        assertEquals("Number of callees", 1, children.size());
+        AggregatedCalledFunction child = children.iterator().next();
+        assertEquals("Number of calls to callee", nbCalleeCalls, child.getNbCalls());
+        assertEquals("Duration of callee", calleeDuration, child.getDuration());
+    }
+
+    private static long getNbCalls(Collection<AggregatedCalledFunction> functions) {
+        long nbCalls = 0;
+        for (AggregatedCalledFunction function : functions) {
+            nbCalls += function.getNbCalls();
+        }
+        return nbCalls;
+    }
+
+    /**
+     * Test building the call graph while the state system is being built. Only
+     * the completed functions should be added, and the final call graph should
+     * be the same as the one built once the state system is completed.
+     */
+    @Test
+    public void streamingTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, CallGraphAnalysisStub.THREAD_PATH, CallGraphAnalysisStub.CALLSTACK_PATH);
+        int quark0 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_0);
+        int quark1 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_1);
+
+        CallGraphAnalysisStub streamedCga = new CallGraphAnalysisStub(fixture);
+        CallGraphAnalysisStub builtCga = new CallGraphAnalysisStub(fixture);
+        try {
+            // Add half the functions, the last one is not completed
+            int half = NB_ROOT_FUNCTIONS / 2;
+            for (int i = 0; i < half; i++) {
+                addRootFunction(fixture, quark0, quark1, i);
+            }
+            fixture.modifyAttribute(half * 100L, TmfStateValue.newValueLong(half % 2), quark0);
+            assertTrue(streamedCga.stream(false));
+            assertEquals("Number of root functions", half, streamedCga.getRootFunctions().size());
+            ISegmentStore<@NonNull ISegment> segmentStore = streamedCga.getSegmentStore();
+            assertNotNull(segmentStore);
+            assertEquals("Number of segments", half * 2, segmentStore.size());
+
+            // The running root function is part of the thread node
+            List<GroupNode> threadNodes = streamedCga.getThreadNodes();
+            assertEquals("Number of thread nodes", 1, threadNodes.size());
+            assertRoot(threadNodes.get(0).getChildren(), 1L, half / 2, half / 2 * 80L, half / 2 * 40L, half / 2, half / 2 * 40L);
+
+            // The range queries read the callstack until it is indexed, functions 2 and 14 are truncated
+            assertRangeCallGraph(streamedCga, 300, 1380, 5, 6);
+            Collection<AggregatedCalledFunction> rangeRoots = getRangeRoots(streamedCga, 250, 1420);
+            assertRoot(rangeRoots, 0L, 7, 5 * 80 + 30 + 20, 5 * 40 + 30 + 10, 6, 5 * 40 + 10);
+            assertRoot(rangeRoots, 1L, 6, 6 * 80, 6 * 40, 6, 6 * 40);
+            assertTrue("Empty range", streamedCga.getCallGraph(385, 395).isEmpty());
+
+            // A callee of the running root function is completed
+            fixture.modifyAttribute(half * 100L + 10, TmfStateValue.newValueLong(2), quark1);
+            fixture.modifyAttribute(half * 100L + 50, TmfStateValue.nullValue(), quark1);
+            assertTrue(streamedCga.stream(false));
+            assertEquals("Number of root functions", half, streamedCga.getRootFunctions().size());
+            segmentStore = streamedCga.getSegmentStore();
+            assertNotNull(segmentStore);
+            assertEquals("Number of segments", half * 2 + 1, segmentStore.size());
+            // The running function is not counted in the calls, its callee is
+            Collection<AggregatedCalledFunction> roots = streamedCga.getThreadNodes().get(0).getChildren();
+            assertRoot(roots, 0L, half / 2 + 1, (half / 2 + 1) * 80L, (half / 2 + 1) * 40L, half / 2 + 1, (half / 2 + 1) * 40L);
+            assertRoot(roots, 1L, half / 2, half / 2 * 80L + 50, half / 2 * 40L + 10, half / 2 + 1, (half / 2 + 1) * 40L);
+            // The nodes published by the previous update are not modified
+            assertRoot(threadNodes.get(0).getChildren(), 1L, half / 2, half / 2 * 80L, half / 2 * 40L, half / 2, half / 2 * 40L);
+
+            // Complete the state system
+            fixture.modifyAttribute(half * 100L + 80, TmfStateValue.nullValue(), quark0);
+            for (int i = half + 1; i < NB_ROOT_FUNCTIONS; i++) {
+                addRootFunction(fixture, quark0, quark1, i);
+            }
+            fixture.closeHistory(NB_ROOT_FUNCTIONS * 100L + 1);
+            assertTrue(streamedCga.stream(true));
+
+            assertTrue(builtCga.iterate());
+            ISegmentStore<@NonNull ISegment> builtStore = builtCga.getSegmentStore();
+            segmentStore = streamedCga.getSegmentStore();
+            assertNotNull(builtStore);
+            assertNotNull(segmentStore);
+            assertEquals("Number of segments", NB_ROOT_FUNCTIONS * 2, segmentStore.size());
+            assertArrayEquals("Segments", builtStore.toArray(), segmentStore.toArray());
+            assertEquals("Root functions", builtCga.getRootFunctions(), streamedCga.getRootFunctions());
+
+            // The time range index is available once the stream is complete
+            assertRangeCallGraph(streamedCga, 0, NB_ROOT_FUNCTIONS * 100L, NB_ROOT_FUNCTIONS / 2, NB_ROOT_FUNCTIONS / 2);
+        } finally {
+            streamedCga.dispose();
+            builtCga.dispose();
+        }
+    }
+
+    /**
+     * Test that the CPU times that are unknown while the call graph is
+     * streamed are resolved once the stream is complete
+     */
+    @Test
+    public void streamingCpuTimesTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, CallGraphAnalysisStub.THREAD_PATH, CallGraphAnalysisStub.CALLSTACK_PATH);
+        int quark0 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_0);
+        int quark1 = fixture.getQuarkRelativeAndAdd(parentQuark, QUARK_1);
+
+        CallGraphAnalysisStub streamedCga = new CallGraphAnalysisStub(fixture);
+        CpuTimeProvider cpuTimeProvider = new CpuTimeProvider();
+        try {
+            int half = NB_ROOT_FUNCTIONS / 2;
+            for (int i = 0; i < half; i++) {
+                addRootFunction(fixture, quark0, quark1, i);
+            }
+            // Without CPU time provider, the CPU times are unknown
+            assertTrue(streamedCga.stream(false));
+
+            // The CPU time provider is available before the stream is complete
+            ModelManager.acquireModel("");
+            TmfAnalysisManager.analysisModuleCreated(cpuTimeProvider);
+            for (int i = half; i < NB_ROOT_FUNCTIONS; i++) {
+                addRootFunction(fixture, quark0, quark1, i);
+            }
+            fixture.closeHistory(NB_ROOT_FUNCTIONS * 100L + 1);
+            assertTrue(streamedCga.stream(true));
+
+            // The stub provider is always on CPU, all the functions are counted
+            for (ICalledFunction function : streamedCga.getRootFunctions()) {
+                assertEquals("CPU time", function.getLength(), function.getCpuTime());
+            }
+            for (AggregatedCalledFunction root : streamedCga.getThreadNodes().get(0).getChildren()) {
+                assertEquals("CPU time of " + root.getSymbol(), root.getDuration(), root.getCpuTime());
+            }
+        } finally {
+            streamedCga.dispose();
+            cpuTimeProvider.dispose();
+            ModelManager.releaseModel("");
+        }
+    }
+
+    private static void addRootFunction(ITmfStateSystemBuilder fixture, int quark0, int quark1, int i) {
+        long start = i * 100L;
+        fixture.modifyAttribute(start, TmfStateValue.newValueLong(i % 2), quark0);
+        fixture.modifyAttribute(start + 10, TmfStateValue.newValueLong(2), quark1);
+        fixture.modifyAttribute(start + 50, TmfStateValue.nullValue(), quark1);
+        fixture.modifyAttribute(start + 80, TmfStateValue.nullValue(), quark0);
+    }
 }
@@ -11,11 +11,13 @@ package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callgraph
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack.CallStackTestBase;
@@ -26,6 +28,7 @@ import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgra
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.junit.After;
@@ -95,6 +98,76 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
         }
     }
 
+    /**
+     * Test grouping the callgraph by different group descriptors. The group
+     * nodes should be computed once per descriptor and grouping should not
+     * modify the thread nodes.
+     *
+     * @throws TmfAnalysisException
+     *             Propagates exceptions from analyses
+     */
+    @Test
+    public void testGroupBy() throws TmfAnalysisException {
+        CallGraphAnalysis cga = getCallGraphModule();
+
+        try {
+            List<AggregatedCalledFunction> threadNodes = cga.getGroupNodes();
+            assertEquals(4, threadNodes.size());
+            long duration = getRootDuration(threadNodes);
+            CallStackSeries series = getModule().getCallStackSeries().iterator().next();
+
+            // Group all the threads together
+            cga.setGroupBy(series.getAllGroup());
+            List<AggregatedCalledFunction> allNodes = cga.getGroupNodes();
+            assertEquals(1, allNodes.size());
+            assertSame(allNodes, cga.getGroupNodes());
+            assertEquals(duration, getRootDuration(allNodes));
+
+            // Group by process
+            cga.setGroupBy(series.getRootGroup());
+            List<AggregatedCalledFunction> processNodes = cga.getGroupNodes();
+            assertEquals(2, processNodes.size());
+            assertSame(processNodes, cga.getGroupNodes());
+            assertEquals(duration, getRootDuration(processNodes));
+
+            // The nodes of each group are kept when changing the group
+            cga.setGroupBy(series.getAllGroup());
+            assertSame(allNodes, cga.getGroupNodes());
+            cga.setGroupBy(series.getRootGroup());
+            assertSame(processNodes, cga.getGroupNodes());
+
+            // The thread nodes should not have been modified
+            cga.setGroupBy(null);
+            threadNodes = cga.getGroupNodes();
+            assertEquals(4, threadNodes.size());
+            assertEquals(duration, getRootDuration(threadNodes));
+            for (AggregatedCalledFunction rootNode : threadNodes) {
+                GroupNode groupNode = (GroupNode) rootNode;
+                ICallStackElement parentElement = groupNode.getElement().getParentElement();
+                assertNotNull(parentElement);
+                ICallStackElement processElement = parentElement.getParentElement();
+                assertNotNull(processElement);
+                if (processElement.getName().equals("1")) {
+                    verifyProcess1(groupNode);
+                } else {
+                    verifyProcess5(groupNode);
+                }
+            }
+        } finally {
+            cga.dispose();
+        }
+    }
+
+    private static long getRootDuration(Collection<AggregatedCalledFunction> groupNodes) {
+        long duration = 0;
+        for (AggregatedCalledFunction groupNode : groupNodes) {
+            for (AggregatedCalledFunction function : groupNode.getChildren()) {
+                duration += function.getDuration();
+            }
+        }
+        return duration;
+    }
+
     private static void verifyProcess1(GroupNode groupNode) {
         ICallStackElement parentElement2 = groupNode.getElement().getParentElement();
         assertNotNull(parentElement2);
@@ -309,7 +382,7 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
      */
     @Test
     public void testCallGraphWithCpuTime() throws TmfAnalysisException {
-        IHostModel model = ModelManager.getModelFor("callstack.xml");
+        IHostModel model = ModelManager.acquireModel("callstack.xml");
         // Assign it to a variable because the model uses weak hash map, we
         // don't want it garbage-collected before the end of the test.
         ICpuTimeProvider cpuTimeProvider = new ICpuTimeProvider() {
@@ -377,6 +450,7 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
             }
         } finally {
             cga.dispose();
+            ModelManager.releaseModel("callstack.xml");
         }
 
     }
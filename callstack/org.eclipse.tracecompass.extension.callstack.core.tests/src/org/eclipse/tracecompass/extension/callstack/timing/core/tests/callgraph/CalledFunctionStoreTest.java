@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CalledFunctionStore;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.SymbolTable;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Test the {@link CalledFunctionStore} compact store
+ *
+ * @author Geneviève Bastien
+ */
+public class CalledFunctionStoreTest {
+
+    private static final int NB_FUNCTIONS = 40000;
+
+    private CalledFunctionStore fStore = new CalledFunctionStore();
+
+    /**
+     * Fill the store with the following functions:
+     *
+     * <pre>
+     * ---------A---------  ----B----
+     *  --C--  ----C----
+     *          --D--
+     * </pre>
+     */
+    @Before
+    public void setup() {
+        CalledFunctionStore store = new CalledFunctionStore();
+        int a = store.addFunction(0, 100, 1, "A", 1, 2, CalledFunctionStore.NO_FUNCTION, 80);
+        store.addFunction(10, 30, 2, "C", 1, 2, a, 20);
+        int c = store.addFunction(40, 90, 2, "C", 1, 2, a, 50);
+        store.addFunction(50, 70, 3, "D", 1, 2, c, 10);
+        store.addFunction(110, 150, 1, "B", 1, 2, CalledFunctionStore.NO_FUNCTION, 40);
+        fStore = store;
+    }
+
+    /**
+     * Test the values of the functions in the store
+     */
+    @Test
+    public void testFunctions() {
+        assertEquals("Size", 5, fStore.size());
+        List<ICalledFunction> roots = fStore.getRootFunctions();
+        assertEquals("Number of roots", 2, roots.size());
+
+        ICalledFunction a = roots.get(0);
+        assertEquals("Symbol", "A", a.getSymbol());
+        assertEquals("Start", 0, a.getStart());
+        assertEquals("End", 100, a.getEnd());
+        assertEquals("Depth", 1, a.getDepth());
+        assertEquals("Process ID", 1, a.getProcessId());
+        assertEquals("Thread ID", 2, a.getThreadId());
+        assertEquals("CPU time", 80, a.getCpuTime());
+        assertEquals("Self time", 30, a.getSelfTime());
+        assertNull("Parent", a.getParent());
+
+        List<ICalledFunction> children = a.getChildren();
+        assertEquals("Number of children", 2, children.size());
+        ICalledFunction c1 = children.get(0);
+        ICalledFunction c2 = children.get(1);
+        assertEquals("Symbol", "C", c1.getSymbol());
+        assertEquals("Self time", 20, c1.getSelfTime());
+        assertTrue("Children", c1.getChildren().isEmpty());
+        assertEquals("Self time", 30, c2.getSelfTime());
+        assertEquals("Parent", a, c2.getParent());
+        assertEquals("Number of children", 1, c2.getChildren().size());
+
+        ICalledFunction d = c2.getChildren().get(0);
+        assertEquals("Symbol", "D", d.getSymbol());
+        assertEquals("Depth", 3, d.getDepth());
+        assertEquals("Parent", c2, d.getParent());
+        assertEquals("Grand parent", a, NonNullUtils.checkNotNull(d.getParent()).getParent());
+
+        ICalledFunction b = roots.get(1);
+        assertEquals("Symbol", "B", b.getSymbol());
+        assertEquals("Self time", 40, b.getSelfTime());
+        assertTrue("Children", b.getChildren().isEmpty());
+
+        // The same symbols share the same ID
+        assertEquals("Symbol ID", fStore.getSymbolId(1), fStore.getSymbolId(2));
+    }
+
+    /**
+     * Test the segment store API, the segments should be sorted by start time
+     * then end time
+     */
+    @Test
+    public void testSegmentStore() {
+        ISegment[] segments = Iterables.toArray(fStore, ISegment.class);
+        assertEquals("Number of segments", 5, segments.length);
+        long[] expectedStarts = { 0, 10, 40, 50, 110 };
+        for (int i = 0; i < expectedStarts.length; i++) {
+            assertEquals("Segment start " + i, expectedStarts[i], segments[i].getStart());
+        }
+
+        Iterable<@NonNull ISegment> intersecting = fStore.getIntersectingElements(35, 60);
+        assertEquals("Intersecting segments", 3, Iterables.size(intersecting));
+        intersecting = fStore.getIntersectingElements(105);
+        assertEquals("Intersecting segments", 0, Iterables.size(intersecting));
+        intersecting = fStore.getIntersectingElements(150);
+        assertEquals("Intersecting segments", 1, Iterables.size(intersecting));
+
+        fStore.dispose();
+        assertEquals("Size", 0, fStore.size());
+    }
+
+    /**
+     * Test adding the functions of a store to another store, with a shared
+     * symbol table and with its own symbol table
+     */
+    @Test
+    public void testAddStore() {
+        SymbolTable symbols = new SymbolTable();
+        CalledFunctionStore store = new CalledFunctionStore(symbols);
+        store.addFunction(200, 300, 1, "B", 1, 3, CalledFunctionStore.NO_FUNCTION, 100);
+        CalledFunctionStore shared = new CalledFunctionStore(symbols);
+        assertEquals("Offset", 1, store.addStore(shared));
+        assertEquals("Offset", 1, store.addStore(fStore));
+        store.setCpuTime(1, 60);
+
+        assertEquals("Size", 6, store.size());
+        assertEquals("Number of roots", 3, store.getNbRootFunctions());
+        assertEquals("Root index", 1, store.getRootIndex(1));
+        assertEquals("Root index", 5, store.getRootIndex(2));
+        List<ICalledFunction> roots = store.getRootFunctions();
+        assertEquals("Symbol", "B", roots.get(0).getSymbol());
+        assertEquals("Symbol ID", store.getSymbolId(0), store.getSymbolId(5));
+
+        ICalledFunction a = roots.get(1);
+        assertEquals("Symbol", "A", a.getSymbol());
+        assertEquals("CPU time", 60, a.getCpuTime());
+        assertEquals("Self time", 30, a.getSelfTime());
+        assertEquals("Number of children", 2, a.getChildren().size());
+        ICalledFunction d = a.getChildren().get(1).getChildren().get(0);
+        assertEquals("Symbol", "D", d.getSymbol());
+        assertEquals("Parent", 3, store.getParent(4));
+    }
+
+    /**
+     * Test adding more functions than a chunk can contain, in reverse order
+     */
+    @Test
+    public void testManyFunctions() {
+        CalledFunctionStore store = new CalledFunctionStore();
+        for (int i = NB_FUNCTIONS; i > 0; i--) {
+            store.addFunction(i * 10L, i * 10L + 5, 1, i % 10, 1, 1, CalledFunctionStore.NO_FUNCTION, 5);
+        }
+        assertEquals("Size", NB_FUNCTIONS, store.size());
+        long prevStart = Long.MIN_VALUE;
+        for (ISegment segment : store) {
+            assertTrue("Sorted segments", segment.getStart() > prevStart);
+            prevStart = segment.getStart();
+        }
+        assertEquals("Last function", 10L, store.getStart(NB_FUNCTIONS - 1));
+        assertEquals("Symbol", 1, store.getSymbol(NB_FUNCTIONS - 1));
+    }
+
+}
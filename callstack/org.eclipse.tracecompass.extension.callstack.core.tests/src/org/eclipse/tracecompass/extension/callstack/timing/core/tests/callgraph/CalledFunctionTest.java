@@ -23,7 +23,6 @@ import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgra
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CalledStringFunction;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,7 +36,7 @@ import com.google.common.collect.ImmutableList;
  */
 public class CalledFunctionTest {
 
-    private final @NonNull IHostModel fModel = ModelManager.getModelFor("test");
+    private static final @NonNull String HOST_ID = "test";
     private CalledStringFunction fFixture = null;
     private ICalledFunction f42Fixture;
     private ICalledFunction fHiFixture;
@@ -48,12 +47,12 @@ public class CalledFunctionTest {
      */
     @Before
     public void setup() {
-        ICalledFunction fixture = CalledFunctionFactory.create(10, 1010, 0, TmfStateValue.newValueString("Hello"), 0, 0, null, fModel);
+        ICalledFunction fixture = CalledFunctionFactory.create(10, 1010, 0, TmfStateValue.newValueString("Hello"), 0, 0, null, HOST_ID);
         assertTrue(fixture instanceof CalledStringFunction);
         fFixture = (CalledStringFunction) fixture;
-        ICalledFunction fixture42 = CalledFunctionFactory.create(400, 500, 1, TmfStateValue.newValueLong(0x42), 0, 0, fFixture, fModel);
+        ICalledFunction fixture42 = CalledFunctionFactory.create(400, 500, 1, TmfStateValue.newValueLong(0x42), 0, 0, fFixture, HOST_ID);
         f42Fixture = fixture42;
-        ICalledFunction hiFixture = CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, fModel);
+        ICalledFunction hiFixture = CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, HOST_ID);
         fHiFixture = hiFixture;
     }
 
@@ -62,9 +61,9 @@ public class CalledFunctionTest {
      * value
      */
     public void createValid() {
-        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueLong(0), 0, 0, null, fModel));
-        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueInt(0), 0, 0, null, fModel));
-        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueString(""), 0, 0, null, fModel));
+        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueLong(0), 0, 0, null, HOST_ID));
+        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueInt(0), 0, 0, null, HOST_ID));
+        assertNotNull(CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueString(""), 0, 0, null, HOST_ID));
     }
 
     /**
@@ -72,7 +71,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidDouble() {
-        CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueDouble(3.14), 0, 0, null, fModel);
+        CalledFunctionFactory.create(0, 0, 0, TmfStateValue.newValueDouble(3.14), 0, 0, null, HOST_ID);
     }
 
     /**
@@ -80,7 +79,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidNull() {
-        CalledFunctionFactory.create(0, 0, 0, TmfStateValue.nullValue(), 0, 0, null, fModel);
+        CalledFunctionFactory.create(0, 0, 0, TmfStateValue.nullValue(), 0, 0, null, HOST_ID);
     }
 
     /**
@@ -88,7 +87,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidTimeRange() {
-        CalledFunctionFactory.create(10, -10, 0, "", 0, 0, null, fModel);
+        CalledFunctionFactory.create(10, -10, 0, "", 0, 0, null, HOST_ID);
     }
 
     /**
@@ -96,7 +95,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidTimeRangeStateLong() {
-        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueLong(42), 0, 0, null, fModel);
+        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueLong(42), 0, 0, null, HOST_ID);
     }
 
     /**
@@ -104,7 +103,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidTimeRangeStateInteger() {
-        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueInt(42), 0, 0, null, fModel);
+        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueInt(42), 0, 0, null, HOST_ID);
     }
 
     /**
@@ -112,7 +111,7 @@ public class CalledFunctionTest {
      */
     @Test(expected = IllegalArgumentException.class)
     public void createInvalidTimeRangeStateString() {
-        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueString("42"), 0, 0, null, fModel);
+        CalledFunctionFactory.create(10, -10, 0, TmfStateValue.newValueString("42"), 0, 0, null, HOST_ID);
     }
 
     /**
@@ -121,7 +120,7 @@ public class CalledFunctionTest {
     @Test
     public void testAddChildOk1() {
         assertNotNull(fFixture);
-        CalledFunction newchild = (CalledFunction) CalledFunctionFactory.create(100, 200, 1, TmfStateValue.newValueInt(0x64), 0, 0, fFixture, fModel);
+        CalledFunction newchild = (CalledFunction) CalledFunctionFactory.create(100, 200, 1, TmfStateValue.newValueInt(0x64), 0, 0, fFixture, HOST_ID);
         ICalledFunction hiFixture = fHiFixture;
         ICalledFunction fixture42 = f42Fixture;
         assertNotNull(hiFixture);
@@ -137,7 +136,7 @@ public class CalledFunctionTest {
     @Test
     public void testAddChildOk2() {
         assertNotNull(fFixture);
-        CalledStringFunction newchild = CalledFunctionFactory.create(450, 490, 1, "OK", 0, 0, f42Fixture, fModel);
+        CalledStringFunction newchild = CalledFunctionFactory.create(450, 490, 1, "OK", 0, 0, f42Fixture, HOST_ID);
         ICalledFunction hiFixture = fHiFixture;
         ICalledFunction fixture42 = f42Fixture;
         assertNotNull(hiFixture);
@@ -153,7 +152,7 @@ public class CalledFunctionTest {
     @Test
     public void testAddChildOk3() {
         assertNotNull(fFixture);
-        CalledStringFunction newchild = CalledFunctionFactory.create(450, 490, 1, "OK", 0, 0, fHiFixture, fModel);
+        CalledStringFunction newchild = CalledFunctionFactory.create(450, 490, 1, "OK", 0, 0, fHiFixture, HOST_ID);
         ICalledFunction hiFixture = fHiFixture;
         ICalledFunction fixture42 = f42Fixture;
         assertNotNull(hiFixture);
@@ -189,7 +188,7 @@ public class CalledFunctionTest {
     @Test
     public void testEquals() {
         assertEquals(fFixture, fFixture);
-        assertEquals(fHiFixture, CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, fModel));
+        assertEquals(fHiFixture, CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, HOST_ID));
         assertNotEquals(fFixture, f42Fixture);
         assertNotEquals(fFixture, fHiFixture);
         assertNotEquals(fFixture, null);
@@ -278,10 +277,10 @@ public class CalledFunctionTest {
     @Test
     public void testHashCode() {
         assertEquals(f42Fixture.hashCode(), f42Fixture.hashCode());
-        ICalledFunction calledFunction = CalledFunctionFactory.create(400, 500, 1, TmfStateValue.newValueLong(0x42), 0, 0, fFixture, fModel);
+        ICalledFunction calledFunction = CalledFunctionFactory.create(400, 500, 1, TmfStateValue.newValueLong(0x42), 0, 0, fFixture, HOST_ID);
         assertEquals(f42Fixture, calledFunction);
         assertEquals(f42Fixture.hashCode(), calledFunction.hashCode());
-        calledFunction = CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, fModel);
+        calledFunction = CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, HOST_ID);
         assertEquals(fHiFixture, calledFunction);
         assertEquals(fHiFixture.hashCode(), calledFunction.hashCode());
     }
@@ -295,4 +294,30 @@ public class CalledFunctionTest {
         assertEquals("[400, 500] Duration: 100, Self Time: 100", f42Fixture.toString());
         assertEquals("[20, 50] Duration: 30, Self Time: 30", fHiFixture.toString());
     }
+
+    /**
+     * Test the deprecated factory methods, the CPU time is provided by the
+     * model given to them
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testCreateWithModel() {
+        IHostModel model = new IHostModel() {
+            @Override
+            public int getThreadOnCpu(int cpu, long t) {
+                return IHostModel.UNKNOWN_TID;
+            }
+
+            @Override
+            public long getCpuTime(int tid, long start, long end) {
+                return (end - start) / 2;
+            }
+        };
+        ICalledFunction function = CalledFunctionFactory.create(400, 500, 1, TmfStateValue.newValueLong(0x42), 0, 0, fFixture, model);
+        assertEquals(f42Fixture, function);
+        assertEquals(50, function.getCpuTime());
+        function = CalledFunctionFactory.create(20, 50, 1, "Hi", 0, 0, fFixture, model);
+        assertEquals(fHiFixture, function);
+        assertEquals(15, function.getCpuTime());
+    }
 }
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.QuantileSketch;
+import org.junit.Test;
+
+/**
+ * Test the {@link QuantileSketch} class
+ *
+ * @author Geneviève Bastien
+ */
+public class QuantileSketchTest {
+
+    private static final int NB_VALUES = 10000;
+    private static final double ACCURACY = QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+
+    private static void assertQuantile(String msg, double expected, QuantileSketch sketch, double quantile) {
+        // The estimated value is within the relative accuracy, plus rounding
+        assertEquals(msg, expected, sketch.getQuantile(quantile), expected * ACCURACY + 1);
+    }
+
+    /**
+     * Test the quantiles of a uniform distribution
+     */
+    @Test
+    public void testQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue("Empty sketch", Double.isNaN(sketch.getQuantile(0.5)));
+
+        for (int i = 1; i <= NB_VALUES; i++) {
+            sketch.add(i);
+        }
+        // Unknown times are not counted
+        sketch.add(-1);
+        assertEquals("Count", NB_VALUES, sketch.getCount());
+        assertQuantile("Minimum", 1, sketch, 0);
+        assertQuantile("Median", 5000, sketch, 0.5);
+        assertQuantile("99th percentile", 9900, sketch, 0.99);
+        assertQuantile("99.9th percentile", 9990, sketch, 0.999);
+        assertQuantile("Maximum", NB_VALUES, sketch, 1);
+    }
+
+    /**
+     * Test that merging sketches gives the same quantiles as adding all the
+     * values to one sketch
+     */
+    @Test
+    public void testMerge() {
+        QuantileSketch full = new QuantileSketch();
+        QuantileSketch low = new QuantileSketch();
+        QuantileSketch high = new QuantileSketch();
+        for (int i = 0; i < NB_VALUES; i++) {
+            full.add(i);
+            if (i < NB_VALUES / 4) {
+                low.add(i);
+            } else {
+                high.add(i);
+            }
+        }
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(high);
+        merged.merge(low);
+        assertEquals("Count", full.getCount(), merged.getCount());
+        assertEquals("Count of the merged sketch", NB_VALUES / 4, low.getCount());
+        for (double quantile : new double[] { 0, 0.25, 0.5, 0.99, 0.999, 1 }) {
+            assertEquals("Quantile " + quantile, full.getQuantile(quantile), merged.getQuantile(quantile), 0);
+        }
+    }
+
+    /**
+     * Test that the memory is bounded when the values span many orders of
+     * magnitude, the highest quantiles should stay accurate
+     */
+    @Test
+    public void testMaxBuckets() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 100);
+        long value = 1;
+        for (int i = 0; i < 60; i++) {
+            sketch.add(value);
+            value *= 2;
+        }
+        assertEquals("Count", 60, sketch.getCount());
+        assertQuantile("Maximum", value / 2, sketch, 1);
+        assertTrue("Collapsed minimum", sketch.getQuantile(0) > 1);
+    }
+
+    /**
+     * Test that merging sketches whose buckets are collapsed gives the same
+     * quantiles as adding all the values to one sketch
+     */
+    @Test
+    public void testMergeMaxBuckets() {
+        QuantileSketch full = new QuantileSketch(ACCURACY, 100);
+        QuantileSketch even = new QuantileSketch(ACCURACY, 100);
+        QuantileSketch odd = new QuantileSketch(ACCURACY, 100);
+        long value = 1;
+        for (int i = 0; i < 60; i++) {
+            full.add(value);
+            (i % 2 == 0 ? even : odd).add(value);
+            value *= 2;
+        }
+        QuantileSketch merged = new QuantileSketch(ACCURACY, 100);
+        merged.merge(even);
+        merged.merge(odd);
+        assertEquals("Count", full.getCount(), merged.getCount());
+        for (double quantile : new double[] { 0, 0.25, 0.5, 0.99, 1 }) {
+            assertEquals("Quantile " + quantile, full.getQuantile(quantile), merged.getQuantile(quantile), 0);
+        }
+    }
+
+}
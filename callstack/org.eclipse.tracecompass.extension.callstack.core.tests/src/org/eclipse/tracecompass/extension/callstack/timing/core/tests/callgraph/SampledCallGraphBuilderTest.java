@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.AggregatedCalledFunction;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.GroupNode;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.SampledCallGraphBuilder;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.SymbolTable;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.junit.Test;
+
+/**
+ * Test the aggregation of sampled stacks by the {@link SampledCallGraphBuilder}
+ *
+ * @author Geneviève Bastien
+ */
+public class SampledCallGraphBuilderTest {
+
+    private static final int MAX_DEPTH = 3;
+
+    private static @Nullable AggregatedCalledFunction getChild(AggregatedCalledFunction function, Object symbol) {
+        for (AggregatedCalledFunction child : function.getChildren()) {
+            if (child.getSymbol().equals(symbol)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static AggregatedCalledFunction assertFunction(AggregatedCalledFunction parent, Object symbol, long duration, long selfTime) {
+        AggregatedCalledFunction function = getChild(parent, symbol);
+        assertNotNull(String.valueOf(symbol), function);
+        assertEquals(String.valueOf(symbol), duration, function.getDuration());
+        assertEquals(String.valueOf(symbol), selfTime, function.getSelfTime());
+        assertEquals(parent.getDepth() + 1, function.getDepth());
+        return function;
+    }
+
+    private static void sample(SampledCallGraphBuilder builder, ICallStackLeafElement element, Object[] buffer, long weight, Object... stack) {
+        // Reuse the same buffer for all samples, like a provider would
+        Arrays.fill(buffer, "");
+        System.arraycopy(stack, 0, buffer, 0, stack.length);
+        builder.sample(element, buffer, stack.length, weight);
+    }
+
+    /**
+     * Test the aggregated durations and self times of the samples of two
+     * threads
+     */
+    @Test
+    public void testSamples() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        ss.getQuarkAbsoluteAndAdd(CallStackStateProvider.PROCESSES, "1", "2", CallStackStateProvider.CALL_STACK, "1");
+        ss.getQuarkAbsoluteAndAdd(CallStackStateProvider.PROCESSES, "1", "3", CallStackStateProvider.CALL_STACK, "1");
+        CallStackSeries series = new CallStackSeries(ss, Arrays.asList(new String[] { CallStackStateProvider.PROCESSES, "*" }, new String[] { "*" }, new String[] { CallStackStateProvider.CALL_STACK }), 0, "", "", null);
+        List<ICallStackLeafElement> elements = series.getLeafElements();
+        assertEquals(2, elements.size());
+        ICallStackLeafElement thread2 = elements.get(0);
+        ICallStackLeafElement thread3 = elements.get(1);
+
+        SampledCallGraphBuilder builder = new SampledCallGraphBuilder("", MAX_DEPTH, new SymbolTable());
+        Object[] buffer = new Object[5];
+        sample(builder, thread2, buffer, 10, "main", "a");
+        sample(builder, thread3, buffer, 7, "main", "a", "x", "y", "z");
+        sample(builder, thread2, buffer, 10, "main", "a");
+        sample(builder, thread2, buffer, 5, "main", "b", "c");
+        sample(builder, thread2, buffer, 1, "main");
+        sample(builder, thread2, buffer, 3);
+
+        List<GroupNode> nodes = builder.getGroupNodes();
+        assertEquals(2, nodes.size());
+        GroupNode node2 = nodes.get(0);
+        assertSame(thread2, node2.getElement());
+        AggregatedCalledFunction main = assertFunction(node2, "main", 26, 1);
+        assertEquals(1, node2.getChildren().size());
+        assertEquals(2, main.getChildren().size());
+        assertFunction(main, "a", 20, 20);
+        AggregatedCalledFunction b = assertFunction(main, "b", 5, 0);
+        assertFunction(b, "c", 5, 5);
+
+        // The stack deeper than the maximum depth is truncated
+        GroupNode node3 = nodes.get(1);
+        assertSame(thread3, node3.getElement());
+        main = assertFunction(node3, "main", 7, 0);
+        AggregatedCalledFunction a = assertFunction(main, "a", 7, 0);
+        AggregatedCalledFunction x = assertFunction(a, "x", 7, 7);
+        assertFalse(x.hasChildren());
+
+        ss.dispose();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.junit.Test;
+
+/**
+ * Test the index of the elements of a {@link CallStackSeries}
+ *
+ * @author Geneviève Bastien
+ */
+public class CallStackSeriesTest {
+
+    private static final List<String[]> PATTERNS = Arrays.asList(new String[] { CallStackStateProvider.PROCESSES, "*" }, new String[] { "*" }, new String[] { CallStackStateProvider.CALL_STACK });
+
+    private static void addCallStack(ITmfStateSystemBuilder ss, String process, String thread) {
+        ss.getQuarkAbsoluteAndAdd(CallStackStateProvider.PROCESSES, process, thread, CallStackStateProvider.CALL_STACK, "1");
+    }
+
+    /**
+     * Test that the elements are kept between requests and that the new
+     * callstacks are added to the index while the state system is being
+     * built
+     */
+    @Test
+    public void testGrowingSeries() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        CallStackSeries series = new CallStackSeries(ss, PATTERNS, 0, "", "", null);
+        List<ICallStackLeafElement> addedElements = new ArrayList<>();
+        series.addListener((s, elements) -> addedElements.addAll(elements));
+
+        assertTrue(series.getLeafElements().isEmpty());
+
+        addCallStack(ss, "1", "2");
+        List<ICallStackLeafElement> leafElements = series.getLeafElements();
+        assertEquals(1, leafElements.size());
+        assertEquals(leafElements, addedElements);
+        ICallStackLeafElement thread2 = leafElements.get(0);
+        List<ICallStackElement> rootElements = series.getRootElements();
+        assertEquals(1, rootElements.size());
+        ICallStackElement process1 = rootElements.get(0);
+
+        // Without new attributes, the same elements should be returned
+        assertSame(leafElements, series.getLeafElements());
+        assertSame(rootElements, series.getRootElements());
+
+        // Add a thread to the process and a new process
+        addedElements.clear();
+        addCallStack(ss, "1", "3");
+        addCallStack(ss, "4", "5");
+        leafElements = series.getLeafElements();
+        assertEquals(3, leafElements.size());
+        assertSame(thread2, leafElements.get(0));
+        assertEquals(2, addedElements.size());
+        assertEquals(leafElements.subList(1, 3), addedElements);
+        rootElements = series.getRootElements();
+        assertEquals(2, rootElements.size());
+        assertSame(process1, rootElements.get(0));
+        assertEquals(2, process1.getChildren().size());
+
+        // Attributes added under an existing callstack do not add elements
+        addedElements.clear();
+        ss.getQuarkAbsoluteAndAdd(CallStackStateProvider.PROCESSES, "1", "2", CallStackStateProvider.CALL_STACK, "2");
+        assertEquals(leafElements, series.getLeafElements());
+        assertTrue(addedElements.isEmpty());
+
+        ss.dispose();
+    }
+
+    /**
+     * Test that the leaf elements are in the order of the tree of elements,
+     * even when a callstack is added under an element after callstacks of
+     * the next elements
+     */
+    @Test
+    public void testLeafOrder() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        CallStackSeries series = new CallStackSeries(ss, PATTERNS, 0, "", "", null);
+        List<ICallStackLeafElement> addedElements = new ArrayList<>();
+        series.addListener((s, elements) -> addedElements.addAll(elements));
+
+        addCallStack(ss, "1", "2");
+        addCallStack(ss, "4", "5");
+        assertEquals(2, series.getLeafElements().size());
+
+        addedElements.clear();
+        addCallStack(ss, "1", "3");
+        List<ICallStackLeafElement> leafElements = series.getLeafElements();
+        assertEquals(3, leafElements.size());
+        assertEquals(1, addedElements.size());
+        assertSame(addedElements.get(0), leafElements.get(1));
+
+        // The leaves are the same as when the series is created after the callstacks
+        CallStackSeries newSeries = new CallStackSeries(ss, PATTERNS, 0, "", "", null);
+        List<ICallStackLeafElement> expected = newSeries.getLeafElements();
+        assertEquals(expected.size(), leafElements.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), leafElements.get(i).getName());
+        }
+
+        ss.dispose();
+    }
+
+}
@@ -12,26 +12,35 @@ package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs.CallStackAnalysisStub;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CalledFunctionFactory;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.CallStackLeafElement;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStack;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
 import org.junit.Test;
 
 /**
@@ -85,7 +94,7 @@ public class CallStackTest extends CallStackTestBase {
 
     private static void verifyProcess1(ICallStackElement element) {
         Collection<ICallStackElement> children = element.getChildren();
-        IHostModel model = ModelManager.getModelFor("");
+        String hostId = "";
         for (ICallStackElement thread : children) {
             assertEquals(element, thread.getParentElement());
             // Make sure the element does not return any call list
@@ -109,18 +118,18 @@ public class CallStackTest extends CallStackTestBase {
                 /* Check the first level */
                 List<ICalledFunction> callList = callStack.getCallListAtDepth(1, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(2, callList.size());
-                assertEquals(CalledFunctionFactory.create(1L, 10L, 1, "op1", 1, 2, null, model), callList.get(0));
-                assertEquals(CalledFunctionFactory.create(12L, 20L, 1, "op4", 1, 2, null, model), callList.get(1));
+                assertEquals(CalledFunctionFactory.create(1L, 10L, 1, "op1", 1, 2, null, hostId), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(12L, 20L, 1, "op4", 1, 2, null, hostId), callList.get(1));
 
                 /* Check the second level */
                 callList = callStack.getCallListAtDepth(2, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(3L, 7L, 2, "op2", 1, 2, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(3L, 7L, 2, "op2", 1, 2, null, hostId), callList.get(0));
 
                 /* Check the third level */
                 callList = callStack.getCallListAtDepth(3, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(4L, 5L, 3, "op3", 1, 2, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(4L, 5L, 3, "op3", 1, 2, null, hostId), callList.get(0));
             }
                 break;
             case "3": {
@@ -142,13 +151,13 @@ public class CallStackTest extends CallStackTestBase {
                 /* Check the first level */
                 List<ICalledFunction> callList = callStack.getCallListAtDepth(1, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(3L, 20L, 1, "op2", 1, 3, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(3L, 20L, 1, "op2", 1, 3, null, hostId), callList.get(0));
 
                 /* Check the second level */
                 callList = callStack.getCallListAtDepth(2, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(2, callList.size());
-                assertEquals(CalledFunctionFactory.create(5L, 6L, 2, "op3", 1, 3, null, model), callList.get(0));
-                assertEquals(CalledFunctionFactory.create(7L, 13L, 2, "op2", 1, 3, null, model), callList.get(1));
+                assertEquals(CalledFunctionFactory.create(5L, 6L, 2, "op3", 1, 3, null, hostId), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(7L, 13L, 2, "op2", 1, 3, null, hostId), callList.get(1));
             }
                 break;
             default:
@@ -159,7 +168,7 @@ public class CallStackTest extends CallStackTestBase {
 
     private static void verifyProcess5(ICallStackElement element) {
         Collection<ICallStackElement> children = element.getChildren();
-        IHostModel model = ModelManager.getModelFor("");
+        String hostId = "";
         for (ICallStackElement thread : children) {
             // Make sure the element does not return any call list
             switch (thread.getName()) {
@@ -182,18 +191,18 @@ public class CallStackTest extends CallStackTestBase {
                 /* Check the first level */
                 List<ICalledFunction> callList = callStack.getCallListAtDepth(1, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(1L, 20L, 1, "op1", 1, 6, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(1L, 20L, 1, "op1", 1, 6, null, hostId), callList.get(0));
 
                 /* Check the second level */
                 callList = callStack.getCallListAtDepth(2, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(2, callList.size());
-                assertEquals(CalledFunctionFactory.create(2L, 7L, 2, "op3", 1, 6, null, model), callList.get(0));
-                assertEquals(CalledFunctionFactory.create(12L, 20L, 2, "op4", 1, 6, null, model), callList.get(1));
+                assertEquals(CalledFunctionFactory.create(2L, 7L, 2, "op3", 1, 6, null, hostId), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(12L, 20L, 2, "op4", 1, 6, null, hostId), callList.get(1));
 
                 /* Check the third level */
                 callList = callStack.getCallListAtDepth(3, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(4L, 6L, 3, "op1", 1, 6, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(4L, 6L, 3, "op1", 1, 6, null, hostId), callList.get(0));
             }
                 break;
             case "7": {
@@ -215,19 +224,19 @@ public class CallStackTest extends CallStackTestBase {
                 /* Check the first level */
                 List<ICalledFunction> callList = callStack.getCallListAtDepth(1, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(1L, 20L, 1, "op5", 1, 6, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(1L, 20L, 1, "op5", 1, 6, null, hostId), callList.get(0));
 
                 /* Check the second level */
                 callList = callStack.getCallListAtDepth(2, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(3, callList.size());
-                assertEquals(CalledFunctionFactory.create(2L, 6L, 2, "op2", 1, 6, null, model), callList.get(0));
-                assertEquals(CalledFunctionFactory.create(9L, 13L, 2, "op2", 1, 6, null, model), callList.get(1));
-                assertEquals(CalledFunctionFactory.create(15L, 19L, 2, "op2", 1, 6, null, model), callList.get(2));
+                assertEquals(CalledFunctionFactory.create(2L, 6L, 2, "op2", 1, 6, null, hostId), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(9L, 13L, 2, "op2", 1, 6, null, hostId), callList.get(1));
+                assertEquals(CalledFunctionFactory.create(15L, 19L, 2, "op2", 1, 6, null, hostId), callList.get(2));
 
                 /* Check the third level */
                 callList = callStack.getCallListAtDepth(3, START_TIME, END_TIME, 1, MONITOR);
                 assertEquals(1, callList.size());
-                assertEquals(CalledFunctionFactory.create(10L, 11L, 3, "op3", 1, 6, null, model), callList.get(0));
+                assertEquals(CalledFunctionFactory.create(10L, 11L, 3, "op3", 1, 6, null, hostId), callList.get(0));
 
             }
                 break;
@@ -306,13 +315,140 @@ public class CallStackTest extends CallStackTestBase {
         // Test a range after the first call with a resolution that should skip one call
     }
 
+    /**
+     * Test the {@link CallStack#getExtraAttributeValues(String, long[], long)}
+     * method, it should return the same values as
+     * {@link CallStack#getExtraAttribute(String, long)}
+     */
+    @Test
+    public void testExtraAttributeValues() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        int depthQuark = ss.getQuarkAbsoluteAndAdd("Processes", "1", "2", "CallStack", "1");
+        int extraQuark = ss.getQuarkAbsoluteAndAdd("Processes", "1", "2", "extra");
+        for (int i = 0; i < 10; i++) {
+            ss.modifyAttribute(i * 10L, (i % 3 == 2 ? TmfStateValue.nullValue() : TmfStateValue.newValueInt(i)), extraQuark);
+        }
+        ss.closeHistory(100L);
+        CallStack callStack = new CallStack(ss, Collections.singletonList(depthQuark), null, "", null);
+
+        long[] times = { -5, 0, 3, 10, 15, 25, 40, 41, 99, 100, 150 };
+        long[] values = callStack.getExtraAttributeValues("extra", times, -1);
+        for (int i = 0; i < times.length; i++) {
+            Object expected = callStack.getExtraAttribute("extra", times[i]);
+            assertEquals("Time " + times[i], (expected == null ? -1L : ((Integer) expected).longValue()), values[i]);
+        }
+
+        // Unknown attribute
+        values = callStack.getExtraAttributeValues("unknown", times, -1);
+        for (long value : values) {
+            assertEquals(-1L, value);
+        }
+        ss.dispose();
+    }
+
+    /**
+     * Test that {@link CallStack#getExtraAttributeValues(String, long[], long)}
+     * rejects unsorted times, even for an attribute that does not exist
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testExtraAttributeValuesUnsorted() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        int depthQuark = ss.getQuarkAbsoluteAndAdd("Processes", "1", "2", "CallStack", "1");
+        ss.closeHistory(100L);
+        CallStack callStack = new CallStack(ss, Collections.singletonList(depthQuark), null, "", null);
+        try {
+            callStack.getExtraAttributeValues("unknown", new long[] { 10, 5 }, -1);
+        } finally {
+            ss.dispose();
+        }
+    }
+
+    /**
+     * Test the {@link CallStack#getNextEventTime(long, int, boolean)} method
+     */
+    @Test
+    public void testCallStackNextEventTime() throws InterruptedException {
+        CallStack element = getElementToTest();
+
+        // The first requests are answered while the index is being built
+        assertNextEventTimes(element);
+        Job.getJobManager().join(element, null);
+        assertNextEventTimes(element);
+    }
+
+    private static void assertNextEventTimes(CallStack element) {
+        /**
+         * <pre>Function calls for this element:
+         * depth 1: (1, 20)
+         * depth 2: (2, 6), (9, 13), (15, 19)
+         * </pre>
+         */
+
+        // Navigate forward at depth 2
+        assertEquals(2L, element.getNextEventTime(START_TIME, 2, true));
+        assertEquals(6L, element.getNextEventTime(2L, 2, true));
+        assertEquals(9L, element.getNextEventTime(6L, 2, true));
+        assertEquals(9L, element.getNextEventTime(7L, 2, true));
+        assertEquals(19L, element.getNextEventTime(15L, 2, true));
+        // No more calls, the time should be returned
+        assertEquals(19L, element.getNextEventTime(19L, 2, true));
+
+        // Navigate backward at depth 2
+        assertEquals(15L, element.getNextEventTime(19L, 2, false));
+        assertEquals(6L, element.getNextEventTime(9L, 2, false));
+        assertEquals(6L, element.getNextEventTime(7L, 2, false));
+        assertEquals(2L, element.getNextEventTime(2L, 2, false));
+
+        // Navigate at any depth
+        assertEquals(1L, element.getNextEventTime(0L, 0, true));
+        assertEquals(2L, element.getNextEventTime(1L, 0, true));
+        assertEquals(1L, element.getNextEventTime(2L, 0, false));
+        assertEquals(1L, element.getNextEventTime(1L, 0, false));
+    }
+
+    /**
+     * Test the {@link CallStack#getCallListsAllDepths(long, long, long, IProgressMonitor)}
+     * method, it should return the same calls as the requests for each depth,
+     * in lists that cannot be modified
+     */
+    @Test
+    public void testCallListsAllDepths() {
+        CallStackAnalysisStub module = getModule();
+        assertNotNull(module);
+
+        long[][] ranges = { { START_TIME, END_TIME, 1 }, { 4L, 10L, 1 }, { 5L, 12L, 3 }, { 8L, 8L, 1 }, { START_TIME, END_TIME, 7 }, { END_TIME + 1, END_TIME + 3, 1 } };
+        CallStackSeries callstack = module.getCallStackSeries().iterator().next();
+        for (ICallStackLeafElement element : callstack.getLeafElements()) {
+            CallStack callStack = element.getCallStack();
+            for (long[] range : ranges) {
+                List<List<ICalledFunction>> callLists = callStack.getCallListsAllDepths(range[0], range[1], range[2], MONITOR);
+                assertEquals(callStack.getMaxDepth(), callLists.size());
+                for (int depth = 1; depth <= callStack.getMaxDepth(); depth++) {
+                    assertEquals("Depth " + depth + " of range " + Arrays.toString(range), callStack.getCallListAtDepth(depth, range[0], range[1], range[2], MONITOR), callLists.get(depth - 1));
+                }
+            }
+            // The same request should reuse the result
+            List<List<ICalledFunction>> callLists = callStack.getCallListsAllDepths(START_TIME, END_TIME, 1, MONITOR);
+            assertSame(callLists, callStack.getCallListsAllDepths(START_TIME, END_TIME, 1, MONITOR));
+            // The shared lists cannot be modified
+            try {
+                callLists.get(0).clear();
+                fail("The call lists should be unmodifiable");
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+        }
+    }
+
     /**
      * Test getting the {@link CallStack#getNextFunction(long, int)} method
      */
     @Test
     public void testCallStackNext() {
         CallStack element = getElementToTest();
-        IHostModel model = ModelManager.getModelFor("");
+        String hostId = "";
 
         /**
          * <pre>Function calls for this element:
@@ -322,19 +458,88 @@ public class CallStackTest extends CallStackTestBase {
 
         ICalledFunction function = element.getNextFunction(START_TIME, 2);
         assertNotNull(function);
-        assertEquals(CalledFunctionFactory.create(2L, 6L, 2, "op2", 1, 6, null, model), function);
+        assertEquals(CalledFunctionFactory.create(2L, 6L, 2, "op2", 1, 6, null, hostId), function);
 
         function = element.getNextFunction(function.getEnd(), 2);
         assertNotNull(function);
-        assertEquals(CalledFunctionFactory.create(9L, 13L, 2, "op2", 1, 6, null, model), function);
+        assertEquals(CalledFunctionFactory.create(9L, 13L, 2, "op2", 1, 6, null, hostId), function);
 
         function = element.getNextFunction(function.getEnd(), 2);
         assertNotNull(function);
-        assertEquals(CalledFunctionFactory.create(15L, 19L, 2, "op2", 1, 6, null, model), function);
+        assertEquals(CalledFunctionFactory.create(15L, 19L, 2, "op2", 1, 6, null, hostId), function);
 
         function = element.getNextFunction(function.getEnd(), 2);
         assertNull(function);
 
     }
 
+    /**
+     * Test the depth-first iteration over the callstack. The calls should be
+     * visited after their callees, in time order, and be the same as the
+     * calls returned at each depth.
+     */
+    @Test
+    public void testIterateOverCallStack() {
+        CallStackAnalysisStub module = getModule();
+        assertNotNull(module);
+
+        CallStackSeries callstack = module.getCallStackSeries().iterator().next();
+        for (ICallStackLeafElement element : callstack.getLeafElements()) {
+            CallStack callStack = element.getCallStack();
+            assertEquals(getExpectedCalls(callStack, START_TIME, END_TIME), getVisitedCalls(callStack, START_TIME, END_TIME));
+            assertEquals(getExpectedCalls(callStack, 5, 12), getVisitedCalls(callStack, 5, 12));
+            assertEquals(getExpectedCalls(callStack, 8, 8), getVisitedCalls(callStack, 8, 8));
+        }
+
+        // Verify the data of the calls for thread 2: op1 (1, 10) calls op2 (3, 7)
+        ICallStackLeafElement element = callstack.getLeafElements().stream()
+                .filter(e -> {
+                    ICallStackElement thread = e.getParentElement();
+                    return thread != null && thread.getName().equals("2");
+                })
+                .findFirst().get();
+        List<String> parents = new ArrayList<>();
+        List<Long> selfTimes = new ArrayList<>();
+        List<Integer> nbChildren = new ArrayList<>();
+        element.getCallStack().iterateOverCallStack(START_TIME, END_TIME, f -> {
+            ICalledFunction parent = f.getParent();
+            parents.add(parent == null ? "" : String.valueOf(parent.getSymbol()));
+            selfTimes.add(f.getSelfTime());
+            nbChildren.add(f.getChildren().size());
+            assertEquals(1, f.getProcessId());
+            assertEquals(2, f.getThreadId());
+        });
+        assertEquals(Arrays.asList("op2", "op1", "", ""), parents);
+        assertEquals(Arrays.asList(1L, 3L, 5L, 8L), selfTimes);
+        assertEquals(Arrays.asList(0, 1, 1, 0), nbChildren);
+
+        // The calls crossing the range and the calls whose callees are not visited have the same self times
+        assertEquals(Arrays.asList(1L, 3L, 5L), getSelfTimes(element.getCallStack(), 4, 8, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(5L, 8L), getSelfTimes(element.getCallStack(), START_TIME, END_TIME, 1));
+    }
+
+    private static List<Long> getSelfTimes(CallStack callStack, long start, long end, int depth) {
+        List<Long> selfTimes = new ArrayList<>();
+        callStack.iterateOverCallStack(start, end, depth, f -> selfTimes.add(f.getSelfTime()));
+        return selfTimes;
+    }
+
+    private static List<String> getVisitedCalls(CallStack callStack, long start, long end) {
+        List<String> calls = new ArrayList<>();
+        callStack.iterateOverCallStack(start, end, f -> calls.add(f.getDepth() + ":" + f.getSymbol() + ":" + f.getStart() + ":" + f.getEnd()));
+        return calls;
+    }
+
+    private static List<String> getExpectedCalls(CallStack callStack, long start, long end) {
+        List<ICalledFunction> functions = new ArrayList<>();
+        for (int depth = 1; depth <= callStack.getMaxDepth(); depth++) {
+            functions.addAll(callStack.getCallListAtDepth(depth, start, end, 1, MONITOR));
+        }
+        // Calls are nested and visited after their callees, so by end time, then deepest first
+        functions.sort(Comparator.comparingLong(ICalledFunction::getEnd).thenComparing(Comparator.comparingInt(ICalledFunction::getDepth).reversed()));
+        List<String> calls = new ArrayList<>();
+        functions.forEach(f -> calls.add(f.getDepth() + ":" + f.getSymbol() + ":" + f.getStart() + ":" + f.getEnd()));
+        return calls;
+    }
+
 }
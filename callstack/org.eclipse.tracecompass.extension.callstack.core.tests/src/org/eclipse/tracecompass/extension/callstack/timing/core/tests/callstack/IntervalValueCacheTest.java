@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.IntervalValueCache;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.Test;
+
+/**
+ * Test the {@link IntervalValueCache} class
+ *
+ * @author Geneviève Bastien
+ */
+public class IntervalValueCacheTest {
+
+    private static final int DEFAULT_VALUE = -1;
+    private static final int NB_INTERVALS = 1000;
+    private static final long INTERVAL_LENGTH = 10;
+
+    private static ITmfStateSystemBuilder createFixture() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("Test", 0L);
+        return StateSystemFactory.newStateSystem(backend);
+    }
+
+    /**
+     * Get the expected value at a time: the value of the interval, or the
+     * default value for the null intervals
+     */
+    private static int getExpected(long time) {
+        int index = (int) (time / INTERVAL_LENGTH);
+        return (index % 5 == 4 ? DEFAULT_VALUE : index);
+    }
+
+    private static void addIntervals(ITmfStateSystemBuilder fixture, int quark, int from, int to) {
+        for (int i = from; i < to; i++) {
+            fixture.modifyAttribute(i * INTERVAL_LENGTH, (i % 5 == 4 ? TmfStateValue.nullValue() : TmfStateValue.newValueInt(i)), quark);
+        }
+    }
+
+    private static IntervalValueCache createCache(ITmfStateSystemBuilder fixture, int quark) {
+        return new IntervalValueCache(fixture, quark, value -> value.isNull() ? DEFAULT_VALUE : value.unboxInt(), DEFAULT_VALUE);
+    }
+
+    /**
+     * Test requests in time order, in random order and out of the range of the
+     * state system
+     */
+    @Test
+    public void testRequests() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int quark = fixture.getQuarkAbsoluteAndAdd("value");
+        addIntervals(fixture, quark, 0, NB_INTERVALS);
+        long end = NB_INTERVALS * INTERVAL_LENGTH - 1;
+        fixture.closeHistory(end);
+
+        IntervalValueCache cache = createCache(fixture, quark);
+        for (long time = 0; time <= end; time += 3) {
+            assertEquals("Time " + time, getExpected(time), cache.getValue(time));
+        }
+
+        cache = createCache(fixture, quark);
+        Random random = new Random(1);
+        for (int i = 0; i < NB_INTERVALS; i++) {
+            long time = (long) (random.nextDouble() * end);
+            assertEquals("Time " + time, getExpected(time), cache.getValue(time));
+        }
+
+        assertEquals(DEFAULT_VALUE, cache.getValue(-1));
+        assertEquals(DEFAULT_VALUE, cache.getValue(end + 1));
+        fixture.dispose();
+    }
+
+    /**
+     * Test requests jumping forward and backward: the intervals already read
+     * are kept and the skipped intervals are not read
+     */
+    @Test
+    public void testJumps() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int quark = fixture.getQuarkAbsoluteAndAdd("value");
+        addIntervals(fixture, quark, 0, NB_INTERVALS);
+        long end = NB_INTERVALS * INTERVAL_LENGTH - 1;
+        fixture.closeHistory(end);
+
+        IntervalValueCache cache = createCache(fixture, quark);
+        assertEquals(getExpected(end), cache.getValue(end));
+        assertEquals(1, cache.size());
+        long middle = end / 2;
+        assertEquals(getExpected(middle), cache.getValue(middle));
+        int size = cache.size();
+        assertTrue("Bounded fill", size < NB_INTERVALS / 2);
+
+        // Before the first cached interval, the cached intervals are kept
+        assertEquals(getExpected(0), cache.getValue(0));
+        assertTrue("Cached intervals kept", cache.size() > size);
+        size = cache.size();
+        assertEquals(getExpected(middle + 1), cache.getValue(middle + 1));
+        assertEquals(getExpected(end), cache.getValue(end));
+        assertEquals(size, cache.size());
+
+        // Fill the gaps, the intervals are not read twice
+        for (long time = 0; time <= end; time += 3) {
+            assertEquals("Time " + time, getExpected(time), cache.getValue(time));
+        }
+        assertEquals(NB_INTERVALS, cache.size());
+        fixture.dispose();
+    }
+
+    /**
+     * Test requests while the state system is being built, the cache should
+     * follow the new intervals
+     */
+    @Test
+    public void testGrowingStateSystem() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int quark = fixture.getQuarkAbsoluteAndAdd("value");
+        IntervalValueCache cache = createCache(fixture, quark);
+
+        int half = NB_INTERVALS / 2;
+        addIntervals(fixture, quark, 0, half);
+        long halfTime = half * INTERVAL_LENGTH - 1;
+        assertEquals(getExpected(0), cache.getValue(0));
+        assertEquals(DEFAULT_VALUE, cache.getValue(halfTime + INTERVAL_LENGTH));
+
+        addIntervals(fixture, quark, half, NB_INTERVALS);
+        long end = NB_INTERVALS * INTERVAL_LENGTH - 1;
+        fixture.closeHistory(end);
+        for (long time = 0; time <= end; time += 7) {
+            assertEquals("Time " + time, getExpected(time), cache.getValue(time));
+        }
+        fixture.dispose();
+    }
+
+}
@@ -29,8 +29,11 @@ import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackAnalysis;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
 import org.eclipse.tracecompass.statesystem.core.tests.shared.utils.StateIntervalStub;
 import org.eclipse.tracecompass.statesystem.core.tests.shared.utils.StateSystemTestUtils;
@@ -129,6 +132,40 @@ public class CallStackStateSystemTest extends CallStackTestBase {
         }
     }
 
+    /**
+     * Test that the process and thread attributes have their ID as value,
+     * written once when they are added, so each one has a single interval
+     *
+     * @throws AttributeNotFoundException
+     *             Exception thrown by test
+     * @throws StateSystemDisposedException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testProcessThreadValues() throws AttributeNotFoundException, StateSystemDisposedException {
+        CallStackAnalysisStub module = getModule();
+        assertNotNull(module);
+        ITmfStateSystem ss = module.getStateSystem();
+        assertNotNull(ss);
+        List<String[]> patterns = module.getPatterns();
+
+        for (Integer processQuark : ss.getQuarks(patterns.get(0))) {
+            int processId = Integer.parseInt(ss.getAttributeName(processQuark));
+            assertSingleValue(ss, processQuark, TmfStateValue.newValueInt(processId));
+            for (Integer threadQuark : ss.getQuarks(processQuark, patterns.get(1))) {
+                long threadId = Long.parseLong(ss.getAttributeName(threadQuark));
+                assertSingleValue(ss, threadQuark, TmfStateValue.newValueLong(threadId));
+            }
+        }
+    }
+
+    private static void assertSingleValue(ITmfStateSystem ss, int quark, ITmfStateValue value) throws AttributeNotFoundException, StateSystemDisposedException {
+        List<ITmfStateInterval> intervals = StateSystemUtils.queryHistoryRange(ss, quark, ss.getStartTime(), ss.getCurrentEndTime());
+        String name = ss.getFullAttributePath(quark);
+        assertEquals("Number of intervals of " + name, 1, intervals.size());
+        assertEquals("Value of " + name, value, intervals.get(0).getStateValue());
+    }
+
     private static void verifyProcess1(ITmfStateSystem ss, String[] callStackPath, CallStackSeries callstack, List<Integer> threadQuarks) throws AttributeNotFoundException {
         for (Integer threadQuark : threadQuarks) {
             int csQuark = ss.getQuarkRelative(threadQuark, callStackPath);
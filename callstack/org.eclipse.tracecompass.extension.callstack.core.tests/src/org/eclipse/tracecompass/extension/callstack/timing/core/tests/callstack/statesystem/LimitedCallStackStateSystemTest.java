@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack.statesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.extension.callstack.core.tests.Activator;
+import org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs.LimitedCallStackAnalysisStub;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.AggregatedCalledFunction;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CalledFunctionFactory;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.SymbolTable;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStack;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackDepthCursor;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.tests.shared.utils.StateIntervalStub;
+import org.eclipse.tracecompass.statesystem.core.tests.shared.utils.StateSystemTestUtils;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTrace;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.xml.TmfXmlTraceStub;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.xml.TmfXmlTraceStubNs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the call stack state provider when the depth of the callstack is
+ * limited and when the direct recursion is folded. The trace contains direct
+ * recursive calls and exits that do not match any entry, see the layout in
+ * the trace file.
+ *
+ * @author Geneviève Bastien
+ */
+public class LimitedCallStackStateSystemTest {
+
+    private static final String CALLSTACK_FILE = "testfiles/traces/callstack_recursion.xml";
+    private static final String[] CALLSTACK_PATH = { CallStackStateProvider.PROCESSES, "1", "2", CallStackStateProvider.CALL_STACK };
+    private static final String HOST_ID = "host";
+
+    private ITmfTrace fTrace;
+    private final List<LimitedCallStackAnalysisStub> fModules = new ArrayList<>();
+
+    /**
+     * Setup the trace for the tests
+     */
+    @Before
+    public void setUp() {
+        TmfXmlTraceStub trace = new TmfXmlTraceStubNs();
+        IPath filePath = Activator.getAbsoluteFilePath(CALLSTACK_FILE);
+        IStatus status = trace.validate(null, filePath.toOSString());
+        if (!status.isOK()) {
+            fail(status.getException().getMessage());
+        }
+        try {
+            trace.initTrace(null, filePath.toOSString(), TmfEvent.class);
+        } catch (TmfTraceException e) {
+            fail(e.getMessage());
+        }
+        fTrace = trace;
+        ((TmfTrace) trace).traceOpened(new TmfTraceOpenedSignal(this, trace, null));
+    }
+
+    /**
+     * Dispose of the test data
+     */
+    @After
+    public void tearDown() {
+        for (LimitedCallStackAnalysisStub module : fModules) {
+            module.dispose();
+        }
+        fModules.clear();
+        ITmfTrace trace = fTrace;
+        if (trace != null) {
+            trace.dispose();
+        }
+    }
+
+    private @NonNull ITmfStateSystem buildStateSystem(int maxDepth, boolean foldRecursion) throws TmfAnalysisException {
+        ITmfTrace trace = fTrace;
+        assertNotNull(trace);
+        LimitedCallStackAnalysisStub module = new LimitedCallStackAnalysisStub(maxDepth, foldRecursion);
+        fModules.add(module);
+        module.setTrace(trace);
+        module.schedule();
+        assertTrue(module.waitForCompletion());
+        ITmfStateSystem ss = module.getStateSystem();
+        assertNotNull(ss);
+        return ss;
+    }
+
+    private static String[] getPath(String... path) {
+        String[] fullPath = new String[CALLSTACK_PATH.length + path.length];
+        System.arraycopy(CALLSTACK_PATH, 0, fullPath, 0, CALLSTACK_PATH.length);
+        System.arraycopy(path, 0, fullPath, CALLSTACK_PATH.length, path.length);
+        return fullPath;
+    }
+
+    /**
+     * The first depth is the same for all the providers: the unmatched exits
+     * at the start and the end of the trace are ignored
+     */
+    private static void verifyFirstDepth(ITmfStateSystem ss) {
+        List<ITmfStateInterval> expected = new ArrayList<>();
+        expected.add(new StateIntervalStub(0, 0, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(1, 19, TmfStateValue.newValueString("op1")));
+        expected.add(new StateIntervalStub(20, 21, TmfStateValue.nullValue()));
+        StateSystemTestUtils.testIntervalForAttributes(ss, expected, getPath("1"));
+    }
+
+    /**
+     * The second depth, when the recursive calls to op2 are hidden or folded
+     */
+    private static void verifySecondDepth(ITmfStateSystem ss) {
+        List<ITmfStateInterval> expected = new ArrayList<>();
+        expected.add(new StateIntervalStub(0, 1, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(2, 12, TmfStateValue.newValueString("op2")));
+        expected.add(new StateIntervalStub(13, 13, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(14, 14, TmfStateValue.newValueString("op3")));
+        expected.add(new StateIntervalStub(15, 21, TmfStateValue.nullValue()));
+        StateSystemTestUtils.testIntervalForAttributes(ss, expected, getPath("2"));
+    }
+
+    /**
+     * Test a provider that limits the depth of the callstack: the calls deeper
+     * than the limit are counted, so their exits do not pop the recorded
+     * calls, and they are not added to the state system
+     *
+     * @throws TmfAnalysisException
+     *             Exception thrown by test
+     * @throws AttributeNotFoundException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testDepthLimit() throws TmfAnalysisException, AttributeNotFoundException {
+        ITmfStateSystem ss = buildStateSystem(2, false);
+        int callStackQuark = ss.getQuarkAbsolute(CALLSTACK_PATH);
+        assertEquals("Number of depths", 2, ss.getSubAttributes(callStackQuark, false).size());
+
+        verifyFirstDepth(ss);
+        verifySecondDepth(ss);
+        assertEquals(ITmfStateSystem.INVALID_ATTRIBUTE, ss.optQuarkAbsolute(getPath("2", CallStackStateProvider.REPEAT_COUNT)));
+    }
+
+    /**
+     * Test a provider that folds the direct recursion: the recursive calls to
+     * op2 are counted in the repeat count attribute of the call that contains
+     * them, while the other calls are recorded at their depth
+     *
+     * @throws TmfAnalysisException
+     *             Exception thrown by test
+     * @throws AttributeNotFoundException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testFoldedRecursion() throws TmfAnalysisException, AttributeNotFoundException {
+        ITmfStateSystem ss = buildStateSystem(CallStackStateProvider.NO_DEPTH_LIMIT, true);
+        int callStackQuark = ss.getQuarkAbsolute(CALLSTACK_PATH);
+        assertEquals("Number of depths", 4, ss.getSubAttributes(callStackQuark, false).size());
+
+        verifyFirstDepth(ss);
+        verifySecondDepth(ss);
+
+        // The repeat count is increased on each recursive entry and decreased on each exit
+        List<ITmfStateInterval> expected = new ArrayList<>();
+        expected.add(new StateIntervalStub(0, 2, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(3, 3, TmfStateValue.newValueInt(1)));
+        expected.add(new StateIntervalStub(4, 8, TmfStateValue.newValueInt(2)));
+        expected.add(new StateIntervalStub(9, 9, TmfStateValue.newValueInt(1)));
+        expected.add(new StateIntervalStub(10, 10, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(11, 11, TmfStateValue.newValueInt(1)));
+        expected.add(new StateIntervalStub(12, 21, TmfStateValue.nullValue()));
+        StateSystemTestUtils.testIntervalForAttributes(ss, expected, getPath("2", CallStackStateProvider.REPEAT_COUNT));
+
+        // The callees of the recursive calls are one level under the folded call
+        expected.clear();
+        expected.add(new StateIntervalStub(0, 4, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(5, 7, TmfStateValue.newValueString("op3")));
+        expected.add(new StateIntervalStub(8, 21, TmfStateValue.nullValue()));
+        StateSystemTestUtils.testIntervalForAttributes(ss, expected, getPath("3"));
+
+        expected.clear();
+        expected.add(new StateIntervalStub(0, 5, TmfStateValue.nullValue()));
+        expected.add(new StateIntervalStub(6, 6, TmfStateValue.newValueString("op4")));
+        expected.add(new StateIntervalStub(7, 21, TmfStateValue.nullValue()));
+        StateSystemTestUtils.testIntervalForAttributes(ss, expected, getPath("4"));
+    }
+
+    /**
+     * Test that the folded recursive calls are read from the state system and
+     * added to the number of calls of the function
+     *
+     * @throws TmfAnalysisException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testRepeatCount() throws TmfAnalysisException {
+        ITmfStateSystem ss = buildStateSystem(CallStackStateProvider.NO_DEPTH_LIMIT, true);
+        List<Integer> quarks = new ArrayList<>();
+        for (int depth = 1; depth <= 4; depth++) {
+            quarks.add(ss.optQuarkAbsolute(getPath(String.valueOf(depth))));
+        }
+        CallStack callStack = new CallStack(ss, quarks, null, HOST_ID, null);
+
+        // op2 is entered 3 times while it is running: 2 nested calls, then 1
+        assertEquals(3, callStack.getRepeatCount(2, 2, 13));
+        assertEquals(2, callStack.getRepeatCount(2, 2, 9));
+        assertEquals(0, callStack.getRepeatCount(1, 1, 20));
+
+        // The repeat counts are read by the cursors, for the call graph
+        CallStackDepthCursor cursor = callStack.createDepthCursor(2);
+        ICalledFunction function = cursor.getNextFunction(0, null);
+        assertNotNull(function);
+        assertEquals("op2", function.getSymbol());
+        assertEquals(3, function.getRepeatCount());
+        ICalledFunction next = cursor.getNextFunction(function.getEnd(), null);
+        assertNotNull(next);
+        assertEquals("op3", next.getSymbol());
+        assertEquals(0, next.getRepeatCount());
+
+        // The functions of the callstack do not read them
+        ICalledFunction unread = callStack.getNextFunction(0, 2);
+        assertNotNull(unread);
+        assertEquals("op2", unread.getSymbol());
+        assertEquals(0, unread.getRepeatCount());
+
+        // The folded calls are part of the number of calls of the aggregated function
+        AggregatedCalledFunction root = new AggregatedCalledFunction(CalledFunctionFactory.create(0, 0, 0, "", 0, 0, null, HOST_ID), 4, new SymbolTable());
+        AggregatedCalledFunction aggregated = new AggregatedCalledFunction(function, root);
+        root.addChild(function, aggregated);
+        assertEquals(4, aggregated.getNbCalls());
+    }
+
+    /**
+     * Test a provider that both limits the depth and folds the recursion: the
+     * hidden calls are not folded and their exits, like the unmatched exits,
+     * do not modify the recorded callstack
+     *
+     * @throws TmfAnalysisException
+     *             Exception thrown by test
+     * @throws AttributeNotFoundException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testDepthLimitAndFolding() throws TmfAnalysisException, AttributeNotFoundException {
+        ITmfStateSystem ss = buildStateSystem(1, true);
+        int callStackQuark = ss.getQuarkAbsolute(CALLSTACK_PATH);
+        assertEquals("Number of depths", 1, ss.getSubAttributes(callStackQuark, false).size());
+
+        verifyFirstDepth(ss);
+        assertEquals(ITmfStateSystem.INVALID_ATTRIBUTE, ss.optQuarkAbsolute(getPath("1", CallStackStateProvider.REPEAT_COUNT)));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack.statesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.LongIntHashMap;
+import org.junit.Test;
+
+/**
+ * Test the {@link LongIntHashMap} class
+ *
+ * @author Geneviève Bastien
+ */
+public class LongIntHashMapTest {
+
+    private static final int NB_KEYS = 10000;
+
+    /**
+     * Test getting and replacing the values of a few keys
+     */
+    @Test
+    public void testPutGet() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(0));
+
+        map.put(0, 10);
+        map.put(-1, 11);
+        map.put(Long.MAX_VALUE, 12);
+        map.put(Long.MIN_VALUE, 13);
+        assertEquals(4, map.size());
+        assertEquals(10, map.get(0));
+        assertEquals(11, map.get(-1));
+        assertEquals(12, map.get(Long.MAX_VALUE));
+        assertEquals(13, map.get(Long.MIN_VALUE));
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(1));
+
+        // Replacing a value does not add a key
+        map.put(-1, 20);
+        assertEquals(4, map.size());
+        assertEquals(20, map.get(-1));
+    }
+
+    /**
+     * Test that the keys are kept when the table is resized many times
+     */
+    @Test
+    public void testResize() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < NB_KEYS; i++) {
+            map.put(i * 7L, i);
+            assertEquals(i + 1, map.size());
+        }
+        for (int i = 0; i < NB_KEYS; i++) {
+            assertEquals("Key " + i * 7L, i, map.get(i * 7L));
+            assertEquals("Key " + (i * 7L + 1), LongIntHashMap.NO_VALUE, map.get(i * 7L + 1));
+        }
+    }
+
+    /**
+     * Test keys that only differ by their high bits, like the process and
+     * thread keys of the state provider, which share slots of the table and
+     * must be found by probing
+     */
+    @Test
+    public void testProbing() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < NB_KEYS; i++) {
+            map.put((long) i << 32, i);
+            map.put(((long) i << 32) | 1, i + NB_KEYS);
+        }
+        assertEquals(NB_KEYS * 2, map.size());
+        for (int i = 0; i < NB_KEYS; i++) {
+            assertEquals(i, map.get((long) i << 32));
+            assertEquals(i + NB_KEYS, map.get(((long) i << 32) | 1));
+            assertEquals(LongIntHashMap.NO_VALUE, map.get(((long) i << 32) | 2));
+        }
+    }
+
+    /**
+     * Test that 0 is a valid value and that the negative values, which would
+     * be confused with {@link LongIntHashMap#NO_VALUE}, are refused
+     */
+    @Test
+    public void testNoValue() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(5, 0);
+        assertEquals(0, map.get(5));
+        try {
+            map.put(6, LongIntHashMap.NO_VALUE);
+            fail("Negative values should be refused");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(6));
+        assertEquals(1, map.size());
+    }
+
+}
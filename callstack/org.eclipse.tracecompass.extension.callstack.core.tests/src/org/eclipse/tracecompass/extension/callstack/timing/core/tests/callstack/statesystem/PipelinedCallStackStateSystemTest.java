@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack.statesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.tracecompass.extension.callstack.timing.core.tests.callstack.CallStackTestBase;
+import org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs.CallStackAnalysisStub;
+import org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs.PipelinedCallStackAnalysisStub;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
+import org.junit.Test;
+
+/**
+ * Test the pipelined decoding of the events by the call stack state provider:
+ * the state system should be the same as when the events are decoded in the
+ * state provider's thread
+ *
+ * @author Geneviève Bastien
+ */
+public class PipelinedCallStackStateSystemTest extends CallStackTestBase {
+
+    /**
+     * Compare the state systems built with and without the pipelined decoding
+     *
+     * @throws TmfAnalysisException
+     *             Exception thrown by test
+     * @throws AttributeNotFoundException
+     *             Exception thrown by test
+     * @throws StateSystemDisposedException
+     *             Exception thrown by test
+     */
+    @Test
+    public void testSameStateSystem() throws TmfAnalysisException, AttributeNotFoundException, StateSystemDisposedException {
+        CallStackAnalysisStub module = getModule();
+        assertNotNull(module);
+        ITmfStateSystem expected = module.getStateSystem();
+        assertNotNull(expected);
+
+        PipelinedCallStackAnalysisStub pipelined = new PipelinedCallStackAnalysisStub();
+        try {
+            pipelined.setId(PipelinedCallStackAnalysisStub.ID);
+            pipelined.setTrace(getTrace());
+            pipelined.schedule();
+            assertTrue(pipelined.waitForCompletion());
+            ITmfStateSystem actual = pipelined.getStateSystem();
+            assertNotNull(actual);
+
+            assertEquals("Number of attributes", expected.getNbAttributes(), actual.getNbAttributes());
+            for (int quark = 0; quark < expected.getNbAttributes(); quark++) {
+                String path = expected.getFullAttributePath(quark);
+                assertEquals(path, actual.getFullAttributePath(quark));
+                List<ITmfStateInterval> expectedIntervals = StateSystemUtils.queryHistoryRange(expected, quark, expected.getStartTime(), expected.getCurrentEndTime());
+                List<ITmfStateInterval> actualIntervals = StateSystemUtils.queryHistoryRange(actual, quark, actual.getStartTime(), actual.getCurrentEndTime());
+                assertEquals("Number of intervals of " + path, expectedIntervals.size(), actualIntervals.size());
+                for (int i = 0; i < expectedIntervals.size(); i++) {
+                    ITmfStateInterval expectedInterval = expectedIntervals.get(i);
+                    ITmfStateInterval actualInterval = actualIntervals.get(i);
+                    assertEquals("Start of " + path, expectedInterval.getStartTime(), actualInterval.getStartTime());
+                    assertEquals("End of " + path, expectedInterval.getEndTime(), actualInterval.getEndTime());
+                    assertEquals("Value of " + path, expectedInterval.getStateValue(), actualInterval.getStateValue());
+                }
+            }
+        } finally {
+            pipelined.dispose();
+        }
+    }
+
+}
@@ -473,6 +473,55 @@ public class AggregationTreeTest {
         cga.dispose();
     }
 
+    /**
+     * Test a function calling many different functions many times. The callees
+     * should be merged by symbol and kept in the order of their first call.
+     * The call stack's structure used in this test is shown below:
+     *
+     * <pre>
+     *                    Aggregated tree
+     * ___________1___________  =>         ______1______
+     * _2_ _3_ ... _21_ _2_ ...        _2_ _3_ ... _21_
+     * </pre>
+     */
+    @Test
+    public void wideCalleesTest() {
+        ITmfStateSystemBuilder fixture = createFixture();
+        int parentQuark = fixture.getQuarkAbsoluteAndAdd(CallGraphAnalysisStub.PROCESS_PATH, CallGraphAnalysisStub.THREAD_PATH, CallGraphAnalysisStub.CALLSTACK_PATH);
+        int nbCallees = 20;
+        int nbCalls = 5;
+        fixture.pushAttribute(0, TmfStateValue.newValueLong(1), parentQuark);
+        for (int i = 0; i < nbCallees * nbCalls; i++) {
+            fixture.pushAttribute(10 * i + 1, TmfStateValue.newValueLong(2 + i % nbCallees), parentQuark);
+            fixture.popAttribute(10 * i + 6, parentQuark);
+        }
+        long end = 10 * nbCallees * nbCalls + 1;
+        fixture.popAttribute(end, parentQuark);
+        fixture.closeHistory(end + 1);
+        // Execute the callGraphAnalysis
+        CallGraphAnalysisStub cga = new CallGraphAnalysisStub(fixture);
+        setCga(cga);
+        assertTrue(cga.iterate());
+        List<AggregatedCalledFunction> threads = cga.getCallGraph(0, end);
+        assertEquals("Number of thread nodes Found", 1, threads.size());
+        Object[] children = threads.get(0).getChildren().toArray();
+        assertEquals("Number of root functions", 1, children.length);
+        AggregatedCalledFunction main = (AggregatedCalledFunction) children[0];
+        assertEquals("Main function's duration", end, main.getDuration());
+        assertEquals("Main function's self time", end - 5 * nbCallees * nbCalls, main.getSelfTime());
+        Object[] callees = main.getChildren().toArray();
+        assertEquals("Number of callees", nbCallees, callees.length);
+        for (int i = 0; i < nbCallees; i++) {
+            AggregatedCalledFunction callee = (AggregatedCalledFunction) callees[i];
+            assertEquals("Callee symbol", 2L + i, callee.getSymbol());
+            assertEquals("Callee number of calls", nbCalls, callee.getNbCalls());
+            assertEquals("Callee duration", 5 * nbCalls, callee.getDuration());
+            assertEquals("Callee depth", 2, callee.getDepth());
+            assertTrue("Callee has no children", !callee.hasChildren());
+        }
+        cga.dispose();
+    }
+
     /**
      * Test mutliRoots state system.This tests if a root function called twice
      * will be merged into one function or not. The call stack's structure used
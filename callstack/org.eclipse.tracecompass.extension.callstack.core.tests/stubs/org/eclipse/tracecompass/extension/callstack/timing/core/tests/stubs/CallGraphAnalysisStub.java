@@ -9,6 +9,7 @@
 
 package org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs;
 
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -18,6 +19,7 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CallGraphAnalysis;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.GroupNode;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackProvider;
@@ -89,6 +91,12 @@ public class CallGraphAnalysisStub extends CallGraphAnalysis {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public int getCallStackVersion() {
+            // There is no state provider, the state system is built by the tests
+            return 0;
+        }
+
         @Override
         public List<String[]> getPatterns() {
             return super.getPatterns();
@@ -129,6 +137,44 @@ public class CallGraphAnalysisStub extends CallGraphAnalysis {
         return iterateOverCallstackSerie(fCsProvider.getCallStackSeries().iterator().next(), ModelManager.getModelFor(""), new NullProgressMonitor());
     }
 
+    /**
+     * Add the completed functions of the callstack to the call graph, as in
+     * streaming mode
+     *
+     * @param complete
+     *            Whether the callstack is completed
+     * @return The return value of the streaming step
+     */
+    public boolean stream(boolean complete) {
+        return readClosedFunctions(Collections.singletonList(fCsProvider), complete, new NullProgressMonitor());
+    }
+
+    /**
+     * Save the call graph to a file
+     *
+     * @param file
+     *            The file to write
+     */
+    public void save(Path file) {
+        writeCallGraph(file, Collections.singletonList(fCsProvider));
+    }
+
+    /**
+     * Load the call graph from a file instead of iterating over the callstack
+     *
+     * @param file
+     *            The file to read
+     * @return Whether the call graph was read from the file
+     */
+    public boolean load(Path file) {
+        return readCallGraph(file, Collections.singletonList(fCsProvider));
+    }
+
+    @Override
+    public List<GroupNode> getThreadNodes() {
+        return super.getThreadNodes();
+    }
+
     @Override
     public @NonNull Iterable<@NonNull ISegmentAspect> getSegmentAspects() {
         return Collections.EMPTY_LIST;
@@ -38,6 +38,18 @@ public class CallStackProviderStub extends CallStackStateProvider {
         super(trace);
     }
 
+    /**
+     * Constructor with a number of threads to decode the events
+     *
+     * @param trace
+     *            The trace to run this provider on
+     * @param decoderThreads
+     *            The number of threads decoding the events
+     */
+    protected CallStackProviderStub(@NonNull ITmfTrace trace, int decoderThreads) {
+        super(trace, decoderThreads);
+    }
+
     @Override
     public int getVersion() {
         return 0;
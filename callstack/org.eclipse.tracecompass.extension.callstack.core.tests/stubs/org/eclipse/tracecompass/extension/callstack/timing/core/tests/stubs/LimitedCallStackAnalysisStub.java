@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.tmf.core.statesystem.ITmfStateProvider;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * A call stack analysis stub using the call stack state provider stub that
+ * limits the depth of the callstack and may fold the direct recursion
+ *
+ * @author Geneviève Bastien
+ */
+public class LimitedCallStackAnalysisStub extends CallStackAnalysisStub {
+
+    /**
+     * The ID of this analysis, followed by the maximal depth and whether the
+     * recursion is folded
+     */
+    public static final @NonNull String ID_PREFIX = "org.eclipse.tracecompass.analysis.timing.core.tests.callstack.limited";
+
+    private final int fMaxDepth;
+    private final boolean fFoldRecursion;
+
+    /**
+     * Constructor
+     *
+     * @param maxDepth
+     *            The maximal depth of the recorded callstack, or
+     *            {@link CallStackStateProvider#NO_DEPTH_LIMIT}
+     * @param foldRecursion
+     *            Whether to fold the direct recursive calls
+     */
+    public LimitedCallStackAnalysisStub(int maxDepth, boolean foldRecursion) {
+        fMaxDepth = maxDepth;
+        fFoldRecursion = foldRecursion;
+        setId(ID_PREFIX + '.' + maxDepth + '.' + foldRecursion);
+    }
+
+    @Override
+    protected @NonNull ITmfStateProvider createStateProvider() {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            throw new NullPointerException();
+        }
+        return new LimitedCallStackProviderStub(trace, fMaxDepth, fFoldRecursion);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * A call stack state provider stub that limits the depth of the recorded
+ * callstack and may fold the direct recursion
+ *
+ * @author Geneviève Bastien
+ */
+public class LimitedCallStackProviderStub extends CallStackProviderStub {
+
+    private final int fMaxDepth;
+    private final boolean fFoldRecursion;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace to run this provider on
+     * @param maxDepth
+     *            The maximal depth of the recorded callstack, or
+     *            {@link CallStackStateProvider#NO_DEPTH_LIMIT}
+     * @param foldRecursion
+     *            Whether to fold the direct recursive calls
+     */
+    public LimitedCallStackProviderStub(@NonNull ITmfTrace trace, int maxDepth, boolean foldRecursion) {
+        super(trace);
+        fMaxDepth = maxDepth;
+        fFoldRecursion = foldRecursion;
+    }
+
+    @Override
+    public @NonNull CallStackStateProvider getNewInstance() {
+        return new LimitedCallStackProviderStub(getTrace(), fMaxDepth, fFoldRecursion);
+    }
+
+    @Override
+    protected int getMaxStackDepth() {
+        return fMaxDepth;
+    }
+
+    @Override
+    protected boolean isRecursionFolded() {
+        return fFoldRecursion;
+    }
+
+}
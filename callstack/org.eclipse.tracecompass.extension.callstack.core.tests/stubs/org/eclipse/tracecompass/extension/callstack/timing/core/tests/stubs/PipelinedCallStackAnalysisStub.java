@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.tmf.core.statesystem.ITmfStateProvider;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * A call stack analysis stub using the pipelined call stack state provider
+ * stub
+ *
+ * @author Geneviève Bastien
+ */
+public class PipelinedCallStackAnalysisStub extends CallStackAnalysisStub {
+
+    /**
+     * The ID of this analysis
+     */
+    public static final @NonNull String ID = "org.eclipse.tracecompass.analysis.timing.core.tests.callstack.pipelined";
+
+    @Override
+    protected @NonNull ITmfStateProvider createStateProvider() {
+        ITmfTrace trace = getTrace();
+        if (trace == null) {
+            throw new NullPointerException();
+        }
+        return new PipelinedCallStackProviderStub(trace);
+    }
+
+}
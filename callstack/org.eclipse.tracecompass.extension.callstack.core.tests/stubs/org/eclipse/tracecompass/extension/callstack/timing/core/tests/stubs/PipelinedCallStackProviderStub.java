@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.callstack.timing.core.tests.stubs;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * A call stack state provider stub whose events are decoded by a pool of
+ * threads, to test the pipelined decoding of the events
+ *
+ * @author Geneviève Bastien
+ */
+public class PipelinedCallStackProviderStub extends CallStackProviderStub {
+
+    private static final int DECODER_THREADS = 2;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace to run this provider on
+     */
+    public PipelinedCallStackProviderStub(@NonNull ITmfTrace trace) {
+        super(trace, DECODER_THREADS);
+    }
+
+    @Override
+    public @NonNull CallStackStateProvider getNewInstance() {
+        return new PipelinedCallStackProviderStub(getTrace());
+    }
+
+}
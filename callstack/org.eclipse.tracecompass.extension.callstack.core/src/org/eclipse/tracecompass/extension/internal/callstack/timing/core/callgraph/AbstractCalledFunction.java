@@ -19,6 +19,7 @@ import java.util.Objects;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
 import org.eclipse.tracecompass.segmentstore.core.SegmentComparators;
 
@@ -46,19 +47,40 @@ abstract class AbstractCalledFunction implements ICalledFunction {
     /**
      * Serial Version UID
      */
-    private static final long serialVersionUID = 7992199223906717340L;
+    private static final long serialVersionUID = -1407235434718236624L;
+
+    /**
+     * Value of the CPU time before it is computed. The CPU time is only
+     * computed when requested, or in bulk with
+     * {@link #setCpuTime(long)}
+     */
+    private static final long CPU_TIME_NOT_COMPUTED = Long.MIN_VALUE;
 
     protected final long fStart;
-    protected final long fEnd;
+    protected long fEnd;
     protected final int fDepth;
     private final List<ICalledFunction> fChildren = new ArrayList<>();
     private final @Nullable ICalledFunction fParent;
     protected long fSelfTime = 0;
-    private final long fCpuTime;
+    private volatile long fCpuTime = CPU_TIME_NOT_COMPUTED;
+    /*
+     * The host ID, instead of the model, so that the function is still valid
+     * once deserialized or once the model of the host was replaced
+     */
+    private final String fHostId;
+    /* The model given to the deprecated factory methods, used instead of the host's */
+    private transient @Nullable IHostModel fModel = null;
     private final int fProcessId;
     private final int fThreadId;
+    private int fRepeatCount = 0;
+    /*
+     * The table in which the symbol of this function was interned and its ID,
+     * so that the symbol is interned only once
+     */
+    private transient volatile @Nullable SymbolTable fSymbols = null;
+    private transient int fSymbolId;
 
-    public AbstractCalledFunction(long start, long end, int depth, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
+    public AbstractCalledFunction(long start, long end, int depth, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
         if (start > end) {
             throw new IllegalArgumentException(Messages.TimeError + "[" + start + "," + end + "]"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
@@ -73,7 +95,7 @@ abstract class AbstractCalledFunction implements ICalledFunction {
         if (parent instanceof AbstractCalledFunction) {
             ((AbstractCalledFunction) parent).addChild(this);
         }
-        fCpuTime = model.getCpuTime(threadId, start, end);
+        fHostId = hostId;
     }
 
     @Override
@@ -134,7 +156,110 @@ abstract class AbstractCalledFunction implements ICalledFunction {
 
     @Override
     public long getCpuTime() {
-        return fCpuTime;
+        long cpuTime = fCpuTime;
+        if (cpuTime == CPU_TIME_NOT_COMPUTED) {
+            IHostModel model = fModel;
+            if (model == null) {
+                model = ModelManager.getModelFor(fHostId);
+            }
+            cpuTime = model.getCpuTime(fThreadId, fStart, fEnd);
+            fCpuTime = cpuTime;
+        }
+        return cpuTime;
+    }
+
+    /**
+     * Get whether the CPU time of this function was computed already
+     *
+     * @return <code>true</code> if the CPU time is known
+     */
+    boolean isCpuTimeComputed() {
+        return fCpuTime != CPU_TIME_NOT_COMPUTED;
+    }
+
+    /**
+     * Set the CPU time of this function, when it is computed in bulk for many
+     * functions
+     *
+     * @param cpuTime
+     *            The CPU time of this function
+     */
+    void setCpuTime(long cpuTime) {
+        fCpuTime = cpuTime;
+    }
+
+    @Override
+    public int getRepeatCount() {
+        return fRepeatCount;
+    }
+
+    /**
+     * Set the number of direct recursive calls folded in this function
+     *
+     * @param repeatCount
+     *            The number of folded recursive calls
+     */
+    void setRepeatCount(int repeatCount) {
+        fRepeatCount = repeatCount;
+    }
+
+    /**
+     * Set the model that provides the CPU time of this function, instead of
+     * the model of its host
+     *
+     * @param model
+     *            The operating system model
+     */
+    void setModel(IHostModel model) {
+        fModel = model;
+    }
+
+    /**
+     * Get the ID of the symbol of this function in a symbol table. The symbol
+     * is interned only the first time, the ID is then kept by this function.
+     *
+     * @param symbols
+     *            The symbol table
+     * @return The ID of the symbol
+     */
+    int getSymbolId(SymbolTable symbols) {
+        if (fSymbols == symbols) {
+            return fSymbolId;
+        }
+        int symbolId = symbols.intern(getSymbol());
+        synchronized (this) {
+            // Keep the ID for the first table only, the functions are normally aggregated with one table
+            if (fSymbols == null) {
+                fSymbolId = symbolId;
+                fSymbols = symbols;
+            }
+        }
+        return symbolId;
+    }
+
+    /**
+     * Get the ID of the host whose model provides the CPU time of this
+     * function
+     *
+     * @return The ID of the host
+     */
+    String getHostId() {
+        return fHostId;
+    }
+
+    /**
+     * Close a function that was created while it was still running, with its
+     * start time as end time. Its callees may have been added already.
+     *
+     * @param end
+     *            The end time of the function
+     */
+    void close(long end) {
+        if (end < fEnd) {
+            throw new IllegalArgumentException(Messages.TimeError + "[" + fStart + "," + end + "]"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        fSelfTime += end - fEnd;
+        fEnd = end;
     }
 
     @Override
@@ -9,12 +9,11 @@
 
 package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.Nullable;
-import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 
 /**
@@ -39,9 +38,11 @@ public class AggregatedCalledFunction {
     // ------------------------------------------------------------------------
 
     private final Object fSymbol;
+    private final SymbolTable fSymbols;
+    private final int fSymbolId;
     private final int fDepth;
-    private final int fMaxDepth;
-    private final Map<Object, AggregatedCalledFunction> fChildren = new HashMap<>();
+    private volatile int fMaxDepth;
+    private final SymbolChildMap fChildren = new SymbolChildMap();
     private final @Nullable AggregatedCalledFunction fParent;
     private final AggregatedCalledFunctionStatistics fStatistics;
     private long fDuration;
@@ -59,6 +60,9 @@ public class AggregatedCalledFunction {
      */
     public AggregatedCalledFunction(ICalledFunction function, AggregatedCalledFunction parent) {
         fSymbol = function.getSymbol();
+        fSymbols = parent.fSymbols;
+        // The function keeps the ID of its symbol, it is not interned again
+        fSymbolId = fSymbols.getSymbolId(function);
         fDuration = function.getLength();
         fSelfTime = function.getLength();
         fDepth = function.getDepth();
@@ -70,15 +74,21 @@ public class AggregatedCalledFunction {
     }
 
     /**
-     * Root constructor, parent is null
+     * Root constructor, parent is null. The callees of this function will have
+     * their symbols interned in the given table, it should be shared by all
+     * the aggregated trees that may be merged together.
      *
      * @param calledFunction
      *            the called function
      * @param maxDepth
      *            the maximum depth
+     * @param symbols
+     *            The table in which to intern the symbols
      */
-    public AggregatedCalledFunction(AbstractCalledFunction calledFunction, int maxDepth) {
+    public AggregatedCalledFunction(AbstractCalledFunction calledFunction, int maxDepth, SymbolTable symbols) {
         fSymbol = calledFunction.getSymbol();
+        fSymbols = symbols;
+        fSymbolId = symbols.getSymbolId(calledFunction);
         fDuration = calledFunction.getLength();
         fSelfTime = calledFunction.getLength();
         fDepth = calledFunction.getDepth();
@@ -89,6 +99,57 @@ public class AggregatedCalledFunction {
         fStatistics = new AggregatedCalledFunctionStatistics();
     }
 
+    /**
+     * Copy constructor. It copies the data of the function, but not its
+     * callees.
+     *
+     * @param toCopy
+     *            The aggregated function to copy
+     * @param parent
+     *            The parent of the copy
+     */
+    protected AggregatedCalledFunction(AggregatedCalledFunction toCopy, @Nullable AggregatedCalledFunction parent) {
+        fSymbol = toCopy.getSymbol();
+        fSymbols = (parent == null ? toCopy.fSymbols : parent.fSymbols);
+        fSymbolId = toCopy.getSymbolId(fSymbols);
+        fDuration = toCopy.getDuration();
+        fSelfTime = toCopy.getSelfTime();
+        fDepth = toCopy.getDepth();
+        fProcessId = toCopy.getProcessId();
+        fCpuTime = toCopy.getCpuTime();
+        fMaxDepth = toCopy.getMaxDepth();
+        fParent = parent;
+        fStatistics = new AggregatedCalledFunctionStatistics();
+        fStatistics.merge(toCopy.getFunctionStatistics(), true);
+    }
+
+    /**
+     * Constructor of a callee created from a sampled stack or from a saved
+     * call graph. Its durations are added by
+     * {@link #addSample(Object[], int, long)} or set by
+     * {@link #setTimes(long, long, long)}.
+     *
+     * @param symbol
+     *            The symbol of the function
+     * @param symbolId
+     *            The ID of the symbol in the parent's symbol table
+     * @param parent
+     *            The parent of the function
+     */
+    private AggregatedCalledFunction(Object symbol, int symbolId, AggregatedCalledFunction parent) {
+        fSymbol = symbol;
+        fSymbols = parent.fSymbols;
+        fSymbolId = symbolId;
+        fDuration = 0;
+        fSelfTime = 0;
+        fDepth = parent.getDepth() + 1;
+        fProcessId = parent.getProcessId();
+        fCpuTime = 0;
+        fMaxDepth = parent.getMaxDepth();
+        fParent = parent;
+        fStatistics = new AggregatedCalledFunctionStatistics();
+    }
+
     /**
      * The function's symbol (address or name)
      *
@@ -98,6 +159,14 @@ public class AggregatedCalledFunction {
         return fSymbol;
     }
 
+    /**
+     * Get the ID of this function's symbol in the symbol table of another
+     * function
+     */
+    private int getSymbolId(SymbolTable symbols) {
+        return (symbols == fSymbols ? fSymbolId : symbols.intern(fSymbol));
+    }
+
     /**
      * The callees of the function
      *
@@ -126,16 +195,191 @@ public class AggregatedCalledFunction {
      * @param aggregatedChild
      *            The aggregated data of the callee
      */
-    public synchronized void addChild(AbstractCalledFunction child, AggregatedCalledFunction aggregatedChild) {
+    public synchronized void addChild(ICalledFunction child, AggregatedCalledFunction aggregatedChild) {
         // Update the child's statistics with itself
         fSelfTime -= aggregatedChild.getDuration();
         aggregatedChild.getFunctionStatistics().update(child);
-        AggregatedCalledFunction node = fChildren.get(aggregatedChild.getSymbol());
+        int symbolId = aggregatedChild.getSymbolId(fSymbols);
+        AggregatedCalledFunction node = fChildren.get(symbolId);
         if (node == null) {
-            fChildren.put(aggregatedChild.getSymbol(), aggregatedChild);
+            fChildren.put(symbolId, aggregatedChild);
         } else {
             merge(node, aggregatedChild, false);
-            fChildren.replace(node.getSymbol(), node);
+        }
+    }
+
+    /**
+     * Add a sampled stack under this function. The weight of the sample is
+     * added to the duration of each function of the stack and to the self
+     * time of the last one, as if they had been running for that time. The
+     * callees are created only the first time a stack is seen, so adding a
+     * sample does not allocate objects otherwise. The number of calls is not
+     * known for sampled stacks, so the statistics are not updated.
+     *
+     * @param stack
+     *            The symbols of the stack, starting with the callee of this
+     *            function
+     * @param depth
+     *            The number of symbols of the stack to add
+     * @param weight
+     *            The weight of the sample
+     */
+    synchronized void addSample(Object[] stack, int depth, long weight) {
+        if (depth <= 0) {
+            return;
+        }
+        // Like with addChild, the time of the callees is not part of this function's self time
+        fSelfTime -= weight;
+        AggregatedCalledFunction node = this;
+        for (int i = 0; i < depth; i++) {
+            Object symbol = stack[i];
+            int symbolId = fSymbols.intern(symbol);
+            AggregatedCalledFunction child = node.fChildren.get(symbolId);
+            if (child == null) {
+                child = new AggregatedCalledFunction(symbol, symbolId, node);
+                node.fChildren.put(symbolId, child);
+            }
+            child.addToDuration(weight);
+            node = child;
+        }
+        node.addToSelfTime(weight);
+    }
+
+    /**
+     * Get the callee of this function with a symbol
+     *
+     * @param symbol
+     *            The symbol of the callee
+     * @return The callee, or <code>null</code> if this function has no callee
+     *         with this symbol
+     */
+    synchronized @Nullable AggregatedCalledFunction getChild(Object symbol) {
+        return fChildren.get(fSymbols.intern(symbol));
+    }
+
+    /**
+     * Add a callee whose times were previously computed, like when reading a
+     * saved call graph. The statistics of the callee are not updated, the
+     * caller should update them with the functions of this callee.
+     *
+     * @param symbol
+     *            The symbol of the callee
+     * @param duration
+     *            The total duration of the callee
+     * @param selfTime
+     *            The total self time of the callee
+     * @param cpuTime
+     *            The total CPU time of the callee
+     * @return The new callee
+     */
+    synchronized AggregatedCalledFunction addChild(Object symbol, long duration, long selfTime, long cpuTime) {
+        int symbolId = fSymbols.intern(symbol);
+        AggregatedCalledFunction child = new AggregatedCalledFunction(symbol, symbolId, this);
+        child.setTimes(duration, selfTime, cpuTime);
+        fChildren.put(symbolId, child);
+        return child;
+    }
+
+    /**
+     * Create a callee of this function that is not added to its callees yet,
+     * to aggregate the callees of a function that is still running. It is
+     * added with {@link #mergeChild(AggregatedCalledFunction)} or
+     * {@link #addChild(ICalledFunction, AggregatedCalledFunction)} once its
+     * times are known.
+     *
+     * @param symbol
+     *            The symbol of the callee
+     * @return The new callee, with no times
+     */
+    synchronized AggregatedCalledFunction createCallee(Object symbol) {
+        return new AggregatedCalledFunction(symbol, fSymbols.intern(symbol), this);
+    }
+
+    /**
+     * Add a callee to this function. The callee is added as is if this
+     * function has no callee with the same symbol, otherwise it is merged in
+     * a copy. Unlike {@link #addChild(ICalledFunction, AggregatedCalledFunction)},
+     * the statistics of the callee are not updated.
+     *
+     * @param child
+     *            The callee to add
+     */
+    synchronized void mergeChild(AggregatedCalledFunction child) {
+        fSelfTime -= child.getDuration();
+        int symbolId = child.getSymbolId(fSymbols);
+        AggregatedCalledFunction node = fChildren.get(symbolId);
+        if (node == null) {
+            fChildren.put(symbolId, child);
+        } else {
+            node.mergeFrom(child);
+        }
+    }
+
+    /**
+     * Add to the times of this function
+     *
+     * @param duration
+     *            The duration to add
+     * @param selfTime
+     *            The self time to add
+     * @param cpuTime
+     *            The CPU time to add
+     */
+    synchronized void addTimes(long duration, long selfTime, long cpuTime) {
+        addToDuration(duration);
+        addToSelfTime(selfTime);
+        addToCpuTime(cpuTime);
+    }
+
+    /**
+     * Set the times of this function that were previously computed, like when
+     * reading a saved call graph
+     *
+     * @param duration
+     *            The total duration of the function
+     * @param selfTime
+     *            The total self time of the function
+     * @param cpuTime
+     *            The total CPU time of the function
+     */
+    synchronized void setTimes(long duration, long selfTime, long cpuTime) {
+        fDuration = duration;
+        fSelfTime = selfTime;
+        fCpuTime = cpuTime;
+    }
+
+    /**
+     * Merge another aggregated function and its callees into this one. Unlike
+     * {@link #addChild(ICalledFunction, AggregatedCalledFunction)}, the other
+     * function is not modified and none of its callees are shared with this
+     * function: the callees that do not exist in this function are copied.
+     *
+     * @param other
+     *            The aggregated function to merge into this one
+     */
+    public synchronized void mergeFrom(AggregatedCalledFunction other) {
+        addToDuration(other.getDuration());
+        addToSelfTime(other.getSelfTime());
+        addToCpuTime(other.getCpuTime());
+        fStatistics.merge(other.getFunctionStatistics(), true);
+        mergeChildrenFrom(other);
+    }
+
+    private void mergeChildrenFrom(AggregatedCalledFunction other) {
+        // The other function may be updated while it is merged
+        List<AggregatedCalledFunction> otherChildren;
+        synchronized (other) {
+            otherChildren = new ArrayList<>(other.fChildren.values());
+        }
+        for (AggregatedCalledFunction otherChild : otherChildren) {
+            AggregatedCalledFunction child = fChildren.get(otherChild.getSymbolId(fSymbols));
+            if (child == null) {
+                child = new AggregatedCalledFunction(otherChild, this);
+                child.mergeChildrenFrom(otherChild);
+                fChildren.put(child.fSymbolId, child);
+            } else {
+                child.mergeFrom(otherChild);
+            }
         }
     }
 
@@ -156,17 +400,14 @@ public class AggregatedCalledFunction {
      *            The first parent secondNode The second parent
      */
     private static void mergeChildren(AggregatedCalledFunction firstNode, AggregatedCalledFunction secondNode) {
-        for (Map.Entry<Object, AggregatedCalledFunction> FunctionEntry : secondNode.fChildren.entrySet()) {
-            Object childSymbol = NonNullUtils.checkNotNull(FunctionEntry.getKey());
-            AggregatedCalledFunction secondNodeChild = NonNullUtils.checkNotNull(FunctionEntry.getValue());
-            AggregatedCalledFunction aggregatedCalledFunction = firstNode.fChildren.get(childSymbol);
-            if (aggregatedCalledFunction == null) {
-                firstNode.fChildren.put(secondNodeChild.getSymbol(), secondNodeChild);
+        for (AggregatedCalledFunction secondNodeChild : secondNode.fChildren.values()) {
+            int childSymbolId = secondNodeChild.getSymbolId(firstNode.fSymbols);
+            AggregatedCalledFunction firstNodeChild = firstNode.fChildren.get(childSymbolId);
+            if (firstNodeChild == null) {
+                firstNode.fChildren.put(childSymbolId, secondNodeChild);
             } else {
                 // combine children
-                AggregatedCalledFunction firstNodeChild = aggregatedCalledFunction;
                 merge(firstNodeChild, secondNodeChild, true);
-                firstNode.fChildren.replace(firstNodeChild.getSymbol(), firstNodeChild);
             }
         }
     }
@@ -225,12 +466,24 @@ public class AggregatedCalledFunction {
     }
 
     /**
-     * The number of calls of a function
+     * Set the depth of the aggregated tree, when deeper functions are found
+     * while the tree is being built
+     *
+     * @param maxDepth
+     *            The depth of the aggregated tree
+     */
+    void setMaxDepth(int maxDepth) {
+        fMaxDepth = maxDepth;
+    }
+
+    /**
+     * The number of calls of a function, including the direct recursive calls
+     * folded by the state provider
      *
      * @return The number of calls of a function
      */
     public long getNbCalls() {
-        return fStatistics.getDurationStatistics().getNbElements();
+        return fStatistics.getDurationStatistics().getNbElements() + fStatistics.getRepeatCount();
     }
 
     /**
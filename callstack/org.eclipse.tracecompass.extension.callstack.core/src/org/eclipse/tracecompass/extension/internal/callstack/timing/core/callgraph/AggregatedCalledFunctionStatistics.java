@@ -28,6 +28,14 @@ public class AggregatedCalledFunctionStatistics {
     private final IStatistics<ICalledFunction> fSelfTimes;
     private final IStatistics<ICalledFunction> fCpuTimes;
     private final IStatistics<ICalledFunction> fNbCalls;
+    // The recursive calls folded by the state provider, that are not in the
+    // statistics as individual calls
+    private long fRepeatCount = 0;
+    // Sketches to estimate the percentiles of the durations, self times and
+    // CPU times, without keeping every value
+    private final QuantileSketch fDurationSketch = new QuantileSketch();
+    private final QuantileSketch fSelfTimeSketch = new QuantileSketch();
+    private final QuantileSketch fCpuTimeSketch = new QuantileSketch();
 
     /**
      * Constructor
@@ -53,6 +61,10 @@ public class AggregatedCalledFunctionStatistics {
         fSelfTimes.update(function);
         fCpuTimes.update(function);
         fNbCalls.update(function);
+        fRepeatCount += function.getRepeatCount();
+        fDurationSketch.add(function.getLength());
+        fSelfTimeSketch.add(function.getSelfTime());
+        fCpuTimeSketch.add(function.getCpuTime());
     }
 
     /**
@@ -66,6 +78,8 @@ public class AggregatedCalledFunctionStatistics {
         fDurations.merge(statisticsNode.fDurations);
         fSelfTimes.merge(statisticsNode.fSelfTimes);
         fCpuTimes.merge(statisticsNode.fCpuTimes);
+        fRepeatCount += statisticsNode.fRepeatCount;
+        mergeSketches(statisticsNode);
     }
 
     /**
@@ -83,6 +97,8 @@ public class AggregatedCalledFunctionStatistics {
         fDurations.merge(other.fDurations);
         fSelfTimes.merge(other.fSelfTimes);
         fCpuTimes.merge(other.fCpuTimes);
+        fRepeatCount += other.fRepeatCount;
+        mergeSketches(other);
         // if (!isGroup) {
         // // If the other is not a group, also update the data per call
         // fNbDataPerCall += stats.fNbDataPerCall;
@@ -94,6 +110,23 @@ public class AggregatedCalledFunctionStatistics {
         // }
     }
 
+    private void mergeSketches(AggregatedCalledFunctionStatistics other) {
+        fDurationSketch.merge(other.fDurationSketch);
+        fSelfTimeSketch.merge(other.fSelfTimeSketch);
+        fCpuTimeSketch.merge(other.fCpuTimeSketch);
+    }
+
+    /**
+     * Get the number of direct recursive calls that were folded in the called
+     * functions by the state provider. These calls are not part of the other
+     * statistics.
+     *
+     * @return The number of folded recursive calls
+     */
+    public long getRepeatCount() {
+        return fRepeatCount;
+    }
+
     /**
      * Get the statistics for the duration of the called functions
      *
@@ -121,6 +154,36 @@ public class AggregatedCalledFunctionStatistics {
         return fCpuTimes;
     }
 
+    /**
+     * Get the sketch to estimate the percentiles of the durations of the
+     * called functions
+     *
+     * @return The durations sketch
+     */
+    public QuantileSketch getDurationSketch() {
+        return fDurationSketch;
+    }
+
+    /**
+     * Get the sketch to estimate the percentiles of the self times of the
+     * called functions
+     *
+     * @return The self times sketch
+     */
+    public QuantileSketch getSelfTimeSketch() {
+        return fSelfTimeSketch;
+    }
+
+    /**
+     * Get the sketch to estimate the percentiles of the CPU times of the
+     * called functions. Unknown CPU times are not counted.
+     *
+     * @return The CPU times sketch
+     */
+    public QuantileSketch getCpuTimeSketch() {
+        return fCpuTimeSketch;
+    }
+
     @Override
     public String toString() {
         return "Aggregated function statistics: Durations: " + fDurations + ", Self times " + fSelfTimes; //$NON-NLS-1$//$NON-NLS-2$
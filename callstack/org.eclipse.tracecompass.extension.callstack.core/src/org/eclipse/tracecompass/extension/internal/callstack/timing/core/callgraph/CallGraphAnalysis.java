@@ -9,38 +9,61 @@
 
 package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.timing.core.segmentstore.IAnalysisProgressListener;
 import org.eclipse.tracecompass.analysis.timing.core.segmentstore.ISegmentStoreProvider;
 import org.eclipse.tracecompass.common.core.StreamUtils;
+import org.eclipse.tracecompass.extension.internal.callstack.core.Activator;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.CallStackAllGroupDescriptor;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.ICpuTimeProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.concepts.IThreadOnCpuProvider;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStack;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackDepthCursor;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackGroupDescriptor;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ISampledCallStackProvider;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
 import org.eclipse.tracecompass.segmentstore.core.ISegmentStore;
 import org.eclipse.tracecompass.segmentstore.core.SegmentStoreFactory;
 import org.eclipse.tracecompass.segmentstore.core.SegmentStoreFactory.SegmentStoreType;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.segment.ISegmentAspect;
+import org.eclipse.tracecompass.tmf.core.statesystem.ITmfAnalysisModuleWithStateSystems;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
@@ -68,6 +91,37 @@ import com.google.common.collect.ImmutableList;
  */
 public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISegmentStoreProvider {
 
+    /**
+     * The engines available to read the function calls from the callstacks.
+     * Both engines build the same call graph.
+     */
+    public enum BuildEngine {
+        /**
+         * Query the state system for each function call, starting from the
+         * parent call's start time
+         */
+        QUERY,
+        /**
+         * Sweep the intervals of each depth of the callstack in time order,
+         * reading each interval only once
+         */
+        SWEEP
+    }
+
+    /**
+     * The default number of root functions aggregated in each checkpoint of the
+     * time range index
+     */
+    public static final int DEFAULT_CHECKPOINT_SIZE = 64;
+
+    /**
+     * The default interval, in milliseconds, between the updates of the call
+     * graph in streaming mode
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL = 1000;
+
+    private static final String CALL_GRAPH_FILE_EXTENSION = ".cg"; //$NON-NLS-1$
+
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -77,6 +131,26 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
      */
     private final ISegmentStore<@NonNull ISegment> fStore;
 
+    /**
+     * The table interning the symbols of all the aggregated functions of this
+     * analysis, so that the aggregated trees can be merged by symbol ID
+     */
+    private final SymbolTable fSymbols = new SymbolTable();
+
+    /**
+     * Segment store saving the functions in primitive arrays, used instead of
+     * the segment store when the compact storage is enabled. It is filled by
+     * the analysis thread only and published once complete.
+     */
+    private final CalledFunctionStore fCompactStore = new CalledFunctionStore(fSymbols);
+    private volatile boolean fCompactStoreComplete = false;
+
+    /**
+     * The time range indexes on the compact store, added to the range indexes
+     * once the compact store is complete
+     */
+    private final List<CallGraphRangeIndex> fCompactRangeIndexes = new ArrayList<>();
+
     /**
      * Listeners
      */
@@ -91,9 +165,46 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
      * The List of thread nodes. Each thread has a virtual node having the root
      * function as children
      */
-    private List<GroupNode> fThreadNodes = new ArrayList<>();
+    private volatile List<GroupNode> fThreadNodes = new CopyOnWriteArrayList<>();
+
+    /**
+     * The time range index of each thread node, in the same order. It is read
+     * by the range queries while the analysis adds the indexes.
+     */
+    private final List<CallGraphRangeIndex> fRangeIndexes = new CopyOnWriteArrayList<>();
 
-    private @Nullable ICallStackGroupDescriptor fGroupBy = null;
+    private volatile @Nullable ICallStackGroupDescriptor fGroupBy = null;
+
+    /**
+     * The thread nodes grouped by each group descriptor that was requested
+     * since the call graph last changed. The thread nodes themselves are under
+     * the null descriptor.
+     */
+    private final Map<@Nullable ICallStackGroupDescriptor, List<AggregatedCalledFunction>> fGroupNodes = new HashMap<>();
+    private final Object fGroupNodesLock = new Object();
+
+    private BuildEngine fEngine = BuildEngine.SWEEP;
+
+    private int fParallelism = 1;
+
+    private boolean fCompactStorage = false;
+
+    private int fCheckpointSize = DEFAULT_CHECKPOINT_SIZE;
+
+    private boolean fStreaming = false;
+
+    private long fUpdateInterval = DEFAULT_UPDATE_INTERVAL;
+
+    /**
+     * The call graphs of the leaf elements being built in streaming mode
+     */
+    private final Map<ICallStackLeafElement, ThreadCallGraph> fStreamedThreads = new HashMap<>();
+
+    /**
+     * The leaf elements being built in streaming mode. They have no time range
+     * index yet, so the range queries read them from their callstack.
+     */
+    private volatile List<ICallStackLeafElement> fStreamingElements = Collections.emptyList();
 
     /**
      * Default constructor
@@ -123,11 +234,32 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
         return true;
     }
 
+    /**
+     * Get the callstack providers of the traces of this analysis and the CPU
+     * time and thread on CPU providers of their hosts. The host model does not
+     * execute its providers, they are executed with the call graph so that the
+     * threads and CPU times of the functions are known when they are read.
+     */
     @Override
     protected Iterable<IAnalysisModule> getDependentAnalyses() {
-        return TmfTraceManager.getTraceSet(getTrace()).stream()
-                .flatMap(trace -> StreamUtils.getStream(TmfTraceUtils.getAnalysisModulesOfClass(trace, ICallStackProvider.class)))
+        Collection<ITmfTrace> traces = TmfTraceManager.getTraceSet(getTrace());
+        List<IAnalysisModule> modules = traces.stream()
+                .flatMap(trace -> Stream.<IAnalysisModule> concat(StreamUtils.getStream(TmfTraceUtils.getAnalysisModulesOfClass(trace, ICallStackProvider.class)),
+                        StreamUtils.getStream(TmfTraceUtils.getAnalysisModulesOfClass(trace, ISampledCallStackProvider.class))))
                 .distinct().collect(Collectors.toList());
+        Set<String> hostIds = new HashSet<>();
+        for (IAnalysisModule module : modules) {
+            hostIds.add(module instanceof ICallStackProvider ? ((ICallStackProvider) module).getHostId() : ((ISampledCallStackProvider) module).getHostId());
+        }
+        traces.stream()
+                .filter(trace -> hostIds.contains(trace.getHostId()))
+                .flatMap(trace -> Stream.<Object> concat(StreamUtils.getStream(TmfTraceUtils.getAnalysisModulesOfClass(trace, ICpuTimeProvider.class)),
+                        StreamUtils.getStream(TmfTraceUtils.getAnalysisModulesOfClass(trace, IThreadOnCpuProvider.class))))
+                .filter(IAnalysisModule.class::isInstance)
+                .map(IAnalysisModule.class::cast)
+                .distinct()
+                .forEach(modules::add);
+        return modules;
     }
 
     @Override
@@ -137,23 +269,65 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
             return false;
         }
         Iterable<IAnalysisModule> dependentAnalyses = getDependentAnalyses();
+        List<ICallStackProvider> providers = new ArrayList<>();
+        List<ISampledCallStackProvider> sampledProviders = new ArrayList<>();
+        List<IAnalysisModule> cpuTimeProviders = new ArrayList<>();
+        List<IAnalysisModule> threadOnCpuProviders = new ArrayList<>();
         for (IAnalysisModule module : dependentAnalyses) {
-            if (!(module instanceof ICallStackProvider)) {
+            if (module instanceof ICallStackProvider) {
+                providers.add((ICallStackProvider) module);
+            } else if (module instanceof ISampledCallStackProvider) {
+                sampledProviders.add((ISampledCallStackProvider) module);
+            } else if (module instanceof ICpuTimeProvider || module instanceof IThreadOnCpuProvider) {
+                if (module instanceof ICpuTimeProvider) {
+                    cpuTimeProviders.add(module);
+                }
+                if (module instanceof IThreadOnCpuProvider) {
+                    threadOnCpuProviders.add(module);
+                }
+            } else {
                 return false;
             }
             module.schedule();
         }
-        // TODO:Look at updates while the state system's being built
-        dependentAnalyses.forEach((t) -> t.waitForCompletion(monitor));
-        for (IAnalysisModule module : dependentAnalyses) {
-            ICallStackProvider callstackModule = (ICallStackProvider) module;
-            IHostModel model = ModelManager.getModelFor(callstackModule.getHostId());
+        Path file = getCallGraphFile(trace);
+        if (fStreaming && !waitForProviders(providers, 0, monitor)) {
+            // The threads of the functions are read with the functions
+            threadOnCpuProviders.forEach(module -> module.waitForCompletion(monitor));
+            if (monitor.isCanceled()) {
+                return false;
+            }
+            if (!executeStreaming(providers, cpuTimeProviders, monitor)) {
+                return false;
+            }
+            publishCompactStore();
+            writeCallGraph(file, providers);
+        } else {
+            dependentAnalyses.forEach((t) -> t.waitForCompletion(monitor));
 
-            for (CallStackSeries callstack : callstackModule.getCallStackSeries()) {
-                if (!iterateOverCallstackSerie(callstack, model, monitor)) {
-                    return false;
+            // Reload the call graph saved the last time the trace was opened
+            boolean read = readCallGraph(file, providers);
+            if (!read) {
+                for (ICallStackProvider callstackModule : providers) {
+                    IHostModel model = ModelManager.getModelFor(callstackModule.getHostId());
+
+                    for (CallStackSeries callstack : callstackModule.getCallStackSeries()) {
+                        if (!iterateOverCallstackSerie(callstack, model, monitor)) {
+                            return false;
+                        }
+                    }
                 }
             }
+            publishCompactStore();
+            if (!read) {
+                writeCallGraph(file, providers);
+            }
+        }
+        // The sampled stacks are not saved in the call graph file
+        for (ISampledCallStackProvider sampledProvider : sampledProviders) {
+            if (!aggregateSamples(sampledProvider, monitor)) {
+                return false;
+            }
         }
         monitor.worked(1);
         monitor.done();
@@ -161,6 +335,335 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
 
     }
 
+    /**
+     * Aggregate the samples of a sampled callstack provider in the call graph.
+     * The samples are aggregated directly in the group nodes, so they have no
+     * called functions in the segment store nor time range index: they are
+     * not in the call graphs of time ranges nor in the call graph file. They
+     * are aggregated only once the provider is completed, while the
+     * callstacks of the other providers can be streamed.
+     *
+     * @param provider
+     *            The sampled callstack provider
+     * @param monitor
+     *            A progress monitor
+     * @return Whether the samples were successfully aggregated
+     */
+    @VisibleForTesting
+    protected boolean aggregateSamples(ISampledCallStackProvider provider, IProgressMonitor monitor) {
+        provider.waitForCompletion(monitor);
+        SampledCallGraphBuilder builder = new SampledCallGraphBuilder(provider.getHostId(), provider.getMaxDepth(), fSymbols);
+        if (!provider.readSamples(builder, monitor)) {
+            return false;
+        }
+        fThreadNodes.addAll(builder.getGroupNodes());
+        invalidateGroupNodes();
+        return true;
+    }
+
+    /**
+     * Build the call graph while the callstack providers are being built. At
+     * each update interval, the functions that were closed since the last
+     * update are added to the call graph and the listeners are notified. The
+     * CPU time providers are not waited for, the CPU times that are unknown
+     * while streaming are resolved again once the callstacks and the CPU time
+     * providers are completed.
+     */
+    private boolean executeStreaming(List<ICallStackProvider> providers, List<IAnalysisModule> cpuTimeProviders, IProgressMonitor monitor) {
+        boolean complete = false;
+        while (!complete) {
+            if (monitor.isCanceled()) {
+                return false;
+            }
+            complete = waitForProviders(providers, fUpdateInterval, monitor);
+            if (complete) {
+                for (IAnalysisModule module : cpuTimeProviders) {
+                    if (!module.waitForCompletion(monitor) && monitor.isCanceled()) {
+                        return false;
+                    }
+                }
+            }
+            if (!readClosedFunctions(providers, complete, monitor)) {
+                return false;
+            }
+            ISegmentStore<@NonNull ISegment> store = getSegmentStore();
+            if (store != null) {
+                sendUpdate(store);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the state systems of the providers to be built, for at most
+     * the given timeout
+     *
+     * @return Whether all the providers are completed
+     */
+    private static boolean waitForProviders(List<ICallStackProvider> providers, long timeout, IProgressMonitor monitor) {
+        long remaining = timeout;
+        boolean complete = true;
+        for (ICallStackProvider provider : providers) {
+            if (!(provider instanceof ITmfAnalysisModuleWithStateSystems)) {
+                // No state system to follow, wait for the whole analysis
+                provider.waitForCompletion(monitor);
+                continue;
+            }
+            ITmfAnalysisModuleWithStateSystems module = (ITmfAnalysisModuleWithStateSystems) provider;
+            if (!module.waitForInitialization()) {
+                continue;
+            }
+            for (ITmfStateSystem ss : module.getStateSystems()) {
+                // Only wait once, the other state systems are only checked
+                long start = System.currentTimeMillis();
+                if (!ss.waitUntilBuilt(remaining)) {
+                    complete = false;
+                }
+                remaining = Math.max(0, remaining - (System.currentTimeMillis() - start));
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Add to the call graph the functions that are completed in the
+     * callstacks of the providers and were not added yet, at every depth.
+     * This method can be called many times while the callstacks are being
+     * built. Until the callstacks are completed, the thread nodes are copies
+     * that include the running functions, as if they were ending at the
+     * current time. The last call, once the callstacks are completed, adds the
+     * remaining functions, resolves the CPU times that were unknown when the
+     * functions were read and indexes the call graph.
+     *
+     * @param providers
+     *            The callstack providers of this analysis
+     * @param complete
+     *            Whether the callstacks of the providers are completed
+     * @param monitor
+     *            A progress monitor
+     * @return Whether the functions were successfully read
+     */
+    @VisibleForTesting
+    protected boolean readClosedFunctions(List<ICallStackProvider> providers, boolean complete, IProgressMonitor monitor) {
+        List<ThreadCallGraph> threadCallGraphs = new ArrayList<>();
+        List<ICallStackLeafElement> elements = new ArrayList<>();
+        for (ICallStackProvider provider : providers) {
+            IHostModel model = ModelManager.getModelFor(provider.getHostId());
+            for (CallStackSeries series : provider.getCallStackSeries()) {
+                for (ICallStackLeafElement element : series.getLeafElements()) {
+                    if (monitor.isCanceled()) {
+                        return false;
+                    }
+                    CallStack callStack = element.getCallStack();
+                    ThreadCallGraph threadCallGraph = fStreamedThreads.get(element);
+                    if (threadCallGraph == null) {
+                        threadCallGraph = createThreadCallGraph(element, callStack, fSymbols);
+                        fStreamedThreads.put(element, threadCallGraph);
+                    }
+                    readClosedFunctions(threadCallGraph, callStack, complete, model);
+                    if (complete && resolveUnknownCpuTimes(threadCallGraph, model)) {
+                        // The aggregated tree has the unknown CPU times
+                        threadCallGraph.reaggregate(fSymbols);
+                    }
+                    threadCallGraphs.add(threadCallGraph);
+                    elements.add(element);
+                }
+            }
+        }
+        if (complete) {
+            threadCallGraphs.forEach(this::indexThreadCallGraph);
+            fStreamedThreads.clear();
+            // The nodes are not modified anymore, the readers can use them
+            fThreadNodes = new CopyOnWriteArrayList<>(threadCallGraphs.stream().map(ThreadCallGraph::getNode).collect(Collectors.toList()));
+            fStreamingElements = Collections.emptyList();
+        } else {
+            // The readers get copies of the nodes, the next update modifies them
+            fThreadNodes = new CopyOnWriteArrayList<>(threadCallGraphs.stream().map(tcg -> tcg.createSnapshot(fSymbols)).collect(Collectors.toList()));
+            fStreamingElements = ImmutableList.copyOf(elements);
+        }
+        invalidateGroupNodes();
+        return true;
+    }
+
+    private void readClosedFunctions(ThreadCallGraph threadCallGraph, CallStack callStack, boolean complete, IHostModel model) {
+        // Deeper functions may have been added since the last update
+        threadCallGraph.getNode().setMaxDepth(callStack.getMaxDepth());
+        if (callStack.getMaxDepth() == 0) {
+            return;
+        }
+        // The functions ending after the current end time are not closed yet
+        long maxEnd = (complete ? Long.MAX_VALUE : callStack.getEndTime());
+        threadCallGraph.setCurrentEnd(callStack.getEndTime());
+
+        CalledFunctionStore store = threadCallGraph.getStore();
+        if (store != null) {
+            // Save the closed functions directly in the store of the element
+            List<ICalledFunction> rootFunctions = threadCallGraph.getRootFunctions();
+            long nextTime = (rootFunctions.isEmpty() ? callStack.getStartTime() : rootFunctions.get(rootFunctions.size() - 1).getEnd());
+            List<CallStackDepthCursor> cursors = createCompactCursors(callStack);
+            int firstRoot = store.getNbRootFunctions();
+            int firstFunction = store.size();
+            readFunctions(callStack, cursors, store, nextTime, maxEnd, fSymbols, new NullProgressMonitor());
+            resolveCpuTimes(store, firstFunction, model);
+            threadCallGraph.addRootFunctions(new ArrayList<>(store.getRootFunctions().subList(firstRoot, store.getNbRootFunctions())));
+            return;
+        }
+        StreamReader reader = new StreamReader(threadCallGraph, callStack, createCursors(callStack), maxEnd);
+        reader.read(1, null, threadCallGraph.getNode(), Long.MAX_VALUE);
+        // Resolve the CPU times in bulk before they are aggregated
+        resolveCpuTimes(reader.fFunctions, model);
+        reader.fAggregations.forEach(Runnable::run);
+        threadCallGraph.getRootFunctions().addAll(reader.fRootFunctions);
+        addFunctions(reader.fRootFunctions, reader.fFunctions);
+    }
+
+    /**
+     * Read the functions of a callstack that were closed since the last
+     * update, at every depth. The functions that are still running are kept
+     * in the call graph of the element with their start time as end time,
+     * their closed callees are added under them and they are closed by a
+     * later update. The aggregation of the functions is delayed until their
+     * CPU times are resolved.
+     */
+    private static final class StreamReader {
+        private final ThreadCallGraph fThreadCallGraph;
+        private final CallStack fCallStack;
+        private final List<CallStackDepthCursor> fCursors;
+        private final long fMaxEnd;
+        private final List<ICalledFunction> fRootFunctions = new ArrayList<>();
+        private final List<ICalledFunction> fFunctions = new ArrayList<>();
+        private final List<Runnable> fAggregations = new ArrayList<>();
+
+        public StreamReader(ThreadCallGraph threadCallGraph, CallStack callStack, List<CallStackDepthCursor> cursors, long maxEnd) {
+            fThreadCallGraph = threadCallGraph;
+            fCallStack = callStack;
+            fCursors = cursors;
+            fMaxEnd = maxEnd;
+        }
+
+        /**
+         * Read the new functions of a depth, under a parent function that may
+         * still be running
+         *
+         * @param depth
+         *            The depth of the functions to read
+         * @param parent
+         *            The parent of the functions, or <code>null</code> for the
+         *            root functions
+         * @param target
+         *            The aggregated function in which to aggregate the
+         *            functions
+         * @param parentEnd
+         *            The end of the parent, or {@link Long#MAX_VALUE} if it is
+         *            still running
+         */
+        public void read(int depth, @Nullable AbstractCalledFunction parent, AggregatedCalledFunction target, long parentEnd) {
+            List<ThreadCallGraph.OpenFunction> openFunctions = fThreadCallGraph.getOpenFunctions();
+            if (openFunctions.size() >= depth) {
+                // Read the function running at this depth again to see if it is closed
+                ThreadCallGraph.OpenFunction openFunction = openFunctions.get(depth - 1);
+                AbstractCalledFunction function = openFunction.getFunction();
+                AbstractCalledFunction current = getNextFunction(fCallStack, fCursors, function.getStart(), depth, null);
+                long end = (current == null ? fCallStack.getEndTime() : current.getEnd());
+                boolean closed = (end <= fMaxEnd);
+                read(depth + 1, function, openFunction.getCallees(), (closed ? end : Long.MAX_VALUE));
+                if (!closed) {
+                    return;
+                }
+                openFunctions.remove(depth - 1);
+                function.close(end);
+                addFunction(function, parent);
+                AggregatedCalledFunction callees = openFunction.getCallees();
+                fAggregations.add(() -> {
+                    long length = function.getLength();
+                    callees.addTimes(length, length, function.getCpuTime());
+                    target.addChild(function, callees);
+                });
+                fThreadCallGraph.setNextTime(depth, end);
+            }
+            AbstractCalledFunction next = getNextFunction(fCallStack, fCursors, fThreadCallGraph.getNextTime(depth), depth, null);
+            while (next != null && next.getStart() < parentEnd) {
+                if (next.getEnd() > fMaxEnd) {
+                    // Keep the running function and read its closed callees
+                    AbstractCalledFunction function = CalledFunctionFactory.copy(next, next.getStart(), parent);
+                    AggregatedCalledFunction callees = target.createCallee(function.getSymbol());
+                    openFunctions.add(new ThreadCallGraph.OpenFunction(function, callees));
+                    read(depth + 1, function, callees, Long.MAX_VALUE);
+                    return;
+                }
+                AbstractCalledFunction function = (parent == null ? next : CalledFunctionFactory.copy(next, next.getEnd(), parent));
+                iterateOverCallstack(fCallStack, fCursors, function, depth + 1, fFunctions);
+                if (parent == null) {
+                    fRootFunctions.add(function);
+                }
+                fAggregations.add(() -> {
+                    AggregatedCalledFunction aggregatedFunction = new AggregatedCalledFunction(function, target);
+                    aggregateChildren(function, aggregatedFunction);
+                    target.addChild(function, aggregatedFunction);
+                });
+                fThreadCallGraph.setNextTime(depth, function.getEnd());
+                next = getNextFunction(fCallStack, fCursors, function.getEnd(), depth, null);
+            }
+        }
+
+        private void addFunction(AbstractCalledFunction function, @Nullable AbstractCalledFunction parent) {
+            fFunctions.add(function);
+            if (parent == null) {
+                fRootFunctions.add(function);
+            }
+        }
+    }
+
+    private Path getCallGraphFile(ITmfTrace trace) {
+        return Paths.get(TmfTraceManager.getSupplementaryFileDir(trace), getId() + CALL_GRAPH_FILE_EXTENSION);
+    }
+
+    /**
+     * Read the call graph from a file previously written by
+     * {@link #writeCallGraph(Path, List)}. The call graph is read only if the
+     * callstack providers, their versions and the CPU time providers of their
+     * hosts are the same as when the file was written.
+     *
+     * @param file
+     *            The file to read
+     * @param providers
+     *            The callstack providers of this analysis
+     * @return Whether the call graph was read from the file
+     */
+    @VisibleForTesting
+    protected boolean readCallGraph(Path file, List<ICallStackProvider> providers) {
+        try {
+            List<ThreadCallGraph> threadCallGraphs = CallGraphFile.read(file, providers, fSymbols);
+            if (threadCallGraphs == null) {
+                return false;
+            }
+            threadCallGraphs.forEach(this::addThreadCallGraph);
+            return true;
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Error reading the call graph file " + file, e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * Write the call graph built by this analysis to a file, so that it can be
+     * read instead of built the next time the trace is opened. The unknown CPU
+     * times are saved as they are.
+     *
+     * @param file
+     *            The file to write
+     * @param providers
+     *            The callstack providers of this analysis
+     */
+    @VisibleForTesting
+    protected void writeCallGraph(Path file, List<ICallStackProvider> providers) {
+        try {
+            CallGraphFile.write(file, providers, fRangeIndexes);
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Error writing the call graph file " + file, e); //$NON-NLS-1$
+        }
+    }
+
     /**
      * Iterate over a callstack series. It will do a depth-first search to
      * create teh callgraph
@@ -176,51 +679,436 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
     @VisibleForTesting
     protected boolean iterateOverCallstackSerie(CallStackSeries callstackSerie, IHostModel model, IProgressMonitor monitor) {
         List<ICallStackLeafElement> finalElements = callstackSerie.getLeafElements();
+        if (fParallelism > 1 && finalElements.size() > 1) {
+            return iterateInParallel(finalElements, model, monitor);
+        }
         for (ICallStackLeafElement element : finalElements) {
             if (monitor.isCanceled()) {
                 return false;
             }
-            CallStack callStack = element.getCallStack();
+            ThreadCallGraph threadCallGraph = buildThreadCallGraph(element, monitor);
+            if (threadCallGraph == null) {
+                return false;
+            }
+            // Get the CPU times of all the functions at once, then aggregate them
+            resolveCpuTimes(threadCallGraph, model);
+            threadCallGraph.aggregate();
+            addThreadCallGraph(threadCallGraph);
+        }
+        return true;
+    }
+
+    /**
+     * Build the call graph of each leaf element in a fork/join pool. The
+     * results are added to the analysis in the order of the elements, so the
+     * call graph is the same as the one built sequentially.
+     *
+     * The workers only read the functions from the callstacks. The CPU times
+     * are resolved by this thread as the results are joined, so the model is
+     * never queried concurrently, then the aggregation of each element is
+     * sent back to the pool.
+     */
+    private boolean iterateInParallel(List<ICallStackLeafElement> finalElements, IHostModel model, IProgressMonitor monitor) {
+        ForkJoinPool pool = new ForkJoinPool(fParallelism);
+        try {
+            List<ForkJoinTask<@Nullable ThreadCallGraph>> tasks = new ArrayList<>(finalElements.size());
+            for (ICallStackLeafElement element : finalElements) {
+                tasks.add(pool.submit(() -> monitor.isCanceled() ? null : buildThreadCallGraph(element, monitor)));
+            }
+            List<ForkJoinTask<ThreadCallGraph>> aggregations = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<@Nullable ThreadCallGraph> task : tasks) {
+                ThreadCallGraph threadCallGraph = task.join();
+                if (threadCallGraph == null || monitor.isCanceled()) {
+                    return false;
+                }
+                resolveCpuTimes(threadCallGraph, model);
+                aggregations.add(pool.submit(threadCallGraph::aggregate, threadCallGraph));
+            }
+            for (ForkJoinTask<ThreadCallGraph> aggregation : aggregations) {
+                addThreadCallGraph(aggregation.join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return true;
+    }
+
+    private void addThreadCallGraph(ThreadCallGraph threadCallGraph) {
+        fThreadNodes.add(threadCallGraph.getNode());
+        if (!fCompactStorage) {
+            addFunctions(threadCallGraph.getRootFunctions(), threadCallGraph.getFunctions());
+        }
+        indexThreadCallGraph(threadCallGraph);
+        invalidateGroupNodes();
+    }
+
+    private void addFunctions(List<ICalledFunction> rootFunctions, List<ICalledFunction> functions) {
+        synchronized (fRootFunctions) {
+            fRootFunctions.addAll(rootFunctions);
+        }
+        fStore.addAll(functions);
+    }
+
+    /**
+     * Index the root functions of a thread for the time range queries. With
+     * the compact storage, the functions are first added to the compact
+     * store, and the index is only available once the store is published.
+     */
+    private void indexThreadCallGraph(ThreadCallGraph threadCallGraph) {
+        GroupNode node = threadCallGraph.getNode();
+        List<ICalledFunction> rootFunctions = threadCallGraph.getRootFunctions();
+        if (!fCompactStorage) {
+            fRangeIndexes.add(new CallGraphRangeIndex(threadCallGraph.getRootSegment(), node, rootFunctions, fCheckpointSize, fSymbols));
+            return;
+        }
+        int firstRoot = fCompactStore.getNbRootFunctions();
+        CalledFunctionStore store = threadCallGraph.getStore();
+        if (store != null) {
+            // Append the columns of the element's store, no objects are created
+            fCompactStore.addStore(store);
+        } else {
+            /*
+             * Copy the function objects to the compact store, they can then be
+             * garbage collected
+             */
+            for (ICalledFunction rootFunction : rootFunctions) {
+                fCompactStore.addFunctionTree(rootFunction, CalledFunctionStore.NO_FUNCTION);
+            }
+        }
+        List<ICalledFunction> compactRoots = new ArrayList<>(fCompactStore.getRootFunctions().subList(firstRoot, fCompactStore.getNbRootFunctions()));
+        fCompactRangeIndexes.add(new CallGraphRangeIndex(threadCallGraph.getRootSegment(), node, compactRoots, fCheckpointSize, fSymbols));
+    }
 
-            // Get the symbol key element for this callstack element
-            int symbolKey = callStack.getSymbolKeyAt(callStack.getStartTime());
-            int threadId = callStack.getThreadId(callStack.getStartTime());
+    /**
+     * Make the compact store and its range indexes available to the readers,
+     * once all the functions were added to it
+     */
+    private void publishCompactStore() {
+        if (!fCompactStorage) {
+            return;
+        }
+        fRangeIndexes.addAll(fCompactRangeIndexes);
+        fCompactRangeIndexes.clear();
+        fCompactStoreComplete = true;
+    }
 
-            // Create a root segment
-            ICallStackElement parentElement = element.getParentElement();
-            String name = parentElement != null ? parentElement.getName() : element.getName();
-            AbstractCalledFunction rootSegment = CalledFunctionFactory.create(0, 0, 0, name, symbolKey, threadId, null, model);
-            GroupNode parentNode = new GroupNode(rootSegment, element, callStack.getMaxDepth(), name);
-            fThreadNodes.add(parentNode);
+    /**
+     * Read the functions of one leaf element of the callstack. This method
+     * does not modify the analysis nor query the model, so that it can be
+     * called from many threads at once. The CPU times of the functions are not
+     * resolved and the call graph is not aggregated.
+     *
+     * @return The call graph of this element, or <code>null</code> if the
+     *         monitor was cancelled
+     */
+    private @Nullable ThreadCallGraph buildThreadCallGraph(ICallStackLeafElement element, IProgressMonitor monitor) {
+        CallStack callStack = element.getCallStack();
+        ThreadCallGraph threadCallGraph = createThreadCallGraph(element, callStack, fSymbols);
+        CalledFunctionStore store = threadCallGraph.getStore();
+        if (store != null) {
+            if (!readFunctions(callStack, createCompactCursors(callStack), store, callStack.getStartTime(), Long.MAX_VALUE, fSymbols, monitor)) {
+                return null;
+            }
+            threadCallGraph.getRootFunctions().addAll(store.getRootFunctions());
+            return threadCallGraph;
+        }
+        List<CallStackDepthCursor> cursors = createCursors(callStack);
 
-            AbstractCalledFunction nextFunction = (AbstractCalledFunction) callStack.getNextFunction(callStack.getStartTime(), 1, null, model);
-            while (nextFunction != null) {
-                AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(nextFunction, parentNode);
-                iterateOverCallstack(callStack, nextFunction, 2, aggregatedChild, model, monitor);
-                fRootFunctions.add(nextFunction);
-                parentNode.addChild(nextFunction, aggregatedChild);
-                nextFunction = (AbstractCalledFunction) callStack.getNextFunction(nextFunction.getEnd(), 1, null, model);
+        // Read all the functions of this callstack
+        AbstractCalledFunction nextFunction = getNextFunction(callStack, cursors, callStack.getStartTime(), 1, null);
+        while (nextFunction != null) {
+            if (monitor.isCanceled()) {
+                return null;
             }
+            iterateOverCallstack(callStack, cursors, nextFunction, 2, threadCallGraph.getFunctions());
+            threadCallGraph.getRootFunctions().add(nextFunction);
+            nextFunction = getNextFunction(callStack, cursors, nextFunction.getEnd(), 1, null);
+        }
+        return threadCallGraph;
+    }
+
+    /**
+     * Create the empty call graph of a leaf element, with its group node. With
+     * the compact storage, the functions of the element will be saved in a
+     * store.
+     */
+    private ThreadCallGraph createThreadCallGraph(ICallStackLeafElement element, CallStack callStack, SymbolTable symbols) {
+        AbstractCalledFunction rootSegment = createRootSegment(element, callStack);
+        GroupNode parentNode = new GroupNode(rootSegment, element, callStack.getMaxDepth(), rootSegment.getName(), symbols);
+        ThreadCallGraph threadCallGraph = new ThreadCallGraph(rootSegment, parentNode, (fCompactStorage ? new CalledFunctionStore(symbols) : null));
+        threadCallGraph.setNextTime(1, callStack.getStartTime());
+        return threadCallGraph;
+    }
+
+    /**
+     * Create the root segment of a leaf element, whose symbol is the name of
+     * the element's parent
+     */
+    private static AbstractCalledFunction createRootSegment(ICallStackLeafElement element, CallStack callStack) {
+        // Get the symbol key element for this callstack element
+        int symbolKey = callStack.getSymbolKeyAt(callStack.getStartTime());
+        int threadId = callStack.getThreadId(callStack.getStartTime());
+
+        ICallStackElement parentElement = element.getParentElement();
+        String name = parentElement != null ? parentElement.getName() : element.getName();
+        return CalledFunctionFactory.create(0, 0, 0, name, symbolKey, threadId, null, callStack.getHostId());
+    }
+
+    /**
+     * Read the functions of a callstack directly in a store, without creating
+     * the function objects. The root functions starting at or after the
+     * requested time and ending at or before the maximum end are read, with
+     * all their callees.
+     *
+     * @return Whether the functions were read, or <code>false</code> if the
+     *         monitor was cancelled
+     */
+    private static boolean readFunctions(CallStack callStack, List<CallStackDepthCursor> cursors, CalledFunctionStore store, long time, long maxEnd, SymbolTable symbols, IProgressMonitor monitor) {
+        if (cursors.isEmpty()) {
+            return true;
+        }
+        ITmfStateInterval interval = cursors.get(0).getNextInterval(time, callStack.getEndTime());
+        while (interval != null && interval.getEndTime() + 1 <= maxEnd) {
+            if (monitor.isCanceled()) {
+                return false;
+            }
+            int index = addFunction(callStack, cursors.get(0), store, interval, 1, CalledFunctionStore.NO_FUNCTION, symbols);
+            readCallees(callStack, cursors, store, interval, index, symbols);
+            interval = cursors.get(0).getNextInterval(interval.getEndTime() + 1, callStack.getEndTime());
         }
         return true;
     }
 
-    private void iterateOverCallstack(CallStack callstack, ICalledFunction function, int nextLevel, AggregatedCalledFunction aggregatedCall, IHostModel model, IProgressMonitor monitor) {
-        fStore.add(function);
+    private static void readCallees(CallStack callStack, List<CallStackDepthCursor> cursors, CalledFunctionStore store, ITmfStateInterval parentInterval, int parent, SymbolTable symbols) {
+        int depth = store.getDepth(parent) + 1;
+        if (depth > cursors.size()) {
+            return;
+        }
+        CallStackDepthCursor cursor = cursors.get(depth - 1);
+        ITmfStateInterval interval = cursor.getNextInterval(parentInterval.getStartTime(), parentInterval.getEndTime());
+        while (interval != null) {
+            int index = addFunction(callStack, cursor, store, interval, depth, parent, symbols);
+            readCallees(callStack, cursors, store, interval, index, symbols);
+            interval = cursor.getNextInterval(interval.getEndTime() + 1, parentInterval.getEndTime());
+        }
+    }
+
+    private static int addFunction(CallStack callStack, CallStackDepthCursor cursor, CalledFunctionStore store, ITmfStateInterval interval, int depth, int parent, SymbolTable symbols) {
+        long start = interval.getStartTime();
+        // Intern the symbol once, where the interval is decoded
+        int symbolId = symbols.intern(CalledFunctionFactory.getSymbol(interval.getStateValue()));
+        long end = interval.getEndTime() + 1;
+        int index = store.addFunctionWithSymbolId(start, end, depth, symbolId, callStack.getSymbolKeyAt(start), callStack.getThreadId(start), parent, IHostModel.TIME_UNKNOWN);
+        int repeatCount = cursor.getRepeatCount(start, end);
+        if (repeatCount > 0) {
+            store.setRepeatCount(index, repeatCount);
+        }
+        return index;
+    }
+
+    private static void iterateOverCallstack(CallStack callstack, List<CallStackDepthCursor> cursors, ICalledFunction function, int nextLevel, List<ICalledFunction> functions) {
+        functions.add(function);
         if (nextLevel > callstack.getMaxDepth()) {
             return;
         }
 
-        AbstractCalledFunction nextFunction = (AbstractCalledFunction) callstack.getNextFunction(function.getStart(), nextLevel, function, model);
+        AbstractCalledFunction nextFunction = getNextFunction(callstack, cursors, function.getStart(), nextLevel, function);
         while (nextFunction != null) {
-            AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(nextFunction, aggregatedCall);
-            iterateOverCallstack(callstack, nextFunction, nextLevel + 1, aggregatedChild, model, monitor);
-            aggregatedCall.addChild(nextFunction, aggregatedChild);
-            nextFunction = (AbstractCalledFunction) callstack.getNextFunction(nextFunction.getEnd(), nextLevel, function, model);
+            iterateOverCallstack(callstack, cursors, nextFunction, nextLevel + 1, functions);
+            nextFunction = getNextFunction(callstack, cursors, nextFunction.getEnd(), nextLevel, function);
         }
 
     }
 
+    /**
+     * Aggregate the children of a function, recursively, in the order they
+     * were called
+     */
+    static void aggregateChildren(ICalledFunction function, AggregatedCalledFunction aggregatedCall) {
+        for (ICalledFunction child : function.getChildren()) {
+            AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(child, aggregatedCall);
+            aggregateChildren(child, aggregatedChild);
+            aggregatedCall.addChild(child, aggregatedChild);
+        }
+    }
+
+    /**
+     * Compute the CPU times of the functions of a leaf element, whether they
+     * are objects or in the store of the element
+     */
+    private static void resolveCpuTimes(ThreadCallGraph threadCallGraph, IHostModel model) {
+        CalledFunctionStore store = threadCallGraph.getStore();
+        if (store != null) {
+            resolveCpuTimes(store, 0, model);
+        } else {
+            resolveCpuTimes(threadCallGraph.getFunctions(), model);
+        }
+    }
+
+    /**
+     * Compute the CPU times of the functions of a store, from an index to the
+     * end of the store, with one request to the model per thread
+     */
+    private static void resolveCpuTimes(CalledFunctionStore store, int from, IHostModel model) {
+        // Count the functions of each thread, then get their indexes
+        Map<Integer, int[]> counts = new HashMap<>();
+        for (int i = from; i < store.size(); i++) {
+            counts.computeIfAbsent(store.getThreadId(i), tid -> new int[1])[0]++;
+        }
+        for (Entry<Integer, int[]> entry : counts.entrySet()) {
+            int tid = entry.getKey();
+            int[] indexes = new int[entry.getValue()[0]];
+            int nb = 0;
+            for (int i = from; i < store.size() && nb < indexes.length; i++) {
+                if (store.getThreadId(i) == tid) {
+                    indexes[nb++] = i;
+                }
+            }
+            long[] starts = new long[nb];
+            long[] ends = new long[nb];
+            for (int i = 0; i < nb; i++) {
+                starts[i] = store.getStart(indexes[i]);
+                ends[i] = store.getEnd(indexes[i]);
+            }
+            long[] cpuTimes = model.getCpuTimes(tid, starts, ends);
+            for (int i = 0; i < nb; i++) {
+                store.setCpuTime(indexes[i], cpuTimes[i]);
+            }
+        }
+    }
+
+    /**
+     * Compute the CPU times of the functions with one request to the model per
+     * thread, instead of one request per function
+     */
+    private static void resolveCpuTimes(List<ICalledFunction> functions, IHostModel model) {
+        Map<Integer, List<AbstractCalledFunction>> functionsPerThread = new HashMap<>();
+        for (ICalledFunction function : functions) {
+            if (function instanceof AbstractCalledFunction && !((AbstractCalledFunction) function).isCpuTimeComputed()) {
+                functionsPerThread.computeIfAbsent(function.getThreadId(), tid -> new ArrayList<>()).add((AbstractCalledFunction) function);
+            }
+        }
+        for (Entry<Integer, List<AbstractCalledFunction>> entry : functionsPerThread.entrySet()) {
+            List<AbstractCalledFunction> threadFunctions = entry.getValue();
+            long[] starts = new long[threadFunctions.size()];
+            long[] ends = new long[threadFunctions.size()];
+            for (int i = 0; i < threadFunctions.size(); i++) {
+                starts[i] = threadFunctions.get(i).getStart();
+                ends[i] = threadFunctions.get(i).getEnd();
+            }
+            long[] cpuTimes = model.getCpuTimes(entry.getKey(), starts, ends);
+            for (int i = 0; i < threadFunctions.size(); i++) {
+                threadFunctions.get(i).setCpuTime(cpuTimes[i]);
+            }
+        }
+    }
+
+    /**
+     * Resolve again the CPU times of the functions of a streamed element that
+     * were unknown when they were read, as the CPU time providers may not have
+     * had the data yet
+     *
+     * @return Whether the CPU time of some functions was resolved
+     */
+    private static boolean resolveUnknownCpuTimes(ThreadCallGraph threadCallGraph, IHostModel model) {
+        boolean resolved = false;
+        CalledFunctionStore store = threadCallGraph.getStore();
+        if (store != null) {
+            Map<Integer, List<Integer>> unknownPerThread = new HashMap<>();
+            for (int i = 0; i < store.size(); i++) {
+                if (store.getCpuTime(i) == IHostModel.TIME_UNKNOWN) {
+                    unknownPerThread.computeIfAbsent(store.getThreadId(i), tid -> new ArrayList<>()).add(i);
+                }
+            }
+            for (Entry<Integer, List<Integer>> entry : unknownPerThread.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                long[] starts = new long[indexes.size()];
+                long[] ends = new long[indexes.size()];
+                for (int i = 0; i < indexes.size(); i++) {
+                    starts[i] = store.getStart(indexes.get(i));
+                    ends[i] = store.getEnd(indexes.get(i));
+                }
+                long[] cpuTimes = model.getCpuTimes(entry.getKey(), starts, ends);
+                for (int i = 0; i < indexes.size(); i++) {
+                    if (cpuTimes[i] != IHostModel.TIME_UNKNOWN) {
+                        store.setCpuTime(indexes.get(i), cpuTimes[i]);
+                        resolved = true;
+                    }
+                }
+            }
+            return resolved;
+        }
+        Map<Integer, List<AbstractCalledFunction>> unknownPerThread = new HashMap<>();
+        Deque<ICalledFunction> toVisit = new ArrayDeque<>(threadCallGraph.getRootFunctions());
+        while (!toVisit.isEmpty()) {
+            ICalledFunction function = toVisit.pop();
+            if (function instanceof AbstractCalledFunction && function.getCpuTime() == IHostModel.TIME_UNKNOWN) {
+                unknownPerThread.computeIfAbsent(function.getThreadId(), tid -> new ArrayList<>()).add((AbstractCalledFunction) function);
+            }
+            toVisit.addAll(function.getChildren());
+        }
+        for (Entry<Integer, List<AbstractCalledFunction>> entry : unknownPerThread.entrySet()) {
+            List<AbstractCalledFunction> threadFunctions = entry.getValue();
+            long[] starts = new long[threadFunctions.size()];
+            long[] ends = new long[threadFunctions.size()];
+            for (int i = 0; i < threadFunctions.size(); i++) {
+                starts[i] = threadFunctions.get(i).getStart();
+                ends[i] = threadFunctions.get(i).getEnd();
+            }
+            long[] cpuTimes = model.getCpuTimes(entry.getKey(), starts, ends);
+            for (int i = 0; i < threadFunctions.size(); i++) {
+                if (cpuTimes[i] != IHostModel.TIME_UNKNOWN) {
+                    threadFunctions.get(i).setCpuTime(cpuTimes[i]);
+                    resolved = true;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Create the cursors to read each depth of the callstack with the sweep
+     * engine. With the query engine, there are no cursors and the state system
+     * is queried directly.
+     */
+    private List<CallStackDepthCursor> createCursors(CallStack callStack) {
+        if (fEngine != BuildEngine.SWEEP) {
+            return Collections.emptyList();
+        }
+        List<CallStackDepthCursor> cursors = new ArrayList<>();
+        for (int depth = 1; depth <= callStack.getMaxDepth(); depth++) {
+            cursors.add(callStack.createDepthCursor(depth));
+        }
+        return cursors;
+    }
+
+    /**
+     * Create the cursors to read each depth of the callstack in a store. The
+     * compact storage always sweeps the intervals, whatever the engine.
+     */
+    private static List<CallStackDepthCursor> createCompactCursors(CallStack callStack) {
+        List<CallStackDepthCursor> cursors = new ArrayList<>();
+        for (int depth = 1; depth <= callStack.getMaxDepth(); depth++) {
+            cursors.add(callStack.createDepthCursor(depth));
+        }
+        return cursors;
+    }
+
+    private static @Nullable AbstractCalledFunction getNextFunction(CallStack callStack, List<CallStackDepthCursor> cursors, long time, int depth, @Nullable ICalledFunction parent) {
+        if (cursors.isEmpty()) {
+            AbstractCalledFunction function = (AbstractCalledFunction) callStack.getNextFunction(time, depth, parent);
+            if (function != null) {
+                function.setRepeatCount(callStack.getRepeatCount(depth, function.getStart(), function.getEnd()));
+            }
+            return function;
+        }
+        if (depth > cursors.size()) {
+            // The depth was added to the callstack after the cursors were created
+            return null;
+        }
+        return (AbstractCalledFunction) cursors.get(depth - 1).getNextFunction(time, parent);
+    }
+
     /**
      * Get the callstack series of the providers of this analysis
      *
@@ -255,6 +1143,10 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
 
     @Override
     public @Nullable ISegmentStore<@NonNull ISegment> getSegmentStore() {
+        if (fCompactStorage) {
+            // The compact store is not thread-safe, only read it once complete
+            return (fCompactStoreComplete ? fCompactStore : null);
+        }
         return fStore;
     }
 
@@ -286,29 +1178,56 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
      * @return Functions of the first level
      */
     public List<ICalledFunction> getRootFunctions() {
-        return ImmutableList.copyOf(fRootFunctions);
+        if (fCompactStorage) {
+            return (fCompactStoreComplete ? ImmutableList.copyOf(fCompactStore.getRootFunctions()) : Collections.emptyList());
+        }
+        synchronized (fRootFunctions) {
+            return ImmutableList.copyOf(fRootFunctions);
+        }
+    }
+
+    /**
+     * Get the node of each thread, before they are grouped by the group
+     * descriptor
+     *
+     * @return The thread nodes
+     */
+    @VisibleForTesting
+    protected List<GroupNode> getThreadNodes() {
+        return ImmutableList.copyOf(fThreadNodes);
     }
 
     /**
      * List of thread nodes. Each thread has a virtual node having the root
-     * functions called as children.
+     * functions called as children. The thread nodes are grouped by the group
+     * descriptor of this analysis. The grouped nodes are copies, the thread
+     * nodes are not modified, and the nodes of each group descriptor are
+     * computed only once until the call graph changes.
      *
      * @return The thread nodes
      */
     public List<AggregatedCalledFunction> getGroupNodes() {
-        ICallStackGroupDescriptor groupBy = fGroupBy;
-        List<GroupNode> threadNodes = fThreadNodes;
         ITmfTrace trace = getTrace();
         if (trace == null) {
             return Collections.emptyList();
         }
-        IHostModel model = ModelManager.getModelFor(trace.getHostId());
+        ICallStackGroupDescriptor groupBy = fGroupBy;
+        synchronized (fGroupNodesLock) {
+            List<AggregatedCalledFunction> groupNodes = fGroupNodes.get(groupBy);
+            if (groupNodes == null) {
+                groupNodes = computeGroupNodes(groupBy, trace.getHostId());
+                fGroupNodes.put(groupBy, groupNodes);
+            }
+            return groupNodes;
+        }
+    }
+
+    private List<AggregatedCalledFunction> computeGroupNodes(@Nullable ICallStackGroupDescriptor groupBy, String hostId) {
+        List<GroupNode> threadNodes = fThreadNodes;
         if (groupBy instanceof CallStackAllGroupDescriptor) {
-            AbstractCalledFunction initSegment = CalledFunctionFactory.create(0, 0, 0, "", 0, 0, null, model); //$NON-NLS-1$
-            AggregatedCalledFunction init = new AggregatedCalledFunction(initSegment, 3);
-            threadNodes.forEach(
-                    tn -> tn.getChildren().forEach(
-                            child -> init.addChild(initSegment, child)));
+            AbstractCalledFunction initSegment = CalledFunctionFactory.create(0, 0, 0, "", 0, 0, null, hostId); //$NON-NLS-1$
+            AggregatedCalledFunction init = new AggregatedCalledFunction(initSegment, getMaxDepth(threadNodes), fSymbols);
+            threadNodes.forEach(init::mergeFrom);
             return Collections.singletonList(init);
         }
         if (groupBy == null) {
@@ -319,22 +1238,190 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
         if (nextGroup == null) {
             return ImmutableList.copyOf(threadNodes);
         }
-        Map<ICallStackElement, GroupNode> map = new HashMap<>();
         // Group the leaf nodes by the requested group descriptor
-        AbstractCalledFunction initSegment = CalledFunctionFactory.create(0, 0, 0, "", 0, 0, null, model); //$NON-NLS-1$
-        threadNodes.forEach(tn -> {
-            ICallStackElement element = tn.getElement(nextGroup);
-            GroupNode acf = map.get(element);
-            if (acf == null) {
-                acf = new GroupNode(initSegment, element, tn.getMaxDepth(), element.getName());
-                map.put(element, acf);
-            }
-            // FIXME The aggregate modifies the child
-            final AggregatedCalledFunction aggregate = acf;
-            tn.getChildren().forEach(
-                    child -> aggregate.addChild(initSegment, child));
-        });
-        return ImmutableList.copyOf(map.values());
+        Map<ICallStackElement, List<GroupNode>> groups = new LinkedHashMap<>();
+        threadNodes.forEach(tn -> groups.computeIfAbsent(tn.getElement(nextGroup), e -> new ArrayList<>()).add(tn));
+        AbstractCalledFunction initSegment = CalledFunctionFactory.create(0, 0, 0, "", 0, 0, null, hostId); //$NON-NLS-1$
+        if (fParallelism <= 1 || groups.size() <= 1) {
+            ImmutableList.Builder<AggregatedCalledFunction> builder = ImmutableList.builder();
+            groups.forEach((element, nodes) -> builder.add(createGroupNode(initSegment, element, nodes)));
+            return builder.build();
+        }
+        // Merge each group in a fork/join pool
+        ForkJoinPool pool = new ForkJoinPool(fParallelism);
+        try {
+            List<ForkJoinTask<GroupNode>> tasks = new ArrayList<>(groups.size());
+            groups.forEach((element, nodes) -> tasks.add(pool.submit(() -> createGroupNode(initSegment, element, nodes))));
+            ImmutableList.Builder<AggregatedCalledFunction> builder = ImmutableList.builder();
+            tasks.forEach(task -> builder.add(task.join()));
+            return builder.build();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the node of a group, with a copy of the callees of all the thread
+     * nodes of this group
+     */
+    private GroupNode createGroupNode(AbstractCalledFunction initSegment, ICallStackElement element, List<GroupNode> threadNodes) {
+        GroupNode groupNode = new GroupNode(initSegment, element, getMaxDepth(threadNodes), element.getName(), fSymbols);
+        threadNodes.forEach(groupNode::mergeFrom);
+        return groupNode;
+    }
+
+    private static int getMaxDepth(List<GroupNode> threadNodes) {
+        return threadNodes.stream().mapToInt(GroupNode::getMaxDepth).max().orElse(0);
+    }
+
+    /**
+     * Reset the group nodes, they will be computed again the next time they
+     * are requested
+     */
+    private void invalidateGroupNodes() {
+        synchronized (fGroupNodesLock) {
+            fGroupNodes.clear();
+        }
+    }
+
+    /**
+     * Get the call graph of a time range. Each thread node contains the
+     * aggregation of the root functions of this thread that intersect the
+     * range, with their callees. The functions crossing the range boundaries
+     * are truncated, only their part inside the range is aggregated. The
+     * thread nodes are computed from precomputed aggregation checkpoints, so
+     * the cost of the query does not depend on the number of functions in the
+     * range. While the call graph is streamed, the threads are not indexed yet
+     * and their functions in the range are read from their callstack. The
+     * samples of the sampled callstack providers have no time, so they are
+     * not part of these call graphs.
+     *
+     * @param start
+     *            The start of the time range
+     * @param end
+     *            The end of the time range
+     * @return The thread nodes of the threads with functions in this range
+     */
+    public List<AggregatedCalledFunction> getCallGraph(long start, long end) {
+        List<AggregatedCalledFunction> nodes = new ArrayList<>();
+        for (CallGraphRangeIndex index : fRangeIndexes) {
+            GroupNode node = index.getCallGraph(start, end);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        for (ICallStackLeafElement element : fStreamingElements) {
+            GroupNode node = aggregateCallStack(element, start, end);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Aggregate the functions of the callstack of a leaf element that
+     * intersect a time range, truncated to the range, without keeping the
+     * functions.
+     *
+     * @return The group node with the aggregated functions of this range, or
+     *         <code>null</code> if no function intersects the range
+     */
+    private @Nullable GroupNode aggregateCallStack(ICallStackLeafElement element, long start, long end) {
+        CallStack callStack = element.getCallStack();
+        AbstractCalledFunction rootSegment = createRootSegment(element, callStack);
+        GroupNode node = new GroupNode(rootSegment, element, callStack.getMaxDepth(), rootSegment.getName(), fSymbols);
+        RangeAggregator aggregator = new RangeAggregator(node, start, end, callStack.getMaxDepth(), callStack.getHostId());
+        callStack.iterateOverCallStack(start, end, aggregator);
+        return (aggregator.isEmpty() ? null : node);
+    }
+
+    /**
+     * Aggregates the functions of a callstack as they are visited, after their
+     * callees. The functions crossing the range boundaries are truncated to
+     * the range.
+     */
+    private static final class RangeAggregator implements Consumer<ICalledFunction> {
+
+        private final GroupNode fNode;
+        private final long fStart;
+        private final long fEnd;
+        private final String fHostId;
+        /* The aggregation of the function being visited at each depth, created with its first callee */
+        private final @Nullable AggregatedCalledFunction[] fAggregated;
+        /* The truncated duration of the callees visited at each depth */
+        private final long[] fCalleeTimes;
+        private boolean fEmpty = true;
+
+        public RangeAggregator(GroupNode node, long start, long end, int maxDepth, String hostId) {
+            fNode = node;
+            fStart = start;
+            fEnd = end;
+            fHostId = hostId;
+            fAggregated = new @Nullable AggregatedCalledFunction[maxDepth + 1];
+            fCalleeTimes = new long[maxDepth + 1];
+        }
+
+        @Override
+        public void accept(ICalledFunction function) {
+            int depth = function.getDepth();
+            AggregatedCalledFunction aggregated = getAggregated(function);
+            ICalledFunction call = truncate(function);
+            fAggregated[depth] = null;
+            fCalleeTimes[depth] = 0;
+            getParent(function).addChild(call, aggregated);
+            fCalleeTimes[depth - 1] += call.getLength();
+            fEmpty = false;
+        }
+
+        public boolean isEmpty() {
+            return fEmpty;
+        }
+
+        private AggregatedCalledFunction getParent(ICalledFunction function) {
+            ICalledFunction parent = function.getParent();
+            return (parent == null ? fNode : getAggregated(parent));
+        }
+
+        private AggregatedCalledFunction getAggregated(ICalledFunction function) {
+            AggregatedCalledFunction aggregated = fAggregated[function.getDepth()];
+            if (aggregated == null) {
+                aggregated = new AggregatedCalledFunction(truncate(function), getParent(function));
+                fAggregated[function.getDepth()] = aggregated;
+            }
+            return aggregated;
+        }
+
+        private ICalledFunction truncate(ICalledFunction function) {
+            if (function.getStart() >= fStart && function.getEnd() <= fEnd) {
+                return function;
+            }
+            return new TruncatedFunction(function, Math.max(fStart, function.getStart()), Math.min(fEnd, function.getEnd()), fCalleeTimes[function.getDepth()], fHostId);
+        }
+
+    }
+
+    /**
+     * A function truncated to the boundaries of a time range, whose callees
+     * were already visited
+     */
+    private static final class TruncatedFunction extends AbstractCalledFunction {
+
+        private static final long serialVersionUID = 6126474287302736711L;
+
+        private final Object fSymbol;
+
+        public TruncatedFunction(ICalledFunction function, long start, long end, long calleeTime, String hostId) {
+            super(start, end, function.getDepth(), function.getProcessId(), function.getThreadId(), null, hostId);
+            fSymbol = function.getSymbol();
+            fSelfTime -= calleeTime;
+        }
+
+        @Override
+        public Object getSymbol() {
+            return fSymbol;
+        }
+
     }
 
     @Override
@@ -342,6 +1429,113 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ISeg
         return Collections.EMPTY_LIST;
     }
 
+    /**
+     * Set the engine used to read the function calls from the callstacks. The
+     * engine must be set before the analysis is executed.
+     *
+     * @param engine
+     *            The engine to use to build the call graph
+     */
+    public void setBuildEngine(BuildEngine engine) {
+        fEngine = engine;
+    }
+
+    /**
+     * Get the engine used to read the function calls from the callstacks
+     *
+     * @return The engine used to build the call graph
+     */
+    public BuildEngine getBuildEngine() {
+        return fEngine;
+    }
+
+    /**
+     * Set the number of threads used to build the call graph. Each leaf element
+     * of the callstack series is built in a fork/join pool of this size. A
+     * value of 1 builds the call graph sequentially in the analysis thread.
+     *
+     * @param parallelism
+     *            The number of threads to use, must be at least 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be at least 1: " + parallelism); //$NON-NLS-1$
+        }
+        fParallelism = parallelism;
+    }
+
+    /**
+     * Get the number of threads used to build the call graph
+     *
+     * @return The parallelism level
+     */
+    public int getParallelism() {
+        return fParallelism;
+    }
+
+    /**
+     * Set whether the called functions should be saved in a compact store. The
+     * compact store saves the functions' data in primitive arrays and the
+     * called functions returned by the segment store and
+     * {@link #getRootFunctions()} are views created on demand. The functions
+     * are read from the callstacks directly in the store, by sweeping the
+     * intervals of each depth, and the store is available once the analysis
+     * is completed. This option must be set before the analysis is executed.
+     *
+     * @param compact
+     *            <code>true</code> to save the functions in the compact store
+     */
+    public void setCompactStorage(boolean compact) {
+        fCompactStorage = compact;
+    }
+
+    /**
+     * Set whether the call graph should be built while the callstacks are
+     * being built. In streaming mode, the functions are added to the call
+     * graph as soon as they are completed and the listeners are notified with
+     * the partial results at every update interval. With the compact storage,
+     * the segment store is only filled once the callstacks are completed. This
+     * option must be set before the analysis is executed.
+     *
+     * @param streaming
+     *            <code>true</code> to build the call graph in streaming mode
+     */
+    public void setStreaming(boolean streaming) {
+        fStreaming = streaming;
+    }
+
+    /**
+     * Set the interval between the updates of the call graph in streaming
+     * mode
+     *
+     * @param interval
+     *            The interval in milliseconds, must be positive
+     */
+    public void setUpdateInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Update interval should be positive: " + interval); //$NON-NLS-1$
+        }
+        fUpdateInterval = interval;
+    }
+
+    /**
+     * Set the number of consecutive root functions aggregated in each
+     * checkpoint of the time range index used by
+     * {@link #getCallGraph(long, long)}. Smaller checkpoints make the queries
+     * faster, but use more memory. This option must be set before the
+     * analysis is executed.
+     *
+     * @param checkpointSize
+     *            The number of root functions per checkpoint, must be at
+     *            least 1
+     */
+    public void setCheckpointSize(int checkpointSize) {
+        if (checkpointSize < 1) {
+            throw new IllegalArgumentException("Checkpoint size should be at least 1: " + checkpointSize); //$NON-NLS-1$
+        }
+        fCheckpointSize = checkpointSize;
+    }
+
     /**
      * Set the group descriptor by which to group the callgraph data
      *
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackProvider;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+
+/**
+ * Reads and writes the functions of a call graph to a supplementary file, so
+ * that the call graph does not need to be built again from the callstack when
+ * a trace is reopened.
+ *
+ * The file contains the ID and callstack version of each callstack provider
+ * and the IDs of the CPU time providers of its host's model, then, for each leaf element of the callstack series, in the order of the
+ * providers, the element's name, its aggregated tree and its functions, each
+ * function followed by its callees. Each function has the index of its node in
+ * the aggregated tree, so that the aggregated tree is not computed again when
+ * the file is read, only the statistics of its nodes are updated with their
+ * functions. The file is valid only if the providers, their versions, their
+ * leaf elements and the CPU time providers of their hosts are the same as when
+ * it was written, so a call graph saved with unknown CPU times is built again
+ * once CPU time data becomes available for its host. The samples of the
+ * sampled callstack providers are not saved, they are aggregated again.
+ *
+ * @author Geneviève Bastien
+ */
+final class CallGraphFile {
+
+    /** Magic number at the start of the file, "CGRF" */
+    private static final int MAGIC = 0x43475246;
+    /** Version of the file format, to increment when the format changes */
+    private static final int FORMAT_VERSION = 4;
+
+    private static final byte SYMBOL_LONG = 0;
+    private static final byte SYMBOL_STRING = 1;
+
+    private CallGraphFile() {
+        // Do nothing
+    }
+
+    /**
+     * Write the call graph of the callstack providers to a file. The file is
+     * first written to a temporary file that is then moved, so that a
+     * partially written file is never read. The CPU times of the functions
+     * are saved as they are, even if unknown.
+     *
+     * @param file
+     *            The file to write
+     * @param providers
+     *            The callstack providers for which the call graph was built
+     * @param threadIndexes
+     *            The index of each leaf element of the providers, in the
+     *            order of the providers' callstack series
+     * @throws IOException
+     *             Exceptions thrown when writing the file, or if some
+     *             functions' symbols cannot be written
+     */
+    public static void write(Path file, List<ICallStackProvider> providers, List<CallGraphRangeIndex> threadIndexes) throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp"); //$NON-NLS-1$
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(providers.size());
+            for (ICallStackProvider provider : providers) {
+                writeString(out, provider.getId());
+                out.writeInt(provider.getCallStackVersion());
+                List<String> cpuTimeProviderIds = getCpuTimeProviderIds(provider);
+                out.writeInt(cpuTimeProviderIds.size());
+                for (String id : cpuTimeProviderIds) {
+                    writeString(out, id);
+                }
+            }
+            out.writeInt(threadIndexes.size());
+            for (CallGraphRangeIndex threadIndex : threadIndexes) {
+                GroupNode node = threadIndex.getNode();
+                AbstractCalledFunction rootSegment = threadIndex.getRootSegment();
+                writeString(out, threadIndex.getElement().getName());
+                writeString(out, threadIndex.getId());
+                out.writeInt(rootSegment.getProcessId());
+                out.writeInt(rootSegment.getThreadId());
+                out.writeInt(threadIndex.getMaxDepth());
+
+                // The aggregated tree, numbering its nodes in the written order
+                Map<AggregatedCalledFunction, Integer> nodeIds = new IdentityHashMap<>();
+                out.writeLong(node.getDuration());
+                out.writeLong(node.getSelfTime());
+                out.writeLong(node.getCpuTime());
+                writeChildren(out, node, nodeIds);
+
+                List<ICalledFunction> rootFunctions = threadIndex.getRootFunctions();
+                out.writeInt(rootFunctions.size());
+                for (ICalledFunction rootFunction : rootFunctions) {
+                    writeFunction(out, rootFunction, node, nodeIds);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<String> getCpuTimeProviderIds(ICallStackProvider provider) {
+        return ModelManager.getModelFor(provider.getHostId()).getCpuTimeProviderIds();
+    }
+
+    private static void writeChildren(DataOutputStream out, AggregatedCalledFunction node, Map<AggregatedCalledFunction, Integer> nodeIds) throws IOException {
+        List<AggregatedCalledFunction> children = new ArrayList<>(node.getChildren());
+        out.writeInt(children.size());
+        for (AggregatedCalledFunction child : children) {
+            nodeIds.put(child, nodeIds.size());
+            writeSymbol(out, child.getSymbol());
+            out.writeLong(child.getDuration());
+            out.writeLong(child.getSelfTime());
+            out.writeLong(child.getCpuTime());
+            writeChildren(out, child, nodeIds);
+        }
+    }
+
+    private static void writeFunction(DataOutputStream out, ICalledFunction function, AggregatedCalledFunction parentNode, Map<AggregatedCalledFunction, Integer> nodeIds) throws IOException {
+        AggregatedCalledFunction node = parentNode.getChild(function.getSymbol());
+        Integer nodeId = (node == null ? null : nodeIds.get(node));
+        if (node == null || nodeId == null) {
+            throw new IOException("Function not in the aggregated tree: " + function); //$NON-NLS-1$
+        }
+        out.writeLong(function.getStart());
+        out.writeLong(function.getEnd());
+        out.writeInt(function.getDepth());
+        writeSymbol(out, function.getSymbol());
+        out.writeInt(function.getProcessId());
+        out.writeInt(function.getThreadId());
+        out.writeLong(function.getCpuTime());
+        out.writeInt(function.getRepeatCount());
+        out.writeInt(nodeId);
+        List<ICalledFunction> children = function.getChildren();
+        out.writeInt(children.size());
+        for (ICalledFunction child : children) {
+            writeFunction(out, child, node, nodeIds);
+        }
+    }
+
+    private static void writeSymbol(DataOutputStream out, Object symbol) throws IOException {
+        if (symbol instanceof Long) {
+            out.writeByte(SYMBOL_LONG);
+            out.writeLong((Long) symbol);
+        } else if (symbol instanceof String) {
+            out.writeByte(SYMBOL_STRING);
+            writeString(out, (String) symbol);
+        } else {
+            throw new IOException("Unsupported symbol type: " + symbol.getClass().getName()); //$NON-NLS-1$
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read the call graph of the callstack providers from a file. The file is
+     * streamed through a buffer, it is never loaded at once in memory. The
+     * functions are read and added to the statistics of their node of the
+     * saved aggregated tree. The CPU times that were unknown when the file
+     * was written are resolved again when they are requested.
+     *
+     * @param file
+     *            The file to read
+     * @param providers
+     *            The callstack providers for which to read the call graph
+     * @param symbols
+     *            The table in which to intern the symbols of the functions
+     * @return The call graph of each leaf element of the providers' series,
+     *         in order, or <code>null</code> if the file does not exist or is
+     *         not valid for these providers
+     * @throws IOException
+     *             Exceptions thrown when reading the file
+     */
+    public static @Nullable List<ThreadCallGraph> read(Path file, List<ICallStackProvider> providers, SymbolTable symbols) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return read(in, size, providers, symbols);
+        } catch (EOFException | IllegalArgumentException e) {
+            // Truncated or corrupted file
+            return null;
+        }
+    }
+
+    private static @Nullable List<ThreadCallGraph> read(DataInputStream in, long size, List<ICallStackProvider> providers, SymbolTable symbols) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        // Check that the providers and the CPU time providers of their hosts are the same
+        if (in.readInt() != providers.size()) {
+            return null;
+        }
+        for (ICallStackProvider provider : providers) {
+            if (!readString(in, size).equals(provider.getId()) || in.readInt() != provider.getCallStackVersion()) {
+                return null;
+            }
+            List<String> cpuTimeProviderIds = getCpuTimeProviderIds(provider);
+            if (in.readInt() != cpuTimeProviderIds.size()) {
+                return null;
+            }
+            for (String id : cpuTimeProviderIds) {
+                if (!readString(in, size).equals(id)) {
+                    return null;
+                }
+            }
+        }
+
+        // Get the leaf elements and the host of each, in the written order
+        List<ICallStackLeafElement> elements = new ArrayList<>();
+        List<String> hostIds = new ArrayList<>();
+        for (ICallStackProvider provider : providers) {
+            String hostId = provider.getHostId();
+            for (CallStackSeries series : provider.getCallStackSeries()) {
+                for (ICallStackLeafElement element : series.getLeafElements()) {
+                    elements.add(element);
+                    hostIds.add(hostId);
+                }
+            }
+        }
+        if (in.readInt() != elements.size()) {
+            return null;
+        }
+
+        List<ThreadCallGraph> threadCallGraphs = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            ICallStackLeafElement element = elements.get(i);
+            String hostId = hostIds.get(i);
+            if (!readString(in, size).equals(element.getName())) {
+                return null;
+            }
+            String name = readString(in, size);
+            int processId = in.readInt();
+            int threadId = in.readInt();
+            int maxDepth = in.readInt();
+            AbstractCalledFunction rootSegment = CalledFunctionFactory.create(0, 0, 0, name, processId, threadId, null, hostId);
+            GroupNode node = new GroupNode(rootSegment, element, maxDepth, name, symbols);
+            node.setTimes(in.readLong(), in.readLong(), in.readLong());
+            List<AggregatedCalledFunction> nodes = new ArrayList<>();
+            readChildren(in, size, node, nodes);
+
+            ThreadCallGraph threadCallGraph = new ThreadCallGraph(rootSegment, node, null);
+            int nbRoots = in.readInt();
+            for (int j = 0; j < nbRoots; j++) {
+                threadCallGraph.getRootFunctions().add(readFunction(in, size, null, hostId, threadCallGraph.getFunctions(), nodes));
+            }
+            threadCallGraphs.add(threadCallGraph);
+        }
+        return threadCallGraphs;
+    }
+
+    private static void readChildren(DataInputStream in, long size, AggregatedCalledFunction node, List<AggregatedCalledFunction> nodes) throws IOException {
+        int nbChildren = in.readInt();
+        for (int i = 0; i < nbChildren; i++) {
+            Object symbol = readSymbol(in, size);
+            AggregatedCalledFunction child = node.addChild(symbol, in.readLong(), in.readLong(), in.readLong());
+            nodes.add(child);
+            readChildren(in, size, child, nodes);
+        }
+    }
+
+    private static AbstractCalledFunction readFunction(DataInputStream in, long size, @Nullable ICalledFunction parent, String hostId, List<ICalledFunction> functions, List<AggregatedCalledFunction> nodes) throws IOException {
+        long start = in.readLong();
+        long end = in.readLong();
+        int depth = in.readInt();
+        Object symbol = readSymbol(in, size);
+        int processId = in.readInt();
+        int threadId = in.readInt();
+        long cpuTime = in.readLong();
+        int repeatCount = in.readInt();
+        int nodeId = in.readInt();
+        if (nodeId < 0 || nodeId >= nodes.size()) {
+            throw new IllegalArgumentException("Invalid aggregated node: " + nodeId); //$NON-NLS-1$
+        }
+        AbstractCalledFunction function = (symbol instanceof String ?
+                CalledFunctionFactory.create(start, end, depth, (String) symbol, processId, threadId, parent, hostId) :
+                CalledFunctionFactory.create(start, end, depth, TmfStateValue.newValueLong((Long) symbol), processId, threadId, parent, hostId));
+        if (cpuTime != IHostModel.TIME_UNKNOWN) {
+            function.setCpuTime(cpuTime);
+        }
+        function.setRepeatCount(repeatCount);
+        functions.add(function);
+        int nbChildren = in.readInt();
+        for (int i = 0; i < nbChildren; i++) {
+            readFunction(in, size, function, hostId, functions, nodes);
+        }
+        // The self time of the function is known once its callees are read
+        nodes.get(nodeId).getFunctionStatistics().update(function);
+        return function;
+    }
+
+    private static Object readSymbol(DataInputStream in, long size) throws IOException {
+        byte symbolType = in.readByte();
+        switch (symbolType) {
+        case SYMBOL_LONG:
+            return in.readLong();
+        case SYMBOL_STRING:
+            return readString(in, size);
+        default:
+            throw new IllegalArgumentException("Unknown symbol type: " + symbolType); //$NON-NLS-1$
+        }
+    }
+
+    private static String readString(DataInputStream in, long size) throws IOException {
+        int length = in.readInt();
+        // A string cannot be longer than the file
+        if (length < 0 || length > size) {
+            throw new IllegalArgumentException("Invalid string length: " + length); //$NON-NLS-1$
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
+
+/**
+ * Index of the aggregated call graph of one callstack, to get the call graph
+ * of a time range without aggregating all the functions of the range.
+ *
+ * The root functions of the callstack are split in checkpoints of a fixed
+ * number of consecutive root functions. The aggregated tree of each checkpoint
+ * is computed, and the trees are merged two by two in a segment tree. The call
+ * graph of a time range is then the merge of the O(log n) nodes covering the
+ * checkpoints completely in the range, plus the aggregation of the root
+ * functions at both edges of the range.
+ *
+ * A root function is part of the call graph of a time range if it intersects
+ * the range. The root functions are not overlapping, so only the first and the
+ * last one may cross the range boundaries: those are truncated to the range,
+ * with their callees, before being aggregated, so that only the time spent in
+ * the range is counted.
+ *
+ * @author Geneviève Bastien
+ */
+class CallGraphRangeIndex {
+
+    private final AbstractCalledFunction fRootSegment;
+    private final GroupNode fNode;
+    private final List<ICalledFunction> fRootFunctions;
+    private final int fCheckpointSize;
+    private final SymbolTable fSymbols;
+
+    /*
+     * The segment tree of aggregated checkpoints. The leaves are at index
+     * fNbLeaves + checkpoint and the children of node i are at 2i and 2i+1
+     */
+    private @Nullable GroupNode @Nullable [] fTree = null;
+    private int fNbLeaves = 0;
+
+    /**
+     * Constructor
+     *
+     * @param rootSegment
+     *            The segment used to create the root group nodes of the
+     *            callstack
+     * @param node
+     *            The group node with the aggregation of all the functions of
+     *            the callstack
+     * @param rootFunctions
+     *            The root functions of this callstack, in time order
+     * @param checkpointSize
+     *            The number of root functions in each checkpoint
+     * @param symbols
+     *            The table in which to intern the symbols of the functions
+     */
+    public CallGraphRangeIndex(AbstractCalledFunction rootSegment, GroupNode node, List<ICalledFunction> rootFunctions, int checkpointSize, SymbolTable symbols) {
+        if (checkpointSize < 1) {
+            throw new IllegalArgumentException("Checkpoint size should be at least 1: " + checkpointSize); //$NON-NLS-1$
+        }
+        fRootSegment = rootSegment;
+        fNode = node;
+        fRootFunctions = rootFunctions;
+        fCheckpointSize = checkpointSize;
+        fSymbols = symbols;
+    }
+
+    /**
+     * Get the segment used to create the group nodes of this callstack
+     *
+     * @return The root segment
+     */
+    public AbstractCalledFunction getRootSegment() {
+        return fRootSegment;
+    }
+
+    /**
+     * Get the group node with the aggregation of all the functions of this
+     * callstack
+     *
+     * @return The group node
+     */
+    public GroupNode getNode() {
+        return fNode;
+    }
+
+    /**
+     * Get the leaf element of this callstack
+     *
+     * @return The callstack element
+     */
+    public ICallStackElement getElement() {
+        return fNode.getElement();
+    }
+
+    /**
+     * Get the maximum depth of this callstack
+     *
+     * @return The maximum depth
+     */
+    public int getMaxDepth() {
+        return fNode.getMaxDepth();
+    }
+
+    /**
+     * Get the ID of the group nodes of this callstack
+     *
+     * @return The ID of the group nodes
+     */
+    public String getId() {
+        return fNode.getId();
+    }
+
+    /**
+     * Get the root functions of this callstack
+     *
+     * @return The root functions, in time order
+     */
+    public List<ICalledFunction> getRootFunctions() {
+        return fRootFunctions;
+    }
+
+    /**
+     * Get the aggregated call graph of the root functions intersecting a time
+     * range, truncated to the range.
+     *
+     * @param start
+     *            The start of the range
+     * @param end
+     *            The end of the range
+     * @return The group node with the aggregated functions of this range, or
+     *         <code>null</code> if no function intersects the range
+     */
+    public @Nullable GroupNode getCallGraph(long start, long end) {
+        // Root functions do not overlap, so they are sorted by start and end
+        int first = firstEndingAfter(start);
+        int last = lastStartingBefore(end);
+        if (first > last) {
+            return null;
+        }
+        GroupNode result = createGroupNode();
+
+        // The functions crossing the boundaries are aggregated truncated
+        int fullFirst = first;
+        int fullLast = last;
+        if (!isContained(fRootFunctions.get(first), start, end)) {
+            aggregateClipped(result, fRootFunctions.get(first), start, end);
+            fullFirst++;
+        }
+        if (last > first && !isContained(fRootFunctions.get(last), start, end)) {
+            fullLast--;
+        }
+
+        if (fullFirst <= fullLast) {
+            aggregateFull(result, fullFirst, fullLast);
+        }
+        if (fullLast < last && last > first) {
+            aggregateClipped(result, fRootFunctions.get(last), start, end);
+        }
+        return result;
+    }
+
+    /**
+     * Aggregate the root functions between two indexes, inclusive, that are
+     * completely in the range, using the checkpoints covered by those indexes
+     */
+    private void aggregateFull(GroupNode result, int first, int last) {
+        // Checkpoints completely included in the range
+        int firstCheckpoint = (first + fCheckpointSize - 1) / fCheckpointSize;
+        int lastCheckpoint = (last + 1) / fCheckpointSize - 1;
+        if (firstCheckpoint > lastCheckpoint) {
+            aggregate(result, first, last + 1);
+            return;
+        }
+        aggregate(result, first, firstCheckpoint * fCheckpointSize);
+        for (GroupNode node : getCoveringNodes(firstCheckpoint, lastCheckpoint)) {
+            result.mergeFrom(node);
+        }
+        aggregate(result, (lastCheckpoint + 1) * fCheckpointSize, last + 1);
+    }
+
+    private static boolean isContained(ICalledFunction function, long start, long end) {
+        return function.getStart() >= start && function.getEnd() <= end;
+    }
+
+    private GroupNode createGroupNode() {
+        return new GroupNode(fRootSegment, fNode.getElement(), fNode.getMaxDepth(), fNode.getId(), fSymbols);
+    }
+
+    /**
+     * Aggregate the root functions between two indexes under a node
+     */
+    private void aggregate(GroupNode node, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ICalledFunction rootFunction = fRootFunctions.get(i);
+            AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(rootFunction, node);
+            CallGraphAnalysis.aggregateChildren(rootFunction, aggregatedChild);
+            node.addChild(rootFunction, aggregatedChild);
+        }
+    }
+
+    /**
+     * Aggregate the part of a root function and its callees that is inside a
+     * time range under a node
+     */
+    private void aggregateClipped(GroupNode node, ICalledFunction rootFunction, long start, long end) {
+        ICalledFunction clipped = clip(rootFunction, start, end, null);
+        AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(clipped, node);
+        CallGraphAnalysis.aggregateChildren(clipped, aggregatedChild);
+        node.addChild(clipped, aggregatedChild);
+    }
+
+    /**
+     * Create a copy of a function and its callees truncated to a time range.
+     * Their CPU time is computed for the truncated period only.
+     */
+    private ClippedFunction clip(ICalledFunction function, long start, long end, @Nullable ClippedFunction parent) {
+        ClippedFunction clipped = new ClippedFunction(function, Math.max(start, function.getStart()), Math.min(end, function.getEnd()), parent, fRootSegment.getHostId());
+        for (ICalledFunction child : function.getChildren()) {
+            // The callees only touching the range would be empty calls
+            if (child.getEnd() > start && child.getStart() < end) {
+                clip(child, start, end, clipped);
+            }
+        }
+        return clipped;
+    }
+
+    /**
+     * A function truncated to the boundaries of a time range
+     */
+    private static final class ClippedFunction extends AbstractCalledFunction {
+
+        private static final long serialVersionUID = -2290834771425871365L;
+
+        private final Object fSymbol;
+
+        public ClippedFunction(ICalledFunction function, long start, long end, @Nullable ClippedFunction parent, String hostId) {
+            super(start, end, function.getDepth(), function.getProcessId(), function.getThreadId(), parent, hostId);
+            fSymbol = function.getSymbol();
+        }
+
+        @Override
+        public Object getSymbol() {
+            return fSymbol;
+        }
+
+    }
+
+    /**
+     * Get the nodes of the segment tree that exactly cover a range of
+     * checkpoints
+     */
+    private synchronized List<GroupNode> getCoveringNodes(int firstCheckpoint, int lastCheckpoint) {
+        @Nullable GroupNode[] tree = fTree;
+        if (tree == null) {
+            tree = buildTree();
+        }
+        List<GroupNode> nodes = new ArrayList<>();
+        int left = firstCheckpoint + fNbLeaves;
+        int right = lastCheckpoint + fNbLeaves + 1;
+        while (left < right) {
+            if ((left & 1) == 1) {
+                addNode(nodes, tree[left++]);
+            }
+            if ((right & 1) == 1) {
+                addNode(nodes, tree[--right]);
+            }
+            left >>= 1;
+            right >>= 1;
+        }
+        return nodes;
+    }
+
+    private static void addNode(List<GroupNode> nodes, @Nullable GroupNode node) {
+        if (node != null) {
+            nodes.add(node);
+        }
+    }
+
+    private @Nullable GroupNode[] buildTree() {
+        int nbCheckpoints = fRootFunctions.size() / fCheckpointSize;
+        int nbLeaves = 1;
+        while (nbLeaves < nbCheckpoints) {
+            nbLeaves <<= 1;
+        }
+        @Nullable GroupNode[] tree = new @Nullable GroupNode[2 * nbLeaves];
+        for (int i = 0; i < nbCheckpoints; i++) {
+            GroupNode leaf = createGroupNode();
+            aggregate(leaf, i * fCheckpointSize, (i + 1) * fCheckpointSize);
+            tree[nbLeaves + i] = leaf;
+        }
+        for (int i = nbLeaves - 1; i > 0; i--) {
+            GroupNode left = tree[2 * i];
+            GroupNode right = tree[2 * i + 1];
+            if (left == null || right == null) {
+                tree[i] = (left == null ? right : left);
+                continue;
+            }
+            GroupNode node = createGroupNode();
+            node.mergeFrom(left);
+            node.mergeFrom(right);
+            tree[i] = node;
+        }
+        fNbLeaves = nbLeaves;
+        fTree = tree;
+        return tree;
+    }
+
+    /**
+     * Get the index of the first root function that ends after a time, or the
+     * number of functions if there is none. The functions ending at the time
+     * only touch a range starting at that time, like the callees that are not
+     * clipped.
+     */
+    private int firstEndingAfter(long time) {
+        int low = 0;
+        int high = fRootFunctions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fRootFunctions.get(mid).getEnd() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the index of the last root function that starts before a time, or -1
+     * if there is none
+     */
+    private int lastStartingBefore(long time) {
+        int low = 0;
+        int high = fRootFunctions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fRootFunctions.get(mid).getStart() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+}
@@ -11,7 +11,6 @@ package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgr
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
 
 /**
@@ -46,11 +45,11 @@ public class CalledFunction extends AbstractCalledFunction {
      *            The ID of the thread that was running this function
      * @param parent
      *            The caller, can be null for root elements
-     * @param model
-     *            The operating system model to provide CPU times
+     * @param hostId
+     *            The ID of the host whose model provides the CPU times
      */
-    protected CalledFunction(long start, long end, long symbol, int depth, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
-        super(start, end, depth, processId, threadId, parent, model);
+    protected CalledFunction(long start, long end, long symbol, int depth, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
+        super(start, end, depth, processId, threadId, parent, hostId);
         fSymbol = symbol;
     }
 
@@ -22,11 +22,55 @@ public final class CalledFunctionFactory {
 
     private static final String SEPARATOR = ": "; //$NON-NLS-1$
     private static final String ERROR_MSG = "Cannot create a called function of type : "; //$NON-NLS-1$
+    /* The host of the functions created with a model instead of a host ID */
+    private static final String NO_HOST = ""; //$NON-NLS-1$
 
     private CalledFunctionFactory() {
         // do nothing
     }
 
+    /**
+     * Factory Method for a state value mapped called function
+     *
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @param depth
+     *            the depth
+     * @param stateValue
+     *            the symbol
+     * @param processId
+     *            The process ID of the traced application
+     * @param threadId
+     *            The thread ID of the called function or
+     *            {@link IHostModel#UNKNOWN_TID} if not available
+     * @param parent
+     *            the parent node
+     * @param hostId
+     *            The ID of the host whose model provides the CPU time of
+     *            this function
+     * @return an ICalledFunction with the specified properties
+     */
+    public static AbstractCalledFunction create(long start, long end, int depth, ITmfStateValue stateValue, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
+        switch (stateValue.getType()) {
+        case INTEGER:
+            return create(start, end, depth, stateValue.unboxInt(), processId, threadId, parent, hostId);
+        case LONG:
+            return create(start, end, depth, stateValue.unboxLong(), processId, threadId, parent, hostId);
+        case STRING:
+            return create(start, end, depth, stateValue.unboxStr(), processId, threadId, parent, hostId);
+        case CUSTOM:
+            // Fall through
+        case DOUBLE:
+            // Fall through
+        case NULL:
+            // Fall through
+        default:
+            throw new IllegalArgumentException(ERROR_MSG + stateValue.getType() + SEPARATOR + stateValue.toString());
+        }
+    }
+
     /**
      * Factory Method for a state value mapped called function
      *
@@ -48,15 +92,67 @@ public final class CalledFunctionFactory {
      * @param model
      *            The operating system model this function is a part of
      * @return an ICalledFunction with the specified properties
+     * @deprecated Use
+     *             {@link #create(long, long, int, ITmfStateValue, int, int, ICalledFunction, String)}
+     *             with the ID of the host instead, the model of the host is
+     *             then obtained when the CPU time is requested
      */
+    @Deprecated
     public static AbstractCalledFunction create(long start, long end, int depth, ITmfStateValue stateValue, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
+        AbstractCalledFunction function = create(start, end, depth, stateValue, processId, threadId, parent, NO_HOST);
+        function.setModel(model);
+        return function;
+    }
+
+    /**
+     * Factory Method for a state value mapped called function in which direct
+     * recursive calls were folded by the state provider
+     *
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @param depth
+     *            the depth
+     * @param stateValue
+     *            the symbol
+     * @param processId
+     *            The process ID of the traced application
+     * @param threadId
+     *            The thread ID of the called function or
+     *            {@link IHostModel#UNKNOWN_TID} if not available
+     * @param parent
+     *            the parent node
+     * @param hostId
+     *            The ID of the host whose model provides the CPU time of
+     *            this function
+     * @param repeatCount
+     *            The number of recursive calls folded in this function
+     * @return an ICalledFunction with the specified properties
+     */
+    public static AbstractCalledFunction create(long start, long end, int depth, ITmfStateValue stateValue, int processId, int threadId, @Nullable ICalledFunction parent, String hostId, int repeatCount) {
+        AbstractCalledFunction function = create(start, end, depth, stateValue, processId, threadId, parent, hostId);
+        function.setRepeatCount(repeatCount);
+        return function;
+    }
+
+    /**
+     * Get the symbol of a state value mapped called function, as returned by
+     * {@link ICalledFunction#getSymbol()} for the function created with this
+     * state value
+     *
+     * @param stateValue
+     *            the symbol
+     * @return The symbol object
+     */
+    public static Object getSymbol(ITmfStateValue stateValue) {
         switch (stateValue.getType()) {
         case INTEGER:
-            return create(start, end, depth, stateValue.unboxInt(), processId, threadId, parent, model);
+            return Long.valueOf(stateValue.unboxInt());
         case LONG:
-            return create(start, end, depth, stateValue.unboxLong(), processId, threadId, parent, model);
+            return Long.valueOf(stateValue.unboxLong());
         case STRING:
-            return create(start, end, depth, stateValue.unboxStr(), processId, threadId, parent, model);
+            return stateValue.unboxStr();
         case CUSTOM:
             // Fall through
         case DOUBLE:
@@ -68,6 +164,26 @@ public final class CalledFunctionFactory {
         }
     }
 
+    /**
+     * Create a copy of a function, with another end time and under another
+     * parent. The callees of the function are not copied.
+     *
+     * @param function
+     *            The function to copy
+     * @param end
+     *            The end time of the copy
+     * @param parent
+     *            The parent of the copy
+     * @return The copy of the function
+     */
+    static AbstractCalledFunction copy(AbstractCalledFunction function, long end, @Nullable ICalledFunction parent) {
+        Object symbol = function.getSymbol();
+        if (symbol instanceof Long) {
+            return create(function.getStart(), end, function.getDepth(), (long) symbol, function.getProcessId(), function.getThreadId(), parent, function.getHostId());
+        }
+        return create(function.getStart(), end, function.getDepth(), String.valueOf(symbol), function.getProcessId(), function.getThreadId(), parent, function.getHostId());
+    }
+
     /**
      * Factory method to create a called function with a symbol that is a long
      * integer
@@ -86,11 +202,11 @@ public final class CalledFunctionFactory {
      *            the parent node
      * @return an ICalledFunction with the specified propertiess
      */
-    private static CalledFunction create(long start, long end, int depth, long value, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
+    private static CalledFunction create(long start, long end, int depth, long value, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
         if (start > end) {
             throw new IllegalArgumentException(Messages.TimeError + '[' + start + ',' + end + ']');
         }
-        return new CalledFunction(start, end, value, depth, processId, threadId, parent, model);
+        return new CalledFunction(start, end, value, depth, processId, threadId, parent, hostId);
     }
 
     /**
@@ -112,15 +228,50 @@ public final class CalledFunctionFactory {
      *            {@link IHostModel#UNKNOWN_TID} if not available
      * @param parent
      *            the parent node
-     * @param model
-     *            The operating system model this function is a part of
+     * @param hostId
+     *            The ID of the host whose model provides the CPU time of
+     *            this function
      * @return an ICalledFunction with the specified properties
      */
-    public static CalledStringFunction create(long start, long end, int depth, String value, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
+    public static CalledStringFunction create(long start, long end, int depth, String value, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
         if (start > end) {
             throw new IllegalArgumentException(Messages.TimeError + '[' + start + ',' + end + ']');
         }
-        return new CalledStringFunction(start, end, value, depth, processId, threadId, parent, model);
+        return new CalledStringFunction(start, end, value, depth, processId, threadId, parent, hostId);
+    }
+
+    /**
+     * Factory method to create a called function with a symbol that is a
+     * {@link String}
+     *
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @param depth
+     *            the depth
+     * @param value
+     *            the symbol
+     * @param processId
+     *            The process ID of the traced application
+     * @param threadId
+     *            The thread ID of the called function or
+     *            {@link IHostModel#UNKNOWN_TID} if not available
+     * @param parent
+     *            the parent node
+     * @param model
+     *            The operating system model this function is a part of
+     * @return an ICalledFunction with the specified properties
+     * @deprecated Use
+     *             {@link #create(long, long, int, String, int, int, ICalledFunction, String)}
+     *             with the ID of the host instead, the model of the host is
+     *             then obtained when the CPU time is requested
+     */
+    @Deprecated
+    public static CalledStringFunction create(long start, long end, int depth, String value, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
+        CalledStringFunction function = create(start, end, depth, value, processId, threadId, parent, NO_HOST);
+        function.setModel(model);
+        return function;
     }
 
 }
@@ -0,0 +1,834 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.segmentstore.core.ISegmentStore;
+
+/**
+ * A segment store for called functions where each field of the functions is
+ * saved in primitive arrays instead of one object per function. The arrays are
+ * allocated by chunks, so the store can grow without copying the data already
+ * saved.
+ *
+ * The functions are identified by their index in the store, and the
+ * {@link ICalledFunction} objects are lightweight views on those indexes that
+ * are created only when a function is requested through the collection or
+ * segment store API. Symbols are interned in a {@link SymbolTable}, that can
+ * be shared with the aggregated functions, so each distinct symbol object is
+ * kept only once.
+ *
+ * Functions must be added with their parent before their children. The store
+ * is not thread-safe: it is meant to be filled by one thread and published to
+ * the readers only once it is complete.
+ *
+ * @author Geneviève Bastien
+ */
+public class CalledFunctionStore extends AbstractCollection<@NonNull ISegment> implements ISegmentStore<@NonNull ISegment> {
+
+    /** Value of the index of an absent function, parent or child */
+    public static final int NO_FUNCTION = -1;
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final List<long[]> fStarts = new ArrayList<>();
+    private final List<long[]> fEnds = new ArrayList<>();
+    private final List<long[]> fSelfTimes = new ArrayList<>();
+    private final List<long[]> fCpuTimes = new ArrayList<>();
+    private final List<int[]> fDepths = new ArrayList<>();
+    private final List<int[]> fSymbolIds = new ArrayList<>();
+    private final List<int[]> fProcessIds = new ArrayList<>();
+    private final List<int[]> fThreadIds = new ArrayList<>();
+    private final List<int[]> fParents = new ArrayList<>();
+    private final List<int[]> fFirstChildren = new ArrayList<>();
+    private final List<int[]> fLastChildren = new ArrayList<>();
+    private final List<int[]> fNextSiblings = new ArrayList<>();
+    private final List<int[]> fRepeatCounts = new ArrayList<>();
+    /* The indexes of the root functions, in the order they were added */
+    private final List<int[]> fRoots = new ArrayList<>();
+
+    private final SymbolTable fSymbols;
+
+    private int fSize = 0;
+    private int fNbRoots = 0;
+    private int @Nullable [] fSortedIndexes = null;
+
+    /**
+     * Constructor, with a symbol table for this store only
+     */
+    public CalledFunctionStore() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param symbols
+     *            The table in which to intern the symbols of the functions
+     */
+    public CalledFunctionStore(SymbolTable symbols) {
+        fSymbols = symbols;
+    }
+
+    /**
+     * Get the table in which the symbols of this store are interned
+     *
+     * @return The symbol table
+     */
+    public SymbolTable getSymbolTable() {
+        return fSymbols;
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing the store
+    // ------------------------------------------------------------------------
+
+    /**
+     * Add a function to the store. The self time of the function is
+     * initialized to its duration, and the duration of the function is removed
+     * from the self time of its parent.
+     *
+     * @param start
+     *            The start time of the function
+     * @param end
+     *            The end time of the function
+     * @param depth
+     *            The depth of the function in the callstack
+     * @param symbol
+     *            The symbol of the function
+     * @param processId
+     *            The process ID of the traced application
+     * @param threadId
+     *            The thread ID of the function
+     * @param parent
+     *            The index of the parent function in this store, or
+     *            {@link #NO_FUNCTION} for a root function
+     * @param cpuTime
+     *            The time spent on the CPU by this function
+     * @return The index of the function in the store
+     */
+    public int addFunction(long start, long end, int depth, Object symbol, int processId, int threadId, int parent, long cpuTime) {
+        return addFunctionWithSymbolId(start, end, depth, fSymbols.intern(symbol), processId, threadId, parent, cpuTime);
+    }
+
+    /**
+     * Add a function whose symbol is already interned in the symbol table of
+     * this store. See
+     * {@link #addFunction(long, long, int, Object, int, int, int, long)}.
+     *
+     * @param start
+     *            The start time of the function
+     * @param end
+     *            The end time of the function
+     * @param depth
+     *            The depth of the function in the callstack
+     * @param symbolId
+     *            The ID of the symbol of the function in the symbol table
+     * @param processId
+     *            The process ID of the traced application
+     * @param threadId
+     *            The thread ID of the function
+     * @param parent
+     *            The index of the parent function in this store, or
+     *            {@link #NO_FUNCTION} for a root function
+     * @param cpuTime
+     *            The time spent on the CPU by this function
+     * @return The index of the function in the store
+     */
+    public int addFunctionWithSymbolId(long start, long end, int depth, int symbolId, int processId, int threadId, int parent, long cpuTime) {
+        if (start > end) {
+            throw new IllegalArgumentException(Messages.TimeError + '[' + start + ',' + end + ']');
+        }
+        if (parent >= fSize) {
+            throw new IndexOutOfBoundsException("Parent " + parent + " is not in the store"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        int index = fSize;
+        if ((index & CHUNK_MASK) == 0) {
+            addChunk();
+        }
+        int chunk = index >>> CHUNK_BITS;
+        int offset = index & CHUNK_MASK;
+        fStarts.get(chunk)[offset] = start;
+        fEnds.get(chunk)[offset] = end;
+        fSelfTimes.get(chunk)[offset] = end - start;
+        fCpuTimes.get(chunk)[offset] = cpuTime;
+        fDepths.get(chunk)[offset] = depth;
+        fSymbolIds.get(chunk)[offset] = symbolId;
+        fProcessIds.get(chunk)[offset] = processId;
+        fThreadIds.get(chunk)[offset] = threadId;
+        fParents.get(chunk)[offset] = parent;
+        fFirstChildren.get(chunk)[offset] = NO_FUNCTION;
+        fLastChildren.get(chunk)[offset] = NO_FUNCTION;
+        fNextSiblings.get(chunk)[offset] = NO_FUNCTION;
+        fRepeatCounts.get(chunk)[offset] = 0;
+        fSize++;
+        fSortedIndexes = null;
+
+        if (parent == NO_FUNCTION) {
+            if ((fNbRoots & CHUNK_MASK) == 0) {
+                fRoots.add(new int[CHUNK_SIZE]);
+            }
+            setInt(fRoots, fNbRoots, index);
+            fNbRoots++;
+        } else {
+            // Link the child to its parent and update the parent's self time
+            int lastChild = getInt(fLastChildren, parent);
+            if (lastChild == NO_FUNCTION) {
+                setInt(fFirstChildren, parent, index);
+            } else {
+                setInt(fNextSiblings, lastChild, index);
+            }
+            setInt(fLastChildren, parent, index);
+            int parentChunk = parent >>> CHUNK_BITS;
+            fSelfTimes.get(parentChunk)[parent & CHUNK_MASK] -= (end - start);
+        }
+        return index;
+    }
+
+    /**
+     * Add a function and all its children to the store, in a depth-first
+     * order.
+     *
+     * @param function
+     *            The function to add
+     * @param parent
+     *            The index of the parent function in this store, or
+     *            {@link #NO_FUNCTION} for a root function
+     * @return The index of the function in the store
+     */
+    public int addFunctionTree(ICalledFunction function, int parent) {
+        int index = addFunction(function.getStart(), function.getEnd(), function.getDepth(), function.getSymbol(), function.getProcessId(), function.getThreadId(), parent, function.getCpuTime());
+        setInt(fRepeatCounts, index, function.getRepeatCount());
+        for (ICalledFunction child : function.getChildren()) {
+            addFunctionTree(child, index);
+        }
+        return index;
+    }
+
+    /**
+     * Add all the functions of another store at the end of this store. The
+     * functions keep their order and their links, only their indexes are
+     * shifted, so no called function objects are created.
+     *
+     * @param other
+     *            The store whose functions to add
+     * @return The index in this store of the first function of the other
+     *         store
+     */
+    public int addStore(CalledFunctionStore other) {
+        int offset = fSize;
+        boolean sameSymbols = (other.fSymbols == fSymbols);
+        for (int i = 0; i < other.fSize; i++) {
+            int otherParent = getInt(other.fParents, i);
+            int symbolId = getInt(other.fSymbolIds, i);
+            if (!sameSymbols) {
+                symbolId = fSymbols.intern(other.fSymbols.getSymbol(symbolId));
+            }
+            int index = addFunctionWithSymbolId(getLong(other.fStarts, i), getLong(other.fEnds, i), getInt(other.fDepths, i), symbolId,
+                    getInt(other.fProcessIds, i), getInt(other.fThreadIds, i), (otherParent == NO_FUNCTION ? NO_FUNCTION : otherParent + offset), getLong(other.fCpuTimes, i));
+            setInt(fRepeatCounts, index, getInt(other.fRepeatCounts, i));
+        }
+        return offset;
+    }
+
+    /**
+     * Set the CPU time of a function, for instance once the CPU times of all
+     * the functions of a thread were resolved together
+     *
+     * @param index
+     *            The index of the function
+     * @param cpuTime
+     *            The time spent on the CPU by this function
+     */
+    public void setCpuTime(int index, long cpuTime) {
+        checkIndex(index);
+        fCpuTimes.get(index >>> CHUNK_BITS)[index & CHUNK_MASK] = cpuTime;
+    }
+
+    /**
+     * Set the number of direct recursive calls that were folded in a function
+     * by the state provider
+     *
+     * @param index
+     *            The index of the function
+     * @param repeatCount
+     *            The number of folded recursive calls
+     */
+    public void setRepeatCount(int index, int repeatCount) {
+        checkIndex(index);
+        setInt(fRepeatCounts, index, repeatCount);
+    }
+
+    private void addChunk() {
+        fStarts.add(new long[CHUNK_SIZE]);
+        fEnds.add(new long[CHUNK_SIZE]);
+        fSelfTimes.add(new long[CHUNK_SIZE]);
+        fCpuTimes.add(new long[CHUNK_SIZE]);
+        fDepths.add(new int[CHUNK_SIZE]);
+        fSymbolIds.add(new int[CHUNK_SIZE]);
+        fProcessIds.add(new int[CHUNK_SIZE]);
+        fThreadIds.add(new int[CHUNK_SIZE]);
+        fParents.add(new int[CHUNK_SIZE]);
+        fFirstChildren.add(new int[CHUNK_SIZE]);
+        fLastChildren.add(new int[CHUNK_SIZE]);
+        fNextSiblings.add(new int[CHUNK_SIZE]);
+        fRepeatCounts.add(new int[CHUNK_SIZE]);
+    }
+
+    private static long getLong(List<long[]> column, int index) {
+        return column.get(index >>> CHUNK_BITS)[index & CHUNK_MASK];
+    }
+
+    private static int getInt(List<int[]> column, int index) {
+        return column.get(index >>> CHUNK_BITS)[index & CHUNK_MASK];
+    }
+
+    private static void setInt(List<int[]> column, int index, int value) {
+        column.get(index >>> CHUNK_BITS)[index & CHUNK_MASK] = value;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + fSize); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading the columns
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the start time of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The start time
+     */
+    public long getStart(int index) {
+        checkIndex(index);
+        return getLong(fStarts, index);
+    }
+
+    /**
+     * Get the end time of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The end time
+     */
+    public long getEnd(int index) {
+        checkIndex(index);
+        return getLong(fEnds, index);
+    }
+
+    /**
+     * Get the self time of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The self time
+     */
+    public long getSelfTime(int index) {
+        checkIndex(index);
+        return getLong(fSelfTimes, index);
+    }
+
+    /**
+     * Get the CPU time of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The CPU time
+     */
+    public long getCpuTime(int index) {
+        checkIndex(index);
+        return getLong(fCpuTimes, index);
+    }
+
+    /**
+     * Get the number of direct recursive calls folded in a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The number of folded recursive calls
+     */
+    public int getRepeatCount(int index) {
+        checkIndex(index);
+        return getInt(fRepeatCounts, index);
+    }
+
+    /**
+     * Get the depth of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The depth
+     */
+    public int getDepth(int index) {
+        checkIndex(index);
+        return getInt(fDepths, index);
+    }
+
+    /**
+     * Get the ID of the symbol of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The ID of the symbol, to use with {@link #getSymbolForId(int)}
+     */
+    public int getSymbolId(int index) {
+        checkIndex(index);
+        return getInt(fSymbolIds, index);
+    }
+
+    /**
+     * Get the ID of the symbol of a function in a symbol table. For the
+     * functions of a store using this table, the ID saved in the store is
+     * returned.
+     *
+     * @param function
+     *            The function
+     * @param symbols
+     *            The symbol table
+     * @return The ID of the symbol in the table
+     */
+    static int getSymbolId(ICalledFunction function, SymbolTable symbols) {
+        if (function instanceof CalledFunctionView) {
+            CalledFunctionView view = (CalledFunctionView) function;
+            if (view.fStore.fSymbols == symbols) {
+                return view.fStore.getSymbolId(view.fIndex);
+            }
+        }
+        return symbols.intern(function.getSymbol());
+    }
+
+    /**
+     * Get the symbol corresponding to a symbol ID
+     *
+     * @param symbolId
+     *            The ID of the symbol
+     * @return The symbol
+     */
+    public Object getSymbolForId(int symbolId) {
+        return fSymbols.getSymbol(symbolId);
+    }
+
+    /**
+     * Get the symbol of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The symbol
+     */
+    public Object getSymbol(int index) {
+        return getSymbolForId(getSymbolId(index));
+    }
+
+    /**
+     * Get the process ID of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The process ID
+     */
+    public int getProcessId(int index) {
+        checkIndex(index);
+        return getInt(fProcessIds, index);
+    }
+
+    /**
+     * Get the thread ID of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The thread ID
+     */
+    public int getThreadId(int index) {
+        checkIndex(index);
+        return getInt(fThreadIds, index);
+    }
+
+    /**
+     * Get the index of the parent of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The index of the parent, or {@link #NO_FUNCTION} for a root
+     *         function
+     */
+    public int getParent(int index) {
+        checkIndex(index);
+        return getInt(fParents, index);
+    }
+
+    /**
+     * Get the index of the first child of a function
+     *
+     * @param index
+     *            The index of the function
+     * @return The index of the first child, or {@link #NO_FUNCTION} if the
+     *         function has no children
+     */
+    public int getFirstChild(int index) {
+        checkIndex(index);
+        return getInt(fFirstChildren, index);
+    }
+
+    /**
+     * Get the index of the next function with the same parent
+     *
+     * @param index
+     *            The index of the function
+     * @return The index of the next sibling, or {@link #NO_FUNCTION} if this
+     *         is the last child of its parent
+     */
+    public int getNextSibling(int index) {
+        checkIndex(index);
+        return getInt(fNextSiblings, index);
+    }
+
+    /**
+     * Get a called function view of the function at an index. The view is
+     * created at each call.
+     *
+     * @param index
+     *            The index of the function
+     * @return The called function
+     */
+    public ICalledFunction getFunction(int index) {
+        checkIndex(index);
+        return new CalledFunctionView(this, index);
+    }
+
+    /**
+     * Get the number of root functions in this store
+     *
+     * @return The number of root functions
+     */
+    public int getNbRootFunctions() {
+        return fNbRoots;
+    }
+
+    /**
+     * Get the index of a root function
+     *
+     * @param rank
+     *            The rank of the root function, in the order the root
+     *            functions were added
+     * @return The index of the root function in the store
+     */
+    public int getRootIndex(int rank) {
+        if (rank < 0 || rank >= fNbRoots) {
+            throw new IndexOutOfBoundsException("Root: " + rank + ", Number of roots: " + fNbRoots); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return getInt(fRoots, rank);
+    }
+
+    /**
+     * Get the root functions of this store, in the order they were added. The
+     * list contains the root functions of the store at the time of the call
+     * and the called functions are created when they are accessed.
+     *
+     * @return The list of root functions
+     */
+    public List<ICalledFunction> getRootFunctions() {
+        int nbRoots = fNbRoots;
+        return new AbstractList<ICalledFunction>() {
+            @Override
+            public ICalledFunction get(int rank) {
+                if (rank >= nbRoots) {
+                    throw new IndexOutOfBoundsException("Root: " + rank + ", Number of roots: " + nbRoots); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                return new CalledFunctionView(CalledFunctionStore.this, getRootIndex(rank));
+            }
+
+            @Override
+            public int size() {
+                return nbRoots;
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // ISegmentStore
+    // ------------------------------------------------------------------------
+
+    @Override
+    public int size() {
+        return fSize;
+    }
+
+    @Override
+    public Iterator<@NonNull ISegment> iterator() {
+        int[] sorted = getSortedIndexes();
+        int size = fSize;
+        return new Iterator<@NonNull ISegment>() {
+            private int fPos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return fPos < size;
+            }
+
+            @Override
+            public @NonNull ISegment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new CalledFunctionView(CalledFunctionStore.this, sorted[fPos++]);
+            }
+        };
+    }
+
+    @Override
+    public Iterable<@NonNull ISegment> getIntersectingElements(long position) {
+        return getIntersectingElements(position, position);
+    }
+
+    @Override
+    public Iterable<@NonNull ISegment> getIntersectingElements(long start, long end) {
+        int[] sorted = getSortedIndexes();
+        List<@NonNull ISegment> elements = new ArrayList<>();
+        for (int i = 0; i < fSize; i++) {
+            int index = sorted[i];
+            if (getLong(fStarts, index) > end) {
+                // The functions are sorted by start time
+                break;
+            }
+            if (getLong(fEnds, index) >= start) {
+                elements.add(new CalledFunctionView(this, index));
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public void clear() {
+        fStarts.clear();
+        fEnds.clear();
+        fSelfTimes.clear();
+        fCpuTimes.clear();
+        fDepths.clear();
+        fSymbolIds.clear();
+        fProcessIds.clear();
+        fThreadIds.clear();
+        fParents.clear();
+        fFirstChildren.clear();
+        fLastChildren.clear();
+        fNextSiblings.clear();
+        fRoots.clear();
+        fSize = 0;
+        fNbRoots = 0;
+        fSortedIndexes = null;
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+    }
+
+    /**
+     * Get the indexes of the functions sorted by start time, then end time, as
+     * the other segment stores. The sorted indexes are computed at the first
+     * request after functions were added to the store.
+     */
+    private int[] getSortedIndexes() {
+        int[] sorted = fSortedIndexes;
+        if (sorted == null) {
+            sorted = new int[fSize];
+            for (int i = 0; i < fSize; i++) {
+                sorted[i] = i;
+            }
+            mergeSort(sorted, new int[fSize], 0, fSize);
+            fSortedIndexes = sorted;
+        }
+        return sorted;
+    }
+
+    private void mergeSort(int[] indexes, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(indexes, buffer, from, middle);
+        mergeSort(indexes, buffer, middle, to);
+        if (compareIndexes(indexes[middle - 1], indexes[middle]) <= 0) {
+            // Already in order, which is often the case for one thread
+            return;
+        }
+        System.arraycopy(indexes, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareIndexes(buffer[left], buffer[right]) <= 0)) {
+                indexes[i] = buffer[left++];
+            } else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+
+    private int compareIndexes(int index1, int index2) {
+        int cmp = Long.compare(getLong(fStarts, index1), getLong(fStarts, index2));
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(getLong(fEnds, index1), getLong(fEnds, index2));
+    }
+
+    // ------------------------------------------------------------------------
+    // Called function view
+    // ------------------------------------------------------------------------
+
+    /**
+     * A called function whose data is in the store. It only keeps a reference
+     * to the store and the function's index.
+     */
+    private static final class CalledFunctionView implements ICalledFunction {
+
+        private static final long serialVersionUID = -4021534312893542376L;
+
+        private final transient CalledFunctionStore fStore;
+        private final int fIndex;
+
+        public CalledFunctionView(CalledFunctionStore store, int index) {
+            fStore = store;
+            fIndex = index;
+        }
+
+        @Override
+        public long getStart() {
+            return fStore.getStart(fIndex);
+        }
+
+        @Override
+        public long getEnd() {
+            return fStore.getEnd(fIndex);
+        }
+
+        @Override
+        public String getName() {
+            return NonNullUtils.nullToEmptyString(getSymbol().toString());
+        }
+
+        @Override
+        public Object getSymbol() {
+            return fStore.getSymbol(fIndex);
+        }
+
+        @Override
+        public List<ICalledFunction> getChildren() {
+            int firstChild = fStore.getFirstChild(fIndex);
+            if (firstChild == NO_FUNCTION) {
+                return Collections.emptyList();
+            }
+            int nbChildren = 0;
+            for (int child = firstChild; child != NO_FUNCTION; child = fStore.getNextSibling(child)) {
+                nbChildren++;
+            }
+            int[] children = new int[nbChildren];
+            int i = 0;
+            for (int child = firstChild; child != NO_FUNCTION; child = fStore.getNextSibling(child)) {
+                children[i++] = child;
+            }
+            return new AbstractList<ICalledFunction>() {
+                @Override
+                public ICalledFunction get(int index) {
+                    return new CalledFunctionView(fStore, children[index]);
+                }
+
+                @Override
+                public int size() {
+                    return children.length;
+                }
+            };
+        }
+
+        @Override
+        public @Nullable ICalledFunction getParent() {
+            int parent = fStore.getParent(fIndex);
+            return (parent == NO_FUNCTION ? null : new CalledFunctionView(fStore, parent));
+        }
+
+        @Override
+        public long getSelfTime() {
+            return fStore.getSelfTime(fIndex);
+        }
+
+        @Override
+        public long getCpuTime() {
+            return fStore.getCpuTime(fIndex);
+        }
+
+        @Override
+        public int getDepth() {
+            return fStore.getDepth(fIndex);
+        }
+
+        @Override
+        public int getProcessId() {
+            return fStore.getProcessId(fIndex);
+        }
+
+        @Override
+        public int getThreadId() {
+            return fStore.getThreadId(fIndex);
+        }
+
+        @Override
+        public int getRepeatCount() {
+            return fStore.getRepeatCount(fIndex);
+        }
+
+        @Override
+        public int compareTo(@Nullable ISegment o) {
+            if (o == null) {
+                throw new IllegalArgumentException();
+            }
+            return AbstractCalledFunction.COMPARATOR.compare(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return fIndex;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CalledFunctionView)) {
+                return false;
+            }
+            CalledFunctionView other = (CalledFunctionView) obj;
+            return fStore == other.fStore && fIndex == other.fIndex;
+        }
+
+        @Override
+        public String toString() {
+            return '[' + String.valueOf(getStart()) + ", " + String.valueOf(getEnd()) + ']' + " Duration: " + getLength() + ", Self Time: " + getSelfTime(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+}
@@ -11,7 +11,6 @@ package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgr
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 
 /**
  * Called Function with the symbol being a string, useful for name resolved
@@ -48,11 +47,11 @@ public class CalledStringFunction extends AbstractCalledFunction {
      *            the thread ID of the traced thread
      * @param parent
      *            The caller, can be null for root elements
-     * @param model
-     *            The model for the host the traced application is running on
+     * @param hostId
+     *            The ID of the host the traced application is running on
      */
-    protected CalledStringFunction(long start, long end, String symbol, int depth, int processId, int threadId, @Nullable ICalledFunction parent, IHostModel model) {
-        super(start, end, depth, processId, threadId, parent, model);
+    protected CalledStringFunction(long start, long end, String symbol, int depth, int processId, int threadId, @Nullable ICalledFunction parent, String hostId) {
+        super(start, end, depth, processId, threadId, parent, hostId);
         fSymbol = symbol;
     }
 
@@ -25,6 +25,9 @@ public class GroupNode extends AggregatedCalledFunction {
     private final ICallStackElement fElement;
 
     /**
+     * Constructor with the table in which to intern the symbols of the
+     * callees
+     *
      * @param calledFunction
      *            the called function
      * @param element
@@ -33,9 +36,12 @@ public class GroupNode extends AggregatedCalledFunction {
      *            The maximum depth
      * @param id
      *            The thread id
+     * @param symbols
+     *            The symbol table, shared by the group nodes that may be
+     *            merged together
      */
-    public GroupNode(AbstractCalledFunction calledFunction, ICallStackElement element, int maxDepth, String id) {
-        super(calledFunction, maxDepth);
+    public GroupNode(AbstractCalledFunction calledFunction, ICallStackElement element, int maxDepth, String id, SymbolTable symbols) {
+        super(calledFunction, maxDepth, symbols);
         fId = id;
         fElement = element;
     }
@@ -87,4 +87,17 @@ public interface ICalledFunction extends INamedSegment {
      */
     int getThreadId();
 
+    /**
+     * The number of direct recursive calls to the same function that were
+     * folded in this call by the state provider. These calls are not
+     * available individually, but they are part of the number of calls of the
+     * function.
+     *
+     * @return The number of folded recursive calls, <code>0</code> if the
+     *         recursion is not folded
+     */
+    default int getRepeatCount() {
+        return 0;
+    }
+
 }
\ No newline at end of file
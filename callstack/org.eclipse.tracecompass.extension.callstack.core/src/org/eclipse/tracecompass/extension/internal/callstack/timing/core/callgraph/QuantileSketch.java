@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch to estimate the quantiles of a distribution of positive
+ * values, with bounded memory.
+ *
+ * The values are counted in logarithmic buckets, such that the quantiles are
+ * estimated with a relative error bounded by the accuracy of the sketch. When
+ * the number of buckets exceeds the maximum, the lowest buckets are collapsed
+ * together, so only the lowest quantiles lose accuracy. Only the buckets that
+ * have values are kept, so a sketch of a few values stays small even if the
+ * values span many orders of magnitude. Two sketches with the
+ * same accuracy can be merged and the result is the same as if all the values
+ * had been added to one sketch.
+ *
+ * @author Geneviève Bastien
+ */
+public class QuantileSketch {
+
+    /** The default relative accuracy of the quantiles */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    /** The default maximum number of buckets */
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private final double fRelativeAccuracy;
+    private final double fGamma;
+    private final double fLogGamma;
+    private final int fMaxBuckets;
+
+    /* The indexes of the non-empty buckets, sorted, and their counts */
+    private int[] fIndexes = new int[0];
+    private long[] fCounts = new long[0];
+    private int fSize = 0;
+    private long fZeroCount = 0;
+    private long fCount = 0;
+
+    /**
+     * Constructor with the default accuracy and maximum number of buckets
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param relativeAccuracy
+     *            The relative accuracy of the quantiles, between 0 and 1
+     *            exclusively
+     * @param maxBuckets
+     *            The maximum number of buckets to keep
+     */
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy should be between 0 and 1: " + relativeAccuracy); //$NON-NLS-1$
+        }
+        if (maxBuckets < 1) {
+            throw new IllegalArgumentException("Maximum number of buckets should be at least 1: " + maxBuckets); //$NON-NLS-1$
+        }
+        fRelativeAccuracy = relativeAccuracy;
+        fGamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        fLogGamma = Math.log(fGamma);
+        fMaxBuckets = maxBuckets;
+    }
+
+    /**
+     * Add a value to the sketch. Negative values, like unknown times, are
+     * ignored.
+     *
+     * @param value
+     *            The value to add
+     */
+    public synchronized void add(long value) {
+        if (value < 0) {
+            return;
+        }
+        fCount++;
+        if (value == 0) {
+            fZeroCount++;
+            return;
+        }
+        addToBucket(getIndex(value), 1);
+    }
+
+    /**
+     * Merge another sketch into this one. The other sketch is not modified.
+     *
+     * @param other
+     *            The sketch to merge, it must have the same accuracy as this
+     *            one
+     */
+    public void merge(QuantileSketch other) {
+        if (other == this) {
+            throw new IllegalArgumentException("A sketch cannot be merged with itself"); //$NON-NLS-1$
+        }
+        if (other.fRelativeAccuracy != fRelativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of different accuracies: " + fRelativeAccuracy + ", " + other.fRelativeAccuracy); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        int[] otherIndexes;
+        long[] otherCounts;
+        long otherZeroCount;
+        long otherCount;
+        synchronized (other) {
+            otherIndexes = Arrays.copyOf(other.fIndexes, other.fSize);
+            otherCounts = Arrays.copyOf(other.fCounts, other.fSize);
+            otherZeroCount = other.fZeroCount;
+            otherCount = other.fCount;
+        }
+        synchronized (this) {
+            fCount += otherCount;
+            fZeroCount += otherZeroCount;
+            if (otherIndexes.length == 0) {
+                return;
+            }
+            // Merge the sorted buckets, then collapse the lowest ones once
+            int[] indexes = new int[fSize + otherIndexes.length];
+            long[] counts = new long[indexes.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < fSize || j < otherIndexes.length) {
+                if (j == otherIndexes.length || (i < fSize && fIndexes[i] < otherIndexes[j])) {
+                    indexes[size] = fIndexes[i];
+                    counts[size++] = fCounts[i++];
+                } else if (i == fSize || otherIndexes[j] < fIndexes[i]) {
+                    indexes[size] = otherIndexes[j];
+                    counts[size++] = otherCounts[j++];
+                } else {
+                    indexes[size] = fIndexes[i];
+                    counts[size++] = fCounts[i++] + otherCounts[j++];
+                }
+            }
+            fIndexes = indexes;
+            fCounts = counts;
+            fSize = size;
+            collapse(fIndexes[fSize - 1] - fMaxBuckets + 1);
+        }
+    }
+
+    /**
+     * Get the number of values added to the sketch
+     *
+     * @return The number of values
+     */
+    public synchronized long getCount() {
+        return fCount;
+    }
+
+    /**
+     * Get the estimated value at a given quantile
+     *
+     * @param quantile
+     *            The quantile, between 0 and 1 inclusively, for example 0.99
+     *            for the 99th percentile
+     * @return The estimated value, or {@link Double#NaN} if the sketch is
+     *         empty
+     */
+    public synchronized double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile should be between 0 and 1: " + quantile); //$NON-NLS-1$
+        }
+        if (fCount == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (fCount - 1));
+        long cumulative = fZeroCount;
+        if (cumulative > rank) {
+            return 0;
+        }
+        for (int i = 0; i < fSize; i++) {
+            cumulative += fCounts[i];
+            if (cumulative > rank) {
+                return getValue(fIndexes[i]);
+            }
+        }
+        return getValue(fIndexes[fSize - 1]);
+    }
+
+    /**
+     * Get the relative accuracy of this sketch
+     *
+     * @return The relative accuracy
+     */
+    public double getRelativeAccuracy() {
+        return fRelativeAccuracy;
+    }
+
+    private int getIndex(long value) {
+        return (int) Math.ceil(Math.log(value) / fLogGamma);
+    }
+
+    /**
+     * Get the value representing a bucket, such that all the values of the
+     * bucket are within the relative accuracy of that value
+     */
+    private double getValue(int index) {
+        return 2 * Math.pow(fGamma, index) / (fGamma + 1);
+    }
+
+    private void addToBucket(int index, long count) {
+        int bucket = index;
+        if (fSize > 0 && bucket <= fIndexes[fSize - 1] - fMaxBuckets) {
+            // Too low, it goes in the lowest bucket
+            bucket = fIndexes[fSize - 1] - fMaxBuckets + 1;
+        }
+        int pos = Arrays.binarySearch(fIndexes, 0, fSize, bucket);
+        if (pos >= 0) {
+            fCounts[pos] += count;
+            return;
+        }
+        insert(-pos - 1, bucket, count);
+        collapse(fIndexes[fSize - 1] - fMaxBuckets + 1);
+    }
+
+    private void insert(int pos, int index, long count) {
+        if (fSize == fIndexes.length) {
+            int capacity = Math.max(4, fSize * 2);
+            fIndexes = Arrays.copyOf(fIndexes, capacity);
+            fCounts = Arrays.copyOf(fCounts, capacity);
+        }
+        System.arraycopy(fIndexes, pos, fIndexes, pos + 1, fSize - pos);
+        System.arraycopy(fCounts, pos, fCounts, pos + 1, fSize - pos);
+        fIndexes[pos] = index;
+        fCounts[pos] = count;
+        fSize++;
+    }
+
+    /**
+     * Collapse the buckets under a minimum index in the bucket at that index
+     */
+    private void collapse(int minIndex) {
+        int nbUnder = 0;
+        long countUnder = 0;
+        while (nbUnder < fSize && fIndexes[nbUnder] < minIndex) {
+            countUnder += fCounts[nbUnder++];
+        }
+        if (nbUnder == 0) {
+            return;
+        }
+        int removed = nbUnder;
+        if (fIndexes[nbUnder] == minIndex) {
+            fCounts[nbUnder] += countUnder;
+        } else {
+            // Keep the last bucket under the minimum as the minimum bucket
+            removed--;
+            fIndexes[removed] = minIndex;
+            fCounts[removed] = countUnder;
+        }
+        System.arraycopy(fIndexes, removed, fIndexes, 0, fSize - removed);
+        System.arraycopy(fCounts, removed, fCounts, 0, fSize - removed);
+        fSize -= removed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Quantile sketch: count=" + fCount + ", buckets=" + fSize; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+}
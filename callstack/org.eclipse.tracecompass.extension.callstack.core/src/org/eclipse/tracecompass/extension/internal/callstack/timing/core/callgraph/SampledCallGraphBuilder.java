@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackElement;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ISampledCallStackProvider.ISampleConsumer;
+
+/**
+ * Consumer of sampled stacks that aggregates them in one group node per
+ * callstack element, without creating a called function for each sample.
+ * Each sample adds its weight to the duration of the functions of its stack,
+ * so the group nodes can be grouped and displayed like the ones built from
+ * entry/exit callstacks.
+ *
+ * This class is not thread safe, the samples should be sent from one thread.
+ *
+ * @author Geneviève Bastien
+ */
+public class SampledCallGraphBuilder implements ISampleConsumer {
+
+    private final String fHostId;
+    private final int fMaxDepth;
+    private final SymbolTable fSymbols;
+    private final Map<ICallStackElement, GroupNode> fNodes = new IdentityHashMap<>();
+    private final List<GroupNode> fNodeList = new ArrayList<>();
+
+    /* The last element and its node, consecutive samples are often for the same element */
+    private @Nullable ICallStackElement fLastElement = null;
+    private @Nullable GroupNode fLastNode = null;
+
+    /**
+     * Constructor
+     *
+     * @param hostId
+     *            The ID of the host of the samples
+     * @param maxDepth
+     *            The maximum depth of the stacks, the deeper symbols are
+     *            ignored
+     * @param symbols
+     *            The table in which to intern the symbols, shared by the group
+     *            nodes that may be merged together
+     */
+    public SampledCallGraphBuilder(String hostId, int maxDepth, SymbolTable symbols) {
+        fHostId = hostId;
+        fMaxDepth = maxDepth;
+        fSymbols = symbols;
+    }
+
+    @Override
+    public void sample(ICallStackElement element, Object[] stack, int depth, long weight) {
+        GroupNode node = fLastNode;
+        if (element != fLastElement || node == null) {
+            node = fNodes.get(element);
+            if (node == null) {
+                node = createGroupNode(element);
+                fNodes.put(element, node);
+                fNodeList.add(node);
+            }
+            fLastElement = element;
+            fLastNode = node;
+        }
+        node.addSample(stack, Math.min(depth, fMaxDepth), weight);
+    }
+
+    private GroupNode createGroupNode(ICallStackElement element) {
+        // Name the node like the nodes of the entry/exit callstacks
+        ICallStackElement parentElement = element.getParentElement();
+        String name = parentElement != null ? parentElement.getName() : element.getName();
+        AbstractCalledFunction rootSegment = CalledFunctionFactory.create(0, 0, 0, name, ICallStackElement.DEFAULT_SYMBOL_KEY, IHostModel.UNKNOWN_TID, null, fHostId);
+        return new GroupNode(rootSegment, element, fMaxDepth, name, fSymbols);
+    }
+
+    /**
+     * Get the group nodes of the elements for which samples were received, in
+     * the order of their first sample
+     *
+     * @return The group nodes
+     */
+    public List<GroupNode> getGroupNodes() {
+        return fNodeList;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Map of the callees of an aggregated function, keyed by the ID of their
+ * symbol in a {@link SymbolTable}. The callees are kept in insertion order.
+ * Small maps are searched linearly in an array of keys, larger ones use an
+ * open-addressing hash table of the keys, so that no key is boxed.
+ *
+ * This class is not thread safe, the aggregated function synchronizes the
+ * accesses.
+ *
+ * @author Geneviève Bastien
+ */
+final class SymbolChildMap {
+
+    /** Maximum number of callees to search linearly */
+    private static final int MAX_LINEAR_SIZE = 8;
+    private static final int EMPTY = -1;
+
+    private int[] fKeys = new int[2];
+    private final List<AggregatedCalledFunction> fValues = new ArrayList<>(2);
+    private final Collection<AggregatedCalledFunction> fValuesView = Collections.unmodifiableList(fValues);
+
+    /*
+     * Hash table of the positions of the keys in fKeys, or null while the map
+     * is small. Its size is a power of 2.
+     */
+    private int @Nullable [] fTable = null;
+
+    /**
+     * Get the callee for a symbol ID
+     *
+     * @param key
+     *            The symbol ID
+     * @return The callee, or <code>null</code> if there is none for this
+     *         symbol
+     */
+    public @Nullable AggregatedCalledFunction get(int key) {
+        int position = find(key);
+        return position == EMPTY ? null : fValues.get(position);
+    }
+
+    /**
+     * Add or replace the callee for a symbol ID
+     *
+     * @param key
+     *            The symbol ID
+     * @param value
+     *            The callee
+     */
+    public void put(int key, AggregatedCalledFunction value) {
+        int position = find(key);
+        if (position != EMPTY) {
+            fValues.set(position, value);
+            return;
+        }
+        position = fValues.size();
+        if (position == fKeys.length) {
+            fKeys = Arrays.copyOf(fKeys, position * 2);
+        }
+        fKeys[position] = key;
+        fValues.add(value);
+        int[] table = fTable;
+        if (table != null && fValues.size() * 2 <= table.length) {
+            insert(table, key, position);
+        } else if (fValues.size() > MAX_LINEAR_SIZE) {
+            rehash();
+        }
+    }
+
+    /**
+     * Get the callees, in the order they were added
+     *
+     * @return An unmodifiable view of the callees
+     */
+    public Collection<AggregatedCalledFunction> values() {
+        return fValuesView;
+    }
+
+    /**
+     * Get whether this map is empty
+     *
+     * @return <code>true</code> if there are no callees
+     */
+    public boolean isEmpty() {
+        return fValues.isEmpty();
+    }
+
+    private int find(int key) {
+        int[] table = fTable;
+        if (table == null) {
+            int size = fValues.size();
+            for (int i = 0; i < size; i++) {
+                if (fKeys[i] == key) {
+                    return i;
+                }
+            }
+            return EMPTY;
+        }
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            int position = table[slot];
+            if (fKeys[position] == key) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private void rehash() {
+        int capacity = Integer.highestOneBit(fValues.size() * 4 - 1) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        for (int i = 0; i < fValues.size(); i++) {
+            insert(table, fKeys[i], i);
+        }
+        fTable = table;
+    }
+
+    private static void insert(int[] table, int key, int position) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position;
+    }
+
+    private static int hash(int key) {
+        // Spread the consecutive IDs over the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
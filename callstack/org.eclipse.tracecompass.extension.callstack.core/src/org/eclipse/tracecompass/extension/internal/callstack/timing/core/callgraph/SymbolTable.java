@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table interning the symbols of the functions, so that the aggregated
+ * functions can be compared and looked up with integer IDs instead of the
+ * symbol objects. The IDs are consecutive, starting at 0. This class is thread
+ * safe.
+ *
+ * @author Geneviève Bastien
+ */
+public class SymbolTable {
+
+    private final Map<Object, Integer> fIds = new ConcurrentHashMap<>();
+    private final List<Object> fSymbols = new ArrayList<>();
+
+    /**
+     * Get the ID of a symbol, adding the symbol to the table if it is not
+     * already in it
+     *
+     * @param symbol
+     *            The symbol
+     * @return The ID of the symbol
+     */
+    public int intern(Object symbol) {
+        Integer id = fIds.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (fSymbols) {
+            id = fIds.get(symbol);
+            if (id == null) {
+                id = fSymbols.size();
+                fSymbols.add(symbol);
+                fIds.put(symbol, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Get the ID of the symbol of a function. The functions keep the ID of
+     * their symbol in the table in which it was first interned, so that it is
+     * not interned again each time they are aggregated.
+     *
+     * @param function
+     *            The function
+     * @return The ID of the function's symbol
+     */
+    int getSymbolId(ICalledFunction function) {
+        if (function instanceof AbstractCalledFunction) {
+            return ((AbstractCalledFunction) function).getSymbolId(this);
+        }
+        return CalledFunctionStore.getSymbolId(function, this);
+    }
+
+    /**
+     * Get the symbol for an ID
+     *
+     * @param id
+     *            The ID of the symbol, as returned by {@link #intern(Object)}
+     * @return The symbol
+     */
+    public Object getSymbol(int id) {
+        synchronized (fSymbols) {
+            return fSymbols.get(id);
+        }
+    }
+
+    /**
+     * Get the number of symbols in this table
+     *
+     * @return The number of symbols
+     */
+    public int size() {
+        synchronized (fSymbols) {
+            return fSymbols.size();
+        }
+    }
+
+}
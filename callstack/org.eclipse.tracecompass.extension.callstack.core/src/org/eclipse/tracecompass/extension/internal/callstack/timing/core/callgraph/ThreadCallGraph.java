@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+
+/**
+ * The call graph built for one leaf element of the callstack, before it is
+ * added to the analysis. It contains the functions of this element and their
+ * aggregated tree. With the compact storage, the functions are saved in a
+ * store of this element instead of function objects, and the root functions
+ * are views on this store.
+ *
+ * @author Geneviève Bastien
+ */
+class ThreadCallGraph {
+
+    private final AbstractCalledFunction fRootSegment;
+    private GroupNode fNode;
+    private final List<ICalledFunction> fRootFunctions = new ArrayList<>();
+    private final List<ICalledFunction> fFunctions = new ArrayList<>();
+    private final @Nullable CalledFunctionStore fStore;
+
+    /**
+     * A function that is still running while the call graph is streamed. Its
+     * closed callees are aggregated in a callee of the aggregated tree that is
+     * added to the tree once the function is closed.
+     */
+    static final class OpenFunction {
+        private final AbstractCalledFunction fFunction;
+        private final AggregatedCalledFunction fCallees;
+        private long fNextTime;
+
+        public OpenFunction(AbstractCalledFunction function, AggregatedCalledFunction callees) {
+            fFunction = function;
+            fCallees = callees;
+            fNextTime = function.getStart();
+        }
+
+        /**
+         * Get the function, whose end time is its start time until it is
+         * closed
+         *
+         * @return The function
+         */
+        public AbstractCalledFunction getFunction() {
+            return fFunction;
+        }
+
+        /**
+         * Get the aggregated function of this function, with its closed
+         * callees
+         *
+         * @return The aggregated function
+         */
+        public AggregatedCalledFunction getCallees() {
+            return fCallees;
+        }
+    }
+
+    /* The running functions, the root function first */
+    private final List<OpenFunction> fOpenFunctions = new ArrayList<>();
+    /* The time from which to read the next root function */
+    private long fNextTime;
+    /* The time up to which the callstack was read */
+    private long fCurrentEnd;
+
+    /**
+     * Constructor
+     *
+     * @param rootSegment
+     *            The segment used to create the group node
+     * @param node
+     *            The group node that will contain the aggregated functions
+     * @param store
+     *            The store in which the functions of this element are saved,
+     *            or <code>null</code> to keep the function objects
+     */
+    public ThreadCallGraph(AbstractCalledFunction rootSegment, GroupNode node, @Nullable CalledFunctionStore store) {
+        fRootSegment = rootSegment;
+        fNode = node;
+        fStore = store;
+        fNextTime = rootSegment.getStart();
+        fCurrentEnd = rootSegment.getStart();
+    }
+
+    /**
+     * Get the segment used to create the group node of this element
+     *
+     * @return The root segment
+     */
+    public AbstractCalledFunction getRootSegment() {
+        return fRootSegment;
+    }
+
+    /**
+     * Get the group node of this element
+     *
+     * @return The group node
+     */
+    public GroupNode getNode() {
+        return fNode;
+    }
+
+    /**
+     * Get the root functions of this element, in time order
+     *
+     * @return The root functions, to which the callers can add
+     */
+    public List<ICalledFunction> getRootFunctions() {
+        return fRootFunctions;
+    }
+
+    /**
+     * Get all the functions of this element, each function before its callees
+     *
+     * @return The functions, to which the callers can add
+     */
+    public List<ICalledFunction> getFunctions() {
+        return fFunctions;
+    }
+
+    /**
+     * Get the store in which the functions of this element are saved
+     *
+     * @return The store of the functions, or <code>null</code> if the
+     *         functions are objects, in {@link #getFunctions()}
+     */
+    public @Nullable CalledFunctionStore getStore() {
+        return fStore;
+    }
+
+    /**
+     * Get the functions that are still running, each function being the
+     * caller of the next one
+     *
+     * @return The running functions, to which the callers can add
+     */
+    public List<OpenFunction> getOpenFunctions() {
+        return fOpenFunctions;
+    }
+
+    /**
+     * Get the time from which to read the next function of a depth
+     *
+     * @param depth
+     *            The depth of the function
+     * @return The time of the next function
+     */
+    public long getNextTime(int depth) {
+        return (depth == 1 ? fNextTime : fOpenFunctions.get(depth - 2).fNextTime);
+    }
+
+    /**
+     * Set the time from which to read the next function of a depth, the end
+     * of the last function read at this depth
+     *
+     * @param depth
+     *            The depth of the function
+     * @param time
+     *            The time of the next function
+     */
+    public void setNextTime(int depth, long time) {
+        if (depth == 1) {
+            fNextTime = time;
+        } else {
+            fOpenFunctions.get(depth - 2).fNextTime = time;
+        }
+    }
+
+    /**
+     * Set the time up to which the callstack was read, the running functions
+     * are considered to end at this time
+     *
+     * @param time
+     *            The current end time
+     */
+    public void setCurrentEnd(long time) {
+        fCurrentEnd = time;
+    }
+
+    /**
+     * Create a copy of the group node that the readers can use while this call
+     * graph is being built. The running functions are added to the copy as if
+     * they were ending at the current end time, but they are not counted in
+     * the number of calls.
+     *
+     * @param symbols
+     *            The symbol table of the group node
+     * @return The copy of the group node
+     */
+    public GroupNode createSnapshot(SymbolTable symbols) {
+        GroupNode snapshot = new GroupNode(fRootSegment, fNode.getElement(), fNode.getMaxDepth(), fNode.getId(), symbols);
+        snapshot.mergeFrom(fNode);
+        // Copy the running functions from the root, then add them from the deepest
+        List<AggregatedCalledFunction> callees = new ArrayList<>(fOpenFunctions.size());
+        AggregatedCalledFunction parent = snapshot;
+        for (OpenFunction openFunction : fOpenFunctions) {
+            AbstractCalledFunction function = openFunction.getFunction();
+            AggregatedCalledFunction callee = parent.createCallee(function.getSymbol());
+            callee.mergeFrom(openFunction.getCallees());
+            long duration = Math.max(0, fCurrentEnd - function.getStart());
+            callee.addTimes(duration, duration, IHostModel.TIME_UNKNOWN);
+            callees.add(callee);
+            parent = callee;
+        }
+        for (int i = callees.size() - 1; i >= 0; i--) {
+            AggregatedCalledFunction callee = callees.get(i);
+            AggregatedCalledFunction caller = (i == 0 ? snapshot : callees.get(i - 1));
+            caller.mergeChild(callee);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Aggregate the root functions and their callees under the group node.
+     * This should be called once all the functions are read.
+     */
+    public void aggregate() {
+        aggregate(fRootFunctions);
+    }
+
+    /**
+     * Add root functions to this call graph after it was aggregated and
+     * aggregate them under the group node
+     *
+     * @param rootFunctions
+     *            The root functions to add, in time order, following the
+     *            functions already in this call graph
+     */
+    public void addRootFunctions(List<ICalledFunction> rootFunctions) {
+        fRootFunctions.addAll(rootFunctions);
+        aggregate(rootFunctions);
+    }
+
+    /**
+     * Aggregate all the root functions again, in a new group node, when the
+     * functions changed after they were aggregated, like their CPU times that
+     * were resolved later. This should be called once all the functions are
+     * closed.
+     *
+     * @param symbols
+     *            The symbol table of the group node
+     */
+    public void reaggregate(SymbolTable symbols) {
+        fNode = new GroupNode(fRootSegment, fNode.getElement(), fNode.getMaxDepth(), fNode.getId(), symbols);
+        aggregate(fRootFunctions);
+    }
+
+    private void aggregate(List<ICalledFunction> rootFunctions) {
+        for (ICalledFunction rootFunction : rootFunctions) {
+            AggregatedCalledFunction aggregatedChild = new AggregatedCalledFunction(rootFunction, fNode);
+            CallGraphAnalysis.aggregateChildren(rootFunction, aggregatedChild);
+            fNode.addChild(rootFunction, aggregatedChild);
+        }
+    }
+
+}
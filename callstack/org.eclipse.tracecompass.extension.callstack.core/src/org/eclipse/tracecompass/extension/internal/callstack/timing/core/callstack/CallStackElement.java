@@ -10,9 +10,14 @@
 package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
@@ -21,9 +26,6 @@ import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.ICallStackLeafElement;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries.IThreadIdResolver;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
-import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
-import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
-import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue.Type;
 
 /**
@@ -40,8 +42,9 @@ public class CallStackElement implements ICallStackElement {
     private final String fHostId;
 
     private @Nullable ICallStackElement fSymbolKeyElement;
-    private @Nullable List<ICallStackElement> fChildren;
+    private volatile @Nullable List<ICallStackElement> fChildren;
     private @Nullable IThreadIdResolver fThreadIdProvider = null;
+    private volatile @Nullable IntervalValueCache fSymbolKeys = null;
 
     /**
      * Constructor
@@ -92,6 +95,36 @@ public class CallStackElement implements ICallStackElement {
         return children;
     }
 
+    /**
+     * Update the children of this element after new attributes were added to
+     * the state system. Only the elements that have new attributes under them
+     * match their group's pattern again, the others keep their children.
+     *
+     * @param modifiedQuarks
+     *            The quarks that have new attributes under them
+     * @param addedLeaves
+     *            The consumer of the leaf elements added under this element
+     */
+    public void updateChildren(BitSet modifiedQuarks, Consumer<ICallStackLeafElement> addedLeaves) {
+        CallStackGroupDescriptor nextGroup = fNextGroup;
+        List<ICallStackElement> children = fChildren;
+        if (nextGroup == null || children == null || !modifiedQuarks.get(fQuark)) {
+            // The children were not read yet, or nothing changed
+            return;
+        }
+        List<ICallStackElement> newChildren = nextGroup.updateElements(children, this, fQuark, fSymbolKeyElement, fThreadIdProvider);
+        Set<ICallStackElement> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+        existing.addAll(children);
+        for (ICallStackElement child : newChildren) {
+            if (!existing.contains(child)) {
+                child.getLeafElements().forEach(addedLeaves);
+            } else if (child instanceof CallStackElement) {
+                ((CallStackElement) child).updateChildren(modifiedQuarks, addedLeaves);
+            }
+        }
+        fChildren = newChildren;
+    }
+
     @Override
     public void setSymbolKeyElement(CallStackElement element) {
         fSymbolKeyElement = element;
@@ -150,33 +183,50 @@ public class CallStackElement implements ICallStackElement {
         }
         // This element is the symbol key eleemnt, so try to find the key if the
         // quark is not the root attribute
-        if (fQuark != ITmfStateSystem.ROOT_ATTRIBUTE) {
-            try {
-                // Query a time that is within the bounds of the state system
-                long start = Math.max(fStateSystem.getStartTime(), startTime);
-                start = Math.max(startTime, fStateSystem.getCurrentEndTime());
-
-                // Query the value of the quark at the requested time
-                ITmfStateInterval interval = fStateSystem.querySingleState(start, fQuark);
-                ITmfStateValue processStateValue = interval.getStateValue();
-                // If the state value is an integer, assume it is the symbol we
-                // are looking for
-                if (processStateValue.getType() == Type.INTEGER) {
-                    processId = processStateValue.unboxInt();
-                } else {
-                    try {
-                        // Otherwise, try to take the attribute name as the key
-                        String processName = fStateSystem.getAttributeName(fQuark);
-                        processId = Integer.parseInt(processName);
-                    } catch (NumberFormatException e) {
-                        /* use default processId */
-                    }
-                }
-            } catch (StateSystemDisposedException e) {
-                // ignore
-            }
+        if (fQuark == ITmfStateSystem.ROOT_ATTRIBUTE) {
+            return processId;
+        }
+        IntervalValueCache symbolKeys = fSymbolKeys;
+        if (symbolKeys == null) {
+            symbolKeys = createSymbolKeyCache();
+            fSymbolKeys = symbolKeys;
+        }
+        // Query a time that is within the bounds of the state system
+        long time = Math.max(fStateSystem.getStartTime(), startTime);
+        time = Math.min(time, fStateSystem.getCurrentEndTime());
+        return symbolKeys.getValue(time);
+    }
+
+    private IntervalValueCache createSymbolKeyCache() {
+        int defaultKey = ICallStackElement.DEFAULT_SYMBOL_KEY;
+        try {
+            // If the value is not an integer, try to take the attribute name as
+            // the key
+            defaultKey = Integer.parseInt(fStateSystem.getAttributeName(fQuark));
+        } catch (NumberFormatException e) {
+            /* use default processId */
+        }
+        final int nameKey = defaultKey;
+        // If the state value is an integer, assume it is the symbol we are
+        // looking for
+        return new IntervalValueCache(fStateSystem, fQuark, value -> (value.getType() == Type.INTEGER ? value.unboxInt() : nameKey), nameKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fStateSystem, fQuark);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
         }
-        return processId;
+        CallStackElement other = (CallStackElement) obj;
+        return fStateSystem == other.fStateSystem && fQuark == other.fQuark;
     }
 
     @Override
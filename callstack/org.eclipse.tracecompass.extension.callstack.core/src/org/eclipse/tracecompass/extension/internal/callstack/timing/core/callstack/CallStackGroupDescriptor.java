@@ -11,7 +11,9 @@ package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callst
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
@@ -88,20 +90,62 @@ public class CallStackGroupDescriptor implements ICallStackGroupDescriptor {
             return Collections.EMPTY_LIST;
         }
 
-        CallStackGroupDescriptor nextGroup = fNextGroup;
-        // If the next level is null, then this is a callstack final element
         List<ICallStackElement> elements = new ArrayList<>(quarks.size());
         for (Integer quark : quarks) {
-            CallStackElement element = nextGroup == null ? new CallStackLeafElement(fHostId, fStateSystem, quark, symbolKeyElement, threadIdProvider, parent)
-                    : new CallStackElement(fHostId, fStateSystem, quark, getNextGroup(), symbolKeyElement, threadIdProvider, parent);
-            if (isSymbolKeyGroup()) {
-                element.setSymbolKeyElement(element);
+            elements.add(createElement(parent, quark, symbolKeyElement, threadIdProvider));
+        }
+        return elements;
+    }
+
+    /**
+     * Update the elements of this group from a base quark after new attributes
+     * were added to the state system. The existing elements are kept and
+     * elements are created for the new attributes matching the pattern.
+     *
+     * @param existing
+     *            The elements of this group previously obtained for this base
+     *            quark
+     * @param parent
+     *            The parent element of the elements
+     * @param baseQuark
+     *            The quark of the parent element
+     * @param symbolKeyElement
+     *            The symbol key element of the parent
+     * @param threadIdProvider
+     *            The object describing how to resolve the thread ID
+     * @return The elements of this group, the existing ones and the new ones
+     */
+    public List<ICallStackElement> updateElements(List<ICallStackElement> existing, @Nullable CallStackElement parent, int baseQuark, @Nullable ICallStackElement symbolKeyElement, @Nullable IThreadIdResolver threadIdProvider) {
+        List<Integer> quarks = fStateSystem.getQuarks(baseQuark, getSubPattern());
+        if (quarks.size() == existing.size()) {
+            // Attributes are never removed, so there is no new element
+            return existing;
+        }
+        Map<Integer, ICallStackElement> existingElements = new HashMap<>();
+        for (ICallStackElement element : existing) {
+            if (element instanceof CallStackElement) {
+                existingElements.put(((CallStackElement) element).getQuark(), element);
             }
-            elements.add(element);
+        }
+        List<ICallStackElement> elements = new ArrayList<>(quarks.size());
+        for (Integer quark : quarks) {
+            ICallStackElement element = existingElements.get(quark);
+            elements.add(element != null ? element : createElement(parent, quark, symbolKeyElement, threadIdProvider));
         }
         return elements;
     }
 
+    private CallStackElement createElement(@Nullable CallStackElement parent, Integer quark, @Nullable ICallStackElement symbolKeyElement, @Nullable IThreadIdResolver threadIdProvider) {
+        CallStackGroupDescriptor nextGroup = fNextGroup;
+        // If the next level is null, then this is a callstack final element
+        CallStackElement element = nextGroup == null ? new CallStackLeafElement(fHostId, fStateSystem, quark, symbolKeyElement, threadIdProvider, parent)
+                : new CallStackElement(fHostId, fStateSystem, quark, getNextGroup(), symbolKeyElement, threadIdProvider, parent);
+        if (isSymbolKeyGroup()) {
+            element.setSymbolKeyElement(element);
+        }
+        return element;
+    }
+
     @Override
     public @NonNull String getName() {
         return StringUtils.join(fSubPattern, '/');
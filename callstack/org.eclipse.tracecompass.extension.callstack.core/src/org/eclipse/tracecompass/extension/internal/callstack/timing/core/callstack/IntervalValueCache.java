@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * Cache of the integer values of an attribute of the state system, like a
+ * thread ID or a symbol key, that are queried for many function calls. The
+ * intervals of the attribute are read in bulk and kept sorted, so that
+ * requests in time order are answered in constant time and other requests
+ * with a binary search.
+ *
+ * The cache keeps every range of intervals it has read. A request outside of
+ * those ranges reads a bounded number of intervals starting at the requested
+ * time, stopping at the next range already read, so requests jumping forward
+ * or backward do not read the intervals they skip. The last interval may be
+ * ongoing while the state system is being built, it is extended when a later
+ * time is requested.
+ *
+ * @author Geneviève Bastien
+ */
+public class IntervalValueCache {
+
+    /** Maximal number of intervals to read each time the cache is filled */
+    private static final int FILL_SIZE = 256;
+
+    private final ITmfStateSystem fStateSystem;
+    private final int fQuark;
+    private final ToIntFunction<ITmfStateValue> fConverter;
+    private final int fDefaultValue;
+
+    /*
+     * The start times, end times and values of the cached intervals, sorted by
+     * start time. There may be gaps between the intervals that were not read.
+     */
+    private long[] fStarts = new long[16];
+    private long[] fEnds = new long[16];
+    private int[] fValues = new int[16];
+    private int fSize = 0;
+    private int fLastIndex = 0;
+
+    /**
+     * Constructor
+     *
+     * @param ss
+     *            The state system containing the attribute
+     * @param quark
+     *            The quark of the attribute
+     * @param converter
+     *            The function converting the state values to the cached
+     *            values
+     * @param defaultValue
+     *            The value to return when the value is not available
+     */
+    public IntervalValueCache(ITmfStateSystem ss, int quark, ToIntFunction<ITmfStateValue> converter, int defaultValue) {
+        fStateSystem = ss;
+        fQuark = quark;
+        fConverter = converter;
+        fDefaultValue = defaultValue;
+    }
+
+    /**
+     * Get the value of the attribute at a given time
+     *
+     * @param time
+     *            The time of the request
+     * @return The converted value of the attribute at this time, or the default
+     *         value if the time is outside the state system's range
+     */
+    public synchronized int getValue(long time) {
+        if (time < fStateSystem.getStartTime() || time > fStateSystem.getCurrentEndTime()) {
+            return fDefaultValue;
+        }
+        int index = findIndex(time);
+        if (index < 0 || fEnds[index] < time) {
+            try {
+                index = fill(time, index + 1);
+            } catch (StateSystemDisposedException e) {
+                return fDefaultValue;
+            }
+        }
+        return fValues[index];
+    }
+
+    /**
+     * Get the number of intervals in the cache
+     *
+     * @return The number of cached intervals
+     */
+    public synchronized int size() {
+        return fSize;
+    }
+
+    /**
+     * Find the index of the last interval starting at or before a time,
+     * looking at the last interval found and the next one before doing a
+     * binary search
+     *
+     * @return The index of the interval, or -1 if all the intervals start
+     *         after the time
+     */
+    private int findIndex(long time) {
+        int index = fLastIndex;
+        if (index < fSize && fStarts[index] <= time) {
+            if (index + 1 >= fSize || time < fStarts[index + 1]) {
+                return index;
+            }
+            if (index + 2 >= fSize || time < fStarts[index + 2]) {
+                fLastIndex = index + 1;
+                return index + 1;
+            }
+        }
+        index = Arrays.binarySearch(fStarts, 0, fSize, time);
+        if (index < 0) {
+            // The interval starting before the time
+            index = -index - 2;
+        }
+        if (index >= 0) {
+            fLastIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Read the intervals starting with the one containing a time, until a
+     * maximal number of intervals are read, the next cached interval or the
+     * end of the state system is reached, and insert them in the cache
+     *
+     * @return The index of the interval containing the time
+     */
+    private int fill(long time, int position) throws StateSystemDisposedException {
+        long limit = (position < fSize ? fStarts[position] - 1 : fStateSystem.getCurrentEndTime());
+        long[] starts = new long[FILL_SIZE];
+        long[] ends = new long[FILL_SIZE];
+        int[] values = new int[FILL_SIZE];
+        int count = 0;
+        long next = time;
+        while (next <= limit && count < FILL_SIZE) {
+            ITmfStateInterval interval = fStateSystem.querySingleState(next, fQuark);
+            starts[count] = interval.getStartTime();
+            ends[count] = interval.getEndTime();
+            values[count] = fConverter.applyAsInt(interval.getStateValue());
+            next = interval.getEndTime() + 1;
+            count++;
+        }
+        int first = 0;
+        int index = position;
+        if (position > 0 && starts[0] <= fEnds[position - 1]) {
+            /*
+             * The previous interval was ongoing when it was read, it is the
+             * same interval, only longer
+             */
+            fEnds[position - 1] = ends[0];
+            first = 1;
+            index = position - 1;
+        }
+        insert(position, starts, ends, values, first, count);
+        fLastIndex = index;
+        return index;
+    }
+
+    private void insert(int position, long[] starts, long[] ends, int[] values, int from, int to) {
+        int count = to - from;
+        if (count <= 0) {
+            return;
+        }
+        if (fSize + count > fStarts.length) {
+            int capacity = Math.max(fStarts.length * 2, fSize + count);
+            fStarts = Arrays.copyOf(fStarts, capacity);
+            fEnds = Arrays.copyOf(fEnds, capacity);
+            fValues = Arrays.copyOf(fValues, capacity);
+        }
+        // Make room for the new intervals before the ones starting after them
+        System.arraycopy(fStarts, position, fStarts, position + count, fSize - position);
+        System.arraycopy(fEnds, position, fEnds, position + count, fSize - position);
+        System.arraycopy(fValues, position, fValues, position + count, fSize - position);
+        System.arraycopy(starts, from, fStarts, position, count);
+        System.arraycopy(ends, from, fEnds, position, count);
+        System.arraycopy(values, from, fValues, position, count);
+        fSize += count;
+    }
+
+}
@@ -10,6 +10,7 @@
 package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
@@ -19,14 +20,15 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.CalledFunctionFactory;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
-import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.CallStackSeries.IThreadIdProvider;
+import org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem.CallStackStateProvider;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 
 /**
  * Represents the actual callstack for one element. The callstack is a stack of
@@ -46,6 +48,26 @@ public class CallStack {
     private final List<Integer> fQuarks;
     private final String fHostId;
 
+    /*
+     * The last call lists for all depths, shared by the requests for the
+     * different depths of the same period
+     */
+    private @Nullable List<List<ICalledFunction>> fLastCallLists = null;
+    private long fLastStart = Long.MIN_VALUE;
+    private long fLastEnd = Long.MIN_VALUE;
+    private long fLastResolution = Long.MIN_VALUE;
+
+    private volatile @Nullable CallStackNavigationIndex fNavigationIndex = null;
+
+    /*
+     * The quark of the repeat count attribute of each depth, resolved once.
+     * For the depths without the attribute, the number of attributes of the
+     * state system when it was looked for, so that it is looked for again only
+     * if attributes were added since.
+     */
+    private int[] fRepeatCountQuarks = new int[0];
+    private int[] fRepeatCountNbAttributes = new int[0];
+
     /**
      * Constructor
      *
@@ -111,8 +133,7 @@ public class CallStack {
                     return Collections.EMPTY_LIST;
                 }
                 if (!callInterval.getStateValue().isNull()) {
-                    callList.add(CalledFunctionFactory.create(callInterval.getStartTime(), callInterval.getEndTime() + 1, depth, callInterval.getStateValue(), getSymbolKeyAt(callInterval.getStartTime()), getThreadId(callInterval.getStartTime()),
-                            null, ModelManager.getModelFor(fHostId)));
+                    callList.add(createFunction(callInterval, depth, null));
                 }
             }
             return callList;
@@ -121,6 +142,102 @@ public class CallStack {
         }
     }
 
+    /**
+     * Get the lists of calls at all depths of this callstack, for a time
+     * range. The depths are read together in time order: at each step, only
+     * the depths whose next interval is needed are queried, with a single
+     * state query for each one. The calls at each depth are the same as those
+     * returned by
+     * {@link #getCallListAtDepth(int, long, long, long, IProgressMonitor)}.
+     *
+     * The last result is kept, so that requests for the same period, for
+     * instance by each depth of the callstack view, are only computed once.
+     * The lists are shared by those requests, so they cannot be modified.
+     *
+     * @param startTime
+     *            The start of the period for which to get the call lists
+     * @param endTime
+     *            The end of the period for which to get the call lists
+     * @param resolution
+     *            The resolution of the calls
+     * @param monitor
+     *            The progress monitor to follow the progress of this query
+     * @return The list of called functions for each depth, the list at index
+     *         <code>i</code> being the calls at depth <code>i + 1</code>.
+     *         The lists are empty if the query was cancelled. The lists are
+     *         unmodifiable.
+     */
+    public List<List<ICalledFunction>> getCallListsAllDepths(long startTime, long endTime, long resolution, IProgressMonitor monitor) {
+        int maxDepth = getMaxDepth();
+        long start = Math.max(fStateSystem.getStartTime(), startTime);
+        long end = Math.min(fStateSystem.getCurrentEndTime(), endTime);
+        if (start > end || maxDepth == 0) {
+            return unmodifiable(createCallLists(maxDepth));
+        }
+        synchronized (this) {
+            List<List<ICalledFunction>> lastCallLists = fLastCallLists;
+            if (lastCallLists != null && fLastStart == start && fLastEnd == end && fLastResolution == resolution) {
+                return lastCallLists;
+            }
+        }
+        List<List<ICalledFunction>> callLists = createCallLists(maxDepth);
+        long step = Math.max(1, resolution);
+        long[] nextTimes = new long[maxDepth];
+        Arrays.fill(nextTimes, start);
+        try {
+            long time = start;
+            while (time <= end) {
+                if (monitor.isCanceled()) {
+                    return unmodifiable(createCallLists(maxDepth));
+                }
+                long nextTime = Long.MAX_VALUE;
+                for (int i = 0; i < maxDepth; i++) {
+                    if (nextTimes[i] == time) {
+                        ITmfStateInterval interval = fStateSystem.querySingleState(time, fQuarks.get(i));
+                        if (!interval.getStateValue().isNull()) {
+                            callLists.get(i).add(createFunction(interval, i + 1, null));
+                        }
+                        // Same sampling as StateSystemUtils#queryHistoryRange
+                        long next = time + ((interval.getEndTime() - time) / step + 1) * step;
+                        if (next > end && interval.getEndTime() < end) {
+                            // Make sure the interval at the end is included
+                            next = end;
+                        }
+                        nextTimes[i] = next;
+                    }
+                    nextTime = Math.min(nextTime, nextTimes[i]);
+                }
+                time = nextTime;
+            }
+        } catch (StateSystemDisposedException | TimeRangeException e) {
+            return unmodifiable(createCallLists(maxDepth));
+        }
+        callLists = unmodifiable(callLists);
+        synchronized (this) {
+            fLastCallLists = callLists;
+            fLastStart = start;
+            fLastEnd = end;
+            fLastResolution = resolution;
+        }
+        return callLists;
+    }
+
+    private static List<List<ICalledFunction>> createCallLists(int maxDepth) {
+        List<List<ICalledFunction>> callLists = new ArrayList<>(maxDepth);
+        for (int i = 0; i < maxDepth; i++) {
+            callLists.add(new ArrayList<>());
+        }
+        return callLists;
+    }
+
+    private static List<List<ICalledFunction>> unmodifiable(List<List<ICalledFunction>> callLists) {
+        List<List<ICalledFunction>> unmodifiableLists = new ArrayList<>(callLists.size());
+        for (List<ICalledFunction> callList : callLists) {
+            unmodifiableLists.add(Collections.unmodifiableList(callList));
+        }
+        return Collections.unmodifiableList(unmodifiableLists);
+    }
+
     /**
      * Get the function call with closest beginning or end from time, either
      * forward or backward.
@@ -174,8 +291,7 @@ public class CallStack {
                 interval = fStateSystem.querySingleState(interval.getEndTime() + 1, fQuarks.get(depth - 1));
             }
             if (!interval.getStateValue().isNull() && interval.getStartTime() >= time) {
-                return CalledFunctionFactory.create(interval.getStartTime(), interval.getEndTime() + 1, depth, interval.getStateValue(), getSymbolKeyAt(interval.getStartTime()), getThreadId(interval.getStartTime()), null,
-                        ModelManager.getModelFor(fHostId));
+                return createFunction(interval, depth, null);
             }
         } catch (StateSystemDisposedException e) {
 
@@ -193,12 +309,29 @@ public class CallStack {
      * @param parent
      *            The parent function call
      * @param model
-     *            The operating system model to retrieve extra information.
-     *            FIXME: Since we have the host ID, the model may not be
-     *            necessary
+     *            The operating system model, not used anymore, the functions
+     *            get the model of the host of this callstack
      * @return The next function call
+     * @deprecated Use {@link #getNextFunction(long, int, ICalledFunction)}
+     *             instead
      */
+    @Deprecated
     public @Nullable ICalledFunction getNextFunction(long time, int depth, @Nullable ICalledFunction parent, IHostModel model) {
+        return getNextFunction(time, depth, parent);
+    }
+
+    /**
+     * Get the next function call
+     *
+     * @param time
+     *            The time of the request
+     * @param depth
+     *            The depth FIXME: with the parent, do we need depth?
+     * @param parent
+     *            The parent function call
+     * @return The next function call
+     */
+    public @Nullable ICalledFunction getNextFunction(long time, int depth, @Nullable ICalledFunction parent) {
         if (depth > getMaxDepth()) {
             throw new ArrayIndexOutOfBoundsException("CallStack depth " + depth + " is too large"); //$NON-NLS-1$ //$NON-NLS-2$
         }
@@ -212,7 +345,7 @@ public class CallStack {
                 interval = fStateSystem.querySingleState(interval.getEndTime() + 1, fQuarks.get(depth - 1));
             }
             if (!interval.getStateValue().isNull() && interval.getStartTime() >= time) {
-                return CalledFunctionFactory.create(interval.getStartTime(), interval.getEndTime() + 1, depth, interval.getStateValue(), getSymbolKeyAt(interval.getStartTime()), getThreadId(interval.getStartTime()), parent, model);
+                return createFunction(interval, depth, parent);
             }
         } catch (StateSystemDisposedException e) {
 
@@ -221,7 +354,69 @@ public class CallStack {
     }
 
     /**
-     * Iterate over the callstack in a depth-first manner
+     * Get the time of the next beginning or end of a function call, either
+     * forward or backward from a time. The boundaries of the calls are indexed
+     * in a job of this callstack's family, scheduled the first time this
+     * method is called, so that the following requests do not need to query
+     * the state system. Until then, the boundaries are queried around the
+     * time.
+     *
+     * @param time
+     *            The time of the request
+     * @param depth
+     *            The depth of the function calls, starting at 1, or 0 to get
+     *            the closest boundary at any depth
+     * @param forward
+     *            Set to <code>true</code> to get the first boundary after the
+     *            time, <code>false</code> to get the last one before the time
+     * @return The time of the next boundary, or the requested time if there is
+     *         no call beginning or ending in that direction
+     */
+    public long getNextEventTime(long time, int depth, boolean forward) {
+        if (depth > getMaxDepth() || depth < 0) {
+            throw new ArrayIndexOutOfBoundsException("CallStack depth " + depth + " is invalid"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        CallStackNavigationIndex index = fNavigationIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = fNavigationIndex;
+                if (index == null) {
+                    index = new CallStackNavigationIndex(this, fStateSystem, fQuarks);
+                    fNavigationIndex = index;
+                }
+            }
+        }
+        return index.getNextBoundary(time, depth, forward);
+    }
+
+    /**
+     * Create a forward cursor to read the function calls at a given depth.
+     * Successive requests to a cursor at increasing times will read each
+     * interval of the depth only once.
+     *
+     * @param depth
+     *            The depth of the cursor, starting at 1
+     * @return The cursor for this depth
+     */
+    public CallStackDepthCursor createDepthCursor(int depth) {
+        if (depth > getMaxDepth()) {
+            throw new ArrayIndexOutOfBoundsException("CallStack depth " + depth + " is too large"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return new CallStackDepthCursor(this, fStateSystem, fQuarks.get(depth - 1), depth);
+    }
+
+    /**
+     * Iterate over the callstack in a depth-first manner. Each function call
+     * intersecting the time range is visited after its callees, in time
+     * order.
+     *
+     * The intervals of each depth are read only once, from the start to the
+     * end of the range. The function calls sent to the consumer are views
+     * that are reused for all the calls of a depth: they are only valid until
+     * the consumer returns and should be copied if they need to be kept. The
+     * parent of a call is the view of the calling function. The self time of
+     * a call is computed from its callees as they are visited, the callees
+     * themselves are read from the state system if they are requested.
      *
      * @param startTime
      *            The start time of the iteration
@@ -231,7 +426,221 @@ public class CallStack {
      *            The consumer to consume the function calls
      */
     public void iterateOverCallStack(long startTime, long endTime, Consumer<ICalledFunction> consumer) {
-        // TODO Do we need this? If so, implement me!
+        iterateOverCallStack(startTime, endTime, getMaxDepth(), consumer);
+    }
+
+    /**
+     * Iterate over the first depths of the callstack in a depth-first manner,
+     * like {@link #iterateOverCallStack(long, long, Consumer)}. The deeper
+     * calls are not read.
+     *
+     * @param startTime
+     *            The start time of the iteration
+     * @param endTime
+     *            The end time of the iteration
+     * @param depth
+     *            The maximum depth of the calls to visit, starting at 1
+     * @param consumer
+     *            The consumer to consume the function calls
+     */
+    public void iterateOverCallStack(long startTime, long endTime, int depth, Consumer<ICalledFunction> consumer) {
+        long start = Math.max(fStateSystem.getStartTime(), startTime);
+        long end = Math.min(fStateSystem.getCurrentEndTime(), endTime);
+        int stackDepth = getMaxDepth();
+        int maxDepth = Math.min(depth, stackDepth);
+        if (start > end || maxDepth <= 0) {
+            return;
+        }
+        CallStackFunctionView[] views = new CallStackFunctionView[maxDepth];
+        for (int i = 0; i < maxDepth; i++) {
+            int calleeQuark = (i + 1 < stackDepth ? fQuarks.get(i + 1) : ITmfStateSystem.INVALID_ATTRIBUTE);
+            views[i] = new CallStackFunctionView(this, fStateSystem, i + 1, calleeQuark, (i == 0 ? null : views[i - 1]));
+        }
+        // The current interval, the time of the next call and the end of the parent call at each depth
+        @Nullable ITmfStateInterval[] intervals = new @Nullable ITmfStateInterval[maxDepth];
+        long[] times = new long[maxDepth];
+        long[] limits = new long[maxDepth];
+
+        try {
+            int level = 0;
+            times[0] = start;
+            limits[0] = end;
+            while (level >= 0) {
+                ITmfStateInterval interval = nextCall(level, times[level], limits[level], intervals);
+                if (interval == null) {
+                    // No more calls for this parent, the parent is closed
+                    level--;
+                    if (level >= 0) {
+                        visit(views, level, consumer);
+                    }
+                    continue;
+                }
+                CallStackFunctionView view = views[level];
+                times[level] = interval.getEndTime() + 1;
+                // The callees of a call crossing the range are not all visited
+                boolean inRange = interval.getStartTime() >= start && interval.getEndTime() <= end;
+                view.set(interval, (level + 1 < maxDepth || level + 1 == stackDepth) && inRange);
+                if (level + 1 < maxDepth) {
+                    level++;
+                    times[level] = Math.max(interval.getStartTime(), start);
+                    limits[level] = Math.min(interval.getEndTime(), end);
+                } else {
+                    visit(views, level, consumer);
+                }
+            }
+        } catch (StateSystemDisposedException e) {
+            // Nothing to do, the state system is gone
+        }
+    }
+
+    /**
+     * Send a closed call to the consumer and add its duration to the time of
+     * the callees of its parent
+     */
+    private static void visit(CallStackFunctionView[] views, int level, Consumer<ICalledFunction> consumer) {
+        CallStackFunctionView view = views[level];
+        consumer.accept(view);
+        if (level > 0) {
+            views[level - 1].addCalleeTime(view.getLength());
+        }
+    }
+
+    /**
+     * Get the next non-null interval of a depth that intersects a time range,
+     * moving forward from the interval previously read at this depth
+     *
+     * @return The interval, or <code>null</code> if there are no calls at this
+     *         depth in the range
+     */
+    private @Nullable ITmfStateInterval nextCall(int depth, long time, long limit, @Nullable ITmfStateInterval[] intervals) throws StateSystemDisposedException {
+        if (time > limit) {
+            return null;
+        }
+        int quark = fQuarks.get(depth);
+        ITmfStateInterval interval = intervals[depth];
+        if (interval == null || interval.getStartTime() > time) {
+            interval = fStateSystem.querySingleState(time, quark);
+        }
+        while (interval.getEndTime() < time) {
+            interval = fStateSystem.querySingleState(interval.getEndTime() + 1, quark);
+        }
+        while (interval.getStateValue().isNull() && interval.getEndTime() < limit) {
+            interval = fStateSystem.querySingleState(interval.getEndTime() + 1, quark);
+        }
+        intervals[depth] = interval;
+        if (interval.getStateValue().isNull() || interval.getStartTime() > limit) {
+            return null;
+        }
+        return interval;
+    }
+
+    /**
+     * Create the function of a call interval at a depth of this callstack
+     *
+     * @param interval
+     *            The interval of the call
+     * @param depth
+     *            The depth of the call, starting at 1
+     * @param parent
+     *            The parent function, or <code>null</code>
+     * @return The function
+     */
+    ICalledFunction createFunction(ITmfStateInterval interval, int depth, @Nullable ICalledFunction parent) {
+        long start = interval.getStartTime();
+        return CalledFunctionFactory.create(start, interval.getEndTime() + 1, depth, interval.getStateValue(), getSymbolKeyAt(start), getThreadId(start), parent, fHostId);
+    }
+
+    /**
+     * Create the function of a call interval at a depth of this callstack,
+     * with the number of recursive calls folded in it
+     *
+     * @param interval
+     *            The interval of the call
+     * @param depth
+     *            The depth of the call, starting at 1
+     * @param parent
+     *            The parent function, or <code>null</code>
+     * @param repeatCount
+     *            The number of recursive calls folded in the call
+     * @return The function
+     */
+    ICalledFunction createFunction(ITmfStateInterval interval, int depth, @Nullable ICalledFunction parent, int repeatCount) {
+        long start = interval.getStartTime();
+        return CalledFunctionFactory.create(start, interval.getEndTime() + 1, depth, interval.getStateValue(), getSymbolKeyAt(start), getThreadId(start), parent, fHostId, repeatCount);
+    }
+
+    /**
+     * Get the quark of the {@link CallStackStateProvider#REPEAT_COUNT}
+     * attribute of a depth
+     *
+     * @param depth
+     *            The depth, starting at 1
+     * @return The quark of the attribute, or
+     *         {@link ITmfStateSystem#INVALID_ATTRIBUTE} if the recursion is
+     *         not folded at this depth
+     */
+    synchronized int getRepeatCountQuark(int depth) {
+        if (fRepeatCountQuarks.length < depth) {
+            int length = fRepeatCountQuarks.length;
+            int newLength = Math.max(depth, getMaxDepth());
+            fRepeatCountQuarks = Arrays.copyOf(fRepeatCountQuarks, newLength);
+            fRepeatCountNbAttributes = Arrays.copyOf(fRepeatCountNbAttributes, newLength);
+            Arrays.fill(fRepeatCountQuarks, length, newLength, ITmfStateSystem.INVALID_ATTRIBUTE);
+            Arrays.fill(fRepeatCountNbAttributes, length, newLength, -1);
+        }
+        int quark = fRepeatCountQuarks[depth - 1];
+        int nbAttributes = fStateSystem.getNbAttributes();
+        if (quark == ITmfStateSystem.INVALID_ATTRIBUTE && fRepeatCountNbAttributes[depth - 1] != nbAttributes) {
+            quark = fStateSystem.optQuarkRelative(fQuarks.get(depth - 1), CallStackStateProvider.REPEAT_COUNT);
+            fRepeatCountQuarks[depth - 1] = quark;
+            fRepeatCountNbAttributes[depth - 1] = nbAttributes;
+        }
+        return quark;
+    }
+
+    /**
+     * Get the number of direct recursive calls folded by the state provider
+     * in a call, from the {@link CallStackStateProvider#REPEAT_COUNT}
+     * attribute of its depth. The attribute is the current number of folded
+     * calls, so each increase of its value during the call is a new recursive
+     * call. The functions returned by this callstack do not read their repeat
+     * count, the call graph reads them with a {@link CallStackDepthCursor},
+     * once for all the calls of a depth.
+     *
+     * @param depth
+     *            The depth of the call, starting at 1
+     * @param start
+     *            The start time of the call
+     * @param end
+     *            The end time of the call
+     * @return The number of recursive calls folded in the call, or
+     *         <code>0</code> if the recursion is not folded
+     */
+    public int getRepeatCount(int depth, long start, long end) {
+        int quark = getRepeatCountQuark(depth);
+        if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return 0;
+        }
+        long rangeStart = Math.max(start, fStateSystem.getStartTime());
+        long rangeEnd = Math.min(end - 1, fStateSystem.getCurrentEndTime());
+        if (rangeStart > rangeEnd) {
+            return 0;
+        }
+        try {
+            int repeatCount = 0;
+            int previous = 0;
+            for (ITmfStateInterval interval : StateSystemUtils.queryHistoryRange(fStateSystem, quark, rangeStart, rangeEnd)) {
+                ITmfStateValue value = interval.getStateValue();
+                int current = (value.isNull() ? 0 : value.unboxInt());
+                if (current > previous) {
+                    repeatCount += current - previous;
+                }
+                previous = current;
+            }
+            return repeatCount;
+        } catch (AttributeNotFoundException | StateSystemDisposedException e) {
+            return 0;
+        }
     }
 
     /**
@@ -265,6 +674,15 @@ public class CallStack {
         return -1;
     }
 
+    /**
+     * Get the ID of the host this callstack is from
+     *
+     * @return The host ID
+     */
+    public String getHostId() {
+        return fHostId;
+    }
+
     /**
      * Get the start time of this callstack
      *
@@ -305,16 +723,8 @@ public class CallStack {
             return null;
         }
 
-        int parentQuark = fStateSystem.getParentAttributeQuark(fQuarks.get(0));
-        if (parentQuark < 0) {
-            return null;
-        }
-        parentQuark = fStateSystem.getParentAttributeQuark(parentQuark);
-        if (parentQuark < 0) {
-            return null;
-        }
         try {
-            int quark = fStateSystem.optQuarkRelative(parentQuark, name);
+            int quark = getExtraAttributeQuark(name);
             if (quark != ITmfStateSystem.INVALID_ATTRIBUTE) {
                 ITmfStateInterval state = fStateSystem.querySingleState(time, quark);
                 switch (state.getStateValue().getType()) {
@@ -340,4 +750,88 @@ public class CallStack {
         return null;
     }
 
+    /**
+     * Get the numeric values of an extra attribute at many times. The quark of
+     * the attribute is resolved once and the intervals are read in time order,
+     * each interval being queried at most once, so the cost is linear in the
+     * number of times and intervals.
+     *
+     * @param name
+     *            The name of the extra attribute to get
+     * @param times
+     *            The times at which to get the values, sorted in increasing
+     *            order
+     * @param defaultValue
+     *            The value to use when the attribute does not exist, is
+     *            outside the range of the callstack or its value is not an
+     *            integer or long
+     * @return The values of the attribute at each time
+     * @throws IllegalArgumentException
+     *             If the times are not sorted
+     * @see #getExtraAttribute(String, long)
+     */
+    public long[] getExtraAttributeValues(String name, long[] times, long defaultValue) {
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] < times[i - 1]) {
+                throw new IllegalArgumentException("The times should be sorted: " + times[i - 1] + " > " + times[i]); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        long[] values = new long[times.length];
+        Arrays.fill(values, defaultValue);
+        int quark = getExtraAttributeQuark(name);
+        if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return values;
+        }
+        long start = getStartTime();
+        long end = getEndTime();
+        @Nullable ITmfStateInterval interval = null;
+        try {
+            for (int i = 0; i < times.length; i++) {
+                long time = times[i];
+                if (time < start || time > end) {
+                    continue;
+                }
+                ITmfStateInterval current = interval;
+                if (current == null || time > current.getEndTime()) {
+                    current = fStateSystem.querySingleState(time, quark);
+                    interval = current;
+                }
+                ITmfStateValue value = current.getStateValue();
+                switch (value.getType()) {
+                case INTEGER:
+                    values[i] = value.unboxInt();
+                    break;
+                case LONG:
+                    values[i] = value.unboxLong();
+                    break;
+                case STRING:
+                case CUSTOM:
+                case DOUBLE:
+                case NULL:
+                default:
+                    break;
+                }
+            }
+        } catch (StateSystemDisposedException e) {
+            // Return the values read so far
+        }
+        return values;
+    }
+
+    /**
+     * Get the quark of an extra attribute, located in the parent attribute of
+     * the callstack
+     */
+    private int getExtraAttributeQuark(String name) {
+        int parentQuark = fStateSystem.getParentAttributeQuark(fQuarks.get(0));
+        if (parentQuark < 0) {
+            return ITmfStateSystem.INVALID_ATTRIBUTE;
+        }
+        parentQuark = fStateSystem.getParentAttributeQuark(parentQuark);
+        if (parentQuark < 0) {
+            return ITmfStateSystem.INVALID_ATTRIBUTE;
+        }
+        return fStateSystem.optQuarkRelative(parentQuark, name);
+    }
+
 }
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2016 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * A forward cursor over the intervals of one depth of a {@link CallStack}. The
+ * cursor keeps the last interval read, so that successive requests at
+ * increasing times read each interval of the quark only once, instead of
+ * querying the state system again for every parent call.
+ *
+ * The function calls returned by this cursor are the same as those returned by
+ * {@link CallStack#getNextFunction(long, int, ICalledFunction)} for
+ * the same parameters, with the number of recursive calls folded in them,
+ * read with a forward cursor on the repeat count attribute of the depth. Requesting a time earlier than the current position is
+ * supported, but will require a new query to the state system.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Geneviève Bastien
+ */
+public class CallStackDepthCursor {
+
+    private final CallStack fCallStack;
+    private final ITmfStateSystem fStateSystem;
+    private final int fQuark;
+    private final int fDepth;
+    private final int fRepeatCountQuark;
+    private @Nullable ITmfStateInterval fCurrent = null;
+    private @Nullable ITmfStateInterval fRepeatCountInterval = null;
+
+    /**
+     * Constructor
+     *
+     * @param callStack
+     *            The callstack this cursor iterates on
+     * @param ss
+     *            The state system containing the callstack
+     * @param quark
+     *            The quark of the depth to iterate on
+     * @param depth
+     *            The depth of the calls at this quark, starting at 1
+     */
+    CallStackDepthCursor(CallStack callStack, ITmfStateSystem ss, int quark, int depth) {
+        fCallStack = callStack;
+        fStateSystem = ss;
+        fQuark = quark;
+        fDepth = depth;
+        fRepeatCountQuark = callStack.getRepeatCountQuark(depth);
+    }
+
+    /**
+     * Get the depth of the calls returned by this cursor
+     *
+     * @return The depth of this cursor
+     */
+    public int getDepth() {
+        return fDepth;
+    }
+
+    /**
+     * Get the next function call at this depth, starting at the requested time
+     * and ending before the end of the parent.
+     *
+     * @param time
+     *            The time of the request
+     * @param parent
+     *            The parent function call, or <code>null</code> for the first
+     *            level of the callstack
+     * @return The next function call, or <code>null</code> if there is no
+     *         more calls for this parent
+     */
+    public @Nullable ICalledFunction getNextFunction(long time, @Nullable ICalledFunction parent) {
+        long endTime = (parent == null ? fStateSystem.getCurrentEndTime() : parent.getEnd() - 1);
+        ITmfStateInterval interval = getNextInterval(time, endTime);
+        if (interval == null) {
+            return null;
+        }
+        return fCallStack.createFunction(interval, fDepth, parent, getRepeatCount(interval.getStartTime(), interval.getEndTime() + 1));
+    }
+
+    /**
+     * Get the number of direct recursive calls folded in a call of this
+     * depth, like {@link CallStack#getRepeatCount(int, long, long)}. The
+     * intervals of the repeat count attribute are read forward, like the
+     * calls.
+     *
+     * @param start
+     *            The start time of the call
+     * @param end
+     *            The end time of the call
+     * @return The number of recursive calls folded in the call, or
+     *         <code>0</code> if the recursion is not folded
+     */
+    public int getRepeatCount(long start, long end) {
+        if (fRepeatCountQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return 0;
+        }
+        long rangeStart = Math.max(start, fStateSystem.getStartTime());
+        long rangeEnd = Math.min(end - 1, fStateSystem.getCurrentEndTime());
+        if (rangeStart > rangeEnd) {
+            return 0;
+        }
+        try {
+            ITmfStateInterval interval = fRepeatCountInterval;
+            if (interval == null || interval.getStartTime() > rangeStart) {
+                interval = fStateSystem.querySingleState(rangeStart, fRepeatCountQuark);
+            }
+            while (interval.getEndTime() < rangeStart) {
+                interval = fStateSystem.querySingleState(interval.getEndTime() + 1, fRepeatCountQuark);
+            }
+            int repeatCount = 0;
+            int previous = 0;
+            while (true) {
+                ITmfStateValue value = interval.getStateValue();
+                int current = (value.isNull() ? 0 : value.unboxInt());
+                if (current > previous) {
+                    repeatCount += current - previous;
+                }
+                previous = current;
+                if (interval.getEndTime() >= rangeEnd) {
+                    break;
+                }
+                interval = fStateSystem.querySingleState(interval.getEndTime() + 1, fRepeatCountQuark);
+            }
+            fRepeatCountInterval = interval;
+            return repeatCount;
+        } catch (StateSystemDisposedException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Get the interval of the next function call at this depth, starting at
+     * the requested time and ending before the end time. This is the interval
+     * of the function that would be returned by
+     * {@link #getNextFunction(long, ICalledFunction)}, for the
+     * callers that save the calls without creating the function objects.
+     *
+     * @param time
+     *            The time of the request
+     * @param endTime
+     *            The last time of the parent function call, or the end of
+     *            the state system for the first level of the callstack
+     * @return The non-null interval of the next function call, or
+     *         <code>null</code> if there is no more calls before the end time
+     */
+    public @Nullable ITmfStateInterval getNextInterval(long time, long endTime) {
+        if (time > endTime) {
+            return null;
+        }
+        try {
+            ITmfStateInterval interval = seek(time);
+            while ((interval.getStateValue().isNull() || (interval.getStartTime() < time)) && interval.getEndTime() + 1 < endTime) {
+                interval = fStateSystem.querySingleState(interval.getEndTime() + 1, fQuark);
+                fCurrent = interval;
+            }
+            if (!interval.getStateValue().isNull() && interval.getStartTime() >= time) {
+                return interval;
+            }
+        } catch (StateSystemDisposedException e) {
+
+        }
+        return null;
+    }
+
+    /**
+     * Position the cursor on the interval intersecting the requested time.
+     * Intervals of a quark are contiguous, so moving forward only requires to
+     * read the intervals that follow the current one.
+     */
+    private ITmfStateInterval seek(long time) throws StateSystemDisposedException {
+        ITmfStateInterval current = fCurrent;
+        if (current == null || current.getStartTime() > time) {
+            current = fStateSystem.querySingleState(time, fQuark);
+        }
+        while (current.getEndTime() < time) {
+            current = fStateSystem.querySingleState(current.getEndTime() + 1, fQuark);
+        }
+        fCurrent = current;
+        return current;
+    }
+
+}
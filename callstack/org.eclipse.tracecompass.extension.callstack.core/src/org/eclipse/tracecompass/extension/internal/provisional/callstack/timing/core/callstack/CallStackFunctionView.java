@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callgraph.ICalledFunction;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+
+/**
+ * A mutable function call, used by
+ * {@link CallStack#iterateOverCallStack(long, long, java.util.function.Consumer)}
+ * to visit the calls of one depth without creating an object for each call. The
+ * view is updated with the next call of the depth once the call is visited, so
+ * consumers that need to keep a call should copy its data.
+ *
+ * The symbol key, thread ID and CPU time are only computed if they are
+ * requested. The self time is computed from the durations of the callees as
+ * they are visited. The callees are read from the state system when they are
+ * requested.
+ *
+ * @author Geneviève Bastien
+ */
+final class CallStackFunctionView implements ICalledFunction {
+
+    private static final long serialVersionUID = 8345281372964316741L;
+
+    private final transient CallStack fCallStack;
+    private final transient ITmfStateSystem fStateSystem;
+    private final int fDepth;
+    private final int fCalleeQuark;
+    private final @Nullable CallStackFunctionView fParent;
+
+    private long fStart;
+    private long fEnd;
+    private transient ITmfStateValue fValue = TmfStateValue.nullValue();
+    /* The total duration of the callees visited for this call */
+    private long fCalleeTime;
+    /* Whether all the callees of this call are visited */
+    private boolean fCalleesVisited;
+    /* The model of the host, only resolved when a CPU time is requested */
+    private transient @Nullable IHostModel fModel = null;
+
+    /**
+     * Constructor
+     *
+     * @param callStack
+     *            The callstack of the calls
+     * @param ss
+     *            The state system containing the callstack
+     * @param depth
+     *            The depth of the calls, starting at 1
+     * @param calleeQuark
+     *            The quark of the next depth, or
+     *            {@link ITmfStateSystem#INVALID_ATTRIBUTE} if this is the
+     *            deepest level
+     * @param parent
+     *            The view of the previous depth, or <code>null</code> for the
+     *            first level
+     */
+    public CallStackFunctionView(CallStack callStack, ITmfStateSystem ss, int depth, int calleeQuark, @Nullable CallStackFunctionView parent) {
+        fCallStack = callStack;
+        fStateSystem = ss;
+        fDepth = depth;
+        fCalleeQuark = calleeQuark;
+        fParent = parent;
+    }
+
+    /**
+     * Move this view to another call
+     *
+     * @param interval
+     *            The interval of the call
+     * @param calleesVisited
+     *            Whether all the callees of this call will be visited, so that
+     *            the self time can be computed from their durations
+     */
+    public void set(ITmfStateInterval interval, boolean calleesVisited) {
+        fStart = interval.getStartTime();
+        fEnd = interval.getEndTime() + 1;
+        fValue = interval.getStateValue();
+        fCalleeTime = 0;
+        fCalleesVisited = calleesVisited;
+    }
+
+    /**
+     * Add the duration of a callee that was visited
+     *
+     * @param duration
+     *            The duration of the callee
+     */
+    public void addCalleeTime(long duration) {
+        fCalleeTime += duration;
+    }
+
+    @Override
+    public long getStart() {
+        return fStart;
+    }
+
+    @Override
+    public long getEnd() {
+        return fEnd;
+    }
+
+    @Override
+    public String getName() {
+        return NonNullUtils.nullToEmptyString(getSymbol().toString());
+    }
+
+    @Override
+    public Object getSymbol() {
+        switch (fValue.getType()) {
+        case INTEGER:
+            return (long) fValue.unboxInt();
+        case LONG:
+            return fValue.unboxLong();
+        case STRING:
+            return fValue.unboxStr();
+        case CUSTOM:
+            // Fall through
+        case DOUBLE:
+            // Fall through
+        case NULL:
+            // Fall through
+        default:
+            return fValue.toString();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The callees are read from the state system each time they are
+     * requested. They are new function objects whose parent is this view.
+     */
+    @Override
+    public List<ICalledFunction> getChildren() {
+        if (fCalleeQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return Collections.emptyList();
+        }
+        List<ICalledFunction> children = new ArrayList<>();
+        ICalledFunction child = fCallStack.getNextFunction(fStart, fDepth + 1, this);
+        while (child != null) {
+            children.add(child);
+            child = fCallStack.getNextFunction(child.getEnd(), fDepth + 1, this);
+        }
+        return children;
+    }
+
+    @Override
+    public @Nullable ICalledFunction getParent() {
+        return fParent;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The self time is computed from the callees visited for this call. If
+     * some callees were not visited, because the call crosses the boundaries
+     * of the iteration or its callees are deeper than the iteration, they are
+     * queried in the state system.
+     */
+    @Override
+    public long getSelfTime() {
+        long selfTime = fEnd - fStart;
+        if (fCalleesVisited || fCalleeQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return selfTime - fCalleeTime;
+        }
+        try {
+            for (ITmfStateInterval callee : StateSystemUtils.queryHistoryRange(fStateSystem, fCalleeQuark, fStart, fEnd - 1)) {
+                if (!callee.getStateValue().isNull()) {
+                    selfTime -= Math.min(callee.getEndTime() + 1, fEnd) - Math.max(callee.getStartTime(), fStart);
+                }
+            }
+        } catch (AttributeNotFoundException | StateSystemDisposedException e) {
+            // Return the time computed so far
+        }
+        return selfTime;
+    }
+
+    @Override
+    public long getCpuTime() {
+        IHostModel model = fModel;
+        if (model == null) {
+            model = ModelManager.getModelFor(fCallStack.getHostId());
+            fModel = model;
+        }
+        return model.getCpuTime(getThreadId(), fStart, fEnd);
+    }
+
+    @Override
+    public int getDepth() {
+        return fDepth;
+    }
+
+    @Override
+    public int getRepeatCount() {
+        return fCallStack.getRepeatCount(fDepth, fStart, fEnd);
+    }
+
+    @Override
+    public int getProcessId() {
+        return fCallStack.getSymbolKeyAt(fStart);
+    }
+
+    @Override
+    public int getThreadId() {
+        return fCallStack.getThreadId(fStart);
+    }
+
+    @Override
+    public int compareTo(@Nullable ISegment o) {
+        if (o == null) {
+            throw new IllegalArgumentException();
+        }
+        int cmp = Long.compare(fStart, o.getStart());
+        return (cmp != 0 ? cmp : Long.compare(fEnd, o.getEnd()));
+    }
+
+    @Override
+    public String toString() {
+        return '[' + String.valueOf(fStart) + ", " + String.valueOf(fEnd) + ']' + " Duration: " + getLength() + ", Symbol: " + getSymbol(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+}
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * Index of the times at which function calls of a {@link CallStack} begin or
+ * end, used to navigate from one call to the next or previous one. The sorted
+ * boundaries of each depth, and of all depths together, are read from the
+ * state system, so that the next or previous boundary of a time is found with
+ * a binary search.
+ *
+ * The index is built in a job, scheduled the first time it is used, and
+ * updated by the same job when the state system grows: only the intervals
+ * after the last indexed time are read and merged. The requests that the
+ * index cannot answer yet are answered by querying the state system around
+ * the requested time.
+ *
+ * @author Geneviève Bastien
+ */
+final class CallStackNavigationIndex {
+
+    private final ITmfStateSystem fStateSystem;
+    private final List<Integer> fQuarks;
+    private final Job fJob;
+
+    /* The sorted boundaries of each depth and their number */
+    private final long[][] fBoundaries;
+    private final int[] fSizes;
+    /*
+     * The time from which to resume reading each depth: the start of the last
+     * interval read, which was not complete. Only used by the job.
+     */
+    private final long[] fResumeTimes;
+    /* The sorted boundaries of all depths, without duplicates */
+    private long[] fAllBoundaries = new long[0];
+    private int fAllSize = 0;
+    private long fIndexedEnd = Long.MIN_VALUE;
+
+    /**
+     * Constructor
+     *
+     * @param callStack
+     *            The callstack to index, the job building the index belongs to
+     *            its family
+     * @param ss
+     *            The state system containing the callstack
+     * @param quarks
+     *            The quarks corresponding to each of the depth levels
+     */
+    public CallStackNavigationIndex(CallStack callStack, ITmfStateSystem ss, List<Integer> quarks) {
+        fStateSystem = ss;
+        fQuarks = quarks;
+        fBoundaries = new long[quarks.size()][];
+        fSizes = new int[quarks.size()];
+        fResumeTimes = new long[quarks.size()];
+        for (int i = 0; i < quarks.size(); i++) {
+            fBoundaries[i] = new long[16];
+        }
+        Arrays.fill(fResumeTimes, ss.getStartTime());
+        fJob = new Job(NonNullUtils.nullToEmptyString(Messages.CallStack_NavigationIndexJob)) {
+            @Override
+            protected IStatus run(@Nullable IProgressMonitor monitor) {
+                update(monitor);
+                return Status.OK_STATUS;
+            }
+
+            @Override
+            public boolean belongsTo(@Nullable Object family) {
+                return family == callStack;
+            }
+        };
+        fJob.setSystem(true);
+    }
+
+    /**
+     * Get the time of the next beginning or end of a function call after a
+     * time
+     *
+     * @param time
+     *            The time of the request
+     * @param depth
+     *            The depth of the function calls, starting at 1, or 0 for any
+     *            depth
+     * @param forward
+     *            <code>true</code> for the first boundary after the time,
+     *            <code>false</code> for the last one before the time
+     * @return The time of the boundary, or the requested time if there is no
+     *         call boundary in that direction
+     */
+    public long getNextBoundary(long time, int depth, boolean forward) {
+        long ssEnd = fStateSystem.getCurrentEndTime();
+        synchronized (this) {
+            if (fIndexedEnd < ssEnd) {
+                // A running job is scheduled again once it is done
+                fJob.schedule();
+            }
+            long[] boundaries = (depth == 0 ? fAllBoundaries : fBoundaries[depth - 1]);
+            int size = (depth == 0 ? fAllSize : fSizes[depth - 1]);
+            int index = Arrays.binarySearch(boundaries, 0, size, time);
+            if (forward) {
+                // The first boundary strictly after the time
+                index = (index >= 0 ? index + 1 : -index - 1);
+                if (index < size) {
+                    return boundaries[index];
+                }
+            } else if (time <= fIndexedEnd) {
+                // The last boundary strictly before the time
+                index = (index >= 0 ? index - 1 : -index - 2);
+                return (index >= 0 ? boundaries[index] : time);
+            }
+        }
+        // The boundary is not indexed yet
+        try {
+            return queryNextBoundary(time, depth, forward);
+        } catch (StateSystemDisposedException e) {
+            return time;
+        }
+    }
+
+    /**
+     * Find the next boundary of a time by querying the intervals of the state
+     * system around that time
+     */
+    private long queryNextBoundary(long time, int depth, boolean forward) throws StateSystemDisposedException {
+        if (time < fStateSystem.getStartTime() || time > fStateSystem.getCurrentEndTime()) {
+            return time;
+        }
+        if (depth > 0) {
+            return queryNextBoundary(fQuarks.get(depth - 1), time, forward);
+        }
+        long next = time;
+        for (int quark : fQuarks) {
+            long boundary = queryNextBoundary(quark, time, forward);
+            if (boundary != time && (next == time || (forward ? boundary < next : boundary > next))) {
+                next = boundary;
+            }
+        }
+        return next;
+    }
+
+    private long queryNextBoundary(int quark, long time, boolean forward) throws StateSystemDisposedException {
+        ITmfStateInterval interval = fStateSystem.querySingleState(time, quark);
+        if (forward) {
+            long ssEnd = fStateSystem.getCurrentEndTime();
+            while (true) {
+                boolean isCall = !interval.getStateValue().isNull();
+                if (isCall && interval.getStartTime() > time) {
+                    return interval.getStartTime();
+                }
+                if (interval.getEndTime() >= ssEnd) {
+                    // The last interval may not be complete
+                    return time;
+                }
+                if (isCall) {
+                    return interval.getEndTime() + 1;
+                }
+                interval = fStateSystem.querySingleState(interval.getEndTime() + 1, quark);
+            }
+        }
+        long ssStart = fStateSystem.getStartTime();
+        while (true) {
+            boolean isCall = !interval.getStateValue().isNull();
+            if (isCall && interval.getEndTime() + 1 < time) {
+                return interval.getEndTime() + 1;
+            }
+            if (isCall && interval.getStartTime() < time) {
+                return interval.getStartTime();
+            }
+            if (interval.getStartTime() <= ssStart) {
+                return time;
+            }
+            interval = fStateSystem.querySingleState(interval.getStartTime() - 1, quark);
+        }
+    }
+
+    /**
+     * Read the intervals of each depth that were added to the state system
+     * since the last update, and add their boundaries to the index
+     */
+    private void update(@Nullable IProgressMonitor monitor) {
+        long ssEnd = fStateSystem.getCurrentEndTime();
+        int nbDepths = fQuarks.size();
+        long[][] newBoundaries = new long[nbDepths][];
+        int[] newSizes = new int[nbDepths];
+        long[] resumeTimes = Arrays.copyOf(fResumeTimes, nbDepths);
+        try {
+            for (int i = 0; i < nbDepths; i++) {
+                if (monitor != null && monitor.isCanceled()) {
+                    return;
+                }
+                int quark = fQuarks.get(i);
+                long[] boundaries = new long[16];
+                int size = 0;
+                long time = resumeTimes[i];
+                while (time <= ssEnd) {
+                    ITmfStateInterval interval = fStateSystem.querySingleState(time, quark);
+                    boolean isCall = !interval.getStateValue().isNull();
+                    if (isCall) {
+                        boundaries = append(boundaries, size++, interval.getStartTime());
+                    }
+                    if (interval.getEndTime() >= ssEnd) {
+                        // This interval may not be complete yet, read it again at the next update
+                        resumeTimes[i] = interval.getStartTime();
+                        break;
+                    }
+                    if (isCall) {
+                        boundaries = append(boundaries, size++, interval.getEndTime() + 1);
+                    }
+                    time = interval.getEndTime() + 1;
+                }
+                newBoundaries[i] = boundaries;
+                newSizes[i] = size;
+            }
+        } catch (StateSystemDisposedException e) {
+            return;
+        }
+        synchronized (this) {
+            int[] oldSizes = Arrays.copyOf(fSizes, nbDepths);
+            for (int i = 0; i < nbDepths; i++) {
+                for (int j = 0; j < newSizes[i]; j++) {
+                    add(i, newBoundaries[i][j]);
+                }
+            }
+            System.arraycopy(resumeTimes, 0, fResumeTimes, 0, nbDepths);
+            mergeTail(oldSizes);
+            fIndexedEnd = ssEnd;
+        }
+    }
+
+    private static long[] append(long[] boundaries, int size, long boundary) {
+        long[] array = boundaries;
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size * 2);
+        }
+        array[size] = boundary;
+        return array;
+    }
+
+    private void add(int depth, long boundary) {
+        int size = fSizes[depth];
+        long[] boundaries = fBoundaries[depth];
+        if (size > 0 && boundaries[size - 1] >= boundary) {
+            // The start of a call that follows another one, or a call that was read again
+            return;
+        }
+        if (size == boundaries.length) {
+            boundaries = Arrays.copyOf(boundaries, size * 2);
+            fBoundaries[depth] = boundaries;
+        }
+        boundaries[size] = boundary;
+        fSizes[depth] = size + 1;
+    }
+
+    /**
+     * Merge the boundaries added to each depth since the last update with the
+     * boundaries of all depths. The new boundaries are all after the
+     * previously indexed ones, so only they are sorted and appended.
+     */
+    private void mergeTail(int[] oldSizes) {
+        int total = 0;
+        for (int i = 0; i < fSizes.length; i++) {
+            total += fSizes[i] - oldSizes[i];
+        }
+        if (total == 0) {
+            return;
+        }
+        long[] tail = new long[total];
+        int pos = 0;
+        for (int i = 0; i < fSizes.length; i++) {
+            int count = fSizes[i] - oldSizes[i];
+            System.arraycopy(fBoundaries[i], oldSizes[i], tail, pos, count);
+            pos += count;
+        }
+        Arrays.sort(tail);
+        if (fAllSize + total > fAllBoundaries.length) {
+            fAllBoundaries = Arrays.copyOf(fAllBoundaries, Math.max(fAllBoundaries.length * 2, fAllSize + total));
+        }
+        // Remove the duplicates, calls at different depths often end together
+        for (long boundary : tail) {
+            if (fAllSize == 0 || boundary != fAllBoundaries[fAllSize - 1]) {
+                fAllBoundaries[fAllSize++] = boundary;
+            }
+        }
+    }
+
+}
@@ -10,8 +10,13 @@
 package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -19,11 +24,11 @@ import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callsta
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.CallStackElement;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.CallStackGroupDescriptor;
 import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.CallStackLeafElement;
+import org.eclipse.tracecompass.extension.internal.callstack.timing.core.callstack.IntervalValueCache;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.extension.internal.provisional.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
-import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
-import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 
 /**
  * A callstack series contain the information necessary to build all the
@@ -55,55 +60,35 @@ public class CallStackSeries {
      */
     private static final class AttributeValueThreadProvider implements IThreadIdProvider {
 
-        private final ITmfStateSystem fSs;
-        private final int fQuark;
-        private transient @Nullable ITmfStateInterval fInterval;
-        private transient int fLastThreadId = IHostModel.UNKNOWN_TID;
+        private final IntervalValueCache fThreadIds;
 
         public AttributeValueThreadProvider(ITmfStateSystem ss, int quark) {
-            fSs = ss;
-            fQuark = quark;
+            fThreadIds = new IntervalValueCache(ss, quark, AttributeValueThreadProvider::getThreadId, IHostModel.UNKNOWN_TID);
         }
 
-        @Override
-        public int getTheadId(long time) {
-            ITmfStateInterval interval = fInterval;
-            int tid = fLastThreadId;
-            if (interval != null) {
-                if (time >= interval.getStartTime() && time <= interval.getEndTime()) {
-                    return fLastThreadId;
+        private static int getThreadId(ITmfStateValue value) {
+            switch (value.getType()) {
+            case INTEGER:
+                return value.unboxInt();
+            case LONG:
+                return (int) value.unboxLong();
+            case STRING:
+                try {
+                    return Integer.parseInt(value.unboxStr());
+                } catch (NumberFormatException e) {
+                    return IHostModel.UNKNOWN_TID;
                 }
+            case NULL: /* Fallthrough cases */
+            case DOUBLE: /* Fallthrough cases */
+            case CUSTOM: /* Fallthrough cases */
+            default:
+                return IHostModel.UNKNOWN_TID;
             }
-            try {
-                interval = fSs.querySingleState(time, fQuark);
-                switch (interval.getStateValue().getType()) {
-                case INTEGER:
-                    tid = interval.getStateValue().unboxInt();
-                    break;
-                case LONG:
-                    tid = (int) interval.getStateValue().unboxLong();
-                    break;
-                case STRING:
-                    try {
-                        Integer.valueOf(interval.getStateValue().unboxStr());
-                    } catch (NumberFormatException e) {
-                        tid = IHostModel.UNKNOWN_TID;
-                    }
-                    break;
-                case NULL: /* Fallthrough cases */
-                case DOUBLE: /* Fallthrough cases */
-                case CUSTOM: /* Fallthrough cases */
-                default:
-                    break;
+        }
 
-                }
-            } catch (StateSystemDisposedException e) {
-                interval = null;
-                tid = IHostModel.UNKNOWN_TID;
-            }
-            fInterval = interval;
-            fLastThreadId = tid;
-            return tid;
+        @Override
+        public int getTheadId(long time) {
+            return fThreadIds.getValue(time);
         }
 
     }
@@ -113,36 +98,31 @@ public class CallStackSeries {
      */
     private static final class CpuThreadProvider implements IThreadIdProvider {
 
-        private final ITmfStateSystem fSs;
-        private final int fCpuQuark;
-        private final IHostModel fModel;
+        private static final int UNKNOWN_CPU = -1;
+
+        private final @Nullable IntervalValueCache fCpus;
+        private final String fHostId;
 
         public CpuThreadProvider(String hostId, ITmfStateSystem ss, int quark, String[] path) {
-            fSs = ss;
-            fModel = ModelManager.getModelFor(hostId);
+            fHostId = hostId;
             // Get the cpu quark
             List<@NonNull Integer> quarks = ss.getQuarks(quark, path);
-            fCpuQuark = quarks.isEmpty() ? ITmfStateSystem.INVALID_ATTRIBUTE : quarks.get(0);
+            fCpus = quarks.isEmpty() ? null : new IntervalValueCache(ss, quarks.get(0), value -> value.isNull() ? UNKNOWN_CPU : value.unboxInt(), UNKNOWN_CPU);
         }
 
         @Override
         public int getTheadId(long time) {
-            if (fCpuQuark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            IntervalValueCache cpus = fCpus;
+            if (cpus == null) {
                 return IHostModel.UNKNOWN_TID;
             }
             // Get the CPU
-            try {
-                ITmfStateInterval querySingleState = fSs.querySingleState(time, fCpuQuark);
-
-                if (querySingleState.getStateValue().isNull()) {
-                    return IHostModel.UNKNOWN_TID;
-                }
-                int cpu = querySingleState.getStateValue().unboxInt();
-                return fModel.getThreadOnCpu(cpu, time);
-            } catch (StateSystemDisposedException e) {
-
+            int cpu = cpus.getValue(time);
+            if (cpu == UNKNOWN_CPU) {
+                return IHostModel.UNKNOWN_TID;
             }
-            return IHostModel.UNKNOWN_TID;
+            // The model of the host may be acquired after this provider is created
+            return ModelManager.getModelFor(fHostId).getThreadOnCpu(cpu, time);
         }
 
     }
@@ -239,10 +219,39 @@ public class CallStackSeries {
 
     }
 
-    private final ICallStackGroupDescriptor fRootGroup;
+    /**
+     * Interface for classes that want to be notified when new callstacks are
+     * added to the series, while the state system is being built
+     */
+    public interface ICallStackSeriesListener {
+
+        /**
+         * Notify that new leaf elements were added to the series
+         *
+         * @param series
+         *            The callstack series
+         * @param elements
+         *            The leaf elements added
+         */
+        void leafElementsAdded(CallStackSeries series, Collection<ICallStackLeafElement> elements);
+
+    }
+
+    private final ITmfStateSystem fStateSystem;
+    private final CallStackGroupDescriptor fRootGroup;
     private final ICallStackGroupDescriptor fAllGroup;
     private final String fName;
     private @Nullable IThreadIdResolver fResolver;
+    private final List<ICallStackSeriesListener> fListeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * Index of the elements of the series, updated when attributes are added
+     * to the state system
+     */
+    private final Object fIndexLock = new Object();
+    private int fNbAttributes = 0;
+    private volatile List<ICallStackElement> fRootElements = Collections.emptyList();
+    private volatile List<ICallStackLeafElement> fLeafElements = Collections.emptyList();
 
     /**
      * Constructor
@@ -276,6 +285,7 @@ public class CallStackSeries {
             prevLevel = level;
         }
         fRootGroup = prevLevel;
+        fStateSystem = ss;
         fName = name;
         fResolver = threadResolver;
         fAllGroup = new CallStackAllGroupDescriptor(this);
@@ -287,7 +297,8 @@ public class CallStackSeries {
      * @return The root elements of the callstack series
      */
     public List<ICallStackElement> getRootElements() {
-        return fRootGroup.getElements(null, ITmfStateSystem.ROOT_ATTRIBUTE, null, fResolver);
+        updateIndex();
+        return fRootElements;
     }
 
     /**
@@ -325,9 +336,85 @@ public class CallStackSeries {
      * @return The list of final elements
      */
     public List<ICallStackLeafElement> getLeafElements() {
-        List<ICallStackLeafElement> leafElements = new ArrayList<>();
-        getRootElements().forEach(el -> leafElements.addAll(el.getLeafElements()));
-        return leafElements;
+        updateIndex();
+        return fLeafElements;
+    }
+
+    /**
+     * Add a listener to be notified when new callstacks are added to this
+     * series. The listeners are notified when the elements of the series are
+     * requested and new attributes were added to the state system since the
+     * last request.
+     *
+     * @param listener
+     *            The listener to add
+     */
+    public void addListener(ICallStackSeriesListener listener) {
+        fListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener
+     *
+     * @param listener
+     *            The listener to remove
+     */
+    public void removeListener(ICallStackSeriesListener listener) {
+        fListeners.remove(listener);
+    }
+
+    /**
+     * Update the index of the elements with the attributes added to the state
+     * system since the last update. Attribute quarks are allocated in
+     * increasing order, so the new attributes are those whose quark is greater
+     * than the previous number of attributes. Only the elements with new
+     * attributes under them will match their group's pattern again.
+     */
+    private void updateIndex() {
+        List<ICallStackLeafElement> addedLeaves = new ArrayList<>();
+        synchronized (fIndexLock) {
+            int nbAttributes = fStateSystem.getNbAttributes();
+            if (nbAttributes == fNbAttributes) {
+                return;
+            }
+            // Mark the ancestors of the new attributes
+            BitSet modifiedQuarks = new BitSet(nbAttributes);
+            for (int quark = fNbAttributes; quark < nbAttributes; quark++) {
+                int parent = fStateSystem.getParentAttributeQuark(quark);
+                while (parent != ITmfStateSystem.ROOT_ATTRIBUTE && !modifiedQuarks.get(parent)) {
+                    modifiedQuarks.set(parent);
+                    parent = fStateSystem.getParentAttributeQuark(parent);
+                }
+            }
+            fNbAttributes = nbAttributes;
+
+            List<ICallStackElement> rootElements = fRootGroup.updateElements(fRootElements, null, ITmfStateSystem.ROOT_ATTRIBUTE, null, fResolver);
+            Set<ICallStackElement> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+            existing.addAll(fRootElements);
+            for (ICallStackElement element : rootElements) {
+                if (!existing.contains(element)) {
+                    addedLeaves.addAll(element.getLeafElements());
+                } else if (element instanceof CallStackElement) {
+                    ((CallStackElement) element).updateChildren(modifiedQuarks, addedLeaves::add);
+                }
+            }
+            fRootElements = Collections.unmodifiableList(rootElements);
+            if (!addedLeaves.isEmpty()) {
+                /*
+                 * Rebuild the leaves from the roots, so that they stay in the
+                 * order of the tree and not in the order they were discovered
+                 */
+                List<ICallStackLeafElement> leafElements = new ArrayList<>(fLeafElements.size() + addedLeaves.size());
+                for (ICallStackElement element : rootElements) {
+                    leafElements.addAll(element.getLeafElements());
+                }
+                fLeafElements = Collections.unmodifiableList(leafElements);
+            }
+        }
+        if (!addedLeaves.isEmpty()) {
+            Collection<ICallStackLeafElement> added = Collections.unmodifiableList(addedLeaves);
+            fListeners.forEach(listener -> listener.leafElementsAdded(this, added));
+        }
     }
 
 }
@@ -34,4 +34,16 @@ public interface ICallStackProvider extends IAnalysisModule {
      * @return The ID of the host
      */
     String getHostId();
+
+    /**
+     * Get the version of the callstacks provided by this analysis. Data
+     * computed from the callstacks and saved to disk, like the call graph, is
+     * discarded when this version changes, so implementations should increment
+     * it whenever the content of their callstacks changes.
+     *
+     * @return The version of the callstacks
+     */
+    default int getCallStackVersion() {
+        return 0;
+    }
 }
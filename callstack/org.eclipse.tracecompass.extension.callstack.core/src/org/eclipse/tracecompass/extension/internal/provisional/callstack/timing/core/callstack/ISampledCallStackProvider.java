@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+
+/**
+ * Interface that can be implemented by components who provide sampled call
+ * stacks, like the stacks of the events of a profiler, where each sample
+ * contains the full stack of a thread. Unlike the {@link ICallStackProvider},
+ * the function calls have no beginning and end: the samples are aggregated
+ * directly in the call graph, each sample adding its weight to the duration
+ * of the functions of its stack.
+ *
+ * The samples have no time in the call graph, so the call graph analysis
+ * has the following limits for these providers: the samples are aggregated
+ * only once the provider is completed, after the other callstacks, they are
+ * not part of the call graphs of time ranges and they are not saved with the
+ * call graph, they are read again each time the trace is opened.
+ *
+ * @author Geneviève Bastien
+ */
+public interface ISampledCallStackProvider extends IAnalysisModule {
+
+    /**
+     * The consumer of the samples read by a provider
+     */
+    @FunctionalInterface
+    interface ISampleConsumer {
+
+        /**
+         * Consume one sample. The stack array may be reused by the provider
+         * for the next samples, so the consumer should not keep it.
+         *
+         * @param element
+         *            The element of the callstack hierarchy this sample is
+         *            for, typically a thread
+         * @param stack
+         *            The symbols of the stack, starting with the outermost
+         *            caller
+         * @param depth
+         *            The number of symbols of the stack array that are part
+         *            of this sample
+         * @param weight
+         *            The weight of the sample, like the sampling period,
+         *            added to the duration of the functions of the stack
+         */
+        void sample(ICallStackElement element, Object[] stack, int depth, long weight);
+    }
+
+    /**
+     * Read all the samples of this provider, in time order, and send them to
+     * the consumer. This method is called once the analysis is completed, the
+     * samples are not streamed while the analysis is running.
+     *
+     * @param consumer
+     *            The consumer of the samples
+     * @param monitor
+     *            A progress monitor
+     * @return Whether the samples were all read, <code>false</code> if the
+     *         monitor was cancelled
+     */
+    boolean readSamples(ISampleConsumer consumer, IProgressMonitor monitor);
+
+    /**
+     * Get the maximum depth of the stacks of this provider. The symbols of a
+     * stack beyond this depth are ignored.
+     *
+     * @return The maximum depth of the stacks
+     */
+    int getMaxDepth();
+
+    /**
+     * Get the ID of the host this callstack provider is for
+     *
+     * @return The ID of the host
+     */
+    String getHostId();
+
+}
@@ -29,6 +29,8 @@ public class Messages extends NLS {
     public static @Nullable String CallStackStateProvider_UnmatchedPoppedValue;
     /** Describes an event with his name and timestamp */
     public static @Nullable String CallStackStateProvider_EventDescription;
+    /** Name of the job indexing the function calls of a callstack */
+    public static @Nullable String CallStack_NavigationIndexJob;
 
     static {
         // initialize resource bundle
@@ -74,6 +74,16 @@ public abstract class CallStackAnalysis extends TmfStateSystemAnalysisModule imp
         return PATTERNS;
     }
 
+    /**
+     * The callstacks are the content of the state system, so their version is
+     * the version of the state provider
+     */
+    @Override
+    public int getCallStackVersion() {
+        // The provider is not assigned a state system, so it processes no event
+        return createStateProvider().getVersion();
+    }
+
     @Override
     public @NonNull String getHostId() {
         ITmfTrace trace = getTrace();
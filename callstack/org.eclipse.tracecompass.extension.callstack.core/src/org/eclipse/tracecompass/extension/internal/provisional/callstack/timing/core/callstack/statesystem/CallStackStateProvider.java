@@ -14,6 +14,14 @@ package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.tracecompass.extension.internal.callstack.core.Activator;
@@ -98,9 +106,133 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
      */
     public static final String UNKNOWN = "UNKNOWN"; //$NON-NLS-1$
 
+    /**
+     * Name of the attribute under a depth of the callstack containing the
+     * number of direct recursive calls folded in the call at this depth, when
+     * the recursion is folded
+     */
+    public static final String REPEAT_COUNT = "RepeatCount"; //$NON-NLS-1$
+
+    /**
+     * The value of {@link #getMaxStackDepth()} when the depth of the recorded
+     * callstack is not limited
+     */
+    public static final int NO_DEPTH_LIMIT = Integer.MAX_VALUE;
+
     /** CallStack state system ID */
     private static final String ID = "org.eclipse.linuxtools.tmf.callstack"; //$NON-NLS-1$
 
+    /**
+     * The maximal number of events being decoded when the decoding is
+     * pipelined
+     */
+    private static final int PIPELINE_SIZE = 1024;
+
+    /** The number of events decoded by each task of the decoders */
+    private static final int BATCH_SIZE = 64;
+
+    /* The callstack quarks of the threads, by process and thread ID */
+    private final LongIntHashMap fCallStackQuarks = new LongIntHashMap();
+
+    private final int fDecoderThreads;
+    private @Nullable ForkJoinPool fDecoders = null;
+    /* The batches of events being decoded, in the order they are received */
+    private final Deque<ForkJoinTask<@Nullable FunctionRecord[]>> fPendingRecords = new ArrayDeque<>(PIPELINE_SIZE / BATCH_SIZE);
+    /* The events of the batch being filled, not sent to the decoders yet */
+    private ITmfEvent[] fBatch = new ITmfEvent[BATCH_SIZE];
+    private int fBatchSize = 0;
+
+    /*
+     * The state of the stack of each callstack quark, only used when the depth
+     * is limited or the recursion is folded
+     */
+    private final List<@Nullable StackState> fStackStates = new ArrayList<>();
+
+    /**
+     * The frames of one callstack, when the recorded depth is limited or the
+     * direct recursion is folded
+     */
+    private static final class StackState {
+        private final int fMaxDepth;
+        private final boolean fFoldRecursion;
+        /* The value of each recorded frame and its number of folded calls */
+        private ITmfStateValue[] fValues = new ITmfStateValue[8];
+        private int[] fRepeats = new int[8];
+        private int fDepth = 0;
+        /* The number of calls deeper than the maximal depth */
+        private int fHiddenFrames = 0;
+
+        public StackState(int maxDepth, boolean foldRecursion) {
+            fMaxDepth = maxDepth;
+            fFoldRecursion = foldRecursion;
+        }
+
+        public void push(ITmfStateSystemBuilder ss, long timestamp, ITmfStateValue value, int quark) {
+            if (fHiddenFrames > 0) {
+                fHiddenFrames++;
+                return;
+            }
+            if (fFoldRecursion && fDepth > 0 && value.equals(fValues[fDepth - 1])) {
+                fRepeats[fDepth - 1]++;
+                updateRepeatCount(ss, timestamp, quark);
+                return;
+            }
+            if (fDepth >= fMaxDepth) {
+                fHiddenFrames++;
+                return;
+            }
+            ss.pushAttribute(timestamp, value, quark);
+            if (fDepth == fValues.length) {
+                fValues = Arrays.copyOf(fValues, fDepth * 2);
+                fRepeats = Arrays.copyOf(fRepeats, fDepth * 2);
+            }
+            fValues[fDepth] = value;
+            fRepeats[fDepth] = 0;
+            fDepth++;
+        }
+
+        public @Nullable ITmfStateValue pop(ITmfStateSystemBuilder ss, long timestamp, int quark) {
+            if (fDepth > 0 && fRepeats[fDepth - 1] > 0) {
+                fRepeats[fDepth - 1]--;
+                updateRepeatCount(ss, timestamp, quark);
+                return fValues[fDepth - 1];
+            }
+            if (fDepth > 0) {
+                fDepth--;
+            }
+            return ss.popAttribute(timestamp, quark);
+        }
+
+        private void updateRepeatCount(ITmfStateSystemBuilder ss, long timestamp, int quark) {
+            int repeats = fRepeats[fDepth - 1];
+            int repeatQuark = ss.getQuarkRelativeAndAdd(quark, String.valueOf(fDepth), REPEAT_COUNT);
+            ss.modifyAttribute(timestamp, (repeats == 0 ? TmfStateValue.nullValue() : TmfStateValue.newValueInt(repeats)), repeatQuark);
+        }
+    }
+
+    /**
+     * Function entry or exit decoded from an event
+     */
+    private static final class FunctionRecord {
+        private final ITmfEvent fEvent;
+        private final boolean fIsEntry;
+        private final ITmfStateValue fValue;
+        private final @Nullable String fProcessName;
+        private final @Nullable String fThreadName;
+        private final int fProcessId;
+        private final long fThreadId;
+
+        public FunctionRecord(ITmfEvent event, boolean isEntry, ITmfStateValue value, @Nullable String processName, @Nullable String threadName, int processId, long threadId) {
+            fEvent = event;
+            fIsEntry = isEntry;
+            fValue = value;
+            fProcessName = processName;
+            fThreadName = threadName;
+            fProcessId = processId;
+            fThreadId = threadId;
+        }
+    }
+
     /**
      * Default constructor
      *
@@ -108,70 +240,250 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
      *            The trace for which we build this state system
      */
     public CallStackStateProvider(ITmfTrace trace) {
+        this(trace, 1);
+    }
+
+    /**
+     * Constructor with a number of threads to decode the events. With more
+     * than one thread, the events are first filtered with
+     * {@link #considerEvent(ITmfEvent)} in the state provider's thread, then
+     * sent in batches to the decoder threads, which call
+     * {@link #functionEntry(ITmfEvent)}, {@link #functionExit(ITmfEvent)} and
+     * the methods returning the process and thread of the event, so these
+     * methods must be thread-safe. The decoded entries and exits are applied
+     * to the state system in the order of the events, so the resulting state
+     * system is the same as with one thread.
+     *
+     * @param trace
+     *            The trace for which we build this state system
+     * @param decoderThreads
+     *            The number of threads decoding the events, <code>1</code>
+     *            to decode them in the state provider's thread
+     */
+    protected CallStackStateProvider(ITmfTrace trace, int decoderThreads) {
         super(trace, ID);
+        if (decoderThreads < 1) {
+            throw new IllegalArgumentException("The number of decoder threads should be at least 1: " + decoderThreads); //$NON-NLS-1$
+        }
+        fDecoderThreads = decoderThreads;
     }
 
     @Override
     protected void eventHandle(ITmfEvent event) {
+        ITmfStateSystemBuilder ss = checkNotNull(getStateSystemBuilder());
+        /* The events that are not considered are not sent to the decoders */
         if (!considerEvent(event)) {
             return;
         }
+        if (fDecoderThreads <= 1) {
+            applyRecord(ss, decode(event));
+            return;
+        }
 
-        ITmfStateSystemBuilder ss = checkNotNull(getStateSystemBuilder());
+        fBatch[fBatchSize++] = event;
+        if (fBatchSize < BATCH_SIZE) {
+            return;
+        }
+        ForkJoinPool decoders = fDecoders;
+        if (decoders == null) {
+            decoders = new ForkJoinPool(fDecoderThreads);
+            fDecoders = decoders;
+        }
+        if (fPendingRecords.size() >= PIPELINE_SIZE / BATCH_SIZE) {
+            applyRecords(ss, fPendingRecords.removeFirst().join());
+        }
+        ITmfEvent[] batch = fBatch;
+        fPendingRecords.addLast(decoders.submit(() -> decode(batch, BATCH_SIZE)));
+        fBatch = new ITmfEvent[BATCH_SIZE];
+        fBatchSize = 0;
+    }
+
+    @Override
+    public void done() {
+        /* Apply the events still being decoded, then the last batch */
+        ITmfStateSystemBuilder ss = getStateSystemBuilder();
+        while (!fPendingRecords.isEmpty()) {
+            @Nullable FunctionRecord[] records = fPendingRecords.removeFirst().join();
+            if (ss != null) {
+                applyRecords(ss, records);
+            }
+        }
+        if (ss != null) {
+            applyRecords(ss, decode(fBatch, fBatchSize));
+        }
+        fBatchSize = 0;
+        shutdownDecoders();
+        super.done();
+    }
+
+    @Override
+    public void dispose() {
+        shutdownDecoders();
+        fPendingRecords.clear();
+        fBatchSize = 0;
+        super.dispose();
+    }
 
+    private void shutdownDecoders() {
+        ForkJoinPool decoders = fDecoders;
+        if (decoders != null) {
+            decoders.shutdownNow();
+            fDecoders = null;
+        }
+    }
+
+    /**
+     * Decode the function entries and exits of a batch of events, without
+     * modifying the state system
+     */
+    private @Nullable FunctionRecord[] decode(ITmfEvent[] events, int nbEvents) {
+        @Nullable FunctionRecord[] records = new @Nullable FunctionRecord[nbEvents];
+        for (int i = 0; i < nbEvents; i++) {
+            records[i] = decode(events[i]);
+        }
+        return records;
+    }
+
+    /**
+     * Decode the function entry or exit of an event that is considered,
+     * without modifying the state system
+     */
+    private @Nullable FunctionRecord decode(ITmfEvent event) {
         /* Check if the event is a function entry */
         ITmfStateValue functionEntryName = functionEntry(event);
         if (functionEntryName != null) {
-            long timestamp = event.getTimestamp().toNanos();
-
             String processName = getProcessName(event);
-            int processId = getProcessId(event);
-            if (processName == null) {
-                processName = (processId == UNKNOWN_PID) ? UNKNOWN : Integer.toString(processId);
-            }
-            int processQuark = ss.getQuarkAbsoluteAndAdd(PROCESSES, processName);
-            ss.updateOngoingState(TmfStateValue.newValueInt(processId), processQuark);
-
             String threadName = getThreadName(event);
-            long threadId = getThreadId(event);
-            if (threadName == null) {
-                threadName = Long.toString(threadId);
-            }
-            int threadQuark = ss.getQuarkRelativeAndAdd(processQuark, threadName);
-            ss.updateOngoingState(TmfStateValue.newValueLong(threadId), threadQuark);
-
-            int callStackQuark = ss.getQuarkRelativeAndAdd(threadQuark, CALL_STACK);
-            ITmfStateValue value = functionEntryName;
-            ss.pushAttribute(timestamp, value, callStackQuark);
-            return;
+            return new FunctionRecord(event, true, functionEntryName, processName, threadName, getProcessId(event), getThreadId(event));
         }
 
         /* Check if the event is a function exit */
         ITmfStateValue functionExitState = functionExit(event);
         if (functionExitState != null) {
-            long timestamp = event.getTimestamp().toNanos();
             String processName = getProcessName(event);
-            if (processName == null) {
-                int processId = getProcessId(event);
-                processName = (processId == UNKNOWN_PID) ? UNKNOWN : Integer.toString(processId);
-            }
             String threadName = getThreadName(event);
-            if (threadName == null) {
-                threadName = Long.toString(getThreadId(event));
-            }
-            int quark = ss.getQuarkAbsoluteAndAdd(PROCESSES, processName, threadName, CALL_STACK);
-            ITmfStateValue poppedValue = ss.popAttribute(timestamp, quark);
-            /*
-             * Verify that the value we are popping matches the one in the
-             * event field, unless the latter is undefined.
-             */
-            if (!functionExitState.isNull() && !functionExitState.equals(poppedValue)) {
-                Activator.getInstance().logWarning(NLS.bind(Messages.CallStackStateProvider_EventDescription, event.getName(),
-                        event.getTimestamp().getValue()) + ": " + NLS.bind( //$NON-NLS-1$
-                        Messages.CallStackStateProvider_UnmatchedPoppedValue,
-                        functionExitState,
-                        poppedValue));
+            int processId = (processName == null ? getProcessId(event) : UNKNOWN_PID);
+            long threadId = (threadName == null ? getThreadId(event) : 0);
+            return new FunctionRecord(event, false, functionExitState, processName, threadName, processId, threadId);
+        }
+        return null;
+    }
+
+    private void applyRecords(ITmfStateSystemBuilder ss, @Nullable FunctionRecord[] records) {
+        for (FunctionRecord record : records) {
+            applyRecord(ss, record);
+        }
+    }
+
+    private void applyRecord(ITmfStateSystemBuilder ss, @Nullable FunctionRecord record) {
+        if (record == null) {
+            return;
+        }
+        long timestamp = record.fEvent.getTimestamp().toNanos();
+        int callStackQuark = getCallStackQuark(ss, record);
+        StackState stack = getStackState(callStackQuark);
+        if (record.fIsEntry) {
+            if (stack == null) {
+                ss.pushAttribute(timestamp, record.fValue, callStackQuark);
+            } else {
+                stack.push(ss, timestamp, record.fValue, callStackQuark);
             }
+            return;
+        }
+
+        ITmfStateValue functionExitState = record.fValue;
+        @Nullable ITmfStateValue poppedValue;
+        if (stack == null) {
+            poppedValue = ss.popAttribute(timestamp, callStackQuark);
+        } else if (stack.fHiddenFrames > 0) {
+            // The function was not recorded, nothing to verify
+            stack.fHiddenFrames--;
+            return;
+        } else {
+            poppedValue = stack.pop(ss, timestamp, callStackQuark);
+        }
+        /*
+         * Verify that the value we are popping matches the one in the event
+         * field, unless the latter is undefined.
+         */
+        if (!functionExitState.isNull() && !functionExitState.equals(poppedValue)) {
+            ITmfEvent event = record.fEvent;
+            Activator.getInstance().logWarning(NLS.bind(Messages.CallStackStateProvider_EventDescription, event.getName(),
+                    event.getTimestamp().getValue()) + ": " + NLS.bind( //$NON-NLS-1$
+                    Messages.CallStackStateProvider_UnmatchedPoppedValue,
+                    functionExitState,
+                    poppedValue));
+        }
+    }
+
+    private @Nullable StackState getStackState(int callStackQuark) {
+        int maxDepth = getMaxStackDepth();
+        boolean foldRecursion = isRecursionFolded();
+        if (maxDepth == NO_DEPTH_LIMIT && !foldRecursion) {
+            return null;
+        }
+        while (fStackStates.size() <= callStackQuark) {
+            fStackStates.add(null);
+        }
+        StackState stack = fStackStates.get(callStackQuark);
+        if (stack == null) {
+            stack = new StackState(maxDepth, foldRecursion);
+            fStackStates.set(callStackQuark, stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Get the quark of the callstack attribute of the thread of a function.
+     * When the process and thread attributes are named after their IDs, the
+     * quark is cached by process and thread ID and the attribute values, which
+     * cannot change for these IDs, are only set when the attributes are first
+     * added.
+     */
+    private int getCallStackQuark(ITmfStateSystemBuilder ss, FunctionRecord record) {
+        if (record.fProcessName != null || record.fThreadName != null) {
+            return getCallStackQuark(ss, record, record.fIsEntry);
+        }
+        long threadId = record.fThreadId;
+        if (threadId != (int) threadId) {
+            // The thread ID does not fit in the key
+            return getCallStackQuark(ss, record, record.fIsEntry);
+        }
+        long key = ((long) record.fProcessId << 32) | (threadId & 0xFFFFFFFFL);
+        int quark = fCallStackQuarks.get(key);
+        if (quark == LongIntHashMap.NO_VALUE) {
+            quark = getCallStackQuark(ss, record, true);
+            fCallStackQuarks.put(key, quark);
+        }
+        return quark;
+    }
+
+    private static int getCallStackQuark(ITmfStateSystemBuilder ss, FunctionRecord record, boolean updateIds) {
+        int processId = record.fProcessId;
+        String process = record.fProcessName;
+        if (process == null) {
+            process = (processId == UNKNOWN_PID) ? UNKNOWN : Integer.toString(processId);
+        }
+        int processQuark = ss.getQuarkAbsoluteAndAdd(PROCESSES, process);
+        if (updateIds) {
+            updateIfChanged(ss, TmfStateValue.newValueInt(processId), processQuark);
+        }
+
+        long threadId = record.fThreadId;
+        String thread = record.fThreadName;
+        if (thread == null) {
+            thread = Long.toString(threadId);
+        }
+        int threadQuark = ss.getQuarkRelativeAndAdd(processQuark, thread);
+        if (updateIds) {
+            updateIfChanged(ss, TmfStateValue.newValueLong(threadId), threadQuark);
+        }
+        return ss.getQuarkRelativeAndAdd(threadQuark, CALL_STACK);
+    }
+
+    private static void updateIfChanged(ITmfStateSystemBuilder ss, ITmfStateValue value, int quark) {
+        if (!value.equals(ss.queryOngoingState(quark))) {
+            ss.updateOngoingState(value, quark);
         }
     }
 
@@ -267,4 +579,32 @@ public abstract class CallStackStateProvider extends AbstractTmfStateProvider {
         /* Override to provide a thread name */
         return null;
     }
+
+    /**
+     * Get the maximal depth of the callstack to record. The calls deeper than
+     * this depth are not added to the state system, their duration is included
+     * in the self time of their ancestor at the maximal depth. Implementations
+     * overriding this method should also update their version.
+     *
+     * @return The maximal depth of the recorded callstack, or
+     *         {@link #NO_DEPTH_LIMIT} to record all the calls
+     */
+    protected int getMaxStackDepth() {
+        return NO_DEPTH_LIMIT;
+    }
+
+    /**
+     * Whether the direct recursive calls to the same function should be folded
+     * in one call. A folded call lasts from the first entry to the last exit of
+     * the function and the number of recursive calls it contains is saved in
+     * the {@link #REPEAT_COUNT} attribute under its depth. The total and self
+     * times of the function are the same, and the recursive calls are added to
+     * its number of calls, but they are not available individually.
+     * Implementations overriding this method should also update their version.
+     *
+     * @return <code>true</code> to fold the direct recursion
+     */
+    protected boolean isRecursionFolded() {
+        return false;
+    }
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2017 École Polytechnique de Montréal
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.extension.internal.provisional.callstack.timing.core.callstack.statesystem;
+
+import java.util.Arrays;
+
+/**
+ * A hash map of primitive long keys to non-negative int values, like quarks,
+ * using open addressing. Getting a value does not allocate any object.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Geneviève Bastien
+ */
+public final class LongIntHashMap {
+
+    /** The value returned for keys that are not in the map */
+    public static final int NO_VALUE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] fKeys = new long[INITIAL_CAPACITY];
+    private int[] fValues = new int[INITIAL_CAPACITY];
+    private int fSize = 0;
+
+    /**
+     * Constructor
+     */
+    public LongIntHashMap() {
+        Arrays.fill(fValues, NO_VALUE);
+    }
+
+    /**
+     * Get the value of a key
+     *
+     * @param key
+     *            The key
+     * @return The value of the key, or {@link #NO_VALUE} if the key is not in
+     *         the map
+     */
+    public int get(long key) {
+        int mask = fKeys.length - 1;
+        int pos = hash(key) & mask;
+        while (fValues[pos] != NO_VALUE) {
+            if (fKeys[pos] == key) {
+                return fValues[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Set the value of a key
+     *
+     * @param key
+     *            The key
+     * @param value
+     *            The value, it must not be negative
+     */
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value); //$NON-NLS-1$
+        }
+        // Keep the table at most half full
+        if ((fSize + 1) * 2 > fKeys.length) {
+            resize();
+        }
+        if (insert(fKeys, fValues, key, value)) {
+            fSize++;
+        }
+    }
+
+    /**
+     * Get the number of keys in the map
+     *
+     * @return The number of keys
+     */
+    public int size() {
+        return fSize;
+    }
+
+    private static boolean insert(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        int pos = hash(key) & mask;
+        while (values[pos] != NO_VALUE) {
+            if (keys[pos] == key) {
+                values[pos] = value;
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        return true;
+    }
+
+    private void resize() {
+        long[] keys = new long[fKeys.length * 2];
+        int[] values = new int[keys.length];
+        Arrays.fill(values, NO_VALUE);
+        for (int i = 0; i < fKeys.length; i++) {
+            if (fValues[i] != NO_VALUE) {
+                insert(keys, values, fKeys[i], fValues[i]);
+            }
+        }
+        fKeys = keys;
+        fValues = values;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
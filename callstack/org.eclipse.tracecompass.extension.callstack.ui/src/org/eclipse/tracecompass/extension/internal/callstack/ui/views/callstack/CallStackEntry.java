@@ -146,7 +146,16 @@ public class CallStackEntry extends TimeGraphEntry {
      *         <code>null</code> if the analysis was cancelled.
      */
     public @Nullable List<ITimeEvent> getEventList(long startTime, long endTime, long resolution, @NonNull IProgressMonitor monitor) {
-        List<ICalledFunction> callList = fCallStack.getCallListAtDepth(fStackLevel, startTime, endTime, resolution, monitor);
+        /*
+         * The calls of all depths are read at once, the other entries of this
+         * callstack will reuse the result for the same request
+         */
+        List<List<ICalledFunction>> callLists = fCallStack.getCallListsAllDepths(startTime, endTime, resolution, monitor);
+        // The lists are incomplete if the request was cancelled while they were read
+        if (monitor.isCanceled()) {
+            return null;
+        }
+        List<ICalledFunction> callList = callLists.get(fStackLevel - 1);
 
         List<ITimeEvent> events = new ArrayList<>();
         final int modulo = CallStackPresentationProvider.NUM_COLORS / 2;
@@ -227,11 +236,27 @@ public class CallStackEntry extends TimeGraphEntry {
      * @return The time of the next event
      */
     public long getNextEventTime(long time) {
-        ICalledFunction nextFunction = fCallStack.getNextFunction(time, fStackLevel);
-        if (nextFunction == null) {
-            return time;
-        }
-        return (nextFunction.getStart() <= time ? nextFunction.getEnd() : nextFunction.getStart());
+        return fCallStack.getNextEventTime(time, fStackLevel, true);
+    }
+
+    /**
+     * Get the time of the previous event, either entry or exit, for this entry
+     *
+     * @param time
+     *            The time of the request
+     * @return The time of the previous event
+     */
+    public long getPreviousEventTime(long time) {
+        return fCallStack.getNextEventTime(time, fStackLevel, false);
+    }
+
+    /**
+     * Get the callstack this entry is a level of
+     *
+     * @return The callstack of this entry
+     */
+    public CallStack getCallStack() {
+        return fCallStack;
     }
 
 }
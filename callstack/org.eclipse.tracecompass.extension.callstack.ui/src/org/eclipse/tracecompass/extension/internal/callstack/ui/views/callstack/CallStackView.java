@@ -743,14 +743,7 @@ public class CallStackView extends AbstractTimeGraphView {
             fNextEventAction = new Action() {
                 @Override
                 public void run() {
-                    TimeGraphViewer viewer = getTimeGraphViewer();
-                    ITimeGraphEntry entry = viewer.getSelection();
-                    if (entry instanceof CallStackEntry) {
-                        CallStackEntry callStackEntry = (CallStackEntry) entry;
-                        long newTime = callStackEntry.getNextEventTime(viewer.getSelectionBegin());
-                        viewer.setSelectedTimeNotify(newTime, true);
-                        startZoomThread(viewer.getTime0(), viewer.getTime1());
-                    }
+                    selectNextEvent(true);
                 }
             };
 
@@ -773,33 +766,7 @@ public class CallStackView extends AbstractTimeGraphView {
             fPrevEventAction = new Action() {
                 @Override
                 public void run() {
-//                    TimeGraphViewer viewer = getTimeGraphCombo().getTimeGraphViewer();
-//                    ITimeGraphEntry entry = viewer.getSelection();
-//                    if (entry instanceof CallStackEntry) {
-//                        try {
-//                            CallStackEntry callStackEntry = (CallStackEntry) entry;
-//
-//
-//
-//                            ITmfStateSystem ss = callStackEntry.getStateSystem();
-//                            long time = Math.max(ss.getStartTime(), Math.min(ss.getCurrentEndTime(), viewer.getSelectionBegin()));
-//                            TimeGraphEntry parentEntry = callStackEntry.getParent();
-//                            int quark = ss.getParentAttributeQuark(callStackEntry.getQuark());
-//                            ITmfStateInterval stackInterval = ss.querySingleState(time, quark);
-//                            if (stackInterval.getStartTime() == time && time > ss.getStartTime()) {
-//                                stackInterval = ss.querySingleState(time - 1, quark);
-//                            }
-//                            viewer.setSelectedTimeNotify(stackInterval.getStartTime(), true);
-//                            int stackLevel = stackInterval.getStateValue().unboxInt();
-//                            ITimeGraphEntry selectedEntry = parentEntry.getChildren().get(Math.max(0, stackLevel - 1));
-//                            getTimeGraphCombo().setSelection(selectedEntry);
-//                            viewer.getTimeGraphControl().fireSelectionChanged();
-//                            startZoomThread(viewer.getTime0(), viewer.getTime1());
-//
-//                        } catch (TimeRangeException | StateSystemDisposedException | StateValueTypeException e) {
-//                            Activator.getDefault().logError("Error querying state system", e); //$NON-NLS-1$
-//                        }
-//                    }
+                    selectNextEvent(false);
                 }
             };
 
@@ -811,6 +778,30 @@ public class CallStackView extends AbstractTimeGraphView {
         return fPrevEventAction;
     }
 
+    /**
+     * Select the next or previous function entry or exit from the current
+     * selection. If a depth of a callstack is selected, only the calls at this
+     * depth are considered, otherwise, if the selected entry contains a
+     * callstack, the calls at any depth are considered.
+     */
+    private void selectNextEvent(boolean forward) {
+        TimeGraphViewer viewer = getTimeGraphViewer();
+        ITimeGraphEntry entry = viewer.getSelection();
+        long time = viewer.getSelectionBegin();
+        long newTime;
+        if (entry instanceof CallStackEntry) {
+            CallStackEntry callStackEntry = (CallStackEntry) entry;
+            newTime = (forward ? callStackEntry.getNextEventTime(time) : callStackEntry.getPreviousEventTime(time));
+        } else if (entry != null && entry.hasChildren() && entry.getChildren().get(0) instanceof CallStackEntry) {
+            CallStack callStack = ((CallStackEntry) entry.getChildren().get(0)).getCallStack();
+            newTime = callStack.getNextEventTime(time, 0, forward);
+        } else {
+            return;
+        }
+        viewer.setSelectedTimeNotify(newTime, true);
+        startZoomThread(viewer.getTime0(), viewer.getTime1());
+    }
+
     private static Collection<ICallStackProvider> getCallStackModules(@NonNull ITmfTrace trace) {
         /*
          * Since we cannot know the exact analysis ID (in separate plugins), we
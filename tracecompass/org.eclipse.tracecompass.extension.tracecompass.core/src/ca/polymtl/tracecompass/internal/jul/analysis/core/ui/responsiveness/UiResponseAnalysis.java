@@ -11,6 +11,7 @@ package ca.polymtl.tracecompass.internal.jul.analysis.core.ui.responsiveness;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -192,19 +193,16 @@ public class UiResponseAnalysis extends TmfAbstractAnalysisModule {
             // Add stats for cache hit and misses
             CallStack callStack = element.getCallStack();
 
-            for (ICalledFunction func : callStack.getCallListAtDepth(1, callStack.getStartTime(), Long.MAX_VALUE, 1, monitor)) {
-                Object cacheLookup = callStack.getExtraAttribute("cacheLookup", func.getEnd() - 1);
-                Object cacheMiss = callStack.getExtraAttribute("cacheMiss", func.getEnd() - 1);
-                int lookups = 0;
-                int misses = 0;
-                if (cacheLookup != null) {
-                    lookups = (int) cacheLookup;
-                }
-                if (cacheMiss != null) {
-                    misses = (int) cacheMiss;
-                }
-                UiResponseStatistics threadStats = stats.getForThread(func.getSymbol().toString());
-                threadStats.addCacheData(lookups, misses);
+            List<ICalledFunction> functions = callStack.getCallListAtDepth(1, callStack.getStartTime(), Long.MAX_VALUE, 1, monitor);
+            long[] times = new long[functions.size()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = functions.get(i).getEnd() - 1;
+            }
+            long[] cacheLookups = callStack.getExtraAttributeValues("cacheLookup", times, 0); //$NON-NLS-1$
+            long[] cacheMisses = callStack.getExtraAttributeValues("cacheMiss", times, 0); //$NON-NLS-1$
+            for (int i = 0; i < times.length; i++) {
+                UiResponseStatistics threadStats = stats.getForThread(functions.get(i).getSymbol().toString());
+                threadStats.addCacheData((int) cacheLookups[i], (int) cacheMisses[i]);
             }
 
         }